@@ -0,0 +1,62 @@
+package com.cinefms.dbstore.api;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.reactivestreams.Publisher;
+
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+
+/**
+ * non-blocking counterpart of {@link DataStore}. nothing here waits for the database on the
+ * calling thread: results are delivered through the returned futures (or, for
+ * {@link #publishObjects(String, Class, DBStoreQuery)}, as a reactive-streams publisher), and
+ * errors complete them exceptionally with a {@link com.cinefms.dbstore.api.exceptions.DBStoreException}.
+ *
+ * listeners are called the same way as on {@link DataStore}, but on whatever thread completes
+ * the operation, so they should not block either.
+ */
+public interface AsyncDataStore {
+
+	<T extends DBStoreEntity> CompletableFuture<T> saveObject(String db, T object);
+
+	<T extends DBStoreEntity> CompletableFuture<List<T>> saveObjects(String db, List<T> objects);
+
+	<T extends DBStoreEntity> CompletableFuture<Boolean> deleteObject(String db, Class<T> clazz, String id);
+
+	<T extends DBStoreEntity> CompletableFuture<Boolean> deleteObject(String db, T object);
+
+	/**
+	 * deletes all objects matching the query
+	 * @return the number of deleted objects
+	 */
+	<T extends DBStoreEntity> CompletableFuture<Long> deleteObjects(String db, Class<T> clazz, DBStoreQuery query);
+
+	<T extends DBStoreEntity> CompletableFuture<T> getObject(String db, Class<T> clazz, String id);
+
+	<T extends DBStoreEntity> CompletableFuture<List<T>> findObjects(String db, Class<T> clazz, DBStoreQuery query);
+
+	/**
+	 * same matches as {@link #findObjects(String, Class, DBStoreQuery)}, but emitted one by one as
+	 * the subscriber requests them instead of collected into a list.
+	 */
+	<T extends DBStoreEntity> Publisher<T> publishObjects(String db, Class<T> clazz, DBStoreQuery query);
+
+	<T extends DBStoreEntity> CompletableFuture<Long> countObjects(String db, Class<T> clazz, DBStoreQuery query);
+
+	<T extends DBStoreEntity> CompletableFuture<T> findObject(String db, Class<T> clazz, DBStoreQuery query);
+
+	<T extends DBStoreEntity> CompletableFuture<T> updateObjectFields(String db, Class<T> clazz, String id, Map<String, Object> fields);
+
+	<T extends DBStoreEntity> CompletableFuture<T> updateObjectFields(String db, Class<T> clazz, String id, List<FieldUpdate> fieldUpdates);
+
+	<T extends DBStoreEntity> CompletableFuture<T> incrementField(String db, Class<T> clazz, String id, String fieldName, Number increment);
+
+	<T extends DBStoreEntity> CompletableFuture<T> setField(String db, Class<T> clazz, String id, String fieldName, Object value);
+
+	<T extends DBStoreEntity> CompletableFuture<T> unsetField(String db, Class<T> clazz, String id, String fieldName);
+
+	void addListener(DBStoreListener<?> listener);
+
+}
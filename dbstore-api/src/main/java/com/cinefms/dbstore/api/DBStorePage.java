@@ -0,0 +1,34 @@
+package com.cinefms.dbstore.api;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * one page of {@link DataStore#findPage(String, Class, com.cinefms.dbstore.query.api.DBStoreQuery, int)}
+ */
+public class DBStorePage<T> {
+
+	private final List<T> items;
+	private final String continuation;
+
+	public DBStorePage(List<T> items, String continuation) {
+		this.items = Collections.unmodifiableList(items);
+		this.continuation = continuation;
+	}
+
+	public List<T> getItems() {
+		return items;
+	}
+
+	/**
+	 * the token for the next page, null if this is the last one
+	 */
+	public String getContinuation() {
+		return continuation;
+	}
+
+	public boolean hasMore() {
+		return continuation != null;
+	}
+
+}
@@ -3,7 +3,10 @@ package com.cinefms.dbstore.api;
 import com.cinefms.dbstore.api.exceptions.DBStoreException;
 import com.cinefms.dbstore.query.api.DBStoreQuery;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Transaction context that provides access to DataStore operations within a transaction.
@@ -21,6 +24,16 @@ public interface DBStoreTransactionContext {
      */
     <T extends DBStoreEntity> T getObject(Class<T> clazz, String id);
 
+    /**
+     * Get objects by id within the transaction, in the order of the ids (null for missing ones)
+     */
+    <T extends DBStoreEntity> List<T> getObjects(Class<T> clazz, Collection<String> ids);
+
+    /**
+     * Get objects by id within the transaction, mapped by id (missing ones are left out)
+     */
+    <T extends DBStoreEntity> Map<String, T> getObjectMap(Class<T> clazz, Collection<String> ids);
+
     /**
      * Delete an object within the transaction
      */
@@ -32,15 +45,25 @@ public interface DBStoreTransactionContext {
     <T extends DBStoreEntity> boolean deleteObject(T object);
 
     /**
-     * Delete objects matching query within the transaction
+     * Delete objects matching query within the transaction, returning the number of deleted objects
      */
-    <T extends DBStoreEntity> boolean deleteObjects(Class<T> type, DBStoreQuery query);
+    <T extends DBStoreEntity> long deleteObjects(Class<T> type, DBStoreQuery query);
 
     /**
      * Find objects within the transaction
      */
     <T extends DBStoreEntity> List<T> findObjects(Class<T> clazz, DBStoreQuery query);
 
+    /**
+     * Stream objects from a cursor within the transaction, the stream must be closed
+     */
+    <T extends DBStoreEntity> Stream<T> streamObjects(Class<T> clazz, DBStoreQuery query);
+
+    /**
+     * Stream objects from a cursor within the transaction, fetching batchSize objects per round trip
+     */
+    <T extends DBStoreEntity> Stream<T> streamObjects(Class<T> clazz, DBStoreQuery query, int batchSize);
+
     /**
      * Find single object within the transaction
      */
@@ -51,6 +74,16 @@ public interface DBStoreTransactionContext {
      */
     <T extends DBStoreEntity> long countObjects(Class<T> clazz, DBStoreQuery query);
 
+    /**
+     * Stream the distinct values of a field within the transaction, the stream must be closed
+     */
+    <T extends DBStoreEntity> Stream<Object> distinctValues(Class<T> clazz, String field, DBStoreQuery query);
+
+    /**
+     * Check whether any object matches the query within the transaction
+     */
+    <T extends DBStoreEntity> boolean exists(Class<T> clazz, DBStoreQuery query);
+
     /**
      * Save multiple objects within the transaction
      */
@@ -1,10 +1,13 @@
 package com.cinefms.dbstore.api;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.query.api.DBStoreAggregation;
 import com.cinefms.dbstore.query.api.DBStoreQuery;
 
 public interface DataStore {
@@ -15,16 +18,81 @@ public interface DataStore {
 
 	<T extends DBStoreEntity> boolean deleteObject(String db, T object);
 
-	<T extends DBStoreEntity> boolean deleteObjects(String db, Class<T> type, DBStoreQuery query);
+	/**
+	 * deletes all objects matching the query
+	 * @return the number of deleted objects
+	 */
+	<T extends DBStoreEntity> long deleteObjects(String db, Class<T> type, DBStoreQuery query);
 
 	<T extends DBStoreEntity> T getObject(String db, Class<T> clazz, String id);
 
+	/**
+	 * loads many objects by id in a few round trips
+	 * @return the objects in the order of the ids, null for ids that do not exist
+	 */
+	<T extends DBStoreEntity> List<T> getObjects(String db, Class<T> clazz, Collection<String> ids);
+
+	/**
+	 * like {@link #getObjects(String, Class, Collection)}, by id in the order of the ids. ids
+	 * that do not exist are left out.
+	 */
+	<T extends DBStoreEntity> Map<String, T> getObjectMap(String db, Class<T> clazz, Collection<String> ids);
+
 	<T extends DBStoreEntity> List<T> findObjects(String db, Class<T> clazz, DBStoreQuery query);
 
+	/**
+	 * same matches as {@link #findObjects(String, Class, DBStoreQuery)}, but read lazily from an
+	 * open cursor instead of collected into a list. the stream holds that cursor until it is
+	 * closed, so use it in a try-with-resources block.
+	 */
+	<T extends DBStoreEntity> Stream<T> streamObjects(String db, Class<T> clazz, DBStoreQuery query);
+
+	/**
+	 * like {@link #streamObjects(String, Class, DBStoreQuery)}, fetching batchSize objects per
+	 * round trip
+	 */
+	<T extends DBStoreEntity> Stream<T> streamObjects(String db, Class<T> clazz, DBStoreQuery query, int batchSize);
+
+	/**
+	 * one page of at most pageSize matches, in the query's order with the id as tie-breaker.
+	 * pass {@link DBStorePage#getContinuation()} to {@link DBStoreQuery#after(String)} for the
+	 * next page. start / skip is not used, so every page costs the same no matter how deep it is.
+	 */
+	<T extends DBStoreEntity> DBStorePage<T> findPage(String db, Class<T> clazz, DBStoreQuery query, int pageSize);
+
 	<T extends DBStoreEntity> long countObjects(String db, Class<T> clazz, DBStoreQuery query);
 
+	/**
+	 * like {@link #countObjects(String, Class, DBStoreQuery)}, but stops counting at limit (e.g.
+	 * for "99+" or "is there more"). limit 0 counts everything.
+	 */
+	<T extends DBStoreEntity> long countObjects(String db, Class<T> clazz, DBStoreQuery query, long limit);
+
 	<T extends DBStoreEntity> T findObject(String db, Class<T> clazz, DBStoreQuery query);
 
+	/**
+	 * the distinct values of the field in the objects matching the query, the elements of a list
+	 * one by one and without null. streamed, so close the stream.
+	 */
+	<T extends DBStoreEntity> Stream<Object> distinctValues(String db, Class<T> clazz, String field, DBStoreQuery query);
+
+	/**
+	 * whether any object matches the query, without loading or counting them
+	 */
+	<T extends DBStoreEntity> boolean exists(String db, Class<T> clazz, DBStoreQuery query);
+
+	/**
+	 * groups the matches of the aggregation's query into rows, computed by the database. the rows
+	 * are streamed like {@link #streamObjects(String, Class, DBStoreQuery)}, so close the stream.
+	 */
+	<T extends DBStoreEntity> Stream<Map<String, Object>> aggregate(String db, Class<T> clazz, DBStoreAggregation aggregation);
+
+	/**
+	 * like {@link #aggregate(String, Class, DBStoreAggregation)}, each row mapped to rowType by
+	 * its names
+	 */
+	<T extends DBStoreEntity, R> Stream<R> aggregate(String db, Class<T> clazz, DBStoreAggregation aggregation, Class<R> rowType);
+
 	void addListener(DBStoreListener<?> listener);
 	
 	public void saveBinary(String dbName, String bucket, DBStoreBinary binary) throws DBStoreException;
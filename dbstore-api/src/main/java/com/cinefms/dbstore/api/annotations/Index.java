@@ -15,4 +15,15 @@ public @interface Index {
 
 	boolean unique() default false;
 
+	/**
+	 * compares strings ignoring case, for {@link com.cinefms.dbstore.query.api.DBStoreQuery#eqIgnoreCase(String, String)}
+	 */
+	boolean caseInsensitive() default false;
+
+	/**
+	 * a text index over the fields, for {@link com.cinefms.dbstore.query.api.DBStoreQuery#text(String)}.
+	 * a collection can only have one.
+	 */
+	boolean text() default false;
+
 }
@@ -1,5 +1,15 @@
 package com.cinefms.dbstore.api.annotations;
 
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * objects of this class are never kept in an {@link com.cinefms.dbstore.api.cache.EntityCache}
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
 public @interface NoCache {
 
 }
@@ -7,10 +7,19 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
+/**
+ * marks the getter of a property that holds the id (or a collection of ids) of objects of
+ * another class, see {@link com.cinefms.dbstore.api.references.ReferenceLoader}
+ */
 @Retention(RetentionPolicy.RUNTIME)
 @Target(ElementType.METHOD)
 public @interface Reference {
 
-	Class<DBStoreEntity> value();
+	Class<? extends DBStoreEntity> value();
+
+	/**
+	 * the property the referenced object(s) are set to when resolved, nothing is set if empty
+	 */
+	String target() default "";
 
 }
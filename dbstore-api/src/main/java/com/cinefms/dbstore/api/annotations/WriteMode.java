@@ -2,6 +2,13 @@ package com.cinefms.dbstore.api.annotations;
 
 public enum WriteMode {
 
-	SAFE, FAST
+	SAFE, FAST,
+
+	/**
+	 * saves are buffered in memory, coalesced by id and written in bulk in the background.
+	 * only the latest version of an object is written, and only 'beforeSave' is fired.
+	 * getObject sees pending versions, queries only see them once they are written.
+	 */
+	BUFFERED
 
 }
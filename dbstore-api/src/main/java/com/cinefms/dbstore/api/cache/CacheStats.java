@@ -0,0 +1,56 @@
+package com.cinefms.dbstore.api.cache;
+
+/**
+ * snapshot of the statistics of an {@link EntityCache}
+ */
+public class CacheStats {
+
+	private final long hitCount;
+	private final long missCount;
+	private final long evictionCount;
+	private final long size;
+
+	public CacheStats(long hitCount, long missCount, long evictionCount, long size) {
+		this.hitCount = hitCount;
+		this.missCount = missCount;
+		this.evictionCount = evictionCount;
+		this.size = size;
+	}
+
+	public long getHitCount() {
+		return hitCount;
+	}
+
+	public long getMissCount() {
+		return missCount;
+	}
+
+	public long getRequestCount() {
+		return hitCount + missCount;
+	}
+
+	/**
+	 * objects removed to make room for others (not counting invalidations)
+	 */
+	public long getEvictionCount() {
+		return evictionCount;
+	}
+
+	/**
+	 * number of cached objects, -1 if the cache does not know
+	 */
+	public long getSize() {
+		return size;
+	}
+
+	public double getHitRate() {
+		long requests = getRequestCount();
+		return requests == 0 ? 1.0 : (double) hitCount / requests;
+	}
+
+	@Override
+	public String toString() {
+		return "CacheStats(hits=" + hitCount + ", misses=" + missCount + ", evictions=" + evictionCount + ", size=" + size + ")";
+	}
+
+}
@@ -0,0 +1,668 @@
+package com.cinefms.dbstore.api.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import com.cinefms.dbstore.api.DBStoreBinary;
+import com.cinefms.dbstore.api.DBStoreEntity;
+import com.cinefms.dbstore.api.DBStoreListener;
+import com.cinefms.dbstore.api.DBStorePage;
+import com.cinefms.dbstore.api.DBStoreTransactionContext;
+import com.cinefms.dbstore.api.DataStore;
+import com.cinefms.dbstore.api.FieldUpdate;
+import com.cinefms.dbstore.api.annotations.NoCache;
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.query.api.DBStoreAggregation;
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+
+/**
+ * {@link DataStore} that keeps the objects read with {@link #getObject(String, Class, String)}
+ * in an {@link EntityCache}, for all classes not marked {@link NoCache}. everything else is
+ * handed to the wrapped store; writes through this store (or through its transaction contexts)
+ * invalidate the objects they touch, also when they fail (the write may have happened anyway).
+ *
+ * cached objects are shared between all callers, so they must not be modified. save a changed
+ * copy instead.
+ *
+ * with a {@link QueryResultCache} (off by default) the results of findObjects, findObject and
+ * countObjects are cached too. any write of a class makes all its cached results stale, also one
+ * on another node that a shared cache tells about. lists served from there are read only.
+ *
+ * inside a transaction the cache is not used at all, and what the transaction wrote is
+ * invalidated again once it is over (committed or not).
+ */
+public class CachingDataStore implements DataStore {
+
+	private final DataStore delegate;
+	private final EntityCache cache;
+	private volatile QueryResultCache queryCache;
+
+	// bumped on every invalidation (before the cache is invalidated), a read that overlaps one
+	// is not cached
+	private final AtomicLong invalidations = new AtomicLong();
+	private final ThreadLocal<List<Touched>> transaction = new ThreadLocal<>();
+
+	public CachingDataStore(DataStore delegate) {
+		this(delegate, new LocalEntityCache(10000));
+	}
+
+	public CachingDataStore(DataStore delegate, EntityCache cache) {
+		this.delegate = delegate;
+		this.cache = cache;
+
+		// writes on other nodes make the query results of this one stale too
+		cache.addInvalidationListener(new EntityCache.InvalidationListener() {
+			@Override
+			public void invalidated(String db, String className, String id) {
+				invalidations.incrementAndGet();
+				QueryResultCache qc = queryCache;
+				if (qc != null) {
+					qc.bump(db, className);
+				}
+			}
+
+			@Override
+			public void invalidatedAll() {
+				invalidations.incrementAndGet();
+				QueryResultCache qc = queryCache;
+				if (qc != null) {
+					qc.bumpAll();
+				}
+			}
+		});
+	}
+
+	public DataStore getDelegate() {
+		return delegate;
+	}
+
+	public EntityCache getCache() {
+		return cache;
+	}
+
+	public CacheStats getStats() {
+		return cache.getStats();
+	}
+
+	public QueryResultCache getQueryCache() {
+		return queryCache;
+	}
+
+	/**
+	 * enables caching of query results, null to disable it
+	 */
+	public void setQueryCache(QueryResultCache queryCache) {
+		this.queryCache = queryCache;
+	}
+
+	private QueryResultCache queryCache(Class<?> clazz) {
+		QueryResultCache out = queryCache;
+		return out != null && isCacheable(clazz) && transaction.get() == null ? out : null;
+	}
+
+	private boolean isCacheable(Class<?> clazz) {
+		return clazz.getAnnotation(NoCache.class) == null;
+	}
+
+	private void invalidate(String db, Class<?> clazz, String id) {
+		if (!isCacheable(clazz)) {
+			return;
+		}
+		invalidations.incrementAndGet();
+		bump(db, clazz);
+		if (id == null) {
+			cache.invalidate(db, clazz);
+		} else {
+			cache.invalidate(db, clazz, id);
+		}
+
+		List<Touched> touched = transaction.get();
+		if (touched != null) {
+			touched.add(new Touched(db, clazz, id));
+		}
+	}
+
+	private void bump(String db, Class<?> clazz) {
+		QueryResultCache qc = queryCache;
+		if (qc != null) {
+			qc.bump(db, clazz);
+		}
+	}
+
+	private void invalidate(String db, DBStoreEntity object) {
+		if (object != null && object.getId() != null) {
+			invalidate(db, object.getClass(), object.getId());
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T getObject(String db, Class<T> clazz, String id) {
+		if (id == null || !isCacheable(clazz) || transaction.get() != null) {
+			return delegate.getObject(db, clazz, id);
+		}
+
+		T out = cache.get(db, clazz, id);
+		if (out != null) {
+			return out;
+		}
+
+		long before = invalidations.get();
+		out = delegate.getObject(db, clazz, id);
+		if (out != null) {
+			cache.put(db, clazz, id, out, () -> invalidations.get() == before);
+		}
+		return out;
+	}
+
+	@Override
+	public <T extends DBStoreEntity> List<T> getObjects(String db, Class<T> clazz, Collection<String> ids) {
+		Map<String, T> byId = getObjectMap(db, clazz, ids);
+		List<T> out = new ArrayList<>(ids.size());
+		for (String id : ids) {
+			out.add(id != null ? byId.get(id) : null);
+		}
+		return out;
+	}
+
+	/**
+	 * takes what it can from the cache and loads only the rest from the delegate, in one call
+	 */
+	@Override
+	public <T extends DBStoreEntity> Map<String, T> getObjectMap(String db, Class<T> clazz, Collection<String> ids) {
+		if (!isCacheable(clazz) || transaction.get() != null) {
+			return delegate.getObjectMap(db, clazz, ids);
+		}
+
+		Map<String, T> found = new HashMap<>();
+		List<String> missing = new ArrayList<>();
+		for (String id : new LinkedHashSet<>(ids)) {
+			T o = id != null ? cache.get(db, clazz, id) : null;
+			if (o != null) {
+				found.put(id, o);
+			} else if (id != null) {
+				missing.add(id);
+			}
+		}
+
+		if (!missing.isEmpty()) {
+			long before = invalidations.get();
+			Map<String, T> loaded = delegate.getObjectMap(db, clazz, missing);
+			for (Map.Entry<String, T> e : loaded.entrySet()) {
+				found.put(e.getKey(), e.getValue());
+				cache.put(db, clazz, e.getKey(), e.getValue(), () -> invalidations.get() == before);
+			}
+		}
+
+		Map<String, T> out = new LinkedHashMap<>();
+		for (String id : ids) {
+			T o = id != null ? found.get(id) : null;
+			if (o != null) {
+				out.put(id, o);
+			}
+		}
+		return out;
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T saveObject(String db, T object) {
+		T out = null;
+		try {
+			out = delegate.saveObject(db, object);
+			return out;
+		} finally {
+			invalidate(db, out != null ? out : object);
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> List<T> saveObjects(String db, List<T> objects) {
+		List<T> out = null;
+		try {
+			out = delegate.saveObjects(db, objects);
+			return out;
+		} finally {
+			for (T o : out != null ? out : objects) {
+				invalidate(db, o);
+			}
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> boolean deleteObject(String db, Class<T> clazz, String id) {
+		try {
+			return delegate.deleteObject(db, clazz, id);
+		} finally {
+			invalidate(db, clazz, id);
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> boolean deleteObject(String db, T object) {
+		try {
+			return delegate.deleteObject(db, object);
+		} finally {
+			invalidate(db, object);
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> long deleteObjects(String db, Class<T> type, DBStoreQuery query) {
+		try {
+			return delegate.deleteObjects(db, type, query);
+		} finally {
+			invalidate(db, type, null);
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T updateObjectFields(String db, Class<T> clazz, String id, Map<String, Object> fields) {
+		try {
+			return delegate.updateObjectFields(db, clazz, id, fields);
+		} finally {
+			invalidate(db, clazz, id);
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T updateObjectFields(String db, Class<T> clazz, String id, List<FieldUpdate> fieldUpdates) {
+		try {
+			return delegate.updateObjectFields(db, clazz, id, fieldUpdates);
+		} finally {
+			invalidate(db, clazz, id);
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T incrementField(String db, Class<T> clazz, String id, String fieldName, Number increment) {
+		try {
+			return delegate.incrementField(db, clazz, id, fieldName, increment);
+		} finally {
+			invalidate(db, clazz, id);
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T setField(String db, Class<T> clazz, String id, String fieldName, Object value) {
+		try {
+			return delegate.setField(db, clazz, id, fieldName, value);
+		} finally {
+			invalidate(db, clazz, id);
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T unsetField(String db, Class<T> clazz, String id, String fieldName) {
+		try {
+			return delegate.unsetField(db, clazz, id, fieldName);
+		} finally {
+			invalidate(db, clazz, id);
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> List<T> findObjects(String db, Class<T> clazz, DBStoreQuery query) {
+		QueryResultCache qc = queryCache(clazz);
+		if (qc == null) {
+			return delegate.findObjects(db, clazz, query);
+		}
+
+		List<T> out = qc.getList("find", db, clazz, query);
+		if (out == null) {
+			long version = qc.version(db, clazz);
+			out = delegate.findObjects(db, clazz, query);
+			qc.putList("find", db, clazz, query, out, version);
+		}
+		return out;
+	}
+
+	@Override
+	public <T extends DBStoreEntity> Stream<T> streamObjects(String db, Class<T> clazz, DBStoreQuery query) {
+		return delegate.streamObjects(db, clazz, query);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> Stream<T> streamObjects(String db, Class<T> clazz, DBStoreQuery query, int batchSize) {
+		return delegate.streamObjects(db, clazz, query, batchSize);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> Stream<Object> distinctValues(String db, Class<T> clazz, String field, DBStoreQuery query) {
+		return delegate.distinctValues(db, clazz, field, query);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> boolean exists(String db, Class<T> clazz, DBStoreQuery query) {
+		return delegate.exists(db, clazz, query);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> Stream<Map<String, Object>> aggregate(String db, Class<T> clazz, DBStoreAggregation aggregation) {
+		return delegate.aggregate(db, clazz, aggregation);
+	}
+
+	@Override
+	public <T extends DBStoreEntity, R> Stream<R> aggregate(String db, Class<T> clazz, DBStoreAggregation aggregation, Class<R> rowType) {
+		return delegate.aggregate(db, clazz, aggregation, rowType);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> DBStorePage<T> findPage(String db, Class<T> clazz, DBStoreQuery query, int pageSize) {
+		return delegate.findPage(db, clazz, query, pageSize);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> long countObjects(String db, Class<T> clazz, DBStoreQuery query) {
+		QueryResultCache qc = queryCache(clazz);
+		if (qc == null) {
+			return delegate.countObjects(db, clazz, query);
+		}
+
+		Long out = qc.getCount(db, clazz, query, 0);
+		if (out == null) {
+			long version = qc.version(db, clazz);
+			out = delegate.countObjects(db, clazz, query);
+			qc.putCount(db, clazz, query, 0, out, version);
+		}
+		return out;
+	}
+
+	@Override
+	public <T extends DBStoreEntity> long countObjects(String db, Class<T> clazz, DBStoreQuery query, long limit) {
+		QueryResultCache qc = queryCache(clazz);
+		if (qc == null) {
+			return delegate.countObjects(db, clazz, query, limit);
+		}
+
+		Long out = qc.getCount(db, clazz, query, limit);
+		if (out == null) {
+			long version = qc.version(db, clazz);
+			out = delegate.countObjects(db, clazz, query, limit);
+			qc.putCount(db, clazz, query, limit, out, version);
+		}
+		return out;
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T findObject(String db, Class<T> clazz, DBStoreQuery query) {
+		QueryResultCache qc = queryCache(clazz);
+		if (qc == null) {
+			return delegate.findObject(db, clazz, query);
+		}
+
+		// kept as a list of zero or one, so "not found" is cached too
+		List<T> out = qc.getList("one", db, clazz, query);
+		if (out == null) {
+			long version = qc.version(db, clazz);
+			T found = delegate.findObject(db, clazz, query);
+			out = found != null ? Collections.singletonList(found) : Collections.emptyList();
+			qc.putList("one", db, clazz, query, out, version);
+		}
+		return out.isEmpty() ? null : out.get(0);
+	}
+
+	@Override
+	public void addListener(DBStoreListener<?> listener) {
+		delegate.addListener(listener);
+	}
+
+	@Override
+	public void saveBinary(String dbName, String bucket, DBStoreBinary binary) throws DBStoreException {
+		delegate.saveBinary(dbName, bucket, binary);
+	}
+
+	@Override
+	public DBStoreBinary getBinary(String dbName, String bucket, String id) throws DBStoreException {
+		return delegate.getBinary(dbName, bucket, id);
+	}
+
+	@Override
+	public <T> T executeInTransaction(String db, Supplier<T> operations) throws DBStoreException {
+		return inTransaction(() -> delegate.executeInTransaction(db, operations));
+	}
+
+	@Override
+	public void executeInTransaction(String db, Runnable operations) throws DBStoreException {
+		inTransaction(() -> {
+			delegate.executeInTransaction(db, operations);
+			return null;
+		});
+	}
+
+	@Override
+	public boolean supportsTransactions() {
+		return delegate.supportsTransactions();
+	}
+
+	@Override
+	public <T> T executeInTransaction(String db, Function<DBStoreTransactionContext, T> operations) throws DBStoreException {
+		return inTransaction(() -> delegate.executeInTransaction(db, (Function<DBStoreTransactionContext, T>) ctx -> operations.apply(new TransactionContext(db, ctx))));
+	}
+
+	@Override
+	public void executeInTransaction(String db, Consumer<DBStoreTransactionContext> operations) throws DBStoreException {
+		inTransaction(() -> {
+			delegate.executeInTransaction(db, (Consumer<DBStoreTransactionContext>) ctx -> operations.accept(new TransactionContext(db, ctx)));
+			return null;
+		});
+	}
+
+	private <T> T inTransaction(Supplier<T> body) {
+		if (transaction.get() != null) {
+			return body.get();
+		}
+
+		List<Touched> touched = new ArrayList<>();
+		transaction.set(touched);
+		try {
+			return body.get();
+
+		} finally {
+			transaction.remove();
+			// again, a read outside the transaction may have cached the old version meanwhile
+			invalidations.incrementAndGet();
+			for (Touched t : touched) {
+				bump(t.db, t.clazz);
+				if (t.id == null) {
+					cache.invalidate(t.db, t.clazz);
+				} else {
+					cache.invalidate(t.db, t.clazz, t.id);
+				}
+			}
+		}
+	}
+
+	private static class Touched {
+
+		private final String db;
+		private final Class<?> clazz;
+		private final String id;
+
+		Touched(String db, Class<?> clazz, String id) {
+			this.db = db;
+			this.clazz = clazz;
+			this.id = id;
+		}
+	}
+
+	/**
+	 * passes everything to the wrapped store's context, noting what gets written
+	 */
+	private class TransactionContext implements DBStoreTransactionContext {
+
+		private final String db;
+		private final DBStoreTransactionContext ctx;
+
+		TransactionContext(String db, DBStoreTransactionContext ctx) {
+			this.db = db;
+			this.ctx = ctx;
+		}
+
+		@Override
+		public <T extends DBStoreEntity> T saveObject(T object) {
+			T out = null;
+			try {
+				out = ctx.saveObject(object);
+				return out;
+			} finally {
+				invalidate(db, out != null ? out : object);
+			}
+		}
+
+		@Override
+		public <T extends DBStoreEntity> T getObject(Class<T> clazz, String id) {
+			return ctx.getObject(clazz, id);
+		}
+
+		@Override
+		public <T extends DBStoreEntity> List<T> getObjects(Class<T> clazz, Collection<String> ids) {
+			return ctx.getObjects(clazz, ids);
+		}
+
+		@Override
+		public <T extends DBStoreEntity> Map<String, T> getObjectMap(Class<T> clazz, Collection<String> ids) {
+			return ctx.getObjectMap(clazz, ids);
+		}
+
+		@Override
+		public <T extends DBStoreEntity> boolean deleteObject(Class<T> clazz, String id) {
+			try {
+				return ctx.deleteObject(clazz, id);
+			} finally {
+				invalidate(db, clazz, id);
+			}
+		}
+
+		@Override
+		public <T extends DBStoreEntity> boolean deleteObject(T object) {
+			try {
+				return ctx.deleteObject(object);
+			} finally {
+				invalidate(db, object);
+			}
+		}
+
+		@Override
+		public <T extends DBStoreEntity> long deleteObjects(Class<T> type, DBStoreQuery query) {
+			try {
+				return ctx.deleteObjects(type, query);
+			} finally {
+				invalidate(db, type, null);
+			}
+		}
+
+		@Override
+		public <T extends DBStoreEntity> List<T> findObjects(Class<T> clazz, DBStoreQuery query) {
+			return ctx.findObjects(clazz, query);
+		}
+
+		@Override
+		public <T extends DBStoreEntity> Stream<T> streamObjects(Class<T> clazz, DBStoreQuery query) {
+			return ctx.streamObjects(clazz, query);
+		}
+
+		@Override
+		public <T extends DBStoreEntity> Stream<T> streamObjects(Class<T> clazz, DBStoreQuery query, int batchSize) {
+			return ctx.streamObjects(clazz, query, batchSize);
+		}
+
+		@Override
+		public <T extends DBStoreEntity> T findObject(Class<T> clazz, DBStoreQuery query) {
+			return ctx.findObject(clazz, query);
+		}
+
+		@Override
+		public <T extends DBStoreEntity> long countObjects(Class<T> clazz, DBStoreQuery query) {
+			return ctx.countObjects(clazz, query);
+		}
+
+		@Override
+		public <T extends DBStoreEntity> Stream<Object> distinctValues(Class<T> clazz, String field, DBStoreQuery query) {
+			return ctx.distinctValues(clazz, field, query);
+		}
+
+		@Override
+		public <T extends DBStoreEntity> boolean exists(Class<T> clazz, DBStoreQuery query) {
+			return ctx.exists(clazz, query);
+		}
+
+		@Override
+		public <T extends DBStoreEntity> List<T> saveObjects(List<T> objects) {
+			List<T> out = null;
+			try {
+				out = ctx.saveObjects(objects);
+				return out;
+			} finally {
+				for (T o : out != null ? out : objects) {
+					invalidate(db, o);
+				}
+			}
+		}
+
+		@Override
+		public <T extends DBStoreEntity> T updateObjectFields(Class<T> clazz, String id, Map<String, Object> fields) {
+			try {
+				return ctx.updateObjectFields(clazz, id, fields);
+			} finally {
+				invalidate(db, clazz, id);
+			}
+		}
+
+		@Override
+		public <T extends DBStoreEntity> T updateObjectFields(Class<T> clazz, String id, List<FieldUpdate> fieldUpdates) {
+			try {
+				return ctx.updateObjectFields(clazz, id, fieldUpdates);
+			} finally {
+				invalidate(db, clazz, id);
+			}
+		}
+
+		@Override
+		public <T extends DBStoreEntity> T incrementField(Class<T> clazz, String id, String fieldName, Number increment) {
+			try {
+				return ctx.incrementField(clazz, id, fieldName, increment);
+			} finally {
+				invalidate(db, clazz, id);
+			}
+		}
+
+		@Override
+		public <T extends DBStoreEntity> T setField(Class<T> clazz, String id, String fieldName, Object value) {
+			try {
+				return ctx.setField(clazz, id, fieldName, value);
+			} finally {
+				invalidate(db, clazz, id);
+			}
+		}
+
+		@Override
+		public <T extends DBStoreEntity> T unsetField(Class<T> clazz, String id, String fieldName) {
+			try {
+				return ctx.unsetField(clazz, id, fieldName);
+			} finally {
+				invalidate(db, clazz, id);
+			}
+		}
+
+		@Override
+		public void saveBinary(String bucket, DBStoreBinary binary) throws DBStoreException {
+			ctx.saveBinary(bucket, binary);
+		}
+
+		@Override
+		public DBStoreBinary getBinary(String bucket, String id) throws DBStoreException {
+			return ctx.getBinary(bucket, id);
+		}
+	}
+
+}
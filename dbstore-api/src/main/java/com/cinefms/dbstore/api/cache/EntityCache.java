@@ -0,0 +1,67 @@
+package com.cinefms.dbstore.api.cache;
+
+import java.util.function.BooleanSupplier;
+
+import com.cinefms.dbstore.api.DBStoreEntity;
+
+/**
+ * cache of objects by (db, class, id), used by {@link CachingDataStore}.
+ *
+ * implementations must be thread safe. the db may be null (the default db).
+ */
+public interface EntityCache {
+
+	/**
+	 * told about invalidations that did not go through this cache, e.g. those of other nodes
+	 */
+	interface InvalidationListener {
+
+		/**
+		 * @param id null for all objects of the class
+		 */
+		void invalidated(String db, String className, String id);
+
+		/**
+		 * invalidations may have been missed, anything may be stale
+		 */
+		void invalidatedAll();
+
+	}
+
+	/**
+	 * @return the cached object, null if there is none
+	 */
+	<T extends DBStoreEntity> T get(String db, Class<T> clazz, String id);
+
+	/**
+	 * caches the object. an implementation may decide not to keep it (e.g. when it is full and
+	 * the object is not used often enough yet)
+	 */
+	<T extends DBStoreEntity> void put(String db, Class<T> clazz, String id, T object);
+
+	/**
+	 * caches the object only if unchanged is still true. the check must be atomic with the
+	 * insert with respect to invalidate, so a reader that loaded the object before an
+	 * invalidation cannot put it back after it
+	 */
+	<T extends DBStoreEntity> void put(String db, Class<T> clazz, String id, T object, BooleanSupplier unchanged);
+
+	void invalidate(String db, Class<?> clazz, String id);
+
+	/**
+	 * removes all objects of the class in the db
+	 */
+	void invalidate(String db, Class<?> clazz);
+
+	void clear();
+
+	/**
+	 * for caches shared between nodes. a local cache sees all invalidations itself and has
+	 * nothing to tell
+	 */
+	default void addInvalidationListener(InvalidationListener listener) {
+	}
+
+	CacheStats getStats();
+
+}
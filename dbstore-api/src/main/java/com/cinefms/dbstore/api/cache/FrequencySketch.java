@@ -0,0 +1,62 @@
+package com.cinefms.dbstore.api.cache;
+
+/**
+ * approximate access counts (count-min sketch with 4 rows of counters up to 15). all counters are
+ * halved after 10 * maximumSize increments, so old popularity fades out. not thread safe.
+ */
+class FrequencySketch {
+
+	private static final int[] SEEDS = { 0x97cb3127, 0xb0d7c9b5, 0x8e6a4c2d, 0xc2b2ae35 };
+	private static final int MAX_COUNT = 15;
+
+	private final byte[][] table;
+	private final int mask;
+	private final int sampleSize;
+	private int additions;
+
+	FrequencySketch(int maximumSize) {
+		// about 4 counters per cached object and row, so unrelated objects rarely share all of theirs
+		int width = Integer.highestOneBit(Math.max(64, maximumSize - 1) << 3);
+		this.table = new byte[SEEDS.length][width];
+		this.mask = width - 1;
+		this.sampleSize = (int) Math.min(Integer.MAX_VALUE, 10L * Math.max(1, maximumSize));
+	}
+
+	int frequency(int hash) {
+		int out = MAX_COUNT;
+		for (int i = 0; i < SEEDS.length; i++) {
+			out = Math.min(out, table[i][index(hash, i)]);
+		}
+		return out;
+	}
+
+	void increment(int hash) {
+		boolean added = false;
+		for (int i = 0; i < SEEDS.length; i++) {
+			int idx = index(hash, i);
+			if (table[i][idx] < MAX_COUNT) {
+				table[i][idx]++;
+				added = true;
+			}
+		}
+		if (added && ++additions >= sampleSize) {
+			reset();
+		}
+	}
+
+	private int index(int hash, int row) {
+		int h = hash * SEEDS[row];
+		h ^= h >>> 16;
+		return h & mask;
+	}
+
+	private void reset() {
+		for (byte[] row : table) {
+			for (int i = 0; i < row.length; i++) {
+				row[i] = (byte) (row[i] >>> 1);
+			}
+		}
+		additions /= 2;
+	}
+
+}
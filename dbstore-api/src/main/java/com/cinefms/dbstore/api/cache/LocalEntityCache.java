@@ -0,0 +1,267 @@
+package com.cinefms.dbstore.api.cache;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import com.cinefms.dbstore.api.DBStoreEntity;
+
+/**
+ * bounded in-process {@link EntityCache}.
+ *
+ * lookups go to a concurrent map and do not wait for each other. the eviction order is a lru
+ * list, and a full cache only admits a new object if it was asked for more often than the
+ * least recently used one (tinylfu, counted in a {@link FrequencySketch}). so a scan over many
+ * objects that are read once does not push out the ones that are read all the time.
+ *
+ * reads only update the lru order and the counts if nobody else holds the lock, skipping one of
+ * these updates now and then is fine.
+ *
+ * with expireAfterWrite, objects are dropped that many milliseconds after they were put, which
+ * bounds how stale they can get when an invalidation is missed (e.g. sent by another node).
+ */
+public class LocalEntityCache implements EntityCache {
+
+	private final int maximumSize;
+	private final long expireAfterWrite;
+	private final Map<Key, Node> data = new ConcurrentHashMap<>();
+
+	// guards the lru list and the sketch
+	private final ReentrantLock lock = new ReentrantLock();
+	private final FrequencySketch sketch;
+	private final Node head = new Node(null, null);
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public LocalEntityCache(int maximumSize) {
+		this(maximumSize, 0);
+	}
+
+	/**
+	 * @param expireAfterWrite milliseconds, 0 to keep objects until they are evicted or invalidated
+	 */
+	public LocalEntityCache(int maximumSize, long expireAfterWrite) {
+		this.maximumSize = Math.max(1, maximumSize);
+		this.expireAfterWrite = TimeUnit.MILLISECONDS.toNanos(Math.max(0, expireAfterWrite));
+		this.sketch = new FrequencySketch(this.maximumSize);
+		head.prev = head;
+		head.next = head;
+	}
+
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	public long getExpireAfterWrite() {
+		return TimeUnit.NANOSECONDS.toMillis(expireAfterWrite);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T get(String db, Class<T> clazz, String id) {
+		Key key = new Key(db, clazz, id);
+		Node node = data.get(key);
+
+		if (node != null && expireAfterWrite > 0 && System.nanoTime() - node.written > expireAfterWrite) {
+			remove(node);
+			node = null;
+		}
+
+		if (node == null) {
+			misses.increment();
+			return null;
+		}
+
+		hits.increment();
+		if (lock.tryLock()) {
+			try {
+				sketch.increment(key.hash);
+				// not if it was dropped since it was read
+				if (node.next != null && data.get(key) == node) {
+					moveToTail(node);
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+
+		return clazz.cast(node.value);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> void put(String db, Class<T> clazz, String id, T object) {
+		put(db, clazz, id, object, null);
+	}
+
+	/**
+	 * unchanged is checked while holding the lock that invalidate takes too
+	 */
+	@Override
+	public <T extends DBStoreEntity> void put(String db, Class<T> clazz, String id, T object, BooleanSupplier unchanged) {
+		Key key = new Key(db, clazz, id);
+
+		lock.lock();
+		try {
+			if (unchanged != null && !unchanged.getAsBoolean()) {
+				return;
+			}
+			sketch.increment(key.hash);
+
+			Node node = data.get(key);
+			if (node != null) {
+				node.value = object;
+				node.written = System.nanoTime();
+				moveToTail(node);
+				return;
+			}
+
+			if (data.size() >= maximumSize) {
+				Node victim = head.next;
+				if (sketch.frequency(key.hash) <= sketch.frequency(victim.key.hash)) {
+					return;
+				}
+				unlink(victim);
+				data.remove(victim.key);
+				evictions.increment();
+			}
+
+			node = new Node(key, object);
+			data.put(key, node);
+			linkTail(node);
+
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void invalidate(String db, Class<?> clazz, String id) {
+		lock.lock();
+		try {
+			Node node = data.remove(new Key(db, clazz, id));
+			if (node != null) {
+				unlink(node);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void remove(Node node) {
+		lock.lock();
+		try {
+			if (data.remove(node.key, node)) {
+				unlink(node);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void invalidate(String db, Class<?> clazz) {
+		lock.lock();
+		try {
+			Iterator<Node> it = data.values().iterator();
+			while (it.hasNext()) {
+				Node node = it.next();
+				if (node.key.clazz == clazz && (db == null ? node.key.db == null : db.equals(node.key.db))) {
+					it.remove();
+					unlink(node);
+				}
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public void clear() {
+		lock.lock();
+		try {
+			data.clear();
+			// unlinked one by one, so a get that still holds one of them does not link it back
+			while (head.next != head) {
+				unlink(head.next);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public CacheStats getStats() {
+		return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), data.size());
+	}
+
+	private void linkTail(Node node) {
+		node.prev = head.prev;
+		node.next = head;
+		head.prev.next = node;
+		head.prev = node;
+	}
+
+	private void unlink(Node node) {
+		if (node.next == null) {
+			return;
+		}
+		node.prev.next = node.next;
+		node.next.prev = node.prev;
+		node.prev = null;
+		node.next = null;
+	}
+
+	private void moveToTail(Node node) {
+		unlink(node);
+		linkTail(node);
+	}
+
+	private static class Key {
+
+		private final String db;
+		private final Class<?> clazz;
+		private final String id;
+		private final int hash;
+
+		Key(String db, Class<?> clazz, String id) {
+			this.db = db;
+			this.clazz = clazz;
+			this.id = id;
+			this.hash = 31 * (31 * (db == null ? 0 : db.hashCode()) + clazz.hashCode()) + id.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return clazz == k.clazz && id.equals(k.id) && (db == null ? k.db == null : db.equals(k.db));
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+	}
+
+	private static class Node {
+
+		private final Key key;
+		private volatile Object value;
+		private volatile long written = System.nanoTime();
+		private Node prev;
+		private Node next;
+
+		Node(Key key, Object value) {
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+}
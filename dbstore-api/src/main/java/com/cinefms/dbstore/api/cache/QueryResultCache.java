@@ -0,0 +1,245 @@
+package com.cinefms.dbstore.api.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.impl.CanonicalQuery;
+
+/**
+ * results of findObjects / findObject / countObjects by (db, class, {@link CanonicalQuery}), see
+ * {@link CachingDataStore#setQueryCache(QueryResultCache)}.
+ *
+ * every (db, class) has a version that each write of the class bumps. a result remembers the
+ * version it was read at and is only served while that is still the current one, so after a
+ * write nothing older is returned (no need to find out which queries the write affected).
+ *
+ * results expire after the class's ttl, and lists longer than its maxResultSize are not kept.
+ * the number of results is bounded by maximumSize, the least recently used go first.
+ */
+public class QueryResultCache {
+
+	private final int maximumSize;
+	private final Map<Key, Result> results;
+	private final Map<String, AtomicLong> versions = new ConcurrentHashMap<>();
+	// the version of classes without one of their own, bumped with all of them
+	private final AtomicLong floor = new AtomicLong();
+	private final Map<Class<?>, Settings> settings = new ConcurrentHashMap<>();
+
+	private long defaultTtl = 60000;
+	private int defaultMaxResultSize = 1000;
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	private final LongAdder evictions = new LongAdder();
+
+	public QueryResultCache() {
+		this(10000);
+	}
+
+	public QueryResultCache(int maximumSize) {
+		this.maximumSize = Math.max(1, maximumSize);
+		this.results = new LinkedHashMap<Key, Result>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+				if (size() > QueryResultCache.this.maximumSize) {
+					evictions.increment();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * @param ttl milliseconds
+	 */
+	public void setTtl(Class<?> clazz, long ttl) {
+		settings.compute(clazz, (c, s) -> new Settings(ttl, s != null ? s.maxResultSize : defaultMaxResultSize));
+	}
+
+	public void setMaxResultSize(Class<?> clazz, int maxResultSize) {
+		settings.compute(clazz, (c, s) -> new Settings(s != null ? s.ttl : defaultTtl, maxResultSize));
+	}
+
+	public long getDefaultTtl() {
+		return defaultTtl;
+	}
+
+	/**
+	 * milliseconds, for classes without their own
+	 */
+	public void setDefaultTtl(long defaultTtl) {
+		this.defaultTtl = defaultTtl;
+	}
+
+	public int getDefaultMaxResultSize() {
+		return defaultMaxResultSize;
+	}
+
+	public void setDefaultMaxResultSize(int defaultMaxResultSize) {
+		this.defaultMaxResultSize = defaultMaxResultSize;
+	}
+
+	/**
+	 * the current version of the class in the db, read it before running the query and pass it
+	 * to put
+	 */
+	public long version(String db, Class<?> clazz) {
+		AtomicLong v = versions.get(versionKey(db, clazz.getName()));
+		return v != null ? v.get() : floor.get();
+	}
+
+	/**
+	 * makes all cached results of the class in the db stale
+	 */
+	public void bump(String db, Class<?> clazz) {
+		bump(db, clazz.getName());
+	}
+
+	/**
+	 * the same by class name, for invalidations from other nodes
+	 */
+	public void bump(String db, String className) {
+		versions.computeIfAbsent(versionKey(db, className), k -> new AtomicLong(floor.get())).incrementAndGet();
+	}
+
+	/**
+	 * makes all cached results stale
+	 */
+	public void bumpAll() {
+		floor.incrementAndGet();
+		for (AtomicLong v : versions.values()) {
+			v.incrementAndGet();
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	<T> List<T> getList(String kind, String db, Class<?> clazz, DBStoreQuery query) {
+		return (List<T>) get(new Key(kind, db, clazz, CanonicalQuery.of(query)));
+	}
+
+	void putList(String kind, String db, Class<?> clazz, DBStoreQuery query, List<?> result, long version) {
+		if (result.size() > settings(clazz).maxResultSize) {
+			return;
+		}
+		put(new Key(kind, db, clazz, CanonicalQuery.of(query)), Collections.unmodifiableList(new ArrayList<>(result)), version);
+	}
+
+	Long getCount(String db, Class<?> clazz, DBStoreQuery query, long limit) {
+		return (Long) get(new Key("count:" + limit, db, clazz, CanonicalQuery.of(query)));
+	}
+
+	void putCount(String db, Class<?> clazz, DBStoreQuery query, long limit, long count, long version) {
+		put(new Key("count:" + limit, db, clazz, CanonicalQuery.of(query)), count, version);
+	}
+
+	public void clear() {
+		synchronized (results) {
+			results.clear();
+		}
+	}
+
+	public CacheStats getStats() {
+		synchronized (results) {
+			return new CacheStats(hits.sum(), misses.sum(), evictions.sum(), results.size());
+		}
+	}
+
+	private Object get(Key key) {
+		Result e;
+		synchronized (results) {
+			e = results.get(key);
+		}
+
+		if (e == null || e.version != version(key.db, key.clazz) || System.nanoTime() > e.expires) {
+			misses.increment();
+			return null;
+		}
+
+		hits.increment();
+		return e.value;
+	}
+
+	private void put(Key key, Object value, long version) {
+		long ttl = settings(key.clazz).ttl;
+		if (ttl <= 0 || version != version(key.db, key.clazz)) {
+			return;
+		}
+
+		Result e = new Result(value, version, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(ttl));
+		synchronized (results) {
+			results.put(key, e);
+		}
+	}
+
+	private Settings settings(Class<?> clazz) {
+		Settings s = settings.get(clazz);
+		return s != null ? s : new Settings(defaultTtl, defaultMaxResultSize);
+	}
+
+	private static String versionKey(String db, String className) {
+		return db + ":" + className;
+	}
+
+	private static class Settings {
+
+		private final long ttl;
+		private final int maxResultSize;
+
+		Settings(long ttl, int maxResultSize) {
+			this.ttl = ttl;
+			this.maxResultSize = maxResultSize;
+		}
+	}
+
+	private static class Result {
+
+		private final Object value;
+		private final long version;
+		private final long expires;
+
+		Result(Object value, long version, long expires) {
+			this.value = value;
+			this.version = version;
+			this.expires = expires;
+		}
+	}
+
+	private static class Key {
+
+		private final String kind;
+		private final String db;
+		private final Class<?> clazz;
+		private final CanonicalQuery query;
+
+		Key(String kind, String db, Class<?> clazz, CanonicalQuery query) {
+			this.kind = kind;
+			this.db = db;
+			this.clazz = clazz;
+			this.query = query;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return clazz == k.clazz && kind.equals(k.kind) && query.equals(k.query) && (db == null ? k.db == null : db.equals(k.db));
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * (31 * kind.hashCode() + (db == null ? 0 : db.hashCode())) + clazz.hashCode()) + query.hashCode();
+		}
+	}
+
+}
@@ -0,0 +1,73 @@
+package com.cinefms.dbstore.api.references;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.cinefms.dbstore.api.DBStoreEntity;
+import com.cinefms.dbstore.api.DataStore;
+
+/**
+ * resolves the {@link com.cinefms.dbstore.api.annotations.Reference}s of a list of objects (e.g.
+ * the result of findObjects) at once: the ids of all objects are collected per referenced class
+ * and each class is loaded with one {@link DataStore#getObjectMap(String, Class, Collection)},
+ * instead of a getObject per object and reference.
+ *
+ * only one level is resolved, the references of the referenced objects are left alone.
+ */
+public class ReferenceLoader {
+
+	private final DataStore dataStore;
+
+	public ReferenceLoader(DataStore dataStore) {
+		this.dataStore = dataStore;
+	}
+
+	/**
+	 * loads the referenced objects and sets them to the reference targets of the objects
+	 * @return the loaded objects, also for references without a target
+	 */
+	public References resolve(String db, Collection<? extends DBStoreEntity> objects) {
+		Map<Class<? extends DBStoreEntity>, Set<String>> ids = new LinkedHashMap<>();
+		for (DBStoreEntity o : objects) {
+			if (o == null) {
+				continue;
+			}
+			for (ReferenceProperty p : ReferenceProperty.of(o.getClass())) {
+				ids.computeIfAbsent(p.getType(), c -> new LinkedHashSet<>()).addAll(p.getIds(o));
+			}
+		}
+
+		References out = new References();
+		for (Map.Entry<Class<? extends DBStoreEntity>, Set<String>> e : ids.entrySet()) {
+			if (!e.getValue().isEmpty()) {
+				load(db, e.getKey(), e.getValue(), out);
+			}
+		}
+		wire(objects, out);
+		return out;
+	}
+
+	private <R extends DBStoreEntity> void load(String db, Class<R> clazz, Collection<String> ids, References out) {
+		for (Map.Entry<String, R> e : dataStore.getObjectMap(db, clazz, ids).entrySet()) {
+			out.add(clazz, e.getKey(), e.getValue());
+		}
+	}
+
+	/**
+	 * sets the objects in references to the reference targets of the objects
+	 */
+	public static void wire(Collection<?> objects, References references) {
+		for (Object o : objects) {
+			if (o == null) {
+				continue;
+			}
+			for (ReferenceProperty p : ReferenceProperty.of(o.getClass())) {
+				p.resolve(o, references);
+			}
+		}
+	}
+
+}
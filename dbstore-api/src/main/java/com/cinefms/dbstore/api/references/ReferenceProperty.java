@@ -0,0 +1,165 @@
+package com.cinefms.dbstore.api.references;
+
+import java.beans.BeanInfo;
+import java.beans.IntrospectionException;
+import java.beans.Introspector;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.cinefms.dbstore.api.DBStoreEntity;
+import com.cinefms.dbstore.api.annotations.Reference;
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+
+/**
+ * a property annotated with {@link Reference}: reads the id(s) from an object and sets the
+ * resolved object(s) to its target property
+ */
+public final class ReferenceProperty {
+
+	private static final Map<Class<?>, List<ReferenceProperty>> properties = new ConcurrentHashMap<>();
+
+	private final String name;
+	private final Class<? extends DBStoreEntity> type;
+	private final Method reader;
+	private final Method writer;
+	private final boolean multiple;
+
+	private ReferenceProperty(String name, Class<? extends DBStoreEntity> type, Method reader, Method writer) {
+		this.name = name;
+		this.type = type;
+		this.reader = reader;
+		this.writer = writer;
+		this.multiple = Collection.class.isAssignableFrom(reader.getReturnType());
+	}
+
+	/**
+	 * the reference properties of the class, looked up once per class
+	 */
+	public static List<ReferenceProperty> of(Class<?> clazz) {
+		return properties.computeIfAbsent(clazz, ReferenceProperty::scan);
+	}
+
+	private static List<ReferenceProperty> scan(Class<?> clazz) {
+		BeanInfo info;
+		try {
+			info = Introspector.getBeanInfo(clazz);
+		} catch (IntrospectionException e) {
+			throw new DBStoreException("unable to inspect " + clazz.getName(), e);
+		}
+
+		Map<String, PropertyDescriptor> byName = new HashMap<>();
+		for (PropertyDescriptor pd : info.getPropertyDescriptors()) {
+			byName.put(pd.getName(), pd);
+		}
+
+		List<ReferenceProperty> out = new ArrayList<>();
+		for (PropertyDescriptor pd : info.getPropertyDescriptors()) {
+			Reference ref = pd.getReadMethod() != null ? pd.getReadMethod().getAnnotation(Reference.class) : null;
+			if (ref == null) {
+				continue;
+			}
+
+			Method writer = null;
+			if (!ref.target().isEmpty()) {
+				PropertyDescriptor target = byName.get(ref.target());
+				if (target == null || target.getWriteMethod() == null) {
+					throw new DBStoreException("no setter for reference target " + clazz.getName() + "." + ref.target());
+				}
+				writer = target.getWriteMethod();
+			}
+			out.add(new ReferenceProperty(pd.getName(), ref.value(), pd.getReadMethod(), writer));
+		}
+		return Collections.unmodifiableList(out);
+	}
+
+	/**
+	 * the name of the property holding the id(s), which is also the field in the database
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * the class of the referenced objects
+	 */
+	public Class<? extends DBStoreEntity> getType() {
+		return type;
+	}
+
+	/**
+	 * true if the property holds a collection of ids
+	 */
+	public boolean isMultiple() {
+		return multiple;
+	}
+
+	/**
+	 * the referenced ids of the object, without nulls
+	 */
+	public List<String> getIds(Object object) {
+		Object value = invoke(reader, object);
+		if (value == null) {
+			return Collections.emptyList();
+		}
+		if (!multiple) {
+			return Collections.singletonList(value.toString());
+		}
+
+		List<String> out = new ArrayList<>();
+		for (Object id : (Collection<?>) value) {
+			if (id != null) {
+				out.add(id.toString());
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * sets the referenced object(s) found in references to the target property, if there is
+	 * one. ids that were not found are left out of a list and give null for a single reference.
+	 */
+	public void resolve(Object object, References references) {
+		if (writer == null) {
+			return;
+		}
+
+		List<String> ids = getIds(object);
+		if (!multiple) {
+			invoke(writer, object, ids.isEmpty() ? null : references.get(type, ids.get(0)));
+			return;
+		}
+
+		List<DBStoreEntity> out = new ArrayList<>(ids.size());
+		for (String id : ids) {
+			DBStoreEntity o = references.get(type, id);
+			if (o != null) {
+				out.add(o);
+			}
+		}
+		invoke(writer, object, out);
+	}
+
+	private static Object invoke(Method method, Object object, Object... args) {
+		try {
+			return method.invoke(object, args);
+		} catch (IllegalAccessException e) {
+			throw new DBStoreException("unable to call " + method, e);
+		} catch (InvocationTargetException e) {
+			throw new DBStoreException("unable to call " + method, e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return name + " -> " + type.getName();
+	}
+
+}
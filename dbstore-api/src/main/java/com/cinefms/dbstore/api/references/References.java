@@ -0,0 +1,39 @@
+package com.cinefms.dbstore.api.references;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.cinefms.dbstore.api.DBStoreEntity;
+
+/**
+ * the objects loaded for the references of a list of objects, by class and id
+ */
+public class References {
+
+	private final Map<Class<?>, Map<String, DBStoreEntity>> objects = new HashMap<>();
+
+	public void add(Class<?> clazz, String id, DBStoreEntity object) {
+		objects.computeIfAbsent(clazz, c -> new HashMap<>()).put(id, object);
+	}
+
+	public <T extends DBStoreEntity> T get(Class<T> clazz, String id) {
+		Map<String, DBStoreEntity> byId = objects.get(clazz);
+		return byId != null ? clazz.cast(byId.get(id)) : null;
+	}
+
+	@SuppressWarnings("unchecked")
+	public <T extends DBStoreEntity> Map<String, T> get(Class<T> clazz) {
+		Map<String, DBStoreEntity> byId = objects.get(clazz);
+		return byId != null ? Collections.unmodifiableMap((Map<String, T>) byId) : Collections.emptyMap();
+	}
+
+	public int size() {
+		int out = 0;
+		for (Map<String, DBStoreEntity> byId : objects.values()) {
+			out += byId.size();
+		}
+		return out;
+	}
+
+}
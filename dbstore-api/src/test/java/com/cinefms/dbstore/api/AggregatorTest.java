@@ -0,0 +1,150 @@
+package com.cinefms.dbstore.api;
+
+import com.cinefms.dbstore.query.api.DBStoreAggregation;
+import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
+import com.cinefms.dbstore.query.api.impl.Aggregator;
+import com.cinefms.dbstore.query.api.impl.BasicAggregation;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.cinefms.dbstore.query.api.impl.BasicQuery.createQuery;
+
+public class AggregatorTest {
+
+	private static Map<String, Object> order(String customer, String country, Object amount) {
+		Map<String, Object> out = new HashMap<>();
+		out.put("customer", customer);
+		if (country != null) {
+			Map<String, Object> address = new HashMap<>();
+			address.put("country", country);
+			out.put("address", address);
+		}
+		out.put("amount", amount);
+		return out;
+	}
+
+	private final List<Map<String, Object>> orders = Arrays.asList(
+			order("anna", "AT", 10),
+			order("bob", "DE", 5L),
+			order("anna", "AT", 2.5),
+			order("carl", null, 7),
+			order("bob", "DE", "n/a")
+	);
+
+	@Test
+	public void itShouldBeImmutable() {
+		DBStoreAggregation a = BasicAggregation.createAggregation();
+		DBStoreAggregation b = a.groupBy("customer").count("n").order("n", false).limit(3);
+
+		Assert.assertTrue(a.getGroupBy().isEmpty());
+		Assert.assertTrue(a.getAccumulators().isEmpty());
+		Assert.assertEquals(-1, a.getLimit());
+		Assert.assertEquals(Collections.singletonList("customer"), b.getGroupBy());
+		Assert.assertEquals(DBStoreAggregation.FUNCTION.COUNT, b.getAccumulators().get(0).getFunction());
+		Assert.assertFalse(b.getOrderBy().get(0).isAsc());
+		Assert.assertEquals(3, b.getLimit());
+	}
+
+	@Test
+	public void itShouldRejectBadNames() {
+		DBStoreAggregation a = BasicAggregation.createAggregation().groupBy("customer").count("n");
+		for (Runnable r : Arrays.<Runnable>asList(
+				() -> a.sum("amount", "n"),
+				() -> a.sum("amount", "customer"),
+				() -> a.sum("amount", "a.b"),
+				() -> a.max("amount", "_id"),
+				() -> a.groupBy("n"),
+				() -> a.sum(null, "total"),
+				() -> a.count(null))) {
+			try {
+				r.run();
+				Assert.fail();
+			} catch (MalformedQueryException e) {
+				// expected
+			}
+		}
+	}
+
+	@Test
+	public void itShouldGroupAndAccumulate() {
+		DBStoreAggregation a = BasicAggregation.createAggregation()
+				.groupBy("customer")
+				.count("n")
+				.sum("amount", "total")
+				.avg("amount", "average")
+				.min("amount", "smallest")
+				.max("amount", "largest")
+				.order("customer");
+
+		List<Map<String, Object>> rows = Aggregator.aggregate(a, orders);
+		Assert.assertEquals(3, rows.size());
+
+		Map<String, Object> anna = rows.get(0);
+		Assert.assertEquals("anna", anna.get("customer"));
+		Assert.assertEquals(2L, anna.get("n"));
+		Assert.assertEquals(12.5, anna.get("total"));
+		Assert.assertEquals(6.25, anna.get("average"));
+		Assert.assertEquals(2.5, anna.get("smallest"));
+		Assert.assertEquals(10, anna.get("largest"));
+
+		// strings are not summed, but they are larger than numbers
+		Map<String, Object> bob = rows.get(1);
+		Assert.assertEquals(5L, bob.get("total"));
+		Assert.assertEquals(5.0, bob.get("average"));
+		Assert.assertEquals("n/a", bob.get("largest"));
+	}
+
+	@Test
+	public void itShouldNestDottedGroupFields() {
+		DBStoreAggregation a = BasicAggregation.createAggregation().groupBy("address.country").count("n");
+
+		List<Map<String, Object>> rows = Aggregator.aggregate(a, orders);
+		Assert.assertEquals(3, rows.size());
+		Assert.assertEquals(Collections.singletonMap("country", "AT"), rows.get(0).get("address"));
+		Assert.assertEquals(2L, rows.get(0).get("n"));
+		// an object without the field is a group of its own without it
+		Assert.assertFalse(rows.get(2).containsKey("address"));
+		Assert.assertEquals(1L, rows.get(2).get("n"));
+	}
+
+	@Test
+	public void itShouldApplyHavingOrderAndLimit() {
+		DBStoreAggregation a = BasicAggregation.createAggregation()
+				.groupBy("customer")
+				.count("n")
+				.having(createQuery().gte("n", 2))
+				.order("customer", false);
+
+		List<String> customers = new ArrayList<>();
+		for (Map<String, Object> row : Aggregator.aggregate(a, orders)) {
+			customers.add((String) row.get("customer"));
+		}
+		Assert.assertEquals(Arrays.asList("bob", "anna"), customers);
+		Assert.assertEquals(1, Aggregator.aggregate(a.limit(1), orders).size());
+		Assert.assertTrue(Aggregator.aggregate(a.limit(0), orders).isEmpty());
+	}
+
+	@Test
+	public void itShouldGroupEqualNumbersTogether() {
+		List<Map<String, Object>> in = Arrays.asList(order("a", null, 1), order("b", null, 1L), order("c", null, 1.0), order("d", null, 2));
+
+		List<Map<String, Object>> rows = Aggregator.aggregate(BasicAggregation.createAggregation().groupBy("amount").count("n"), in);
+		Assert.assertEquals(2, rows.size());
+		Assert.assertEquals(3L, rows.get(0).get("n"));
+	}
+
+	@Test
+	public void itShouldHaveNoRowWithoutObjects() {
+		DBStoreAggregation a = BasicAggregation.createAggregation().count("n");
+		Assert.assertTrue(Aggregator.aggregate(a, Collections.emptyList()).isEmpty());
+		Assert.assertEquals(5L, Aggregator.aggregate(a, orders).get(0).get("n"));
+	}
+
+}
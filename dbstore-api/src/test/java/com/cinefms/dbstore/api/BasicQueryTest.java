@@ -5,6 +5,7 @@ import com.cinefms.dbstore.query.api.DBStoreQuery.COMPARATOR;
 import com.cinefms.dbstore.query.api.DBStoreQuery.OPERATOR;
 import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
 import com.cinefms.dbstore.query.api.impl.BasicQuery;
+import com.cinefms.dbstore.query.api.impl.CanonicalQuery;
 import com.cinefms.dbstore.query.api.impl.OrderBy;
 import org.junit.Assert;
 import org.junit.Test;
@@ -238,4 +239,47 @@ public class BasicQueryTest {
 		Assert.assertEquals(20, q.getMax());
 	}
 
+	@Test
+	public void testIncludeExclude() {
+		DBStoreQuery q = BasicQuery.createQuery()
+				.include("A", "B")
+				.eq("A", "B")
+				.include("B", "C")
+				.exclude("_id")
+				.order("A")
+				.start(10);
+
+		Assert.assertEquals(Arrays.asList("A", "B", "C"), q.getIncludes());
+		Assert.assertEquals(Arrays.asList("_id"), q.getExcludes());
+		Assert.assertEquals("(A == B) ORDER BY (A,ASC) LIMIT (10,-1) INCLUDE (A,B,C) EXCLUDE (_id)", q.toString());
+		Assert.assertTrue(BasicQuery.createQuery().getIncludes().isEmpty());
+	}
+
+	@Test
+	public void testContinuation() {
+		DBStoreQuery q = BasicQuery.createQuery()
+				.after("token")
+				.eq("A", "B")
+				.order("A");
+
+		Assert.assertEquals("token", q.getContinuation());
+		Assert.assertEquals("(A == B) ORDER BY (A,ASC) AFTER token", q.toString());
+		Assert.assertNull(BasicQuery.createQuery().getContinuation());
+	}
+
+	@Test
+	public void testCanonicalQuery() {
+		DBStoreQuery a = createQuery().eq("name", "x").in("tags", "a", "b").order("name").max(10);
+		DBStoreQuery b = createQuery().eq("name", "x").in("tags", "a", "b").order("name").max(10);
+
+		Assert.assertEquals(CanonicalQuery.of(a), CanonicalQuery.of(b));
+		Assert.assertEquals(CanonicalQuery.of(a).hashCode(), CanonicalQuery.of(b).hashCode());
+
+		Assert.assertNotEquals(CanonicalQuery.of(a), CanonicalQuery.of(a.max(20)));
+		Assert.assertNotEquals(CanonicalQuery.of(a), CanonicalQuery.of(a.order("name", false)));
+		Assert.assertNotEquals(CanonicalQuery.of(a), CanonicalQuery.of(a.include("name")));
+		Assert.assertNotEquals(CanonicalQuery.of(createQuery().eq("n", 1)), CanonicalQuery.of(createQuery().eq("n", "1")));
+		Assert.assertNotEquals(CanonicalQuery.of(createQuery().eq("n", "a\", b")), CanonicalQuery.of(createQuery().eq("n", "a").eq("b", "")));
+	}
+
 }
@@ -0,0 +1,78 @@
+package com.cinefms.dbstore.api;
+
+import com.cinefms.dbstore.query.api.impl.QueryCompiler;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+import static com.cinefms.dbstore.query.api.impl.BasicQuery.createQuery;
+
+/**
+ * evaluation of compiled queries, not run with the tests. run main (from the ide or with the
+ * test classpath) and look at gc.alloc.rate.norm, it should be about 0 bytes per operation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryCompilerBenchmark {
+
+	private List<QueryCompilerTest.Item> items;
+	private Predicate<QueryCompilerTest.Item> equality;
+	private Predicate<QueryCompilerTest.Item> mixed;
+	private int next;
+
+	@Setup
+	public void setup() {
+		items = new ArrayList<>();
+		for (int i = 0; i < 1024; i++) {
+			QueryCompilerTest.Item item = new QueryCompilerTest.Item("id" + i, "item " + i, i);
+			item.kind = i % 2 == 0 ? QueryCompilerTest.Kind.SMALL : QueryCompilerTest.Kind.LARGE;
+			item.tags.add("tag" + (i % 10));
+			item.attributes.put("color", i % 3 == 0 ? "red" : "blue");
+			items.add(item);
+		}
+
+		equality = QueryCompiler.predicate(createQuery().eq("kind", "SMALL").eq("attributes.color", "red"));
+		mixed = QueryCompiler.predicate(createQuery()
+				.gte("size", 100)
+				.lt("size", 900L)
+				.in("tags", "tag1", "tag2", "tag3")
+				.or(createQuery().contains("name", "7"), createQuery().ne("kind", "SMALL")));
+	}
+
+	@Benchmark
+	public boolean equality() {
+		return equality.test(items.get(next++ & 1023));
+	}
+
+	@Benchmark
+	public boolean mixed() {
+		return mixed.test(items.get(next++ & 1023));
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder()
+				.include(QueryCompilerBenchmark.class.getSimpleName())
+				.addProfiler(GCProfiler.class)
+				.build()).run();
+	}
+
+}
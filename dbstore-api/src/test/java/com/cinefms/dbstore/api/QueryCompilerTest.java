@@ -0,0 +1,231 @@
+package com.cinefms.dbstore.api;
+
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
+import com.cinefms.dbstore.query.api.impl.CompiledQuery;
+import com.cinefms.dbstore.query.api.impl.OrderBy;
+import com.cinefms.dbstore.query.api.impl.QueryCompiler;
+import com.cinefms.dbstore.query.api.impl.QueryParameter;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static com.cinefms.dbstore.query.api.impl.BasicQuery.createQuery;
+
+public class QueryCompilerTest {
+
+	public enum Kind {
+		SMALL, LARGE
+	}
+
+	public static class Part {
+
+		public String name;
+		public int count;
+
+		Part(String name, int count) {
+			this.name = name;
+			this.count = count;
+		}
+	}
+
+	public static class Item {
+
+		private String id;
+		private String name;
+		public Object size;
+		public Kind kind;
+		public Date created;
+		public List<String> tags = new ArrayList<>();
+		public List<Part> parts = new ArrayList<>();
+		public Map<String, Object> attributes = new HashMap<>();
+
+		public Item(String id, String name, Object size) {
+			this.id = id;
+			this.name = name;
+			this.size = size;
+		}
+
+		public String getId() {
+			return id;
+		}
+
+		public String getName() {
+			return name;
+		}
+	}
+
+	private static List<String> ids(DBStoreQuery q, List<Item> items) {
+		CompiledQuery<Item> c = QueryCompiler.compile(q);
+		return c.select(items).stream().map(Item::getId).collect(Collectors.toList());
+	}
+
+	private static List<Item> items() {
+		Item a = new Item("a", "Apple Pie", 1);
+		a.kind = Kind.SMALL;
+		a.tags.addAll(Arrays.asList("x", "y"));
+		a.parts.add(new Part("crust", 1));
+		a.parts.add(new Part("apple", 4));
+		a.attributes.put("color", "green");
+		a.created = new Date(1000);
+
+		Item b = new Item("b", "banana split", 2.5);
+		b.kind = Kind.LARGE;
+		b.tags.add("y");
+		b.parts.add(new Part("banana", 2));
+		b.attributes.put("color", null);
+		b.created = new Date(2000);
+
+		Item c = new Item("c", null, 10L);
+		c.size = null;
+
+		Item d = new Item("d", "Cherry", "3");
+		return Arrays.asList(a, b, c, d);
+	}
+
+	@Test
+	public void testEquality() {
+		List<Item> items = items();
+		Assert.assertEquals(Collections.singletonList("a"), ids(createQuery().eq("size", 1L), items));
+		Assert.assertEquals(Collections.singletonList("a"), ids(createQuery().eq("size", 1.0), items));
+		Assert.assertEquals(Collections.singletonList("d"), ids(createQuery().eq("size", "3"), items));
+		Assert.assertEquals(Collections.singletonList("b"), ids(createQuery().eq("kind", "LARGE"), items));
+		Assert.assertEquals(Collections.singletonList("a"), ids(createQuery().eq("_id", "a"), items));
+		Assert.assertEquals(Arrays.asList("b", "c", "d"), ids(createQuery().ne("kind", Kind.SMALL), items));
+
+		// a list matches if an element does, or the list as a whole
+		Assert.assertEquals(Arrays.asList("a", "b"), ids(createQuery().eq("tags", "y"), items));
+		Assert.assertEquals(Collections.singletonList("a"), ids(createQuery().eq("tags", Arrays.asList("x", "y")), items));
+
+		// null matches null and fields that are not there
+		Assert.assertEquals(Arrays.asList("b", "c", "d"), ids(createQuery().eq("attributes.color", null), items));
+		Assert.assertEquals(Arrays.asList("a", "b"), ids(createQuery().exists("attributes.color"), items));
+		Assert.assertEquals(Collections.singletonList("c"), ids(createQuery().eq("size", null), items));
+		Assert.assertEquals(Collections.emptyList(), ids(createQuery().exists("nothing"), items));
+	}
+
+	@Test
+	public void testRanges() {
+		List<Item> items = items();
+		Assert.assertEquals(Arrays.asList("a", "b"), ids(createQuery().gte("size", 1).lt("size", 3), items));
+		// only numbers compare with numbers
+		Assert.assertEquals(Collections.singletonList("b"), ids(createQuery().gt("size", 1), items));
+		Assert.assertEquals(Collections.singletonList("d"), ids(createQuery().gt("size", "1"), items));
+		Assert.assertEquals(Collections.singletonList("b"), ids(createQuery().gt("created", new Date(1500)), items));
+		// any element of a list
+		Assert.assertEquals(Collections.singletonList("a"), ids(createQuery().gt("parts.count", 3), items));
+	}
+
+	@Test
+	public void testSetsAndArrays() {
+		List<Item> items = items();
+		Assert.assertEquals(Arrays.asList("a", "c"), ids(createQuery().in("_id", "c", "a", "x"), items));
+		Assert.assertEquals(Arrays.asList("a", "b"), ids(createQuery().in("kind", Kind.SMALL, "LARGE"), items));
+		Assert.assertEquals(Arrays.asList("b", "c", "d"), ids(createQuery().nin("tags", "x"), items));
+		// like the mongo translator, nin [] is "not there"
+		Assert.assertEquals(Arrays.asList("c", "d"), ids(createQuery().nin("attributes.color", Collections.emptyList()), items));
+		Assert.assertEquals(Collections.emptyList(), ids(createQuery().in("_id", Collections.emptyList()), items));
+
+		Assert.assertEquals(Collections.singletonList("a"), ids(createQuery().all("tags", "y", "x"), items));
+		Assert.assertEquals(Collections.emptyList(), ids(createQuery().all("tags", Collections.emptyList()), items));
+
+		Assert.assertEquals(Collections.singletonList("a"), ids(createQuery().elemMatch("parts", createQuery().eq("name", "apple").gte("count", 4)), items));
+		Assert.assertEquals(Collections.emptyList(), ids(createQuery().elemMatch("parts", createQuery().eq("name", "crust").gte("count", 4)), items));
+		Assert.assertEquals(Collections.singletonList("b"), ids(createQuery().eq("parts.0.name", "banana"), items));
+
+		Assert.assertEquals(Arrays.asList("a", "c"), ids(createQuery().or(createQuery().eq("_id", "c"), createQuery().eq("tags", "x")), items));
+	}
+
+	@Test
+	public void testStrings() {
+		List<Item> items = items();
+		Assert.assertEquals(Arrays.asList("a", "b"), ids(createQuery().contains("name", "P"), items));
+		Assert.assertEquals(Collections.singletonList("b"), ids(createQuery().contains("name", "^ban.*t$"), items));
+		Assert.assertEquals(Collections.singletonList("a"), ids(createQuery().startsWith("name", "Apple"), items));
+		Assert.assertEquals(Collections.emptyList(), ids(createQuery().startsWith("name", "apple"), items));
+		Assert.assertEquals(Collections.singletonList("d"), ids(createQuery().eqIgnoreCase("name", "cHERRY"), items));
+
+		CompiledQuery<Item> text = QueryCompiler.compile(createQuery().text("cherry pie -apple"), Arrays.asList("name", "tags"));
+		Assert.assertEquals(Collections.singletonList("d"), text.select(items).stream().map(Item::getId).collect(Collectors.toList()));
+
+		try {
+			QueryCompiler.compile(createQuery().text("cherry"));
+			Assert.fail();
+		} catch (MalformedQueryException e) {
+			Assert.assertEquals(MalformedQueryException.ERROR_CODE.TEXT_FIELDS_MISSING.toString(), e.getMessage());
+		}
+	}
+
+	@Test
+	public void testOrderAndRange() {
+		List<Item> items = items();
+		Assert.assertEquals(Arrays.asList("c", "a", "b", "d"), ids(createQuery().order("size"), items));
+		Assert.assertEquals(Arrays.asList("d", "b", "a", "c"), ids(createQuery().order("size", false), items));
+		Assert.assertEquals(Arrays.asList("a", "b"), ids(createQuery().order("size").start(1).max(2), items));
+		Assert.assertEquals(Collections.singletonList("b"), ids(createQuery().start(1).max(1), items));
+
+		// by the smallest element ascending, the largest descending
+		Assert.assertEquals(Arrays.asList("c", "d", "a", "b"), ids(createQuery().order("parts.count"), items));
+		Assert.assertEquals(Arrays.asList("a", "b", "c", "d"), ids(createQuery().order("parts.count", false), items));
+
+		List<Map<String, Object>> maps = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			Map<String, Object> m = new HashMap<>();
+			m.put("n", i % 2);
+			m.put("i", i);
+			maps.add(m);
+		}
+		maps.sort(QueryCompiler.comparator(Arrays.asList(OrderBy.desc("n"), OrderBy.asc("i"))));
+		Assert.assertEquals(Arrays.asList(1, 3, 0, 2, 4), maps.stream().map(m -> m.get("i")).collect(Collectors.toList()));
+
+		Assert.assertEquals(2, QueryCompiler.compile(createQuery().exists("attributes.color")).count(items, 0));
+		Assert.assertEquals(1, QueryCompiler.compile(createQuery().exists("attributes.color")).count(items, 1));
+	}
+
+	@Test(expected = MalformedQueryException.class)
+	public void testUnboundParameter() {
+		QueryCompiler.compile(createQuery().eq("name", QueryParameter.named("name")));
+	}
+
+	@Test
+	public void testEvaluationDoesNotAllocate() {
+		Assume.assumeTrue(ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+
+		List<Item> items = items();
+		Predicate<Item> p = QueryCompiler.predicate(createQuery()
+				.in("_id", "a", "b", "x")
+				.gte("size", 1)
+				.or(createQuery().eq("tags", "y"), createQuery().contains("name", "pie"))
+				.elemMatch("parts", createQuery().gte("count", 2)));
+
+		int matches = 0;
+		for (int i = 0; i < 100000; i++) {
+			matches += p.test(items.get(i % items.size())) ? 1 : 0;
+		}
+
+		long id = Thread.currentThread().getId();
+		long before = threads.getThreadAllocatedBytes(id);
+		for (int i = 0; i < 100000; i++) {
+			matches += p.test(items.get(i % items.size())) ? 1 : 0;
+		}
+		long allocated = threads.getThreadAllocatedBytes(id) - before;
+
+		Assert.assertEquals(100000, matches);
+		// a few bytes of noise, not bytes per evaluation
+		Assert.assertTrue("allocated " + allocated, allocated < 10000);
+	}
+
+}
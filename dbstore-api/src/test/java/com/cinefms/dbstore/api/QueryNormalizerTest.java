@@ -0,0 +1,71 @@
+package com.cinefms.dbstore.api;
+
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.impl.QueryNormalizer;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static com.cinefms.dbstore.query.api.impl.BasicQuery.createQuery;
+
+public class QueryNormalizerTest {
+
+	@Test
+	public void testFlattenNestedGroups() {
+		DBStoreQuery q = createQuery()
+				.eq("a", 1)
+				.and(createQuery().eq("b", 2).and(createQuery().eq("c", 3)))
+				.or(createQuery().or(createQuery().eq("d", 4), createQuery().eq("e", 5)), createQuery().eq("f", 6))
+				.order("a")
+				.max(10);
+
+		DBStoreQuery n = QueryNormalizer.normalize(q);
+		Assert.assertEquals("(a == 1 AND b == 2 AND c == 3 AND (d == 4 OR e == 5 OR f == 6)) ORDER BY (a,ASC) LIMIT (0,10)", n.toString());
+		Assert.assertSame(n, QueryNormalizer.normalize(n));
+	}
+
+	@Test
+	public void testDropEmptyGroups() {
+		DBStoreQuery q = createQuery().and(createQuery(), createQuery().or()).eq("a", 1);
+		Assert.assertEquals("(a == 1)", QueryNormalizer.normalize(q).toString());
+		Assert.assertEquals("()", QueryNormalizer.normalize(createQuery().and(createQuery())).toString());
+	}
+
+	@Test
+	public void testFoldEqualsIntoIn() {
+		DBStoreQuery q = createQuery().or(
+				createQuery().eq("a", 1),
+				createQuery().eq("b", 2),
+				createQuery().in("a", 2, 1),
+				createQuery().eq("a", 3));
+
+		Assert.assertEquals("((a IN [1, 2, 3] OR b == 2))", QueryNormalizer.normalize(q).toString());
+	}
+
+	@Test
+	public void testTightenBounds() {
+		DBStoreQuery q = createQuery().gte("a", 1).lte("a", 10).gt("a", 3).lt("a", 10L).gte("a", 3).eq("b", 1);
+		Assert.assertEquals("(a > 3 AND a < 10 AND b == 1)", QueryNormalizer.normalize(q).toString());
+
+		// not comparable, both kept
+		q = createQuery().gte("a", 1).gte("a", "x");
+		Assert.assertEquals("(a >= 1 AND a >= x)", QueryNormalizer.normalize(q).toString());
+	}
+
+	@Test
+	public void testDetectContradictions() {
+		Assert.assertTrue(QueryNormalizer.isUnsatisfiable(createQuery().eq("a", 1).ne("a", 1)));
+		Assert.assertTrue(QueryNormalizer.isUnsatisfiable(createQuery().eq("a", 1).nin("a", 2, 1)));
+		Assert.assertTrue(QueryNormalizer.isUnsatisfiable(createQuery().exists("a").nin("a", Collections.emptyList())));
+		Assert.assertTrue(QueryNormalizer.isUnsatisfiable(createQuery().eq("b", 1).in("a", Collections.emptyList())));
+		Assert.assertTrue(QueryNormalizer.isUnsatisfiable(createQuery().or(createQuery().in("a", Collections.emptyList()), createQuery().eq("a", 1).ne("a", 1))));
+
+		Assert.assertFalse(QueryNormalizer.isUnsatisfiable(createQuery().eq("a", 1).ne("a", 2)));
+		Assert.assertFalse(QueryNormalizer.isUnsatisfiable(createQuery().or(createQuery().in("a", Collections.emptyList()), createQuery().eq("a", 1))));
+		// an array can hold values on both sides
+		Assert.assertFalse(QueryNormalizer.isUnsatisfiable(createQuery().gt("a", 5).lt("a", 3)));
+		Assert.assertFalse(QueryNormalizer.isUnsatisfiable(createQuery().eq("a", 1).eq("a", 2)));
+	}
+
+}
@@ -0,0 +1,105 @@
+package com.cinefms.dbstore.api.cache;
+
+import com.cinefms.dbstore.api.util.TestObject1;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class LocalEntityCacheTest {
+
+	@Test
+	public void itShouldCountHitsAndMisses() {
+		LocalEntityCache cache = new LocalEntityCache(10);
+		cache.put("db", TestObject1.class, "a", new TestObject1("a"));
+
+		Assert.assertNotNull(cache.get("db", TestObject1.class, "a"));
+		Assert.assertNull(cache.get("db", TestObject1.class, "b"));
+		Assert.assertNull(cache.get("other", TestObject1.class, "a"));
+
+		CacheStats stats = cache.getStats();
+		Assert.assertEquals(1, stats.getHitCount());
+		Assert.assertEquals(2, stats.getMissCount());
+		Assert.assertEquals(1, stats.getSize());
+	}
+
+	@Test
+	public void itShouldInvalidate() {
+		LocalEntityCache cache = new LocalEntityCache(10);
+		cache.put("db", TestObject1.class, "a", new TestObject1("a"));
+		cache.put("db", TestObject1.class, "b", new TestObject1("b"));
+		cache.put(null, TestObject1.class, "c", new TestObject1("c"));
+
+		cache.invalidate("db", TestObject1.class, "a");
+		Assert.assertNull(cache.get("db", TestObject1.class, "a"));
+		Assert.assertNotNull(cache.get("db", TestObject1.class, "b"));
+
+		cache.invalidate("db", TestObject1.class);
+		Assert.assertNull(cache.get("db", TestObject1.class, "b"));
+		Assert.assertNotNull(cache.get(null, TestObject1.class, "c"));
+	}
+
+	@Test
+	public void itShouldKeepFrequentlyUsedObjectsDuringAScan() {
+		LocalEntityCache cache = new LocalEntityCache(10);
+		for (int i = 0; i < 10; i++) {
+			cache.put(null, TestObject1.class, "hot-" + i, new TestObject1("hot-" + i));
+			for (int j = 0; j < 5; j++) {
+				cache.get(null, TestObject1.class, "hot-" + i);
+			}
+		}
+
+		// read once each, not worth evicting the hot ones for
+		for (int i = 0; i < 1000; i++) {
+			cache.put(null, TestObject1.class, "cold-" + i, new TestObject1("cold-" + i));
+			cache.get(null, TestObject1.class, "hot-" + (i % 10));
+		}
+
+		for (int i = 0; i < 10; i++) {
+			Assert.assertNotNull(cache.get(null, TestObject1.class, "hot-" + i));
+		}
+		Assert.assertEquals(10, cache.getStats().getSize());
+	}
+
+	@Test
+	public void itShouldEvictWhenFull() {
+		LocalEntityCache cache = new LocalEntityCache(10);
+		for (int i = 0; i < 10; i++) {
+			cache.put(null, TestObject1.class, "id-" + i, new TestObject1("id-" + i));
+		}
+
+		// asked for more often than the least recently used one
+		for (int i = 0; i < 3; i++) {
+			cache.put(null, TestObject1.class, "new", new TestObject1("new"));
+		}
+
+		Assert.assertNotNull(cache.get(null, TestObject1.class, "new"));
+		Assert.assertNull(cache.get(null, TestObject1.class, "id-0"));
+		Assert.assertEquals(10, cache.getStats().getSize());
+		Assert.assertEquals(1, cache.getStats().getEvictionCount());
+	}
+
+	@Test
+	public void itShouldOnlyPutIfUnchanged() {
+		LocalEntityCache cache = new LocalEntityCache(10);
+		cache.put(null, TestObject1.class, "a", new TestObject1("a"), () -> false);
+		cache.put(null, TestObject1.class, "b", new TestObject1("b"), () -> true);
+
+		Assert.assertNull(cache.get(null, TestObject1.class, "a"));
+		Assert.assertNotNull(cache.get(null, TestObject1.class, "b"));
+	}
+
+	@Test
+	public void itShouldExpireObjectsAfterWrite() throws InterruptedException {
+		LocalEntityCache cache = new LocalEntityCache(10, 50);
+		cache.put(null, TestObject1.class, "a", new TestObject1("a"));
+		Assert.assertNotNull(cache.get(null, TestObject1.class, "a"));
+
+		Thread.sleep(100);
+		Assert.assertNull(cache.get(null, TestObject1.class, "a"));
+		Assert.assertEquals(0, cache.getStats().getSize());
+
+		// a put starts over
+		cache.put(null, TestObject1.class, "a", new TestObject1("a"));
+		Assert.assertNotNull(cache.get(null, TestObject1.class, "a"));
+	}
+
+}
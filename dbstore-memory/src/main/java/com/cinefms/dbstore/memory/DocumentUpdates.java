@@ -0,0 +1,236 @@
+package com.cinefms.dbstore.memory;
+
+import java.util.List;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.cinefms.dbstore.api.FieldUpdate;
+import com.cinefms.dbstore.api.UpdateOperation;
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.query.api.impl.FieldValues;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * applies {@link FieldUpdate}s to the json of an object the way mongo applies them to its
+ * document: dotted names go into embedded objects (created if needed) and list positions, inc
+ * and mul on a missing field start at 0, min / max set a missing field.
+ *
+ * set on insert does nothing, there are no upserts.
+ */
+final class DocumentUpdates {
+
+	private static final Log log = LogFactory.getLog(DocumentUpdates.class);
+
+	private static final JsonNodeFactory NODES = JsonNodeFactory.instance;
+
+	private DocumentUpdates() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	static void apply(ObjectMapper mapper, ObjectNode document, List<FieldUpdate> updates) {
+		for (FieldUpdate u : updates) {
+			String field = "_id".equals(u.getFieldName()) ? "id" : u.getFieldName();
+			JsonNode value = u.getValue() instanceof JsonNode ? (JsonNode) u.getValue() : mapper.valueToTree(u.getValue());
+			if (value == null) {
+				value = NullNode.getInstance();
+			}
+			JsonNode current = get(document, field);
+
+			switch (u.getOperation()) {
+				case SET:
+					set(document, field, value);
+					break;
+				case UNSET:
+					unset(document, field);
+					break;
+				case INC:
+					set(document, field, arithmetic(field, current, value, false));
+					break;
+				case MUL:
+					set(document, field, arithmetic(field, current, value, true));
+					break;
+				case MIN:
+				case MAX:
+					if (current == null || isBetter(mapper, value, current, u.getOperation() == UpdateOperation.MIN)) {
+						set(document, field, value);
+					}
+					break;
+				case PUSH:
+					array(document, field, current).add(value);
+					break;
+				case ADD_TO_SET:
+					ArrayNode set = array(document, field, current);
+					if (indexOf(set, value) < 0) {
+						set.add(value);
+					}
+					break;
+				case PULL:
+					if (current != null && current.isArray()) {
+						ArrayNode pulled = (ArrayNode) current;
+						for (int i = pulled.size() - 1; i >= 0; i--) {
+							if (same(pulled.get(i), value)) {
+								pulled.remove(i);
+							}
+						}
+					}
+					break;
+				case RENAME:
+					if (current != null) {
+						unset(document, field);
+						set(document, (String) u.getValue(), current);
+					}
+					break;
+				case SET_ON_INSERT:
+					break;
+				default:
+					log.warn("Unknown update operation: " + u.getOperation());
+			}
+		}
+	}
+
+	static JsonNode get(JsonNode document, String field) {
+		JsonNode out = document;
+		for (String step : field.split("\\.")) {
+			if (out == null) {
+				return null;
+			}
+			out = out.isArray() && isPosition(step) ? out.get(Integer.parseInt(step)) : out.get(step);
+		}
+		return out == null || out.isMissingNode() ? null : out;
+	}
+
+	private static void set(ObjectNode document, String field, JsonNode value) {
+		String[] steps = field.split("\\.");
+		JsonNode parent = document;
+		for (int i = 0; i < steps.length - 1; i++) {
+			JsonNode next = child(parent, steps[i]);
+			if (next == null || next.isNull()) {
+				next = NODES.objectNode();
+				put(parent, steps[i], next);
+			} else if (!next.isContainerNode()) {
+				throw new DBStoreException("can not create field '" + steps[i + 1] + "' in " + steps[i] + " of " + field);
+			}
+			parent = next;
+		}
+		put(parent, steps[steps.length - 1], value);
+	}
+
+	private static void unset(ObjectNode document, String field) {
+		int dot = field.lastIndexOf('.');
+		JsonNode parent = dot < 0 ? document : get(document, field.substring(0, dot));
+		String last = field.substring(dot + 1);
+		if (parent instanceof ObjectNode) {
+			((ObjectNode) parent).remove(last);
+		} else if (parent instanceof ArrayNode && isPosition(last) && Integer.parseInt(last) < parent.size()) {
+			// mongo leaves a null in lists
+			((ArrayNode) parent).set(Integer.parseInt(last), NullNode.getInstance());
+		}
+	}
+
+	private static JsonNode child(JsonNode parent, String step) {
+		return parent.isArray() && isPosition(step) ? parent.get(Integer.parseInt(step)) : parent.get(step);
+	}
+
+	private static void put(JsonNode parent, String step, JsonNode value) {
+		if (parent instanceof ObjectNode) {
+			((ObjectNode) parent).set(step, value);
+			return;
+		}
+		if (!isPosition(step)) {
+			throw new DBStoreException("can not create field '" + step + "' in a list");
+		}
+		ArrayNode a = (ArrayNode) parent;
+		int position = Integer.parseInt(step);
+		while (a.size() <= position) {
+			a.addNull();
+		}
+		a.set(position, value);
+	}
+
+	private static ArrayNode array(ObjectNode document, String field, JsonNode current) {
+		if (current == null || current.isNull()) {
+			ArrayNode out = NODES.arrayNode();
+			set(document, field, out);
+			return out;
+		}
+		if (!current.isArray()) {
+			throw new DBStoreException("the field '" + field + "' must be an array");
+		}
+		return (ArrayNode) current;
+	}
+
+	private static JsonNode arithmetic(String field, JsonNode current, JsonNode value, boolean multiply) {
+		if (!value.isNumber()) {
+			throw new DBStoreException("can not " + (multiply ? "multiply" : "increment") + " '" + field + "' with a non-numeric value");
+		}
+		if (current == null || current.isNull()) {
+			// mongo starts at 0 of the type of the argument
+			if (!multiply) {
+				return value;
+			}
+			return value.isInt() ? NODES.numberNode(0) : value.isIntegralNumber() ? NODES.numberNode(0L) : NODES.numberNode(0d);
+		}
+		if (!current.isNumber()) {
+			throw new DBStoreException("can not " + (multiply ? "multiply" : "increment") + " the non-numeric field '" + field + "'");
+		}
+
+		boolean integral = current.isIntegralNumber() && value.isIntegralNumber();
+		if (integral) {
+			long a = current.longValue();
+			long b = value.longValue();
+			long out = multiply ? Math.multiplyExact(a, b) : Math.addExact(a, b);
+			return current.isInt() && value.isInt() && out == (int) out ? NODES.numberNode((int) out) : NODES.numberNode(out);
+		}
+		double out = multiply ? current.doubleValue() * value.doubleValue() : current.doubleValue() + value.doubleValue();
+		return NODES.numberNode(out);
+	}
+
+	private static boolean isBetter(ObjectMapper mapper, JsonNode value, JsonNode current, boolean min) {
+		int c = FieldValues.ORDER.compare(plain(mapper, value), plain(mapper, current));
+		return min ? c < 0 : c > 0;
+	}
+
+	private static Object plain(ObjectMapper mapper, JsonNode node) {
+		try {
+			return mapper.treeToValue(node, Object.class);
+		} catch (Exception e) {
+			throw new DBStoreException("unable to read " + node, e);
+		}
+	}
+
+	private static int indexOf(ArrayNode array, JsonNode value) {
+		for (int i = 0; i < array.size(); i++) {
+			if (same(array.get(i), value)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// numbers by value, like mongo
+	private static boolean same(JsonNode a, JsonNode b) {
+		if (a.isNumber() && b.isNumber()) {
+			return a.decimalValue().compareTo(b.decimalValue()) == 0;
+		}
+		return a.equals(b);
+	}
+
+	private static boolean isPosition(String step) {
+		if (step.isEmpty() || step.length() > 9) {
+			return false;
+		}
+		for (int i = 0; i < step.length(); i++) {
+			if (!Character.isDigit(step.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
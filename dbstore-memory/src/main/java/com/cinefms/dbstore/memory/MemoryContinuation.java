@@ -0,0 +1,72 @@
+package com.cinefms.dbstore.memory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+
+/**
+ * the continuation token of a page: the sort key of its last object, one value per field of
+ * the order (with the id last). dates are kept apart from numbers so they compare as dates
+ * again.
+ */
+final class MemoryContinuation {
+
+	private static final ObjectMapper MAPPER = new ObjectMapper();
+
+	private MemoryContinuation() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	static String encode(List<Object> key) {
+		ArrayNode out = MAPPER.createArrayNode();
+		for (Object v : key) {
+			ArrayNode tagged = out.addArray();
+			if (v instanceof Date) {
+				tagged.add("d").add(((Date) v).getTime());
+			} else {
+				tagged.add("v").add(MAPPER.valueToTree(v));
+			}
+		}
+		try {
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(MAPPER.writeValueAsBytes(out));
+		} catch (Exception e) {
+			throw new IllegalStateException("unable to encode continuation", e);
+		}
+	}
+
+	/**
+	 * @param size the number of values the token must have
+	 */
+	static List<Object> decode(String token, int size) {
+		JsonNode in;
+		try {
+			in = MAPPER.readTree(new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8));
+		} catch (Exception e) {
+			throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.INVALID_CONTINUATION);
+		}
+		if (in == null || !in.isArray() || in.size() != size) {
+			throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.INVALID_CONTINUATION);
+		}
+
+		List<Object> out = new ArrayList<>(size);
+		for (JsonNode tagged : in) {
+			if (!tagged.isArray() || tagged.size() != 2) {
+				throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.INVALID_CONTINUATION);
+			}
+			if ("d".equals(tagged.get(0).asText())) {
+				out.add(new Date(tagged.get(1).asLong()));
+			} else {
+				out.add(MAPPER.convertValue(tagged.get(1), Object.class));
+			}
+		}
+		return out;
+	}
+
+}
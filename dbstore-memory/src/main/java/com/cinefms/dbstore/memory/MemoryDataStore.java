@@ -0,0 +1,838 @@
+package com.cinefms.dbstore.memory;
+
+import java.io.ByteArrayOutputStream;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.cinefms.dbstore.api.DBStoreBinary;
+import com.cinefms.dbstore.api.DBStoreEntity;
+import com.cinefms.dbstore.api.DBStoreListener;
+import com.cinefms.dbstore.api.DBStorePage;
+import com.cinefms.dbstore.api.DBStoreTransactionContext;
+import com.cinefms.dbstore.api.DataStore;
+import com.cinefms.dbstore.api.FieldUpdate;
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.api.impl.BasicBinary;
+import com.cinefms.dbstore.api.impl.IOUtils;
+import com.cinefms.dbstore.query.api.DBStoreAggregation;
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
+import com.cinefms.dbstore.query.api.impl.Aggregator;
+import com.cinefms.dbstore.query.api.impl.BasicQuery;
+import com.cinefms.dbstore.query.api.impl.CompiledQuery;
+import com.cinefms.dbstore.query.api.impl.FieldValues;
+import com.cinefms.dbstore.query.api.impl.OrderBy;
+import com.cinefms.dbstore.query.api.impl.QueryCompiler;
+import com.cinefms.dbstore.query.api.impl.QueryNormalizer;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * a {@link DataStore} that keeps everything in memory: for tests without a database, and for
+ * small reference data that is loaded at startup and read a lot.
+ *
+ * objects are stored as copies (made with jackson, like they would be written to mongo) and
+ * handed out as copies, so changing them does not change the store. for read-mostly data that
+ * nobody changes, {@link #setCopyOnRead(boolean)} hands out the stored objects themselves.
+ *
+ * queries run on the objects with the {@link QueryCompiler}, so fields are the names properties
+ * have in json (a property renamed with @JsonProperty is found by that name, like in mongo). the
+ * {@link com.cinefms.dbstore.api.annotations.Indexes} of a class become hash and sorted indexes
+ * that narrow down the objects a query looks at, unique ones are enforced. without an order,
+ * objects come in the order of their ids.
+ *
+ * listeners are notified like by the mongo store. writes of a db are serialized by one lock,
+ * reads do not lock. a transaction holds the lock until it is done and is only visible to the
+ * thread running it until then; within it, all methods of the store (not just those of the
+ * context) take part in it.
+ */
+public class MemoryDataStore implements DataStore {
+
+	private static final Log log = LogFactory.getLog(MemoryDataStore.class);
+
+	private static final SecureRandom RANDOM = new SecureRandom();
+	private static final long PROCESS = RANDOM.nextLong() & 0xffffffffffL;
+	private static final AtomicInteger COUNTER = new AtomicInteger(RANDOM.nextInt());
+
+	private final Map<String, Database> dbs = new ConcurrentHashMap<>();
+	private final ThreadLocal<Map<String, MemoryTransaction>> transactions = ThreadLocal.withInitial(HashMap::new);
+
+	private final List<DBStoreListener<?>> listeners = new CopyOnWriteArrayList<>();
+	private final Map<Class<?>, List<DBStoreListener<?>>> listenersByClass = new ConcurrentHashMap<>();
+
+	private ObjectMapper objectMapper = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	private boolean copyOnRead = true;
+
+	private static final class Database {
+
+		private final ReentrantLock lock = new ReentrantLock();
+		private final Map<Class<?>, MemoryTable> tables = new ConcurrentHashMap<>();
+		private final Map<String, StoredBinary> binaries = new ConcurrentHashMap<>();
+	}
+
+	private static final class StoredBinary {
+
+		private final byte[] data;
+		private final Map<String, Object> metaData;
+
+		StoredBinary(byte[] data, Map<String, Object> metaData) {
+			this.data = data;
+			this.metaData = metaData;
+		}
+	}
+
+	private Database database(String db) {
+		return dbs.computeIfAbsent(key(db), k -> new Database());
+	}
+
+	// null is the default db
+	private static String key(String db) {
+		return db != null ? db : "";
+	}
+
+	private MemoryTable table(String db, Class<?> clazz) {
+		return database(db).tables.computeIfAbsent(clazz, MemoryTable::new);
+	}
+
+	/**
+	 * the transaction of this thread on the db, or the tables as they are
+	 */
+	private MemoryTransaction view(String db) {
+		MemoryTransaction out = transactions.get().get(key(db));
+		return out != null ? out : MemoryTransaction.COMMITTED;
+	}
+
+	/**
+	 * runs a change in the transaction of this thread, or in one of its own that is committed
+	 * right away
+	 */
+	private <R> R write(String db, Function<MemoryTransaction, R> operation) {
+		MemoryTransaction open = transactions.get().get(key(db));
+		if (open != null) {
+			return operation.apply(open);
+		}
+
+		ReentrantLock lock = database(db).lock;
+		MemoryTransaction tx = new MemoryTransaction(false);
+		R out;
+		lock.lock();
+		try {
+			out = operation.apply(tx);
+			tx.commit();
+		} finally {
+			lock.unlock();
+		}
+		tx.fireEvents();
+		return out;
+	}
+
+	private List<DBStoreListener<?>> getListeners(Class<?> clazz) {
+		return listenersByClass.computeIfAbsent(clazz, c -> {
+			List<DBStoreListener<?>> out = new ArrayList<>();
+			for (DBStoreListener<?> l : listeners) {
+				if (l.supports(c.asSubclass(DBStoreEntity.class))) {
+					out.add(l);
+				}
+			}
+			return Collections.unmodifiableList(out);
+		});
+	}
+
+	/**
+	 * a new id like a mongo object id: seconds, a random number per process and a counter, so
+	 * the ids of a process increase
+	 */
+	private static String newId() {
+		long seconds = System.currentTimeMillis() / 1000;
+		return String.format("%08x%010x%06x", seconds & 0xffffffffL, PROCESS, COUNTER.getAndIncrement() & 0xffffff);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> T copy(T object) {
+		if (object == null) {
+			return null;
+		}
+		try {
+			return (T) objectMapper.treeToValue(objectMapper.valueToTree(object), object.getClass());
+		} catch (Exception e) {
+			throw new DBStoreException("unable to copy " + object.getClass().getName(), e);
+		}
+	}
+
+	/**
+	 * a stored object as it is handed out
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T out(Object stored) {
+		return (T) (copyOnRead ? copy(stored) : stored);
+	}
+
+	private static DBStoreQuery normalize(DBStoreQuery query) {
+		return query != null ? QueryNormalizer.normalize(query) : null;
+	}
+
+	private <T> CompiledQuery<T> compile(MemoryTable table, DBStoreQuery query) {
+		try {
+			return QueryCompiler.compile(query, table.getTextFields());
+		} catch (MalformedQueryException e) {
+			throw new DBStoreException("unable to run query", e);
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T saveObject(String db, T object) {
+		return saveObjects(db, Collections.singletonList(object))
+				.stream()
+				.findFirst()
+				.orElse(null);
+	}
+
+	/**
+	 * saves all objects or, if one of them breaks a unique index, none
+	 */
+	@Override
+	public <T extends DBStoreEntity> List<T> saveObjects(String db, List<T> objects) {
+		if (objects.isEmpty()) {
+			return objects;
+		}
+		return write(db, tx -> {
+			for (T object : objects) {
+				save(db, tx, object);
+			}
+			return objects;
+		});
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private <T extends DBStoreEntity> void save(String db, MemoryTransaction tx, T object) {
+		List<DBStoreListener<?>> entityListeners = getListeners(object.getClass());
+		for (DBStoreListener listener : entityListeners) {
+			log.debug("firing 'beforeSave' for: " + object.getClass() + " / " + object.getId());
+			listener.beforeSave(db, object);
+		}
+
+		if (object.getId() == null) {
+			String id = object.createId();
+			object.setId(id != null ? id : newId());
+		}
+
+		MemoryTable table = table(db, object.getClass());
+		T old = (T) tx.get(table, object.getId());
+		if (old != null && !needsUpdate(old, object)) {
+			log.debug("no change, skipping: " + object.getId());
+			return;
+		}
+
+		T stored = copy(object);
+		tx.checkUnique(table, stored.getId(), stored);
+		tx.put(table, stored.getId(), stored);
+
+		if (entityListeners.isEmpty()) {
+			return;
+		}
+		T previous = copy(old);
+		tx.fire(() -> {
+			for (DBStoreListener listener : entityListeners) {
+				if (previous != null) {
+					log.debug("firing 'updated' for: " + object.getClass() + " / " + object.getId() + " / " + listener.getClass());
+					listener.updated(db, previous, object);
+				} else {
+					log.debug("firing 'created' for: " + object.getClass() + " / " + object.getId() + " / " + listener.getClass());
+					listener.created(db, object);
+				}
+			}
+		});
+	}
+
+	public <T> boolean needsUpdate(T old, T object) {
+		return true;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T extends DBStoreEntity> boolean deleteObject(String db, T object) {
+		return object != null && deleteObject(db, object.getClass(), object.getId());
+	}
+
+	@Override
+	public <T extends DBStoreEntity> boolean deleteObject(String db, Class<T> clazz, String id) {
+		return id != null && deleteObjects(db, clazz, BasicQuery.createQuery().eq("_id", id)) > 0;
+	}
+
+	@Override
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public <T extends DBStoreEntity> long deleteObjects(String db, Class<T> clazz, DBStoreQuery query) {
+		DBStoreQuery q = normalize(query);
+		if (q != null && QueryNormalizer.isUnsatisfiable(q)) {
+			return 0;
+		}
+		return write(db, tx -> {
+			MemoryTable table = table(db, clazz);
+			CompiledQuery<T> compiled = compile(table, q);
+			List<T> matches = new ArrayList<>();
+			for (Object o : tx.candidates(table, q)) {
+				if (compiled.test((T) o)) {
+					matches.add((T) o);
+				}
+			}
+
+			List<DBStoreListener<?>> entityListeners = getListeners(clazz);
+			List<T> deleted = new ArrayList<>(entityListeners.isEmpty() ? 0 : matches.size());
+			for (T object : matches) {
+				if (!entityListeners.isEmpty()) {
+					T copy = copy(object);
+					for (DBStoreListener listener : entityListeners) {
+						log.debug("firing 'beforeDelete' for: " + clazz + " / " + copy.getId());
+						listener.beforeDelete(db, copy);
+					}
+					deleted.add(copy);
+				}
+				tx.put(table, object.getId(), null);
+			}
+
+			if (!deleted.isEmpty()) {
+				tx.fire(() -> {
+					for (T object : deleted) {
+						for (DBStoreListener listener : entityListeners) {
+							log.debug("firing 'deleted' for: " + clazz + " / " + object.getId());
+							listener.deleted(db, object);
+						}
+					}
+				});
+			}
+			return (long) matches.size();
+		});
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T getObject(String db, Class<T> clazz, String id) {
+		if (id == null) {
+			return null;
+		}
+		return out(view(db).get(table(db, clazz), id));
+	}
+
+	@Override
+	public <T extends DBStoreEntity> List<T> getObjects(String db, Class<T> clazz, Collection<String> ids) {
+		MemoryTable table = table(db, clazz);
+		MemoryTransaction view = view(db);
+		List<T> out = new ArrayList<>(ids.size());
+		for (String id : ids) {
+			out.add(id != null ? out(view.get(table, id)) : null);
+		}
+		return out;
+	}
+
+	@Override
+	public <T extends DBStoreEntity> Map<String, T> getObjectMap(String db, Class<T> clazz, Collection<String> ids) {
+		MemoryTable table = table(db, clazz);
+		MemoryTransaction view = view(db);
+		Map<String, T> out = new LinkedHashMap<>();
+		for (String id : ids) {
+			Object o = id != null && !out.containsKey(id) ? view.get(table, id) : null;
+			if (o != null) {
+				out.put(id, out(o));
+			}
+		}
+		return out;
+	}
+
+	@Override
+	public <T extends DBStoreEntity> List<T> findObjects(String db, Class<T> clazz, DBStoreQuery query) {
+		DBStoreQuery q = normalize(query);
+		if (q != null && QueryNormalizer.isUnsatisfiable(q)) {
+			return new ArrayList<>();
+		}
+		MemoryTable table = table(db, clazz);
+		CompiledQuery<T> compiled = compile(table, q);
+		return output(clazz, q, compiled.select(candidates(db, table, q)));
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> Iterable<T> candidates(String db, MemoryTable table, DBStoreQuery q) {
+		return (Iterable<T>) view(db).candidates(table, q);
+	}
+
+	private <T> List<T> output(Class<T> clazz, DBStoreQuery q, List<T> stored) {
+		boolean projected = q != null && (!q.getIncludes().isEmpty() || !q.getExcludes().isEmpty());
+		if (!projected && !copyOnRead) {
+			return stored;
+		}
+		List<T> out = new ArrayList<>(stored.size());
+		for (T o : stored) {
+			out.add(projected ? project(clazz, q, o) : copy(o));
+		}
+		return out;
+	}
+
+	/**
+	 * a copy with only the included (or without the excluded) fields, the id is always
+	 * included unless "_id" is excluded
+	 */
+	private <T> T project(Class<T> clazz, DBStoreQuery q, T object) {
+		ObjectNode document = objectMapper.valueToTree(object);
+		if (!q.getIncludes().isEmpty()) {
+			ObjectNode included = objectMapper.createObjectNode();
+			List<FieldUpdate> copied = new ArrayList<>();
+			copied.add(FieldUpdate.set("id", document.get("id")));
+			for (String field : q.getIncludes()) {
+				JsonNode v = DocumentUpdates.get(document, field);
+				if (v != null) {
+					copied.add(FieldUpdate.set(field, v));
+				}
+			}
+			DocumentUpdates.apply(objectMapper, included, copied);
+			document = included;
+		}
+		List<FieldUpdate> removed = new ArrayList<>();
+		for (String field : q.getExcludes()) {
+			removed.add(FieldUpdate.unset(field));
+		}
+		DocumentUpdates.apply(objectMapper, document, removed);
+		try {
+			return objectMapper.treeToValue(document, clazz);
+		} catch (Exception e) {
+			throw new DBStoreException("unable to read " + clazz.getName(), e);
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> Stream<T> streamObjects(String db, Class<T> clazz, DBStoreQuery query) {
+		return findObjects(db, clazz, query).stream();
+	}
+
+	/**
+	 * the batch size makes no difference in memory
+	 */
+	@Override
+	public <T extends DBStoreEntity> Stream<T> streamObjects(String db, Class<T> clazz, DBStoreQuery query, int batchSize) {
+		return streamObjects(db, clazz, query);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T extends DBStoreEntity> DBStorePage<T> findPage(String db, Class<T> clazz, DBStoreQuery query, int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("pageSize must be > 0");
+		}
+
+		DBStoreQuery q = query != null ? normalize(query) : BasicQuery.createQuery();
+		if (QueryNormalizer.isUnsatisfiable(q)) {
+			return new DBStorePage<>(new ArrayList<>(), null);
+		}
+
+		// the order with the id as tie-breaker
+		List<OrderBy> order = new ArrayList<>(q.getOrderBy());
+		if (order.stream().noneMatch(it -> "_id".equals(it.getField()) || "id".equals(it.getField()))) {
+			order.add(OrderBy.asc("_id"));
+		}
+		List<FieldValues> keys = new ArrayList<>(order.size());
+		for (OrderBy ob : order) {
+			keys.add(new FieldValues(ob.getField()));
+		}
+		List<Object> after = q.getContinuation() != null ? MemoryContinuation.decode(q.getContinuation(), order.size()) : null;
+
+		MemoryTable table = table(db, clazz);
+		CompiledQuery<T> compiled = compile(table, q);
+		List<T> items = new ArrayList<>();
+		for (Object o : candidates(db, table, q)) {
+			if (compiled.test((T) o) && (after == null || compareKey(o, order, keys, after) > 0)) {
+				items.add((T) o);
+			}
+		}
+		items.sort(QueryCompiler.comparator(order));
+
+		String continuation = null;
+		if (items.size() > pageSize) {
+			items = items.subList(0, pageSize);
+			T last = items.get(pageSize - 1);
+			List<Object> key = new ArrayList<>(order.size());
+			for (int i = 0; i < order.size(); i++) {
+				key.add(keys.get(i).sortKey(last, order.get(i).isAsc()));
+			}
+			continuation = MemoryContinuation.encode(key);
+		}
+		return new DBStorePage<>(output(clazz, q, new ArrayList<>(items)), continuation);
+	}
+
+	/**
+	 * where the object sorts relative to the key of a continuation
+	 */
+	private static int compareKey(Object o, List<OrderBy> order, List<FieldValues> keys, List<Object> key) {
+		for (int i = 0; i < order.size(); i++) {
+			boolean asc = order.get(i).isAsc();
+			int c = FieldValues.ORDER.compare(keys.get(i).sortKey(o, asc), key.get(i));
+			if (c != 0) {
+				return asc ? c : -c;
+			}
+		}
+		return 0;
+	}
+
+	@Override
+	public <T extends DBStoreEntity> Stream<Map<String, Object>> aggregate(String db, Class<T> clazz, DBStoreAggregation aggregation) {
+		DBStoreQuery q = normalize(aggregation.getMatch());
+		if (q != null && QueryNormalizer.isUnsatisfiable(q)) {
+			return Stream.empty();
+		}
+		MemoryTable table = table(db, clazz);
+		CompiledQuery<T> compiled = compile(table, q);
+		List<Map<String, Object>> rows = Aggregator.aggregate(aggregation, compiled.filter(candidates(db, table, q)));
+		return rows.stream().map(this::detach);
+	}
+
+	@Override
+	public <T extends DBStoreEntity, R> Stream<R> aggregate(String db, Class<T> clazz, DBStoreAggregation aggregation, Class<R> rowType) {
+		return aggregate(db, clazz, aggregation).map(row -> objectMapper.convertValue(row, rowType));
+	}
+
+	/**
+	 * a row without the objects of the store in it, as documents like the group fields of a
+	 * mongo row
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> detach(Map<String, Object> row) {
+		Map<String, Object> out = new LinkedHashMap<>();
+		for (Map.Entry<String, Object> e : row.entrySet()) {
+			Object v = e.getValue();
+			out.put(e.getKey(), v instanceof Map ? detach((Map<String, Object>) v) : detach(v));
+		}
+		return out;
+	}
+
+	/**
+	 * scalars as they are, anything else as a document
+	 */
+	private Object detach(Object v) {
+		if (v == null || v instanceof String || v instanceof Number || v instanceof Boolean || v instanceof Date || v instanceof Enum || v instanceof Character) {
+			return v;
+		}
+		return objectMapper.convertValue(v, Object.class);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> Stream<Object> distinctValues(String db, Class<T> clazz, String field, DBStoreQuery query) {
+		if (field == null) {
+			throw new IllegalArgumentException("field must not be null");
+		}
+		DBStoreQuery q = normalize(query);
+		if (q != null && QueryNormalizer.isUnsatisfiable(q)) {
+			return Stream.empty();
+		}
+		MemoryTable table = table(db, clazz);
+		CompiledQuery<T> compiled = compile(table, q);
+		FieldValues values = new FieldValues(field);
+
+		// by the key of the value, so that 1 and 1L are one value like in mongo
+		Map<Object, Object> out = new LinkedHashMap<>();
+		for (T o : this.<T>candidates(db, table, q)) {
+			if (!compiled.test(o)) {
+				continue;
+			}
+			for (Object v : values.of(o)) {
+				if (v != null) {
+					out.putIfAbsent(FieldValues.key(v), v);
+				}
+			}
+		}
+		return out.values().stream().map(this::detach);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> boolean exists(String db, Class<T> clazz, DBStoreQuery query) {
+		DBStoreQuery q = normalize(query);
+		if (q != null && QueryNormalizer.isUnsatisfiable(q)) {
+			return false;
+		}
+		MemoryTable table = table(db, clazz);
+		CompiledQuery<T> compiled = compile(table, q);
+		for (T o : this.<T>candidates(db, table, q)) {
+			if (compiled.test(o)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public <T extends DBStoreEntity> long countObjects(String db, Class<T> clazz, DBStoreQuery query) {
+		return countObjects(db, clazz, query, 0);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> long countObjects(String db, Class<T> clazz, DBStoreQuery query, long limit) {
+		DBStoreQuery q = normalize(query);
+		if (q != null && QueryNormalizer.isUnsatisfiable(q)) {
+			return 0;
+		}
+		MemoryTable table = table(db, clazz);
+		CompiledQuery<T> compiled = compile(table, q);
+		if (compiled.isUnfiltered() && view(db) == MemoryTransaction.COMMITTED) {
+			return limit > 0 ? Math.min(table.size(), limit) : table.size();
+		}
+		return compiled.count(candidates(db, table, q), limit);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T extends DBStoreEntity> T findObject(String db, Class<T> clazz, DBStoreQuery query) {
+		DBStoreQuery q = normalize(query);
+		if (q != null && QueryNormalizer.isUnsatisfiable(q)) {
+			return null;
+		}
+		MemoryTable table = table(db, clazz);
+		CompiledQuery<T> compiled = compile(table, q);
+
+		T found = null;
+		if (compiled.isOrdered() || (q != null && q.getStart() > 0)) {
+			List<T> matches = compiled.select(candidates(db, table, q));
+			found = matches.isEmpty() ? null : matches.get(0);
+		} else {
+			for (Object o : candidates(db, table, q)) {
+				if (compiled.test((T) o)) {
+					found = (T) o;
+					break;
+				}
+			}
+		}
+		return found == null ? null : output(clazz, q, Collections.singletonList(found)).get(0);
+	}
+
+	@Override
+	public void addListener(DBStoreListener<?> listener) {
+		listeners.add(listener);
+		listenersByClass.clear();
+	}
+
+	@Autowired(required = false)
+	public void setListeners(List<DBStoreListener<?>> listeners) {
+		this.listeners.clear();
+		if (listeners != null) {
+			this.listeners.addAll(listeners);
+		}
+		listenersByClass.clear();
+	}
+
+	@Override
+	public void saveBinary(String dbName, String bucket, DBStoreBinary binary) throws DBStoreException {
+		try {
+			ByteArrayOutputStream data = new ByteArrayOutputStream();
+			IOUtils.copy(binary.getInputStream(), data);
+			Map<String, Object> md = new HashMap<>();
+			if (binary.getMetaData() != null) {
+				md.putAll(binary.getMetaData());
+			}
+			database(dbName).binaries.put(bucket + ":" + binary.getId(), new StoredBinary(data.toByteArray(), md));
+		} catch (Exception e) {
+			throw new DBStoreException("error saving binary", e);
+		}
+	}
+
+	@Override
+	public DBStoreBinary getBinary(String dbName, String bucket, String id) throws DBStoreException {
+		StoredBinary b = database(dbName).binaries.get(bucket + ":" + id);
+		if (b == null) {
+			return null;
+		}
+		return new BasicBinary(id, b.data, new HashMap<>(b.metaData));
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T updateObjectFields(String db, Class<T> clazz, String id, Map<String, Object> fields) {
+		if (id == null || fields == null || fields.isEmpty()) {
+			return null;
+		}
+		List<FieldUpdate> updates = new ArrayList<>(fields.size());
+		for (Map.Entry<String, Object> entry : fields.entrySet()) {
+			updates.add(FieldUpdate.set(entry.getKey(), entry.getValue()));
+		}
+		return updateObjectFields(db, clazz, id, updates);
+	}
+
+	/**
+	 * applies the updates to the json of the object, like mongo applies them to its document.
+	 * 'beforeSave' is fired with the previous version once the update went through.
+	 */
+	@Override
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public <T extends DBStoreEntity> T updateObjectFields(String db, Class<T> clazz, String id, List<FieldUpdate> fieldUpdates) {
+		if (id == null || fieldUpdates == null || fieldUpdates.isEmpty()) {
+			return null;
+		}
+		return write(db, tx -> {
+			MemoryTable table = table(db, clazz);
+			T old = (T) tx.get(table, id);
+			if (old == null) {
+				log.debug("No object found with id: " + id + " in class: " + clazz.getSimpleName());
+				return null;
+			}
+
+			T updated;
+			try {
+				ObjectNode document = objectMapper.valueToTree(old);
+				DocumentUpdates.apply(objectMapper, document, fieldUpdates);
+				updated = objectMapper.treeToValue(document, clazz);
+				// like in mongo, the id can not be changed
+				updated.setId(id);
+			} catch (DBStoreException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new DBStoreException("Error updating fields for object with id: " + id, e);
+			}
+
+			tx.checkUnique(table, id, updated);
+			tx.put(table, id, updated);
+
+			List<DBStoreListener<?>> entityListeners = getListeners(clazz);
+			if (!entityListeners.isEmpty()) {
+				T previous = copy(old);
+				for (DBStoreListener listener : entityListeners) {
+					log.debug("firing 'beforeSave' for: " + clazz + " / " + id);
+					listener.beforeSave(db, previous);
+				}
+				T current = copy(updated);
+				tx.fire(() -> {
+					for (DBStoreListener listener : entityListeners) {
+						log.debug("firing 'updated' for: " + clazz + " / " + id + " / " + listener.getClass());
+						listener.updated(db, previous, current);
+					}
+				});
+			}
+			return copy(updated);
+		});
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T incrementField(String db, Class<T> clazz, String id, String fieldName, Number increment) {
+		return updateObjectFields(db, clazz, id, Collections.singletonList(FieldUpdate.inc(fieldName, increment)));
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T setField(String db, Class<T> clazz, String id, String fieldName, Object value) {
+		return updateObjectFields(db, clazz, id, Collections.singletonList(FieldUpdate.set(fieldName, value)));
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T unsetField(String db, Class<T> clazz, String id, String fieldName) {
+		return updateObjectFields(db, clazz, id, Collections.singletonList(FieldUpdate.unset(fieldName)));
+	}
+
+	@Override
+	public boolean supportsTransactions() {
+		return true;
+	}
+
+	@Override
+	public <T> T executeInTransaction(String db, Supplier<T> operations) throws DBStoreException {
+		return inTransaction(db, operations);
+	}
+
+	@Override
+	public void executeInTransaction(String db, Runnable operations) throws DBStoreException {
+		executeInTransaction(db, () -> {
+			operations.run();
+			return null;
+		});
+	}
+
+	@Override
+	public <T> T executeInTransaction(String db, Function<DBStoreTransactionContext, T> operations) throws DBStoreException {
+		return inTransaction(db, () -> operations.apply(new MemoryTransactionContext(this, db)));
+	}
+
+	@Override
+	public void executeInTransaction(String db, Consumer<DBStoreTransactionContext> operations) throws DBStoreException {
+		executeInTransaction(db, context -> {
+			operations.accept(context);
+			return null;
+		});
+	}
+
+	/**
+	 * a transaction started within one on the same db is part of it
+	 */
+	private <T> T inTransaction(String db, Supplier<T> operations) {
+		Map<String, MemoryTransaction> open = transactions.get();
+		if (open.containsKey(key(db))) {
+			return operations.get();
+		}
+
+		ReentrantLock lock = database(db).lock;
+		lock.lock();
+		MemoryTransaction tx = new MemoryTransaction(true);
+		open.put(key(db), tx);
+		try {
+			T out = operations.get();
+			tx.commit();
+			return out;
+		} catch (Exception e) {
+			log.error("Transaction failed", e);
+			throw new DBStoreException("Transaction failed", e);
+		} finally {
+			open.remove(key(db));
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * removes all objects and binaries of the db
+	 */
+	public void clear(String db) {
+		Database d = database(db);
+		d.lock.lock();
+		try {
+			for (MemoryTable t : d.tables.values()) {
+				t.clear();
+			}
+			d.binaries.clear();
+		} finally {
+			d.lock.unlock();
+		}
+	}
+
+	public ObjectMapper getObjectMapper() {
+		return objectMapper;
+	}
+
+	/**
+	 * the mapper objects are copied with, e.g. one that knows java.time
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	public boolean isCopyOnRead() {
+		return copyOnRead;
+	}
+
+	/**
+	 * false hands out the stored objects instead of copies, which is a lot faster but they must
+	 * not be changed. true by default.
+	 */
+	public void setCopyOnRead(boolean copyOnRead) {
+		this.copyOnRead = copyOnRead;
+	}
+
+}
@@ -0,0 +1,159 @@
+package com.cinefms.dbstore.memory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.cinefms.dbstore.api.annotations.Index;
+import com.cinefms.dbstore.query.api.impl.FieldValues;
+
+/**
+ * the secondary index of an {@link Index} annotation: a hash of the values of all its fields
+ * (for lookups by all of them and to enforce unique) and a sorted map of the values of its
+ * first field (for ranges, prefixes and lookups by that one).
+ *
+ * like a mongo index it has a key for each element of a list and null for objects without the
+ * field. it is only changed under the lock of its db and read without one, so lookups may
+ * briefly miss an object that is being saved, but never return one that does not match (the
+ * matches are checked against the query anyway).
+ */
+final class MemoryIndex {
+
+	// the skip list does not take null
+	private static final Object NULL = new Object();
+
+	private static final Comparator<Object> ORDER = (a, b) -> FieldValues.ORDER.compare(a == NULL ? null : a, b == NULL ? null : b);
+
+	private final String name;
+	private final FieldValues[] fields;
+	private final boolean unique;
+	private final boolean caseInsensitive;
+
+	private final Map<List<Object>, Set<String>> entries = new ConcurrentHashMap<>();
+	private final ConcurrentSkipListMap<Object, Set<String>> sorted = new ConcurrentSkipListMap<>(ORDER);
+
+	MemoryIndex(Index index) {
+		this.name = index.name();
+		this.fields = new FieldValues[index.fields().length];
+		for (int i = 0; i < fields.length; i++) {
+			fields[i] = new FieldValues(index.fields()[i]);
+		}
+		this.unique = index.unique();
+		this.caseInsensitive = index.caseInsensitive();
+	}
+
+	String getName() {
+		return name;
+	}
+
+	boolean isUnique() {
+		return unique;
+	}
+
+	boolean isCaseInsensitive() {
+		return caseInsensitive;
+	}
+
+	String getField(int i) {
+		return fields[i].getField();
+	}
+
+	int size() {
+		return fields.length;
+	}
+
+	/**
+	 * the value as it is kept in the index
+	 */
+	Object key(Object value) {
+		Object out = FieldValues.key(value);
+		if (caseInsensitive && out instanceof String) {
+			return ((String) out).toLowerCase(Locale.ROOT);
+		}
+		return out;
+	}
+
+	/**
+	 * the keys of an object, one per combination of the values of its fields
+	 */
+	List<List<Object>> keys(Object object) {
+		List<List<Object>> out = Collections.singletonList(Collections.emptyList());
+		for (FieldValues f : fields) {
+			List<Object> values = f.of(object);
+			List<List<Object>> next = new ArrayList<>(out.size() * values.size());
+			for (List<Object> prefix : out) {
+				for (Object v : values) {
+					List<Object> key = new ArrayList<>(prefix.size() + 1);
+					key.addAll(prefix);
+					key.add(key(v));
+					next.add(key);
+				}
+			}
+			out = next;
+		}
+		return out;
+	}
+
+	void add(String id, Object object) {
+		for (List<Object> key : keys(object)) {
+			entries.computeIfAbsent(key, k -> ConcurrentHashMap.newKeySet()).add(id);
+			sorted.computeIfAbsent(sortKey(key.get(0)), k -> ConcurrentHashMap.newKeySet()).add(id);
+		}
+	}
+
+	void remove(String id, Object object) {
+		for (List<Object> key : keys(object)) {
+			entries.computeIfPresent(key, (k, ids) -> ids.remove(id) && ids.isEmpty() ? null : ids);
+			sorted.computeIfPresent(sortKey(key.get(0)), (k, ids) -> ids.remove(id) && ids.isEmpty() ? null : ids);
+		}
+	}
+
+	void clear() {
+		entries.clear();
+		sorted.clear();
+	}
+
+	/**
+	 * @param key a key of {@link #keys(Object)}
+	 * @return the ids of the objects with exactly these values
+	 */
+	Set<String> get(List<Object> key) {
+		Set<String> out = entries.get(key);
+		return out != null ? out : Collections.emptySet();
+	}
+
+	/**
+	 * @return the ids of the objects with this value in the first field
+	 */
+	Set<String> getFirst(Object value) {
+		Set<String> out = sorted.get(sortKey(key(value)));
+		return out != null ? out : Collections.emptySet();
+	}
+
+	/**
+	 * the objects with values of the first field between from and to, either may be null for
+	 * no bound
+	 */
+	NavigableMap<Object, Set<String>> range(Object from, boolean fromInclusive, Object to, boolean toInclusive) {
+		NavigableMap<Object, Set<String>> out = sorted;
+		if (from != null) {
+			out = out.tailMap(sortKey(key(from)), fromInclusive);
+		}
+		if (to != null) {
+			out = out.headMap(sortKey(key(to)), toInclusive);
+		}
+		return out;
+	}
+
+	private static Object sortKey(Object key) {
+		return key == null ? NULL : key;
+	}
+
+}
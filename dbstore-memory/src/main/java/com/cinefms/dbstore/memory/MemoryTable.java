@@ -0,0 +1,321 @@
+package com.cinefms.dbstore.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import com.cinefms.dbstore.api.annotations.Index;
+import com.cinefms.dbstore.api.annotations.Indexes;
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.DBStoreQuery.COMPARATOR;
+import com.cinefms.dbstore.query.api.DBStoreQuery.OPERATOR;
+import com.cinefms.dbstore.query.api.impl.FieldValues;
+
+/**
+ * the objects of one class in one db, by id, with the indexes of the class. the objects are
+ * copies only the store has, they are replaced but never changed.
+ *
+ * without an order objects come in the order of their ids, which is the order they were created
+ * in for generated ids.
+ */
+final class MemoryTable {
+
+	private static final String ID = "_id";
+
+	private final Class<?> clazz;
+	private final ConcurrentSkipListMap<String, Object> objects = new ConcurrentSkipListMap<>();
+	private final List<MemoryIndex> indexes = new ArrayList<>();
+	private final List<String> textFields = new ArrayList<>();
+
+	MemoryTable(Class<?> clazz) {
+		this.clazz = clazz;
+		Indexes annotation = clazz.getAnnotation(Indexes.class);
+		if (annotation == null) {
+			return;
+		}
+		for (Index i : annotation.value()) {
+			if (i.text()) {
+				Collections.addAll(textFields, i.fields());
+			} else if (i.fields().length > 0) {
+				indexes.add(new MemoryIndex(i));
+			}
+		}
+	}
+
+	Class<?> getType() {
+		return clazz;
+	}
+
+	List<String> getTextFields() {
+		return textFields;
+	}
+
+	Object get(String id) {
+		return id == null ? null : objects.get(id);
+	}
+
+	Collection<Object> all() {
+		return objects.values();
+	}
+
+	Collection<String> ids() {
+		return objects.keySet();
+	}
+
+	int size() {
+		return objects.size();
+	}
+
+	/**
+	 * replaces (or adds, or removes if object is null) the object and its index entries. only
+	 * called under the lock of the db, after {@link #checkUnique}.
+	 */
+	void put(String id, Object object) {
+		Object old = object != null ? objects.put(id, object) : objects.remove(id);
+		for (MemoryIndex i : indexes) {
+			if (old != null) {
+				i.remove(id, old);
+			}
+			if (object != null) {
+				i.add(id, object);
+			}
+		}
+	}
+
+	void clear() {
+		objects.clear();
+		for (MemoryIndex i : indexes) {
+			i.clear();
+		}
+	}
+
+	/**
+	 * fails if a unique index already has one of the object's keys for another object
+	 *
+	 * @param current whether an id is still taken, to leave out objects a transaction changed
+	 * @param pending other objects that are not in the table yet
+	 */
+	void checkUnique(String id, Object object, IdFilter current, Collection<Map.Entry<String, Object>> pending) {
+		for (MemoryIndex i : indexes) {
+			if (!i.isUnique()) {
+				continue;
+			}
+			List<List<Object>> keys = i.keys(object);
+			for (List<Object> key : keys) {
+				for (String other : i.get(key)) {
+					if (!other.equals(id) && current.test(other)) {
+						throw duplicate(i, key);
+					}
+				}
+			}
+			for (Map.Entry<String, Object> p : pending) {
+				if (p.getKey().equals(id) || p.getValue() == null) {
+					continue;
+				}
+				for (List<Object> key : i.keys(p.getValue())) {
+					if (keys.contains(key)) {
+						throw duplicate(i, key);
+					}
+				}
+			}
+		}
+	}
+
+	private DBStoreException duplicate(MemoryIndex i, List<Object> key) {
+		return new DBStoreException("duplicate key in unique index " + i.getName() + " of " + clazz.getName() + ": " + key);
+	}
+
+	interface IdFilter {
+		boolean test(String id);
+	}
+
+	/**
+	 * the ids of the objects that can match the query, from the index that narrows them down
+	 * most (in id order)
+	 *
+	 * @param query a normalized query
+	 * @return the ids, null if no index helps and all objects have to be looked at
+	 */
+	Collection<String> candidates(DBStoreQuery query) {
+		if (query == null) {
+			return null;
+		}
+
+		List<DBStoreQuery> conditions = new ArrayList<>();
+		if (query.getField() != null) {
+			conditions.add(query);
+		} else if (query.getOperator() == OPERATOR.AND) {
+			for (DBStoreQuery n : query.getNested()) {
+				if (n.getField() != null) {
+					conditions.add(n);
+				}
+			}
+		}
+		if (conditions.isEmpty()) {
+			return null;
+		}
+
+		Collection<String> best = byId(conditions);
+		for (MemoryIndex i : indexes) {
+			if (best != null && best.size() <= 1) {
+				break;
+			}
+			Collection<String> ids = lookup(i, conditions);
+			if (ids != null && (best == null || ids.size() < best.size())) {
+				best = ids;
+			}
+		}
+		for (MemoryIndex i : indexes) {
+			if (best != null) {
+				break;
+			}
+			best = range(i, conditions);
+		}
+		return best == null || best.size() <= 1 ? best : new TreeSet<>(best);
+	}
+
+	private Collection<String> byId(List<DBStoreQuery> conditions) {
+		for (DBStoreQuery c : conditions) {
+			if (!ID.equals(c.getField())) {
+				continue;
+			}
+			if (c.getComparator() == COMPARATOR.EQ && c.getValue() instanceof String) {
+				return Collections.singleton((String) c.getValue());
+			}
+			if (c.getComparator() == COMPARATOR.IN && c.getValue() instanceof Collection) {
+				Set<String> out = new HashSet<>();
+				for (Object v : (Collection<?>) c.getValue()) {
+					if (v instanceof String) {
+						out.add((String) v);
+					}
+				}
+				return out;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * equality on all fields of the index, or on (or in) its first
+	 */
+	private Collection<String> lookup(MemoryIndex i, List<DBStoreQuery> conditions) {
+		List<Object> key = new ArrayList<>(i.size());
+		for (int f = 0; f < i.size(); f++) {
+			DBStoreQuery c = equality(i, conditions, i.getField(f));
+			if (c == null) {
+				break;
+			}
+			key.add(i.key(c.getValue()));
+		}
+		if (key.size() == i.size()) {
+			return i.get(key);
+		}
+		if (key.size() > 0) {
+			return i.getFirst(key.get(0));
+		}
+
+		for (DBStoreQuery c : conditions) {
+			if (c.getField().equals(i.getField(0)) && c.getComparator() == COMPARATOR.IN && c.getValue() instanceof Collection) {
+				Set<String> out = new HashSet<>();
+				for (Object v : (Collection<?>) c.getValue()) {
+					if (isScalar(v)) {
+						out.addAll(i.getFirst(v));
+					} else {
+						return null;
+					}
+				}
+				return out;
+			}
+		}
+		return null;
+	}
+
+	private static DBStoreQuery equality(MemoryIndex i, List<DBStoreQuery> conditions, String field) {
+		for (DBStoreQuery c : conditions) {
+			if (!c.getField().equals(field) || !isScalar(c.getValue())) {
+				continue;
+			}
+			// a case-insensitive index has the values in lower case, it finds both
+			if (c.getComparator() == COMPARATOR.EQ || (c.getComparator() == COMPARATOR.EQ_IGNORE_CASE && i.isCaseInsensitive())) {
+				return c;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * ranges and prefixes of the first field of the index. not with a case-insensitive index,
+	 * its lower case values are in another order than the ones compared
+	 */
+	private Collection<String> range(MemoryIndex i, List<DBStoreQuery> conditions) {
+		if (i.isCaseInsensitive()) {
+			return null;
+		}
+
+		Object from = null;
+		boolean fromInclusive = true;
+		Object to = null;
+		boolean toInclusive = true;
+		boolean used = false;
+
+		for (DBStoreQuery c : conditions) {
+			if (!c.getField().equals(i.getField(0)) || !isScalar(c.getValue()) || c.getValue() == null) {
+				continue;
+			}
+			Object v = c.getValue();
+			switch (c.getComparator()) {
+				case GT:
+				case GTE:
+					from = v;
+					fromInclusive = c.getComparator() == COMPARATOR.GTE;
+					used = true;
+					break;
+				case LT:
+				case LTE:
+					to = v;
+					toInclusive = c.getComparator() == COMPARATOR.LTE;
+					used = true;
+					break;
+				case STARTS_WITH:
+					from = v;
+					fromInclusive = true;
+					to = v + "\uffff";
+					used = true;
+					break;
+				default:
+					break;
+			}
+		}
+		if (!used) {
+			return null;
+		}
+		if (from != null && to != null) {
+			int c = FieldValues.ORDER.compare(i.key(from), i.key(to));
+			if (c > 0 || (c == 0 && !(fromInclusive && toInclusive))) {
+				return Collections.emptySet();
+			}
+		}
+
+		Set<String> out = new HashSet<>();
+		for (Set<String> ids : i.range(from, fromInclusive, to, toInclusive).values()) {
+			out.addAll(ids);
+		}
+		return out;
+	}
+
+	/**
+	 * values the index has as they are, embedded objects and lists are not looked up
+	 */
+	private static boolean isScalar(Object v) {
+		return v == null || v instanceof String || v instanceof Number || v instanceof Boolean || v instanceof Date || v instanceof Enum || v instanceof Character;
+	}
+
+}
@@ -0,0 +1,134 @@
+package com.cinefms.dbstore.memory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+
+/**
+ * the changes of a transaction, kept apart from the tables until it commits. it reads the
+ * tables with its own changes on top, so it sees what it wrote and nobody else does.
+ *
+ * it is only used with the lock of its db held, so the tables do not change under it and the
+ * commit can not conflict with anything. writes outside of a transaction use one as well, so
+ * that saving a list of objects either saves all of them or none.
+ */
+final class MemoryTransaction {
+
+	/**
+	 * the tables as they are, for reads outside of a transaction
+	 */
+	static final MemoryTransaction COMMITTED = new MemoryTransaction(false);
+
+	// the objects written by id (null for deleted ones), per table
+	private final Map<MemoryTable, NavigableMap<String, Object>> writes = new LinkedHashMap<>();
+	private final boolean explicit;
+	private final List<Runnable> events = new ArrayList<>();
+
+	/**
+	 * @param explicit true for transactions of executeInTransaction, they notify listeners
+	 * right away (like a mongo transaction), the others once the changes are committed
+	 */
+	MemoryTransaction(boolean explicit) {
+		this.explicit = explicit;
+	}
+
+	Object get(MemoryTable table, String id) {
+		NavigableMap<String, Object> w = writes.get(table);
+		if (w != null && w.containsKey(id)) {
+			return w.get(id);
+		}
+		return table.get(id);
+	}
+
+	/**
+	 * the objects that can match the query, in id order
+	 *
+	 * @param query a normalized query
+	 */
+	Collection<Object> candidates(MemoryTable table, DBStoreQuery query) {
+		Collection<String> ids = table.candidates(query);
+		NavigableMap<String, Object> w = writes.get(table);
+
+		if (w == null || w.isEmpty()) {
+			if (ids == null) {
+				return table.all();
+			}
+			List<Object> out = new ArrayList<>(ids.size());
+			for (String id : ids) {
+				Object o = table.get(id);
+				if (o != null) {
+					out.add(o);
+				}
+			}
+			return out;
+		}
+
+		TreeMap<String, Object> out = new TreeMap<>();
+		for (String id : ids != null ? ids : table.ids()) {
+			Object o = w.containsKey(id) ? null : table.get(id);
+			if (o != null) {
+				out.put(id, o);
+			}
+		}
+		for (Map.Entry<String, Object> e : w.entrySet()) {
+			if (e.getValue() != null) {
+				out.put(e.getKey(), e.getValue());
+			}
+		}
+		return out.values();
+	}
+
+	void checkUnique(MemoryTable table, String id, Object object) {
+		NavigableMap<String, Object> w = writes.get(table);
+		if (w == null) {
+			table.checkUnique(id, object, other -> true, Collections.emptyList());
+		} else {
+			table.checkUnique(id, object, other -> !w.containsKey(other), w.entrySet());
+		}
+	}
+
+	/**
+	 * @param object the new version, null to delete it
+	 */
+	void put(MemoryTable table, String id, Object object) {
+		writes.computeIfAbsent(table, t -> new TreeMap<>()).put(id, object);
+	}
+
+	/**
+	 * notifies listeners, now or after the commit
+	 */
+	void fire(Runnable event) {
+		if (explicit) {
+			event.run();
+		} else {
+			events.add(event);
+		}
+	}
+
+	void commit() {
+		for (Map.Entry<MemoryTable, NavigableMap<String, Object>> t : writes.entrySet()) {
+			for (Map.Entry<String, Object> e : t.getValue().entrySet()) {
+				t.getKey().put(e.getKey(), e.getValue());
+			}
+		}
+		writes.clear();
+	}
+
+	/**
+	 * the events held back until the commit, to be fired once the lock is released
+	 */
+	void fireEvents() {
+		for (Runnable r : events) {
+			r.run();
+		}
+		events.clear();
+	}
+
+}
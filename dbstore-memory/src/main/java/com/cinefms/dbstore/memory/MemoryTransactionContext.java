@@ -0,0 +1,139 @@
+package com.cinefms.dbstore.memory;
+
+import com.cinefms.dbstore.api.DBStoreBinary;
+import com.cinefms.dbstore.api.DBStoreEntity;
+import com.cinefms.dbstore.api.DBStoreTransactionContext;
+import com.cinefms.dbstore.api.FieldUpdate;
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * the context of a {@link MemoryDataStore} transaction. the store's own methods are part of
+ * the transaction on the thread that runs it, so this only fixes the db.
+ */
+public class MemoryTransactionContext implements DBStoreTransactionContext {
+
+    private final MemoryDataStore dataStore;
+    private final String db;
+
+    public MemoryTransactionContext(MemoryDataStore dataStore, String db) {
+        this.dataStore = dataStore;
+        this.db = db;
+    }
+
+    @Override
+    public <T extends DBStoreEntity> T saveObject(T object) {
+        return dataStore.saveObject(db, object);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> T getObject(Class<T> clazz, String id) {
+        return dataStore.getObject(db, clazz, id);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> List<T> getObjects(Class<T> clazz, Collection<String> ids) {
+        return dataStore.getObjects(db, clazz, ids);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> Map<String, T> getObjectMap(Class<T> clazz, Collection<String> ids) {
+        return dataStore.getObjectMap(db, clazz, ids);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> boolean deleteObject(Class<T> clazz, String id) {
+        return dataStore.deleteObject(db, clazz, id);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> boolean deleteObject(T object) {
+        return dataStore.deleteObject(db, object);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> long deleteObjects(Class<T> type, DBStoreQuery query) {
+        return dataStore.deleteObjects(db, type, query);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> List<T> findObjects(Class<T> clazz, DBStoreQuery query) {
+        return dataStore.findObjects(db, clazz, query);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> Stream<T> streamObjects(Class<T> clazz, DBStoreQuery query) {
+        return dataStore.streamObjects(db, clazz, query);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> Stream<T> streamObjects(Class<T> clazz, DBStoreQuery query, int batchSize) {
+        return dataStore.streamObjects(db, clazz, query, batchSize);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> T findObject(Class<T> clazz, DBStoreQuery query) {
+        return dataStore.findObject(db, clazz, query);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> long countObjects(Class<T> clazz, DBStoreQuery query) {
+        return dataStore.countObjects(db, clazz, query);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> Stream<Object> distinctValues(Class<T> clazz, String field, DBStoreQuery query) {
+        return dataStore.distinctValues(db, clazz, field, query);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> boolean exists(Class<T> clazz, DBStoreQuery query) {
+        return dataStore.exists(db, clazz, query);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> List<T> saveObjects(List<T> objects) {
+        return dataStore.saveObjects(db, objects);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> T updateObjectFields(Class<T> clazz, String id, Map<String, Object> fields) {
+        return dataStore.updateObjectFields(db, clazz, id, fields);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> T updateObjectFields(Class<T> clazz, String id, List<FieldUpdate> fieldUpdates) {
+        return dataStore.updateObjectFields(db, clazz, id, fieldUpdates);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> T incrementField(Class<T> clazz, String id, String fieldName, Number increment) {
+        return dataStore.incrementField(db, clazz, id, fieldName, increment);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> T setField(Class<T> clazz, String id, String fieldName, Object value) {
+        return dataStore.setField(db, clazz, id, fieldName, value);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> T unsetField(Class<T> clazz, String id, String fieldName) {
+        return dataStore.unsetField(db, clazz, id, fieldName);
+    }
+
+    @Override
+    public void saveBinary(String bucket, DBStoreBinary binary) throws DBStoreException {
+        dataStore.saveBinary(db, bucket, binary);
+    }
+
+    @Override
+    public DBStoreBinary getBinary(String bucket, String id) throws DBStoreException {
+        return dataStore.getBinary(db, bucket, id);
+    }
+
+}
@@ -0,0 +1,371 @@
+package com.cinefms.dbstore.memory;
+
+import com.cinefms.dbstore.api.DBStoreBinary;
+import com.cinefms.dbstore.api.DBStorePage;
+import com.cinefms.dbstore.api.DBStoreTransactionContext;
+import com.cinefms.dbstore.api.FieldUpdate;
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.api.impl.BaseDBStoreEntity;
+import com.cinefms.dbstore.api.impl.BasicBinary;
+import com.cinefms.dbstore.api.impl.DBStoreListenerAdapter;
+import com.cinefms.dbstore.memory.entities.Movie;
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.DBStoreAggregation;
+import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
+import com.cinefms.dbstore.query.api.impl.BasicAggregation;
+import com.cinefms.dbstore.query.api.impl.BasicQuery;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class MemoryDataStoreTest {
+
+	private MemoryDataStore mds;
+
+	private Movie alien;
+	private Movie heat;
+	private Movie up;
+	private Movie jaws;
+
+	@Before
+	public void setup() {
+		mds = new MemoryDataStore();
+
+		alien = new Movie("a1", "Alien", "horror", 1979, "space", "classic");
+		heat = new Movie("h1", "Heat", "crime", 1995, "classic");
+		up = new Movie("u1", "Up", "animation", 2009);
+		jaws = new Movie("j1", "Jaws", "horror", 1975, "sea", "classic");
+		jaws.setPlot("a shark eats people");
+		mds.saveObjects(null, Arrays.asList(alien, heat, up, jaws));
+	}
+
+	private List<String> codes(DBStoreQuery query) {
+		return mds.findObjects(null, Movie.class, query).stream().map(Movie::getCode).collect(Collectors.toList());
+	}
+
+	@Test
+	public void itShouldStoreCopies() {
+		Assert.assertNotNull(alien.getId());
+		Movie loaded = mds.getObject(null, Movie.class, alien.getId());
+		Assert.assertEquals("Alien", loaded.getTitle());
+		Assert.assertNotSame(alien, loaded);
+
+		loaded.setTitle("changed");
+		alien.setTitle("changed too");
+		Assert.assertEquals("Alien", mds.getObject(null, Movie.class, alien.getId()).getTitle());
+
+		// generated ids increase, so without an order objects come in the order they were saved
+		Assert.assertEquals(Arrays.asList("a1", "h1", "u1", "j1"), codes(BasicQuery.createQuery()));
+
+		List<Movie> byId = mds.getObjects(null, Movie.class, Arrays.asList(up.getId(), "missing", alien.getId()));
+		Assert.assertEquals("u1", byId.get(0).getCode());
+		Assert.assertNull(byId.get(1));
+		Assert.assertEquals(Arrays.asList(up.getId(), alien.getId()), new ArrayList<>(mds.getObjectMap(null, Movie.class, Arrays.asList(up.getId(), "missing", alien.getId())).keySet()));
+		Assert.assertNull(mds.getObject("other", Movie.class, alien.getId()));
+	}
+
+	@Test
+	public void itShouldQueryThroughIndexes() {
+		Assert.assertEquals(Arrays.asList("a1", "j1"), codes(BasicQuery.createQuery().eq("genre", "horror")));
+		Assert.assertEquals(Collections.singletonList("j1"), codes(BasicQuery.createQuery().eq("genre", "horror").eq("year", 1975L)));
+		Assert.assertEquals(Arrays.asList("a1", "h1", "j1"), codes(BasicQuery.createQuery().eq("tags", "classic")));
+		Assert.assertEquals(Arrays.asList("u1", "h1"), codes(BasicQuery.createQuery().gte("year", 1990).order("year", false)));
+		Assert.assertEquals(Arrays.asList("j1", "a1"), codes(BasicQuery.createQuery().gt("year", 1970).lt("year", 1990).order("year")));
+		Assert.assertEquals(Collections.emptyList(), codes(BasicQuery.createQuery().gt("year", 1990).lt("year", 1980)));
+		Assert.assertEquals(Collections.singletonList("h1"), codes(BasicQuery.createQuery().startsWith("title", "He")));
+		Assert.assertEquals(Collections.emptyList(), codes(BasicQuery.createQuery().startsWith("title", "he")));
+		Assert.assertEquals(Collections.singletonList("u1"), codes(BasicQuery.createQuery().eqIgnoreCase("title", "UP")));
+		Assert.assertEquals(Arrays.asList("a1", "u1"), codes(BasicQuery.createQuery().in("code", "u1", "a1", "x")));
+		Assert.assertEquals(Collections.singletonList("h1"), codes(BasicQuery.createQuery().in("_id", heat.getId(), "x")));
+		Assert.assertEquals(Collections.singletonList("j1"), codes(BasicQuery.createQuery().text("shark")));
+
+		Assert.assertEquals(3, mds.countObjects(null, Movie.class, BasicQuery.createQuery().eq("tags", "classic")));
+		Assert.assertEquals(2, mds.countObjects(null, Movie.class, BasicQuery.createQuery().eq("tags", "classic"), 2));
+		Assert.assertEquals(4, mds.countObjects(null, Movie.class, null));
+		Assert.assertEquals("u1", mds.findObject(null, Movie.class, BasicQuery.createQuery().order("year", false)).getCode());
+
+		// the indexes follow changes
+		alien.setGenre("scifi");
+		mds.saveObject(null, alien);
+		Assert.assertEquals(Collections.singletonList("j1"), codes(BasicQuery.createQuery().eq("genre", "horror")));
+		Assert.assertEquals(Collections.singletonList("a1"), codes(BasicQuery.createQuery().eq("genre", "scifi").eq("year", 1979)));
+		mds.deleteObject(null, jaws);
+		Assert.assertEquals(Collections.emptyList(), codes(BasicQuery.createQuery().eq("genre", "horror")));
+		Assert.assertEquals(2, mds.deleteObjects(null, Movie.class, BasicQuery.createQuery().eq("tags", "classic")));
+		Assert.assertEquals(Collections.singletonList("u1"), codes(BasicQuery.createQuery()));
+	}
+
+	public static class Note extends BaseDBStoreEntity {
+	}
+
+	@Test
+	public void itShouldNotNarrowRangesByACaseInsensitiveIndex() {
+		mds.saveObject(null, new Movie("x1", "abc", "drama", 2001));
+
+		Assert.assertEquals(Arrays.asList("h1", "j1", "u1", "x1"), codes(BasicQuery.createQuery().gt("title", "B").order("code")));
+		Assert.assertEquals(Arrays.asList("a1"), codes(BasicQuery.createQuery().startsWith("title", "A")));
+		Assert.assertEquals(Arrays.asList("x1"), codes(BasicQuery.createQuery().startsWith("title", "a")));
+		Assert.assertEquals(Arrays.asList("x1"), codes(BasicQuery.createQuery().eqIgnoreCase("title", "ABC")));
+	}
+
+	@Test
+	public void itShouldResolveFieldsByTheirJsonNames() {
+		mds.setField(null, Movie.class, up.getId(), "original_title", "Oben");
+		Assert.assertEquals("Oben", mds.getObject(null, Movie.class, up.getId()).getOriginalTitle());
+
+		Assert.assertEquals(Collections.singletonList("u1"), codes(BasicQuery.createQuery().eq("original_title", "Oben")));
+		Assert.assertEquals(Collections.emptyList(), codes(BasicQuery.createQuery().eq("originalTitle", "Oben")));
+		Assert.assertEquals("u1", codes(BasicQuery.createQuery().order("original_title", false)).get(0));
+	}
+
+	@Test
+	public void itShouldFailTextSearchesWithoutATextIndex() {
+		mds.saveObject(null, new Note());
+		try {
+			mds.findObjects(null, Note.class, BasicQuery.createQuery().text("shark"));
+			Assert.fail();
+		} catch (DBStoreException e) {
+			Assert.assertTrue(e.getCause() instanceof MalformedQueryException);
+		}
+	}
+
+	@Test
+	public void itShouldEnforceUniqueIndexes() {
+		try {
+			mds.saveObject(null, new Movie("a1", "Alien 2", "horror", 1986));
+			Assert.fail();
+		} catch (DBStoreException e) {
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("codeIdx"));
+		}
+
+		// all or nothing
+		try {
+			mds.saveObjects(null, Arrays.asList(new Movie("x1", "X", "drama", 2000), new Movie("x1", "Y", "drama", 2001)));
+			Assert.fail();
+		} catch (DBStoreException e) {
+			// duplicate within the list
+		}
+		Assert.assertEquals(4, mds.countObjects(null, Movie.class, null));
+
+		// the object itself and a deleted one do not count
+		alien.setTitle("Alien (1979)");
+		mds.saveObject(null, alien);
+		mds.deleteObject(null, heat);
+		mds.saveObject(null, new Movie("h1", "Heat 2", "crime", 2026));
+		Assert.assertEquals(Collections.singletonList("Heat 2"), mds.findObjects(null, Movie.class, BasicQuery.createQuery().eq("code", "h1")).stream().map(Movie::getTitle).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void itShouldNotifyListeners() {
+		List<String> events = new ArrayList<>();
+		mds.addListener(new DBStoreListenerAdapter<Movie>() {
+
+			@Override
+			public void beforeSave(String db, Movie o) {
+				events.add("beforeSave " + o.getCode() + " " + (o.getId() != null));
+			}
+
+			@Override
+			public void created(String db, Movie o) {
+				events.add("created " + o.getCode());
+			}
+
+			@Override
+			public void updated(String db, Movie oldEntity, Movie newEntity) {
+				events.add("updated " + oldEntity.getTitle() + " " + newEntity.getTitle());
+			}
+
+			@Override
+			public void beforeDelete(String db, Movie o) {
+				events.add("beforeDelete " + o.getCode());
+			}
+
+			@Override
+			public void deleted(String db, Movie o) {
+				events.add("deleted " + o.getCode());
+			}
+		});
+
+		mds.saveObject(null, new Movie("n1", "New", "drama", 2020));
+		heat.setTitle("Heat!");
+		mds.saveObject(null, heat);
+		mds.setField(null, Movie.class, up.getId(), "title", "Up!");
+		mds.deleteObject(null, Movie.class, jaws.getId());
+
+		Assert.assertEquals(Arrays.asList(
+				"beforeSave n1 false", "created n1",
+				"beforeSave h1 true", "updated Heat Heat!",
+				"beforeSave u1 true", "updated Up Up!",
+				"beforeDelete j1", "deleted j1"), events);
+	}
+
+	@Test
+	public void itShouldApplyFieldUpdates() {
+		String id = up.getId();
+		Assert.assertEquals(Integer.valueOf(1), mds.incrementField(null, Movie.class, id, "views", 1).getViews());
+		Assert.assertEquals(Integer.valueOf(6), mds.incrementField(null, Movie.class, id, "views", 5).getViews());
+
+		Movie updated = mds.updateObjectFields(null, Movie.class, id, Arrays.asList(
+				FieldUpdate.push("tags", "pixar"),
+				FieldUpdate.addToSet("tags", "pixar"),
+				FieldUpdate.addToSet("tags", "balloons"),
+				FieldUpdate.max("year", 2000),
+				FieldUpdate.min("views", 3),
+				FieldUpdate.rename("title", "plot")));
+		Assert.assertEquals(Arrays.asList("pixar", "balloons"), updated.getTags());
+		Assert.assertEquals(2009, updated.getYear());
+		Assert.assertEquals(Integer.valueOf(3), updated.getViews());
+		Assert.assertNull(updated.getTitle());
+		Assert.assertEquals("Up", updated.getPlot());
+
+		updated = mds.updateObjectFields(null, Movie.class, id, Arrays.asList(FieldUpdate.pull("tags", "pixar"), FieldUpdate.unset("views")));
+		Assert.assertEquals(Collections.singletonList("balloons"), updated.getTags());
+		Assert.assertNull(updated.getViews());
+		Assert.assertEquals(Collections.singletonList("u1"), codes(BasicQuery.createQuery().eq("tags", "balloons")));
+
+		Assert.assertEquals("Heat", mds.updateObjectFields(null, Movie.class, heat.getId(), Collections.singletonMap("genre", "thriller")).getTitle());
+		Assert.assertNull(mds.setField(null, Movie.class, "missing", "title", "x"));
+		try {
+			mds.setField(null, Movie.class, heat.getId(), "code", "a1");
+			Assert.fail();
+		} catch (DBStoreException e) {
+			// unique
+		}
+		Assert.assertEquals("h1", mds.getObject(null, Movie.class, heat.getId()).getCode());
+	}
+
+	@Test
+	public void itShouldPage() {
+		List<String> seen = new ArrayList<>();
+		DBStoreQuery query = BasicQuery.createQuery().order("genre");
+		DBStorePage<Movie> page = mds.findPage(null, Movie.class, query, 3);
+		page.getItems().forEach(m -> seen.add(m.getCode()));
+		Assert.assertTrue(page.hasMore());
+
+		page = mds.findPage(null, Movie.class, query.after(page.getContinuation()), 3);
+		page.getItems().forEach(m -> seen.add(m.getCode()));
+		Assert.assertFalse(page.hasMore());
+
+		Assert.assertEquals(Arrays.asList("u1", "h1", "a1", "j1"), seen);
+	}
+
+	@Test
+	public void itShouldCommitOrRollBackTransactions() throws Exception {
+		String result = mds.executeInTransaction(null, (DBStoreTransactionContext context) -> {
+			context.saveObject(new Movie("t1", "Tx", "drama", 2001));
+			context.deleteObject(Movie.class, up.getId());
+			Assert.assertEquals(4, context.countObjects(Movie.class, BasicQuery.createQuery()));
+			Assert.assertEquals("t1", context.findObject(Movie.class, BasicQuery.createQuery().eq("genre", "drama")).getCode());
+			return "done";
+		});
+		Assert.assertEquals("done", result);
+		Assert.assertEquals(Arrays.asList("a1", "h1", "j1", "t1"), codes(BasicQuery.createQuery().order("code")));
+
+		try {
+			mds.executeInTransaction(null, () -> {
+				mds.saveObject(null, new Movie("t2", "Tx 2", "drama", 2002));
+				mds.setField(null, Movie.class, alien.getId(), "title", "gone");
+				throw new IllegalStateException("rollback");
+			});
+			Assert.fail();
+		} catch (DBStoreException e) {
+			Assert.assertEquals("rollback", e.getCause().getMessage());
+		}
+		Assert.assertEquals(4, mds.countObjects(null, Movie.class, null));
+		Assert.assertEquals("Alien", mds.getObject(null, Movie.class, alien.getId()).getTitle());
+
+		// nobody else sees a transaction before it commits
+		CountDownLatch written = new CountDownLatch(1);
+		CountDownLatch read = new CountDownLatch(1);
+		CompletableFuture<Void> tx = CompletableFuture.runAsync(() -> mds.executeInTransaction("other", () -> {
+			mds.saveObject("other", new Movie("o1", "Other", "drama", 2003));
+			written.countDown();
+			try {
+				read.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}));
+		Assert.assertTrue(written.await(5, TimeUnit.SECONDS));
+		Assert.assertEquals(0, mds.countObjects("other", Movie.class, null));
+		read.countDown();
+		tx.get(5, TimeUnit.SECONDS);
+		Assert.assertEquals(1, mds.countObjects("other", Movie.class, null));
+	}
+
+	@Test
+	public void itShouldFindDistinctValuesAndExistence() {
+		try (Stream<Object> tags = mds.distinctValues(null, Movie.class, "tags", BasicQuery.createQuery().eq("genre", "horror"))) {
+			Assert.assertEquals(Arrays.asList("space", "classic", "sea"), tags.collect(Collectors.toList()));
+		}
+		try (Stream<Object> years = mds.distinctValues(null, Movie.class, "year", null)) {
+			Assert.assertEquals(4, years.count());
+		}
+		Assert.assertEquals(0, mds.distinctValues(null, Movie.class, "plot", BasicQuery.createQuery().eq("genre", "crime")).count());
+
+		Assert.assertTrue(mds.exists(null, Movie.class, BasicQuery.createQuery().eq("genre", "horror")));
+		Assert.assertTrue(mds.exists(null, Movie.class, null));
+		Assert.assertFalse(mds.exists(null, Movie.class, BasicQuery.createQuery().eq("genre", "western")));
+		Assert.assertFalse(mds.exists("other", Movie.class, null));
+	}
+
+	public static class GenreCount {
+
+		public String genre;
+		public long movies;
+		public int latest;
+	}
+
+	@Test
+	public void itShouldAggregate() {
+		DBStoreAggregation byGenre = BasicAggregation.createAggregation(BasicQuery.createQuery().gte("year", 1975))
+				.groupBy("genre")
+				.count("movies")
+				.max("year", "latest")
+				.order("movies", false)
+				.order("genre");
+
+		try (Stream<Map<String, Object>> rows = mds.aggregate(null, Movie.class, byGenre)) {
+			List<Map<String, Object>> all = rows.collect(Collectors.toList());
+			Assert.assertEquals(3, all.size());
+			Assert.assertEquals("horror", all.get(0).get("genre"));
+			Assert.assertEquals(2L, all.get(0).get("movies"));
+			Assert.assertEquals(1979, all.get(0).get("latest"));
+		}
+
+		try (Stream<GenreCount> rows = mds.aggregate(null, Movie.class, byGenre.having(BasicQuery.createQuery().eq("movies", 1)), GenreCount.class)) {
+			List<GenreCount> all = rows.collect(Collectors.toList());
+			Assert.assertEquals(Arrays.asList("animation", "crime"), all.stream().map(r -> r.genre).collect(Collectors.toList()));
+			Assert.assertEquals(2009, all.get(0).latest);
+		}
+
+		Assert.assertEquals(0, mds.aggregate(null, Movie.class, byGenre.match(BasicQuery.createQuery().gt("year", 2020))).count());
+	}
+
+	@Test
+	public void itShouldStoreBinaries() throws Exception {
+		byte[] data = "binary".getBytes(StandardCharsets.UTF_8);
+		mds.saveBinary(null, "files", new BasicBinary("b1", data, Collections.singletonMap("type", "text")));
+
+		DBStoreBinary loaded = mds.getBinary(null, "files", "b1");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		loaded.writeTo(out);
+		Assert.assertArrayEquals(data, out.toByteArray());
+		Assert.assertEquals("text", loaded.getMetaData().get("type"));
+		Assert.assertNull(mds.getBinary(null, "files", "b2"));
+	}
+
+}
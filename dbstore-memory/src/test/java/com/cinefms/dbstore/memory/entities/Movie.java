@@ -0,0 +1,108 @@
+package com.cinefms.dbstore.memory.entities;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.cinefms.dbstore.api.annotations.Index;
+import com.cinefms.dbstore.api.annotations.Indexes;
+import com.cinefms.dbstore.api.impl.BaseDBStoreEntity;
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+@Indexes({
+		@Index(name = "codeIdx", fields = "code", unique = true),
+		@Index(name = "yearIdx", fields = "year"),
+		@Index(name = "genreYearIdx", fields = {"genre", "year"}),
+		@Index(name = "titleIdx", fields = "title", caseInsensitive = true),
+		@Index(name = "tagsIdx", fields = "tags"),
+		@Index(name = "textIdx", fields = {"title", "plot"}, text = true)
+})
+public class Movie extends BaseDBStoreEntity {
+
+	private String code;
+	private String title;
+	private String genre;
+	private String plot;
+	private int year;
+	private Integer views;
+	@JsonProperty("original_title")
+	private String originalTitle;
+	private List<String> tags = new ArrayList<>();
+
+	public Movie() {
+	}
+
+	public Movie(String code, String title, String genre, int year, String... tags) {
+		this.code = code;
+		this.title = title;
+		this.genre = genre;
+		this.year = year;
+		for (String t : tags) {
+			this.tags.add(t);
+		}
+	}
+
+	public String getCode() {
+		return code;
+	}
+
+	public void setCode(String code) {
+		this.code = code;
+	}
+
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	public String getGenre() {
+		return genre;
+	}
+
+	public void setGenre(String genre) {
+		this.genre = genre;
+	}
+
+	public String getPlot() {
+		return plot;
+	}
+
+	public void setPlot(String plot) {
+		this.plot = plot;
+	}
+
+	public int getYear() {
+		return year;
+	}
+
+	public void setYear(int year) {
+		this.year = year;
+	}
+
+	public Integer getViews() {
+		return views;
+	}
+
+	public void setViews(Integer views) {
+		this.views = views;
+	}
+
+	public String getOriginalTitle() {
+		return originalTitle;
+	}
+
+	public void setOriginalTitle(String originalTitle) {
+		this.originalTitle = originalTitle;
+	}
+
+	public List<String> getTags() {
+		return tags;
+	}
+
+	public void setTags(List<String> tags) {
+		this.tags = tags;
+	}
+
+}
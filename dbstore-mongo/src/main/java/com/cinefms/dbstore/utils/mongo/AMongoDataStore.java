@@ -3,54 +3,103 @@ package com.cinefms.dbstore.utils.mongo;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonValue;
 import org.bson.Document;
 import org.bson.UuidRepresentation;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.conversions.Bson;
-import org.bson.types.ObjectId;
 import org.mongojack.JacksonMongoCollection;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.beans.factory.annotation.Autowired;
 
 import com.cinefms.dbstore.api.DBStoreBinary;
 import com.cinefms.dbstore.api.impl.BasicBinary;
 import com.cinefms.dbstore.api.DBStoreEntity;
 import com.cinefms.dbstore.api.DBStoreListener;
+import com.cinefms.dbstore.api.DBStorePage;
 import com.cinefms.dbstore.api.DataStore;
 import com.cinefms.dbstore.api.DBStoreTransactionContext;
 import com.cinefms.dbstore.api.FieldUpdate;
-import com.cinefms.dbstore.api.UpdateOperation;
 import com.cinefms.dbstore.api.annotations.Index;
 import com.cinefms.dbstore.api.annotations.Indexes;
 import com.cinefms.dbstore.api.annotations.Write;
 import com.cinefms.dbstore.api.annotations.WriteMode;
 import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.api.references.ReferenceLoader;
+import com.cinefms.dbstore.api.references.ReferenceProperty;
+import com.cinefms.dbstore.api.references.References;
 import com.cinefms.dbstore.api.impl.BasicBinary;
 import com.cinefms.dbstore.api.impl.IOUtils;
+import com.cinefms.dbstore.query.api.DBStoreAggregation;
 import com.cinefms.dbstore.query.api.DBStoreQuery;
 import com.cinefms.dbstore.query.api.impl.BasicQuery;
+import com.cinefms.dbstore.query.api.impl.OrderBy;
+import com.cinefms.dbstore.query.mongo.PreparedQuery;
 import com.cinefms.dbstore.query.mongo.QueryMongojackTranslator;
 import com.cinefms.dbstore.utils.mongo.util.CollectionNamingStrategy;
+import com.cinefms.dbstore.utils.mongo.util.EntityCodecs;
+import com.cinefms.dbstore.utils.mongo.util.EntityScanner;
+import com.cinefms.dbstore.utils.mongo.util.FieldUpdates;
+import com.cinefms.dbstore.utils.mongo.util.IndexModels;
+import com.cinefms.dbstore.utils.mongo.util.ListenerRegistry;
+import com.cinefms.dbstore.utils.mongo.util.OnceRegistry;
 import com.cinefms.dbstore.utils.mongo.util.SimpleCollectionNamingStrategy;
+import com.cinefms.dbstore.utils.mongo.util.SingleFlight;
+import com.mongodb.ExplainVerbosity;
 import com.mongodb.WriteConcern;
+import com.mongodb.client.AggregateIterable;
 import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.gridfs.GridFSBucket;
 import com.mongodb.client.gridfs.GridFSBuckets;
 import com.mongodb.client.gridfs.model.GridFSFile;
 import com.mongodb.client.gridfs.model.GridFSUploadOptions;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.CountOptions;
 import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.IndexOptions;
-import com.mongodb.client.model.UpdateOptions;
-import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.TransactionBody;
 import com.mongodb.client.MongoClient;
@@ -58,20 +107,52 @@ import com.mongodb.client.gridfs.GridFSDownloadStream;
 import com.mongodb.client.result.DeleteResult;
 import java.util.HashMap;
 
-public abstract class AMongoDataStore implements DataStore {
+public abstract class AMongoDataStore implements DataStore, DisposableBean, SmartInitializingSingleton {
 
 	protected static final Log log = LogFactory.getLog(AMongoDataStore.class);
-	private final Map<String, JacksonMongoCollection<?>> collections = new HashMap<>();
-	private final Map<String, List<DBStoreListener<?>>> listenerMap = new HashMap<>();
+	private final OnceRegistry<String, JacksonMongoCollection<?>> collections = new OnceRegistry<>();
+	private final OnceRegistry<String, GridFSBucket> buckets = new OnceRegistry<>();
+	private final ListenerRegistry listeners = new ListenerRegistry();
 	private final QueryMongojackTranslator fqtl = new QueryMongojackTranslator();
+	// decodes rows and values the way the driver hands out documents
+	private static final DocumentCodec DOCUMENTS = new DocumentCodec();
+
+	// how often a field update with listeners is tried when the object keeps changing under it
+	static final int UPDATE_ATTEMPTS = 10;
 
-	@Autowired(required = false)
-	private List<DBStoreListener<?>> listeners = new ArrayList<>();
 	private CollectionNamingStrategy collectionNamingStrategy = new SimpleCollectionNamingStrategy();
 
-	
-	private Map<String, GridFSBucket> buckets = new HashMap<String, GridFSBucket>();
-	
+	private SaveMode saveMode = SaveMode.REPLACE;
+	private int saveBatchSize = 1000;
+	private int deleteBatchSize = 1000;
+	private boolean orderedWrites = true;
+	private int streamBatchSize = 0;
+
+	private volatile QueryPlanGuard queryPlanGuard;
+	private boolean distinctByAggregation = false;
+	private boolean coalesceReads = false;
+	private final SingleFlight<String, Object> reads = new SingleFlight<>();
+
+	private boolean estimateUnfilteredCounts = true;
+	private long countCacheTtl = 0;
+	private int countCacheSize = 1000;
+	private final Map<String, CachedCount> counts = new ConcurrentHashMap<>();
+
+	private int multiGetBatchSize = 100;
+	private int multiGetThreads = 4;
+	private volatile ExecutorService multiGetExecutor;
+
+	private int writeBehindCapacity = 10000;
+	private int writeBehindBatchSize = 500;
+	private long writeBehindFlushInterval = 1000;
+	private long writeBehindPutTimeout = 30000;
+	private int writeBehindMaxAttempts = 10;
+	private volatile WriteBehindBuffer writeBehind;
+
+	private List<String> warmUpPackages = new ArrayList<>();
+	private List<String> warmUpDbs = Collections.singletonList(null);
+	private int warmUpThreads = 4;
+
 	public abstract MongoDatabase getDB(String db);
 	
 	public abstract MongoClient getMongoClient();
@@ -81,15 +162,16 @@ public abstract class AMongoDataStore implements DataStore {
 		MongoCollection<T> dbc = db.getCollection(collectionName, clazz);
 
 		if (clazz.getAnnotation(Indexes.class) != null) {
+			List<IndexModel> indexes = new ArrayList<>();
 			for (Index i : clazz.getAnnotation(Indexes.class).value()) {
 
-				Bson idx = com.mongodb.client.model.Indexes.ascending(i.fields());
-
-				IndexOptions options = new IndexOptions();
-				options.unique(i.unique());
-
-				log.debug(" === CREATING INDEX: " + idx + " ==== ");
-				dbc.createIndex(idx, options);
+				IndexModel idx = IndexModels.of(i, fqtl.caseInsensitiveCollation());
+				log.debug(" === CREATING INDEX: " + idx.getKeys() + " ==== ");
+				indexes.add(idx);
+			}
+			// one round trip for all indexes of the collection
+			if (!indexes.isEmpty()) {
+				dbc.createIndexes(indexes);
 			}
 		}
 
@@ -104,9 +186,7 @@ public abstract class AMongoDataStore implements DataStore {
 		log.debug(" == Collection: " + collectionName);
 
 		try {
-			JacksonMongoCollection<T> out = (JacksonMongoCollection<T>) collections.get(key);
-
-			if (out == null) {
+			return (JacksonMongoCollection<T>) collections.get(key, k -> {
 				log.debug("============================================================");
 				log.debug("==");
 				log.debug("== DB COLLECTION NOT CREATED .... (creating...) ");
@@ -117,16 +197,14 @@ public abstract class AMongoDataStore implements DataStore {
 				log.debug("==     DB IS: " + d);
 				MongoCollection<T> dbc = initializeCollection(d, clazz);
 				log.debug("==    DBC IS: " + dbc);
-				out = JacksonMongoCollection.builder().build(dbc, clazz, UuidRepresentation.JAVA_LEGACY);
+				JacksonMongoCollection<T> out = JacksonMongoCollection.builder().build(dbc, clazz, UuidRepresentation.JAVA_LEGACY);
 				if (clazz.getAnnotation(Write.class) != null && clazz.getAnnotation(Write.class).value() == WriteMode.FAST) {
-					out.withWriteConcern(WriteConcern.UNACKNOWLEDGED);
+					out = out.withWriteConcern(WriteConcern.UNACKNOWLEDGED);
 				}
-				collections.put(key, out);
 				log.debug("==");
 				log.debug("============================================================");
-			}
-
-			return out;
+				return out;
+			});
 
 		} catch (Exception e) {
 			throw new RuntimeException("Unable to obtain collection '" + collectionName + "'", e);
@@ -134,58 +212,500 @@ public abstract class AMongoDataStore implements DataStore {
 	}
 
 	private List<DBStoreListener<?>> getListeners(Class<? extends DBStoreEntity> clazz) {
-		List<DBStoreListener<?>> out = listenerMap.get(clazz.getCanonicalName());
+		return listeners.getListeners(clazz);
+	}
 
-		if (out == null) {
-			out = new ArrayList<>();
+	/**
+	 * runs the read, or with {@link #isCoalesceReads()} waits for an identical one that is already
+	 * running and takes its result (passed through share). only for reads outside of sessions.
+	 */
+	@SuppressWarnings("unchecked")
+	private <V> V coalesce(String key, Supplier<V> read, UnaryOperator<V> share) {
+		if (!coalesceReads) {
+			return read.get();
+		}
+		return (V) reads.execute(key, read::get, v -> share.apply((V) v));
+	}
+
+	/**
+	 * identifies a read by what is sent to mongo: the namespace and the translated filter,
+	 * projection, order and range
+	 */
+	private <T> String readKey(String kind, JacksonMongoCollection<T> coll, Translated query) {
+		return readKey(kind, coll, query.filter, query.projection, query.orderBy, query.collation, query.start, query.max);
+	}
 
-			if (listeners != null) {
-				for (DBStoreListener<?> l : listeners) {
-					if (l.supports(clazz)) {
-						log.debug("listeners on " + clazz + ": " + l.getClass() + " supports");
-						out.add(l);
+	private <T> String readKey(String kind, JacksonMongoCollection<T> coll, PreparedQuery query, Bson filter) {
+		return readKey(kind, coll, filter, query.getProjection(), query.getOrderBy(), query.getCollation(), query.getStart(), query.getMax());
+	}
 
-					} else {
-						log.debug("listeners on " + clazz + ": " + l.getClass() + " does not support");
-					}
-				}
+	private <T> String readKey(String kind, JacksonMongoCollection<T> coll, Bson filter, Bson projection, Bson orderBy, Collation collation, int start, int max) {
+		CodecRegistry registry = coll.getCodecRegistry();
+		StringBuilder out = new StringBuilder(kind)
+				.append('|').append(coll.getNamespace().getFullName())
+				.append('|').append(coll.getDocumentClass().getName());
+
+		for (Bson b : new Bson[] { filter, projection, orderBy }) {
+			out.append('|').append(b == null ? "" : b.toBsonDocument(BsonDocument.class, registry).toJson());
+		}
+		if (collation != null) {
+			out.append('|').append(collation.asDocument().toJson());
+		}
+		return out.append('|').append(start).append('|').append(max).toString();
+	}
+
+	/**
+	 * a copy through the collection's codec, so callers sharing a read do not share instances
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> T copy(JacksonMongoCollection<T> coll, T object) {
+		return EntityCodecs.fromBsonDocument(coll.getCodecRegistry(), (Class<T>) object.getClass(), toBsonDocument(coll, object));
+	}
+
+	private <T> List<T> copy(JacksonMongoCollection<T> coll, List<T> objects) {
+		List<T> out = new ArrayList<>(objects.size());
+		for (T o : objects) {
+			out.add(copy(coll, o));
+		}
+		return out;
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T findObject(String db, Class<T> clazz, DBStoreQuery q) {
+		DBStoreQuery query = fqtl.normalize(q);
+		if (fqtl.isUnsatisfiable(query)) {
+			return null;
+		}
+		guard(db, clazz, query);
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		Translated t = translated(query);
+		return coalesce(coalesceReads ? readKey("findOne", coll, t) : null,
+				() -> find(coll, t.filter, t.projection, t.orderBy, t.collation, 0, 1, null).first(), o -> copy(coll, o));
+	}
+
+	@Override
+	public <T extends DBStoreEntity> long countObjects(String db, Class<T> clazz, DBStoreQuery query) {
+		return countObjects(db, clazz, query, 0);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> long countObjects(String db, Class<T> clazz, DBStoreQuery q, long limit) {
+		DBStoreQuery query = fqtl.normalize(q);
+		if (fqtl.isUnsatisfiable(query)) {
+			return 0;
+		}
+		guard(db, clazz, query);
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		Translated t = translated(query);
+		String key = coalesceReads || countCacheTtl > 0 ? readKey("count:" + limit, coll, t) : null;
+		return cachedCount(key, () -> count(coll, query, t, limit));
+	}
+
+	/**
+	 * the count from the count cache, or counted (coalesced with identical counts running)
+	 */
+	private long cachedCount(String key, Supplier<Long> count) {
+		if (countCacheTtl > 0) {
+			CachedCount cached = counts.get(key);
+			if (cached != null && System.nanoTime() < cached.expires) {
+				return cached.count;
 			}
+		}
 
-			listenerMap.put(clazz.getCanonicalName(), out);
+		long out = coalesce(coalesceReads ? key : null, count, c -> c);
+
+		if (countCacheTtl > 0) {
+			if (counts.size() >= countCacheSize) {
+				// rarely needed, the distinct count queries of an application are usually few
+				counts.clear();
+			}
+			counts.put(key, new CachedCount(out, System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(countCacheTtl)));
+		}
+		return out;
+	}
+
+	/**
+	 * without conditions the count comes from the collection's metadata instead of a scan
+	 */
+	private <T> long count(JacksonMongoCollection<T> coll, DBStoreQuery query, Translated t, long limit) {
+		if (estimateUnfilteredCounts && fqtl.isUnfiltered(query)) {
+			long out = coll.estimatedDocumentCount();
+			return limit > 0 ? Math.min(out, limit) : out;
 		}
 
-		log.debug("listeners on " + clazz + ": " + out.size());
+		CountOptions options = new CountOptions().collation(t.collation);
+		if (limit > 0) {
+			options.limit((int) Math.min(limit, Integer.MAX_VALUE));
+		}
+		return coll.countDocuments(t.filter, options);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> List<T> findObjects(String db, Class<T> clazz, DBStoreQuery q) {
+		DBStoreQuery query = fqtl.normalize(q);
+		if (fqtl.isUnsatisfiable(query)) {
+			return new ArrayList<>();
+		}
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		Translated t = translated(query);
+		return coalesce(coalesceReads ? readKey("find", coll, t) : null, () -> findObjects(db, clazz, query, t, null), l -> copy(coll, l));
+	}
+
+	private <T extends DBStoreEntity> List<T> findObjects(String db, Class<T> clazz, DBStoreQuery query, ClientSession session) {
+		return findObjects(db, clazz, query, translated(query), session);
+	}
+
+	private <T extends DBStoreEntity> List<T> findObjects(String db, Class<T> clazz, DBStoreQuery query, Translated t, ClientSession session) {
+		List<T> out = new ArrayList<>();
+		find(db, clazz, query, t, session).forEach(out::add);
+
+		log.debug("-- db query: found " + out.size() + " matches for query (" + clazz.getCanonicalName() + ":" + query + ")");
+
+		return out;
+	}
+
+	/**
+	 * translates the query once, for running it with {@link #findObjects(String, Class, PreparedQuery, Map)}
+	 * and co. with different values for its {@link com.cinefms.dbstore.query.api.impl.QueryParameter}s.
+	 * keep the result and reuse it, preparing a query for every call saves nothing. the runs are
+	 * coalesced, short-circuited and guarded like those of unprepared queries.
+	 */
+	public PreparedQuery prepare(DBStoreQuery shape) {
+		return fqtl.prepare(shape);
+	}
+
+	public <T extends DBStoreEntity> List<T> findObjects(String db, Class<T> clazz, PreparedQuery query, Map<String, ?> values) {
+		Bson filter = query.bind(values);
+		if (query.isUnsatisfiable()) {
+			return new ArrayList<>();
+		}
+		guard(db, clazz, query, filter);
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		return coalesce(coalesceReads ? readKey("find", coll, query, filter) : null, () -> {
+			List<T> out = new ArrayList<>();
+			find(coll, filter, query.getProjection(), query.getOrderBy(), query.getCollation(), query.getStart(), query.getMax(), null).forEach(out::add);
+			return out;
+		}, l -> copy(coll, l));
+	}
+
+	public <T extends DBStoreEntity> T findObject(String db, Class<T> clazz, PreparedQuery query, Map<String, ?> values) {
+		Bson filter = query.bind(values);
+		if (query.isUnsatisfiable()) {
+			return null;
+		}
+		guard(db, clazz, query, filter);
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		return coalesce(coalesceReads ? readKey("findOne", coll, query, filter) : null,
+				() -> find(coll, filter, query.getProjection(), query.getOrderBy(), query.getCollation(), 0, 1, null).first(), o -> copy(coll, o));
+	}
+
+	public <T extends DBStoreEntity> long countObjects(String db, Class<T> clazz, PreparedQuery query, Map<String, ?> values) {
+		Bson filter = query.bind(values);
+		if (query.isUnsatisfiable()) {
+			return 0;
+		}
+		guard(db, clazz, query, filter);
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		String key = coalesceReads || countCacheTtl > 0 ? readKey("count:0", coll, query, filter) : null;
+		return cachedCount(key, () -> coll.countDocuments(filter, new CountOptions().collation(query.getCollation())));
+	}
+
+	/**
+	 * findObjects with the {@link com.cinefms.dbstore.api.annotations.Reference}s resolved in the
+	 * same round trip: the referenced collections are joined with one $lookup each instead of
+	 * being loaded afterwards (see {@link ReferenceLoader} for that).
+	 */
+	public <T extends DBStoreEntity> List<T> findObjectsWithReferences(String db, Class<T> clazz, DBStoreQuery q) {
+		DBStoreQuery query = fqtl.normalize(q);
+		if (fqtl.isUnsatisfiable(query)) {
+			return new ArrayList<>();
+		}
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		List<ReferenceProperty> refs = ReferenceProperty.of(clazz);
+
+		List<Bson> pipeline = new ArrayList<>();
+		// without the collation, the $lookups would join ids ignoring case
+		pipeline.add(Aggregates.match(fqtl.translateWithoutCollation(query)));
+		Bson sort = fqtl.translateOrderBy(query);
+		if (sort != null) {
+			pipeline.add(Aggregates.sort(sort));
+		}
+		if (query != null && query.getStart() > 0) {
+			pipeline.add(Aggregates.skip(query.getStart()));
+		}
+		if (query != null && query.getMax() > 0 && query.getMax() < Integer.MAX_VALUE) {
+			pipeline.add(Aggregates.limit(query.getMax()));
+		}
+		Bson projection = fqtl.translateProjection(query);
+		if (projection != null) {
+			pipeline.add(Aggregates.project(projection));
+		}
+
+		List<JacksonMongoCollection<? extends DBStoreEntity>> targets = new ArrayList<>();
+		for (int i = 0; i < refs.size(); i++) {
+			JacksonMongoCollection<? extends DBStoreEntity> target = getCollection(db, refs.get(i).getType());
+			targets.add(target);
+			pipeline.add(Aggregates.lookup(target.getNamespace().getCollectionName(), refs.get(i).getName(), "_id", "__ref" + i));
+		}
+
+		References references = new References();
+		List<T> out = new ArrayList<>();
+		for (BsonDocument d : coll.aggregate(pipeline, BsonDocument.class)) {
+			for (int i = 0; i < refs.size(); i++) {
+				BsonValue joined = d.remove("__ref" + i);
+				if (joined == null || !joined.isArray()) {
+					continue;
+				}
+				Class<? extends DBStoreEntity> type = refs.get(i).getType();
+				for (BsonValue v : joined.asArray()) {
+					DBStoreEntity r = EntityCodecs.fromBsonDocument(targets.get(i).getCodecRegistry(), type, v.asDocument());
+					references.add(type, r.getId(), r);
+				}
+			}
+			out.add(EntityCodecs.fromBsonDocument(coll.getCodecRegistry(), clazz, d));
+		}
+		ReferenceLoader.wire(out, references);
+
+		log.debug("-- db query: found " + out.size() + " matches with " + references.size() + " references for query (" + clazz.getCanonicalName() + ":" + query + ")");
+
 		return out;
 	}
 
 	@Override
-	public <T extends DBStoreEntity> T findObject(String db, Class<T> clazz, DBStoreQuery query) {
-		return getCollection(db, clazz)
-				.find(fqtl.translate(query))
-				.sort(fqtl.translateOrderBy(query))
+	public <T extends DBStoreEntity> DBStorePage<T> findPage(String db, Class<T> clazz, DBStoreQuery query, int pageSize) {
+		if (pageSize <= 0) {
+			throw new IllegalArgumentException("pageSize must be > 0");
+		}
+
+		DBStoreQuery q = query != null ? fqtl.normalize(query) : BasicQuery.createQuery();
+		if (fqtl.isUnsatisfiable(q)) {
+			return new DBStorePage<>(new ArrayList<>(), null);
+		}
+		if (!q.getIncludes().isEmpty()) {
+			// the sort key of the last object goes into the continuation
+			for (OrderBy ob : fqtl.keysetOrder(q)) {
+				q = q.include(ob.getField());
+			}
+		}
+
+		guard(db, clazz, q);
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+
+		// one more than needed tells whether there is a next page
+		List<T> items = new ArrayList<>(pageSize + 1);
+		coll.find(fqtl.translate(q))
+				.projection(fqtl.translateProjection(q))
+				.sort(fqtl.translateKeysetOrderBy(q))
+				.collation(fqtl.translateCollation(q))
+				.limit(pageSize + 1)
+				.forEach(items::add);
+
+		if (items.size() <= pageSize) {
+			return new DBStorePage<>(items, null);
+		}
+
+		items = items.subList(0, pageSize);
+		String continuation = fqtl.continuationFor(q, toBsonDocument(coll, items.get(pageSize - 1)));
+		return new DBStorePage<>(new ArrayList<>(items), continuation);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> Stream<T> streamObjects(String db, Class<T> clazz, DBStoreQuery query) {
+		return streamObjects(db, clazz, query, streamBatchSize, null);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> Stream<T> streamObjects(String db, Class<T> clazz, DBStoreQuery query, int batchSize) {
+		return streamObjects(db, clazz, query, batchSize, null);
+	}
+
+	/**
+	 * opens a cursor right away and hands out its objects as the stream is consumed, so only
+	 * the current batch is held in memory. closing the stream closes the cursor.
+	 */
+	private <T extends DBStoreEntity> Stream<T> streamObjects(String db, Class<T> clazz, DBStoreQuery q, int batchSize, ClientSession session) {
+		DBStoreQuery query = fqtl.normalize(q);
+		if (fqtl.isUnsatisfiable(query)) {
+			return Stream.empty();
+		}
+		FindIterable<T> f = find(db, clazz, query, session);
+		if (batchSize > 0) {
+			f = f.batchSize(batchSize);
+		}
+
+		MongoCursor<T> cursor = f.iterator();
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(cursor::close);
+	}
+
+	/**
+	 * runs the query (as findObjects would) to see how mongo executes it: the winning plan, the
+	 * index it uses and what executing it examined and took
+	 */
+	public <T extends DBStoreEntity> QueryPlan explain(String db, Class<T> clazz, DBStoreQuery query) {
+		return explain(db, clazz, query, ExplainVerbosity.EXECUTION_STATS);
+	}
+
+	/**
+	 * the winning plan only, without running the query
+	 */
+	QueryPlan explainPlan(String db, Class<?> clazz, DBStoreQuery query) {
+		return explain(db, clazz, query, ExplainVerbosity.QUERY_PLANNER);
+	}
+
+	private QueryPlan explain(String db, Class<?> clazz, DBStoreQuery q, ExplainVerbosity verbosity) {
+		DBStoreQuery query = fqtl.normalize(q);
+		int skip = query != null ? query.getStart() : 0;
+		int max = query != null ? query.getMax() : 0;
+		BsonDocument out = find(getCollection(db, clazz), fqtl.translate(query), fqtl.translateProjection(query), fqtl.translateOrderBy(query), fqtl.translateCollation(query), skip, max, null)
+				.explain(BsonDocument.class, verbosity);
+		return QueryPlan.of(out);
+	}
+
+	long estimatedSize(String db, Class<?> clazz) {
+		return getCollection(db, clazz).estimatedDocumentCount();
+	}
+
+	boolean isUnfiltered(DBStoreQuery query) {
+		return fqtl.isUnfiltered(query);
+	}
+
+	private void guard(String db, Class<?> clazz, DBStoreQuery query) {
+		QueryPlanGuard g = queryPlanGuard;
+		if (g != null) {
+			g.check(this, db, clazz, query);
+		}
+	}
+
+	private void guard(String db, Class<?> clazz, PreparedQuery query, Bson filter) {
+		QueryPlanGuard g = queryPlanGuard;
+		if (g != null) {
+			g.check(this, db, clazz, fqtl.normalize(query.getShape() != null ? query.getShape() : BasicQuery.createQuery()), () -> QueryPlan.of(
+					find(getCollection(db, clazz), filter, query.getProjection(), query.getOrderBy(), query.getCollation(), query.getStart(), query.getMax(), null)
+							.explain(BsonDocument.class, ExplainVerbosity.QUERY_PLANNER)));
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> Stream<Object> distinctValues(String db, Class<T> clazz, String field, DBStoreQuery query) {
+		return distinctValues(db, clazz, field, query, null);
+	}
+
+	private <T extends DBStoreEntity> Stream<Object> distinctValues(String db, Class<T> clazz, String field, DBStoreQuery q, ClientSession session) {
+		if (field == null) {
+			throw new IllegalArgumentException("field must not be null");
+		}
+		DBStoreQuery query = fqtl.normalize(q);
+		if (fqtl.isUnsatisfiable(query)) {
+			return Stream.empty();
+		}
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		// under a collation values that only differ in case would be one
+		Bson filter = fqtl.translateWithoutCollation(query);
+
+		MongoIterable<BsonValue> values;
+		if (distinctByAggregation) {
+			// $unwind takes a list apart like distinct does, and leaves out objects without the field
+			List<Bson> pipeline = Arrays.asList(Aggregates.match(filter), Aggregates.unwind("$" + field), Aggregates.group("$" + field));
+			AggregateIterable<BsonDocument> a = (session != null ? coll.aggregate(session, pipeline, BsonDocument.class) : coll.aggregate(pipeline, BsonDocument.class))
+					.allowDiskUse(true);
+			if (streamBatchSize > 0) {
+				a = a.batchSize(streamBatchSize);
+			}
+			values = a.map(d -> d.get("_id"));
+		} else {
+			values = session != null ? coll.distinct(session, field, filter, BsonValue.class) : coll.distinct(field, filter, BsonValue.class);
+		}
+
+		MongoCursor<BsonValue> cursor = values.iterator();
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.NONNULL), false)
+				.onClose(cursor::close)
+				.filter(v -> !v.isNull())
+				.map(AMongoDataStore::toValue);
+	}
+
+	/**
+	 * the java value of a bson value, as it would be in a {@link Document}
+	 */
+	private static Object toValue(BsonValue v) {
+		BsonDocument wrapped = new BsonDocument("v", v);
+		return DOCUMENTS.decode(new BsonDocumentReader(wrapped), DecoderContext.builder().build()).get("v");
+	}
+
+	@Override
+	public <T extends DBStoreEntity> boolean exists(String db, Class<T> clazz, DBStoreQuery query) {
+		return exists(db, clazz, query, null);
+	}
+
+	/**
+	 * finds the id of one match, which an index on the query's fields can answer on its own
+	 */
+	private <T extends DBStoreEntity> boolean exists(String db, Class<T> clazz, DBStoreQuery q, ClientSession session) {
+		DBStoreQuery query = fqtl.normalize(q);
+		if (fqtl.isUnsatisfiable(query)) {
+			return false;
+		}
+		guard(db, clazz, query);
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		Bson filter = fqtl.translate(query);
+		return (session != null ? coll.find(session, filter, BsonDocument.class) : coll.find(filter, BsonDocument.class))
+				.projection(Projections.include("_id"))
+				.collation(fqtl.translateCollation(query))
 				.limit(1)
-				.first();
+				.first() != null;
 	}
 
 	@Override
-	public <T extends DBStoreEntity> long countObjects(String db, Class<T> clazz, DBStoreQuery query) {
-		return getCollection(db, clazz).countDocuments(fqtl.translate(query));
+	public <T extends DBStoreEntity> Stream<Map<String, Object>> aggregate(String db, Class<T> clazz, DBStoreAggregation aggregation) {
+		return aggregateDocuments(db, clazz, aggregation).<Map<String, Object>>map(d -> DOCUMENTS.decode(new BsonDocumentReader(d), DecoderContext.builder().build()));
 	}
 
 	@Override
-	public <T extends DBStoreEntity> List<T> findObjects(String db, Class<T> clazz, DBStoreQuery query) {
-		FindIterable<T> f = getCollection(db, clazz)
-				.find(fqtl.translate(query))
-				.sort(fqtl.translateOrderBy(query));
+	public <T extends DBStoreEntity, R> Stream<R> aggregate(String db, Class<T> clazz, DBStoreAggregation aggregation, Class<R> rowType) {
+		CodecRegistry registry = getCollection(db, clazz).getCodecRegistry();
+		return aggregateDocuments(db, clazz, aggregation).map(d -> EntityCodecs.fromBsonDocument(registry, rowType, d));
+	}
 
-		int skip = 0;
-		int max = 0;
-		
-		if (query != null) {
-			skip = query.getStart();
-			max = query.getMax();
+	/**
+	 * runs the pipeline of the aggregation and streams its rows from the cursor, like
+	 * {@link #streamObjects(String, Class, DBStoreQuery, int, ClientSession)}
+	 */
+	private <T extends DBStoreEntity> Stream<BsonDocument> aggregateDocuments(String db, Class<T> clazz, DBStoreAggregation aggregation) {
+		if (aggregation.getMatch() != null && fqtl.isUnsatisfiable(aggregation.getMatch())) {
+			return Stream.empty();
 		}
-		
+		List<Bson> pipeline = fqtl.translateAggregation(aggregation);
+		log.debug("-- db aggregate: " + clazz.getCanonicalName() + ": " + pipeline);
+
+		AggregateIterable<BsonDocument> a = getCollection(db, clazz).aggregate(pipeline, BsonDocument.class)
+				.allowDiskUse(true);
+		if (streamBatchSize > 0) {
+			a = a.batchSize(streamBatchSize);
+		}
+
+		MongoCursor<BsonDocument> cursor = a.iterator();
+		return StreamSupport
+				.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+				.onClose(cursor::close);
+	}
+
+	private <T extends DBStoreEntity> FindIterable<T> find(String db, Class<T> clazz, DBStoreQuery query, ClientSession session) {
+		return find(db, clazz, query, translated(query), session);
+	}
+
+	private <T extends DBStoreEntity> FindIterable<T> find(String db, Class<T> clazz, DBStoreQuery query, Translated t, ClientSession session) {
+		guard(db, clazz, query);
+		return find(getCollection(db, clazz), t.filter, t.projection, t.orderBy, t.collation, t.start, t.max, session);
+	}
+
+	private <T> FindIterable<T> find(JacksonMongoCollection<T> coll, Bson filter, Bson projection, Bson sort, Collation collation, int skip, int max, ClientSession session) {
+		FindIterable<T> f = (session != null ? coll.find(session, filter) : coll.find(filter))
+				.projection(projection)
+				.sort(sort)
+				.collation(collation);
+
 		if (skip > 0) {
 			f = f.skip(skip);
 		}
@@ -196,17 +716,120 @@ public abstract class AMongoDataStore implements DataStore {
 
 		log.debug(" ---> LIMIT (" + skip + ":" + max + ")");
 
-		List<T> out = new LinkedList<>();
-		f.forEach(out::add);
+		return f;
+	}
 
-		log.debug("-- db query: found " + out.size() + " matches for query (" + clazz.getCanonicalName() + ":" + query + ")");
+	@Override
+	public <T extends DBStoreEntity> T getObject(String db, Class<T> clazz, String id) {
+		if (writeBehind != null && isBuffered(clazz)) {
+			T pending = writeBehind.get(db, clazz, id);
+			if (pending != null) {
+				return pending;
+			}
+		}
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		String key = coalesceReads ? "get|" + coll.getNamespace().getFullName() + "|" + clazz.getName() + "|" + id : null;
+		return coalesce(key, () -> coll.findOneById(id), o -> copy(coll, o));
+	}
 
-		return out;
+	@Override
+	public <T extends DBStoreEntity> List<T> getObjects(String db, Class<T> clazz, Collection<String> ids) {
+		return inIdOrder(ids, getObjectMap(db, clazz, ids, null));
 	}
 
 	@Override
-	public <T extends DBStoreEntity> T getObject(String db, Class<T> clazz, String id) {
-		return getCollection(db, clazz).findOneById(id);
+	public <T extends DBStoreEntity> Map<String, T> getObjectMap(String db, Class<T> clazz, Collection<String> ids) {
+		return getObjectMap(db, clazz, ids, null);
+	}
+
+	private static <T> List<T> inIdOrder(Collection<String> ids, Map<String, T> byId) {
+		List<T> out = new ArrayList<>(ids.size());
+		for (String id : ids) {
+			out.add(id != null ? byId.get(id) : null);
+		}
+		return out;
+	}
+
+	/**
+	 * splits the (distinct) ids into chunks of {@link #getMultiGetBatchSize()} and loads each
+	 * with one $in query. outside of a session the chunks are loaded in parallel.
+	 */
+	private <T extends DBStoreEntity> Map<String, T> getObjectMap(String db, Class<T> clazz, Collection<String> ids, ClientSession session) {
+		Map<String, T> found = new HashMap<>();
+
+		List<String> missing = new ArrayList<>();
+		for (String id : new LinkedHashSet<>(ids)) {
+			T pending = id != null && writeBehind != null && isBuffered(clazz) ? writeBehind.get(db, clazz, id) : null;
+			if (pending != null) {
+				found.put(id, pending);
+			} else if (id != null) {
+				missing.add(id);
+			}
+		}
+
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		List<List<String>> chunks = new ArrayList<>();
+		for (int from = 0; from < missing.size(); from += multiGetBatchSize) {
+			chunks.add(missing.subList(from, Math.min(from + multiGetBatchSize, missing.size())));
+		}
+
+		if (session != null || chunks.size() <= 1) {
+			for (List<String> chunk : chunks) {
+				findByIds(coll, chunk, session).forEach(o -> found.put(o.getId(), o));
+			}
+
+		} else {
+			List<Future<List<T>>> futures = new ArrayList<>();
+			for (List<String> chunk : chunks) {
+				futures.add(getMultiGetExecutor().submit(() -> findByIds(coll, chunk, null)));
+			}
+			try {
+				for (Future<List<T>> f : futures) {
+					f.get().forEach(o -> found.put(o.getId(), o));
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new DBStoreException("interrupted while loading " + clazz.getName() + " objects", e);
+			} catch (ExecutionException e) {
+				throw new DBStoreException("unable to load " + clazz.getName() + " objects", e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+			} finally {
+				futures.forEach(f -> f.cancel(true));
+			}
+		}
+
+		Map<String, T> out = new LinkedHashMap<>();
+		for (String id : ids) {
+			T o = id != null ? found.get(id) : null;
+			if (o != null) {
+				out.put(id, o);
+			}
+		}
+		return out;
+	}
+
+	private <T extends DBStoreEntity> List<T> findByIds(JacksonMongoCollection<T> coll, List<String> ids, ClientSession session) {
+		Bson filter = Filters.in("_id", ids);
+		List<T> out = new ArrayList<>(ids.size());
+		(session != null ? coll.find(session, filter) : coll.find(filter)).forEach(out::add);
+		return out;
+	}
+
+	private ExecutorService getMultiGetExecutor() {
+		ExecutorService out = multiGetExecutor;
+		if (out == null) {
+			synchronized (this) {
+				out = multiGetExecutor;
+				if (out == null) {
+					out = Executors.newFixedThreadPool(Math.max(1, multiGetThreads), r -> {
+						Thread t = new Thread(r, "dbstore-multi-get");
+						t.setDaemon(true);
+						return t;
+					});
+					multiGetExecutor = out;
+				}
+			}
+		}
+		return out;
 	}
 
 	@Override
@@ -215,144 +838,625 @@ public abstract class AMongoDataStore implements DataStore {
 		return object != null && deleteObject(db, object.getClass(), object.getId());
 	}
 
-	@Override
-	public <T extends DBStoreEntity> boolean deleteObject(String db, Class<T> clazz, String id) {
-		return id != null && deleteObjects(db, clazz, BasicQuery.createQuery().eq("_id", id));
+	/**
+	 * one deleteOne without listeners on the class. otherwise the object is read for
+	 * 'beforeDelete' and removed with findOneAndDelete, 'deleted' fires with what that removed.
+	 */
+	@Override
+	public <T extends DBStoreEntity> boolean deleteObject(String db, Class<T> clazz, String id) {
+		if (id == null) {
+			return false;
+		}
+
+		if (writeBehind != null && isBuffered(clazz)) {
+			// otherwise a pending save would bring the object back
+			writeBehind.flush(db, clazz, id);
+		}
+
+		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		Bson byId = Filters.eq("_id", id);
+
+		try {
+			if (entityListeners.isEmpty()) {
+				return coll.deleteOne(byId).getDeletedCount() > 0;
+			}
+
+			T object = coll.findOne(byId);
+			if (object == null) {
+				return false;
+			}
+			EntityWrites.beforeDelete(db, clazz, Collections.singletonList(object), entityListeners);
+
+			T removed = coll.findOneAndDelete(byId);
+			if (removed == null) {
+				// someone else got there in between
+				return false;
+			}
+			EntityWrites.deleted(db, clazz, Collections.singletonList(removed), Collections.singleton(id), entityListeners);
+			return true;
+
+		} catch (DBStoreException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new DBStoreException(e);
+		}
+	}
+
+	@Override
+	public <T extends DBStoreEntity> long deleteObjects(String db, Class<T> clazz, DBStoreQuery query) {
+		return deleteObjects(db, clazz, query, null);
+	}
+
+	/**
+	 * deletes set-based: without listeners on the class this is a single deleteMany with the
+	 * query's filter. otherwise the matches are streamed in batches of {@link #getDeleteBatchSize()},
+	 * and each batch is removed with one deleteMany on its ids between 'beforeDelete' and 'deleted'.
+	 */
+	private <T extends DBStoreEntity> long deleteObjects(String db, Class<T> clazz, DBStoreQuery query, ClientSession session) {
+		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
+		JacksonMongoCollection<T> coll = getCollection(db, clazz);
+		Bson filter = fqtl.translate(query);
+
+		if (writeBehind != null && isBuffered(clazz)) {
+			// otherwise a pending save would bring the objects back. fails if they can not be written
+			writeBehind.flush(db, clazz);
+		}
+
+		try {
+			if (entityListeners.isEmpty()) {
+				DeleteResult result = session != null ? coll.deleteMany(session, filter) : coll.deleteMany(filter);
+				return result.getDeletedCount();
+			}
+
+			int batchSize = deleteBatchSize > 0 ? deleteBatchSize : 1000;
+			FindIterable<T> matches = (session != null ? coll.find(session, filter) : coll.find(filter)).batchSize(batchSize);
+
+			long deleted = 0;
+			List<T> batch = new ArrayList<>(batchSize);
+
+			try (MongoCursor<T> cursor = matches.iterator()) {
+				while (cursor.hasNext()) {
+					T object = cursor.next();
+					if (object == null || object.getId() == null) {
+						continue;
+					}
+
+					batch.add(object);
+					if (batch.size() >= batchSize) {
+						deleted += deleteBatch(db, clazz, coll, batch, entityListeners, session);
+						batch.clear();
+					}
+				}
+			}
+
+			if (!batch.isEmpty()) {
+				deleted += deleteBatch(db, clazz, coll, batch, entityListeners, session);
+			}
+
+			return deleted;
+
+		} catch (DBStoreException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new DBStoreException(e);
+		}
+	}
+
+	/**
+	 * deletes the batch with one deleteMany. only the objects still there after the 'beforeDelete's
+	 * are deleted, and 'deleted' only fires for those that are gone afterwards
+	 */
+	private <T extends DBStoreEntity> long deleteBatch(String db, Class<T> clazz, JacksonMongoCollection<T> coll, List<T> batch, List<DBStoreListener<?>> entityListeners, ClientSession session) {
+		EntityWrites.beforeDelete(db, clazz, batch, entityListeners);
+
+		Set<String> present = findIds(coll, Filters.in("_id", EntityWrites.ids(batch)), session);
+		if (present.isEmpty()) {
+			return 0;
+		}
+
+		Bson byIds = Filters.in("_id", present);
+		DeleteResult result = session != null ? coll.deleteMany(session, byIds) : coll.deleteMany(byIds);
+
+		// fewer deleted than found: someone else got there in between, or saved one again
+		if (result.getDeletedCount() < present.size()) {
+			present.removeAll(findIds(coll, byIds, session));
+		}
+
+		EntityWrites.deleted(db, clazz, batch, present, entityListeners);
+
+		return result.getDeletedCount();
+	}
+
+	private <T extends DBStoreEntity> Set<String> findIds(JacksonMongoCollection<T> coll, Bson filter, ClientSession session) {
+		Set<String> out = new HashSet<>();
+		(session != null ? coll.find(session, filter) : coll.find(filter))
+				.projection(Projections.include("_id"))
+				.forEach(o -> out.add(o.getId()));
+		return out;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T extends DBStoreEntity> List<T> saveObjects(String db, List<T> objects) {
+		if (objects.isEmpty()) return objects;
+
+		Class<T> clazz = (Class<T>) objects.stream().findFirst().map(Object::getClass).orElse(null);
+
+		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
+		List<T> out = new ArrayList<>(objects.size());
+
+		int batchSize = saveBatchSize > 0 ? saveBatchSize : objects.size();
+
+		for (int from = 0; from < objects.size(); from += batchSize) {
+			List<T> chunk = objects.subList(from, Math.min(from + batchSize, objects.size()));
+
+			// objects of different classes end up in different collections
+			Map<Class<?>, List<T>> byClass = new LinkedHashMap<>();
+			for (T object : chunk) {
+				byClass.computeIfAbsent(object.getClass(), c -> new ArrayList<>()).add(object);
+			}
+
+			for (List<T> batch : byClass.values()) {
+				saveBatch(db, clazz, batch, entityListeners);
+			}
+
+			out.addAll(chunk);
+		}
+
+		return out;
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends DBStoreEntity> void saveBatch(String db, Class<T> clazz, List<T> batch, List<DBStoreListener<?>> entityListeners) {
+		JacksonMongoCollection<T> coll = (JacksonMongoCollection<T>) getCollection(db, batch.get(0).getClass());
+
+		Set<String> generated = EntityWrites.beforeSave(db, clazz, batch, entityListeners);
+
+		if (isBuffered(batch.get(0).getClass())) {
+			for (T object : batch) {
+				getWriteBehind().put(db, object);
+			}
+			return;
+		}
+
+		// one round trip to load the previous versions of the whole batch
+		Map<String, T> existing = new HashMap<>();
+		for (T old : coll.find(Filters.in("_id", EntityWrites.ids(batch)))) {
+			existing.put(old.getId(), old);
+		}
+
+		EntityWrites.SaveBatch<T> writes = EntityWrites.saveBatch(batch, existing, generated, saveMode, this::needsUpdate, coll.getCodecRegistry());
+		if (writes.isEmpty()) {
+			return;
+		}
+
+		try {
+			coll.bulkWrite(writes.getWrites(), new BulkWriteOptions().ordered(orderedWrites));
+		} catch (Exception e) {
+			throw new DBStoreException("Error saving " + writes.getWrites().size() + " objects of " + clazz, e);
+		}
+
+		EntityWrites.saved(db, clazz, writes, entityListeners);
+	}
+
+	private boolean isBuffered(Class<?> clazz) {
+		Write write = clazz.getAnnotation(Write.class);
+		return write != null && write.value() == WriteMode.BUFFERED;
+	}
+
+	private WriteBehindBuffer getWriteBehind() {
+		WriteBehindBuffer out = writeBehind;
+		if (out == null) {
+			synchronized (this) {
+				out = writeBehind;
+				if (out == null) {
+					out = new WriteBehindBuffer(this::writeBuffered, this::copyBuffered, writeBehindCapacity, writeBehindBatchSize, writeBehindFlushInterval, writeBehindPutTimeout);
+					out.setMaxAttempts(writeBehindMaxAttempts);
+					writeBehind = out;
+				}
+			}
+		}
+		return out;
+	}
+
+	@SuppressWarnings("unchecked")
+	private DBStoreEntity copyBuffered(String db, DBStoreEntity object) {
+		return copy((JacksonMongoCollection<DBStoreEntity>) getCollection(db, object.getClass()), object);
+	}
+
+	/**
+	 * upserts a batch of buffered objects. unordered, there is at most one version of each.
+	 */
+	@SuppressWarnings("unchecked")
+	private void writeBuffered(String db, Class<? extends DBStoreEntity> clazz, List<DBStoreEntity> objects) {
+		JacksonMongoCollection<DBStoreEntity> coll = (JacksonMongoCollection<DBStoreEntity>) getCollection(db, clazz);
+
+		List<WriteModel<DBStoreEntity>> writes = new ArrayList<>(objects.size());
+		for (DBStoreEntity object : objects) {
+			writes.add(new ReplaceOneModel<>(Filters.eq("_id", object.getId()), object, new ReplaceOptions().upsert(true)));
+		}
+
+		log.debug("write-behind: writing " + writes.size() + " objects of " + clazz);
+		coll.bulkWrite(writes, new BulkWriteOptions().ordered(false));
+	}
+
+	/**
+	 * writes all pending {@link WriteMode#BUFFERED} objects now
+	 */
+	public void flush() {
+		if (writeBehind != null) {
+			writeBehind.flush();
+		}
+	}
+
+	/**
+	 * flushes the write-behind buffer and stops its thread
+	 */
+	@Override
+	public void destroy() {
+		WriteBehindBuffer out = writeBehind;
+		if (out != null) {
+			out.close();
+		}
+		ExecutorService executor = multiGetExecutor;
+		if (executor != null) {
+			executor.shutdown();
+		}
+	}
+
+	public <T extends DBStoreEntity> T saveObject(String db, T object) {
+		return saveObjects(db, Collections.singletonList(object))
+				.stream()
+				.findFirst()
+				.orElse(null);
+	}
+
+	public <T> boolean needsUpdate(T old, T object) {
+		return true;
+	}
+
+	@Override
+	public void addListener(DBStoreListener<?> listener) {
+		listeners.addListener(listener);
+	}
+
+	@Autowired(required = false)
+	public void setListeners(List<DBStoreListener<?>> listeners) {
+		this.listeners.setListeners(listeners);
+	}
+
+	public String getCollectionName(Class<?> clazz) {
+		return collectionNamingStrategy.getCollectionName(clazz);
+	}
+
+	public CollectionNamingStrategy getCollectionNamingStrategy() {
+		return collectionNamingStrategy;
+	}
+
+	public void setCollectionNamingStrategy(CollectionNamingStrategy collectionNamingStrategy) {
+		this.collectionNamingStrategy = collectionNamingStrategy;
+	}
+
+	public SaveMode getSaveMode() {
+		return saveMode;
+	}
+
+	/**
+	 * {@link SaveMode#DIFF} only sends the changed paths of existing objects instead of replacing
+	 * the whole document.
+	 */
+	public void setSaveMode(SaveMode saveMode) {
+		this.saveMode = saveMode;
+	}
+
+	public int getDeleteBatchSize() {
+		return deleteBatchSize;
+	}
+
+	/**
+	 * number of matches loaded, announced to listeners and removed per deleteMany in
+	 * {@link #deleteObjects(String, Class, DBStoreQuery)}.
+	 */
+	public void setDeleteBatchSize(int deleteBatchSize) {
+		this.deleteBatchSize = deleteBatchSize;
+	}
+
+	public int getSaveBatchSize() {
+		return saveBatchSize;
+	}
+
+	/**
+	 * number of objects loaded (with one $in query) and written (with one bulk write) per round trip
+	 * in {@link #saveObjects(String, List)}. values &lt;= 0 write the whole list at once.
+	 */
+	public void setSaveBatchSize(int saveBatchSize) {
+		this.saveBatchSize = saveBatchSize;
+	}
+
+	public int getStreamBatchSize() {
+		return streamBatchSize;
+	}
+
+	/**
+	 * default number of objects fetched per round trip by
+	 * {@link #streamObjects(String, Class, DBStoreQuery)}. 0 leaves it to the driver.
+	 */
+	public void setStreamBatchSize(int streamBatchSize) {
+		this.streamBatchSize = streamBatchSize;
+	}
+
+	public QueryPlanGuard getQueryPlanGuard() {
+		return queryPlanGuard;
+	}
+
+	/**
+	 * checks the plans of a share of the queries for collection scans, null (the default) for none
+	 */
+	public void setQueryPlanGuard(QueryPlanGuard queryPlanGuard) {
+		this.queryPlanGuard = queryPlanGuard;
+	}
+
+	public boolean isDistinctByAggregation() {
+		return distinctByAggregation;
+	}
+
+	/**
+	 * get {@link #distinctValues(String, Class, String, DBStoreQuery)} with an aggregation, which
+	 * streams the values from a cursor, instead of the distinct command, which returns all of them
+	 * in one document of at most 16MB. for fields with too many distinct values for that.
+	 */
+	public void setDistinctByAggregation(boolean distinctByAggregation) {
+		this.distinctByAggregation = distinctByAggregation;
+	}
+
+	public boolean isCoalesceReads() {
+		return coalesceReads;
+	}
+
+	/**
+	 * identical concurrent reads (getObject, findObject, findObjects, countObjects) share one
+	 * round trip to mongo, each caller still gets its own objects. reads in transactions never do.
+	 */
+	public void setCoalesceReads(boolean coalesceReads) {
+		this.coalesceReads = coalesceReads;
+	}
+
+	/**
+	 * number of reads that were served by an identical concurrent one
+	 */
+	public long getCoalescedReads() {
+		return reads.getCoalesced();
+	}
+
+	public int getMultiGetBatchSize() {
+		return multiGetBatchSize;
+	}
+
+	/**
+	 * number of ids per $in query of getObjects / getObjectMap
+	 */
+	public void setMultiGetBatchSize(int multiGetBatchSize) {
+		this.multiGetBatchSize = Math.max(1, multiGetBatchSize);
+	}
+
+	public int getMultiGetThreads() {
+		return multiGetThreads;
 	}
 
-	@Override
-	public <T extends DBStoreEntity> boolean deleteObjects(String db, Class<T> clazz, DBStoreQuery query) {
-		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
+	/**
+	 * number of $in queries of one getObjects / getObjectMap that run at the same time
+	 */
+	public void setMultiGetThreads(int multiGetThreads) {
+		this.multiGetThreads = multiGetThreads;
+	}
 
-		boolean anyDeleted = false;
+	public boolean isNormalizeQueries() {
+		return fqtl.isNormalize();
+	}
 
-		for (T object : getCollection(db, clazz).find(fqtl.translate(query))) {
-			if (object == null || object.getId() == null) {
-				continue;
-			}
+	/**
+	 * simplify queries before running them (see {@link com.cinefms.dbstore.query.api.impl.QueryNormalizer}),
+	 * queries that can not match anything are not sent to the database at all
+	 */
+	public void setNormalizeQueries(boolean normalizeQueries) {
+		fqtl.setNormalize(normalizeQueries);
+	}
 
-			for (DBStoreListener listener : entityListeners) {
-				log.debug("firing 'beforeDelete' for: " + clazz + " / " + object.getId());
-				listener.beforeDelete(db, object);
-			}
+	public boolean isEstimateUnfilteredCounts() {
+		return estimateUnfilteredCounts;
+	}
 
-			try {
-				getCollection(db, clazz).removeById(object.getId());
+	/**
+	 * counts without conditions use estimatedDocumentCount (collection metadata, no scan). that
+	 * is exact on a cleanly running server, but may be off e.g. after an unclean shutdown or
+	 * with orphaned documents on a sharded cluster.
+	 */
+	public void setEstimateUnfilteredCounts(boolean estimateUnfilteredCounts) {
+		this.estimateUnfilteredCounts = estimateUnfilteredCounts;
+	}
 
-				for (DBStoreListener listener : entityListeners) {
-					log.debug("firing 'delete' for: " + clazz + " / " + object.getId());
-					listener.deleted(db, object);
-				}
+	public long getCountCacheTtl() {
+		return countCacheTtl;
+	}
 
+	/**
+	 * milliseconds a count is reused for identical count queries, so counts may be up to that
+	 * old (writes do not invalidate them). 0, the default, disables the count cache.
+	 */
+	public void setCountCacheTtl(long countCacheTtl) {
+		this.countCacheTtl = countCacheTtl;
+		this.counts.clear();
+	}
 
-				anyDeleted = true;
+	public int getCountCacheSize() {
+		return countCacheSize;
+	}
 
-			} catch (Exception e) {
-				throw new DBStoreException(e);
-			}
-		}
+	/**
+	 * maximum number of distinct count queries that are kept
+	 */
+	public void setCountCacheSize(int countCacheSize) {
+		this.countCacheSize = countCacheSize;
+	}
 
-		return anyDeleted;
+	public int getWriteBehindCapacity() {
+		return writeBehindCapacity;
 	}
 
-	@Override
-	@SuppressWarnings("unchecked")
-	public <T extends DBStoreEntity> List<T> saveObjects(String db, List<T> objects) {
-		if (objects.isEmpty()) return objects;
+	/**
+	 * maximum number of pending {@link WriteMode#BUFFERED} objects. saving another one blocks
+	 * until a flush made room. only read when the buffer is first used.
+	 */
+	public void setWriteBehindCapacity(int writeBehindCapacity) {
+		this.writeBehindCapacity = writeBehindCapacity;
+	}
 
-		Class<T> clazz = (Class<T>) objects.stream().findFirst().map(Object::getClass).orElse(null);
+	public int getWriteBehindBatchSize() {
+		return writeBehindBatchSize;
+	}
 
-		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
-		List<T> out = new ArrayList<>(objects.size());
+	/**
+	 * number of pending objects that triggers a flush, and maximum per bulk write
+	 */
+	public void setWriteBehindBatchSize(int writeBehindBatchSize) {
+		this.writeBehindBatchSize = writeBehindBatchSize;
+	}
 
-		for (T object : objects) {
-			log.debug(clazz + " / saving object: " + object.getId() + ", notifying " + entityListeners.size() + " listeners");
+	public long getWriteBehindFlushInterval() {
+		return writeBehindFlushInterval;
+	}
 
-			for (DBStoreListener listener : entityListeners) {
-				log.debug("firing 'beforeSave' for: " + clazz + " / " + object.getId());
-				listener.beforeSave(db, object);
-			}
+	/**
+	 * milliseconds between flushes of the write-behind buffer, however few objects are pending
+	 */
+	public void setWriteBehindFlushInterval(long writeBehindFlushInterval) {
+		this.writeBehindFlushInterval = writeBehindFlushInterval;
+	}
 
-			JacksonMongoCollection<T> coll = (JacksonMongoCollection<T>) getCollection(db, object.getClass());
+	public long getWriteBehindPutTimeout() {
+		return writeBehindPutTimeout;
+	}
 
-			T old = null;
-			if (object.getId() != null) {
-				old = coll.findOneById(object.getId());
-			} else {
-				String id = object.createId();
-				if (id == null) {
-					id = ObjectId.get().toString();
-				}
-				object.setId(id);
-			}
+	/**
+	 * milliseconds a save waits for room in a full write-behind buffer before failing
+	 */
+	public void setWriteBehindPutTimeout(long writeBehindPutTimeout) {
+		this.writeBehindPutTimeout = writeBehindPutTimeout;
+	}
 
-			if (old != null) {
-				if (!needsUpdate(old, object)) {
-					log.debug("no change, returning");
-					out.add(object);
-					continue;
-				}
+	public int getWriteBehindMaxAttempts() {
+		return writeBehindMaxAttempts;
+	}
 
-				coll.replaceOne(Filters.eq("_id", old.getId()), object);
-			} else {
-				coll.save(object);
-			}
+	/**
+	 * failed flushes of a buffered object before it is dropped (with an error in the log), see
+	 * {@link WriteBehindBuffer}
+	 */
+	public void setWriteBehindMaxAttempts(int writeBehindMaxAttempts) {
+		this.writeBehindMaxAttempts = writeBehindMaxAttempts;
+	}
 
-			object = getObject(db, clazz, object.getId());
+	public boolean isOrderedWrites() {
+		return orderedWrites;
+	}
 
-			for (DBStoreListener listener : entityListeners) {
-				if (old != null) {
-					log.debug("firing 'updated' for: " + out.getClass() + " / " + object.getId() + " / " + listener.getClass());
-					listener.updated(db, old, object);
+	/**
+	 * whether bulk writes are ordered (stop at the first error, preserve list order) or unordered
+	 * (the server may apply them in parallel and continues after errors).
+	 */
+	public void setOrderedWrites(boolean orderedWrites) {
+		this.orderedWrites = orderedWrites;
+	}
+	
+	public List<String> getWarmUpPackages() {
+		return warmUpPackages;
+	}
 
-				} else {
-					log.debug("firing 'created' for: " + out.getClass() + " / " + object.getId() + " / " + listener.getClass());
-					listener.created(db, object);
-				}
-			}
+	/**
+	 * packages scanned for entities at startup, see {@link #warmUp()}
+	 */
+	public void setWarmUpPackages(List<String> warmUpPackages) {
+		this.warmUpPackages = warmUpPackages;
+	}
 
-			out.add(object);
-		}
+	public List<String> getWarmUpDbs() {
+		return warmUpDbs;
+	}
 
-		return out;
+	/**
+	 * the dbs to warm up, null stands for the default db (which is the only one by default)
+	 */
+	public void setWarmUpDbs(List<String> warmUpDbs) {
+		this.warmUpDbs = warmUpDbs;
 	}
 
-	public <T extends DBStoreEntity> T saveObject(String db, T object) {
-		return saveObjects(db, Collections.singletonList(object))
-				.stream()
-				.findFirst()
-				.orElse(null);
+	public int getWarmUpThreads() {
+		return warmUpThreads;
 	}
 
-	public <T> boolean needsUpdate(T old, T object) {
-		return true;
+	public void setWarmUpThreads(int warmUpThreads) {
+		this.warmUpThreads = warmUpThreads;
 	}
 
 	@Override
-	public void addListener(DBStoreListener<?> listener) {
-		this.listeners.add(listener);
+	public void afterSingletonsInstantiated() {
+		if (warmUpPackages != null && !warmUpPackages.isEmpty()) {
+			warmUp();
+		}
 	}
 
-	public String getCollectionName(Class<?> clazz) {
-		return collectionNamingStrategy.getCollectionName(clazz);
+	/**
+	 * resolves the collections (creating their indexes) and listeners of all entities in the
+	 * warm-up packages, so the first requests do not pay for it. runs once all singletons are
+	 * created, i.e. before the application reports ready.
+	 */
+	public void warmUp() {
+		List<Class<? extends DBStoreEntity>> classes = EntityScanner.scan(warmUpPackages);
+		for (String db : warmUpDbs) {
+			warmUp(db, classes);
+		}
 	}
 
-	public CollectionNamingStrategy getCollectionNamingStrategy() {
-		return collectionNamingStrategy;
-	}
+	/**
+	 * resolves the collections and listeners of the classes in parallel, fails if any of them
+	 * could not be initialized
+	 */
+	public void warmUp(String db, List<Class<? extends DBStoreEntity>> classes) {
+		long start = System.currentTimeMillis();
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(warmUpThreads, classes.size())), r -> {
+			Thread t = new Thread(r, "dbstore-warm-up");
+			t.setDaemon(true);
+			return t;
+		});
 
-	public void setCollectionNamingStrategy(CollectionNamingStrategy collectionNamingStrategy) {
-		this.collectionNamingStrategy = collectionNamingStrategy;
+		try {
+			List<Future<?>> futures = new ArrayList<>();
+			for (Class<? extends DBStoreEntity> clazz : classes) {
+				futures.add(executor.submit(() -> {
+					getCollection(db, clazz);
+					getListeners(clazz);
+				}));
+			}
+			for (Future<?> f : futures) {
+				f.get();
+			}
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DBStoreException("interrupted while warming up", e);
+		} catch (ExecutionException e) {
+			throw new DBStoreException("warm up of db '" + db + "' failed", e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+		} finally {
+			executor.shutdownNow();
+		}
+
+		log.info("warmed up " + classes.size() + " collections of db '" + db + "' in " + (System.currentTimeMillis() - start) + "ms");
 	}
-	
+
 	private GridFSBucket getBucket(String db, String bucket) {
-		GridFSBucket out = buckets.get(bucket);
-		if (out == null) {
-			out = GridFSBuckets.create(getDB(db), bucket);
-			buckets.put(bucket, out);
-		}
-		return out;
-	}	
+		return buckets.get(db + ":" + bucket, k -> GridFSBuckets.create(getDB(db), bucket));
+	}
 
 	@Override
 	public DBStoreBinary getBinary(String dbName, String bucket, String id) throws DBStoreException {
@@ -399,156 +1503,106 @@ public abstract class AMongoDataStore implements DataStore {
 	}
 
 	@Override
-	@SuppressWarnings("unchecked")
 	public <T extends DBStoreEntity> T updateObjectFields(String db, Class<T> clazz, String id, Map<String, Object> fields) {
 		if (id == null || fields == null || fields.isEmpty()) {
 			return null;
 		}
-
-		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
-		JacksonMongoCollection<T> coll = (JacksonMongoCollection<T>) getCollection(db, clazz);
-
-		// Get the old object for listener notifications
-		T old = coll.findOneById(id);
-		if (old == null) {
-			log.debug("No object found with id: " + id + " in class: " + clazz.getSimpleName());
-			return null;
-		}
-
-		// Fire beforeSave listeners
-		for (DBStoreListener listener : entityListeners) {
-			log.debug("firing 'beforeSave' for: " + clazz + " / " + id);
-			listener.beforeSave(db, old);
-		}
-
-		try {
-			// Build the update document
-			List<Bson> updateOperations = new ArrayList<>();
-			for (Map.Entry<String, Object> entry : fields.entrySet()) {
-				updateOperations.add(Updates.set(entry.getKey(), entry.getValue()));
-			}
-
-			// Perform atomic update
-			Bson updateDoc = Updates.combine(updateOperations);
-			UpdateOptions options = new UpdateOptions();
-			
-			// Use updateOne for atomic operation
-			coll.updateOne(Filters.eq("_id", id), updateDoc, options);
-
-			// Get the updated object
-			T updated = getObject(db, clazz, id);
-
-			// Fire updated listeners
-			for (DBStoreListener listener : entityListeners) {
-				log.debug("firing 'updated' for: " + clazz + " / " + id + " / " + listener.getClass());
-				listener.updated(db, old, updated);
-			}
-
-			return updated;
-
-		} catch (Exception e) {
-			log.error("Error updating fields for object with id: " + id, e);
-			throw new DBStoreException("Error updating fields for object with id: " + id, e);
-		}
+		return updateObjectFields(db, clazz, id, FieldUpdates.fromMap(fields), null);
 	}
 
 	@Override
-	@SuppressWarnings("unchecked")
 	public <T extends DBStoreEntity> T updateObjectFields(String db, Class<T> clazz, String id, List<FieldUpdate> fieldUpdates) {
+		return updateObjectFields(db, clazz, id, fieldUpdates, null);
+	}
+
+	/**
+	 * applies the updates with a single findOneAndUpdate if nobody listens on the class.
+	 *
+	 * otherwise the current version is read first and 'beforeSave' is fired with it, then the
+	 * update is applied with findOneAndUpdate only if the document is still exactly that version
+	 * (read and tried again if it changed in between), so 'old' in 'updated' is always the
+	 * version the update was actually applied to and 'new' is what the server made of it.
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends DBStoreEntity> T updateObjectFields(String db, Class<T> clazz, String id, List<FieldUpdate> fieldUpdates, ClientSession session) {
 		if (id == null || fieldUpdates == null || fieldUpdates.isEmpty()) {
 			return null;
 		}
 
-		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
+		if (writeBehind != null && isBuffered(clazz)) {
+			// otherwise the next flush would overwrite the update with the pending save
+			writeBehind.flush(db, clazz, id);
+		}
+
 		JacksonMongoCollection<T> coll = (JacksonMongoCollection<T>) getCollection(db, clazz);
 
-		// Get the old object for listener notifications
-		T old = coll.findOneById(id);
-		if (old == null) {
-			log.debug("No object found with id: " + id + " in class: " + clazz.getSimpleName());
-			return null;
+		Bson updateDoc = FieldUpdates.toUpdate(fieldUpdates);
+		if (updateDoc == null) {
+			log.debug("No valid update operations found");
+			return findById(coll, id, session);
 		}
 
-		// Fire beforeSave listeners
-		for (DBStoreListener listener : entityListeners) {
-			log.debug("firing 'beforeSave' for: " + clazz + " / " + id);
-			listener.beforeSave(db, old);
-		}
+		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
 
 		try {
-			// Build the update document using different MongoDB operators
-			List<Bson> updateOperations = new ArrayList<>();
-			for (FieldUpdate fieldUpdate : fieldUpdates) {
-				Bson operation = createUpdateOperation(fieldUpdate);
-				if (operation != null) {
-					updateOperations.add(operation);
+			if (entityListeners.isEmpty()) {
+				T updated = findOneAndUpdate(coll, Filters.eq("_id", id), updateDoc, ReturnDocument.AFTER, session);
+				if (updated == null) {
+					log.debug("No object found with id: " + id + " in class: " + clazz.getSimpleName());
 				}
+				return updated;
 			}
 
-			if (updateOperations.isEmpty()) {
-				log.debug("No valid update operations found");
-				return old;
-			}
+			for (int attempt = 1; ; attempt++) {
+				Bson byId = Filters.eq("_id", id);
+				BsonDocument current = (session != null ? coll.find(session, byId, BsonDocument.class) : coll.find(byId, BsonDocument.class)).first();
+				if (current == null) {
+					log.debug("No object found with id: " + id + " in class: " + clazz.getSimpleName());
+					return null;
+				}
 
-			// Perform atomic update
-			Bson updateDoc = Updates.combine(updateOperations);
-			UpdateOptions options = new UpdateOptions();
-			
-			// Use updateOne for atomic operation
-			coll.updateOne(Filters.eq("_id", id), updateDoc, options);
+				T old = EntityWrites.beforeUpdate(db, clazz, current, coll.getCodecRegistry(), entityListeners);
+
+				// the post-image from the server, applied to exactly the version read
+				T updated = findOneAndUpdate(coll, FieldUpdates.unchanged(current), updateDoc, ReturnDocument.AFTER, session);
+				if (updated == null) {
+					if (attempt >= UPDATE_ATTEMPTS) {
+						throw EntityWrites.changedConcurrently(clazz, id, attempt);
+					}
+					log.debug("changed concurrently, reading again: " + clazz + " / " + id);
+					continue;
+				}
 
-			// Get the updated object
-			T updated = getObject(db, clazz, id);
+				EntityWrites.updated(db, clazz, old, updated, entityListeners);
 
-			// Fire updated listeners
-			for (DBStoreListener listener : entityListeners) {
-				log.debug("firing 'updated' for: " + clazz + " / " + id + " / " + listener.getClass());
-				listener.updated(db, old, updated);
+				return updated;
 			}
 
-			return updated;
-
+		} catch (DBStoreException e) {
+			throw e;
 		} catch (Exception e) {
 			log.error("Error updating fields for object with id: " + id, e);
 			throw new DBStoreException("Error updating fields for object with id: " + id, e);
 		}
 	}
 
-	/**
-	 * Creates a MongoDB update operation based on the FieldUpdate type
-	 */
-	private Bson createUpdateOperation(FieldUpdate fieldUpdate) {
-		String fieldName = fieldUpdate.getFieldName();
-		UpdateOperation operation = fieldUpdate.getOperation();
-		Object value = fieldUpdate.getValue();
-
-		switch (operation) {
-			case SET:
-				return Updates.set(fieldName, value);
-			case INC:
-				return Updates.inc(fieldName, (Number) value);
-			case UNSET:
-				return Updates.unset(fieldName);
-			case PUSH:
-				return Updates.push(fieldName, value);
-			case PULL:
-				return Updates.pull(fieldName, value);
-			case ADD_TO_SET:
-				return Updates.addToSet(fieldName, value);
-			case MUL:
-				return Updates.mul(fieldName, (Number) value);
-			case MIN:
-				return Updates.min(fieldName, value);
-			case MAX:
-				return Updates.max(fieldName, value);
-			case RENAME:
-				return Updates.rename(fieldName, (String) value);
-			case SET_ON_INSERT:
-				return Updates.setOnInsert(fieldName, value);
-			default:
-				log.warn("Unknown update operation: " + operation);
-				return null;
+	private <T extends DBStoreEntity> T findOneAndUpdate(JacksonMongoCollection<T> coll, Bson filter, Bson updateDoc, ReturnDocument returnDocument, ClientSession session) {
+		FindOneAndUpdateOptions options = new FindOneAndUpdateOptions().returnDocument(returnDocument);
+		if (session != null) {
+			return coll.findOneAndUpdate(session, filter, updateDoc, options);
+		}
+		return coll.findOneAndUpdate(filter, updateDoc, options);
+	}
+
+	private <T extends DBStoreEntity> T findById(JacksonMongoCollection<T> coll, String id, ClientSession session) {
+		if (session != null) {
+			return coll.find(session, Filters.eq("_id", id)).first();
 		}
+		return coll.findOneById(id);
+	}
+
+	private <T> BsonDocument toBsonDocument(JacksonMongoCollection<T> coll, T object) {
+		return EntityCodecs.toBsonDocument(coll.getCodecRegistry(), object);
 	}
 
 	@Override
@@ -685,6 +1739,14 @@ public abstract class AMongoDataStore implements DataStore {
 		return coll.findOne(Filters.eq("_id", id));
 	}
 	
+	protected <T extends DBStoreEntity> List<T> getObjectsInTransaction(String db, Class<T> clazz, Collection<String> ids, ClientSession session) {
+		return inIdOrder(ids, getObjectMap(db, clazz, ids, session));
+	}
+
+	protected <T extends DBStoreEntity> Map<String, T> getObjectMapInTransaction(String db, Class<T> clazz, Collection<String> ids, ClientSession session) {
+		return getObjectMap(db, clazz, ids, session);
+	}
+
 	protected <T extends DBStoreEntity> boolean deleteObjectInTransaction(String db, Class<T> clazz, String id, ClientSession session) {
 		if (id == null) {
 			return false;
@@ -702,47 +1764,40 @@ public abstract class AMongoDataStore implements DataStore {
 		return deleteObjectInTransaction(db, (Class<T>) object.getClass(), object.getId(), session);
 	}
 	
-	protected <T extends DBStoreEntity> boolean deleteObjectsInTransaction(String db, Class<T> type, DBStoreQuery query, ClientSession session) {
-		JacksonMongoCollection<T> coll = (JacksonMongoCollection<T>) getCollection(db, type);
-		Bson filter = fqtl.translate(query);
-		DeleteResult result = coll.deleteMany(filter);
-		return result.getDeletedCount() > 0;
+	protected <T extends DBStoreEntity> long deleteObjectsInTransaction(String db, Class<T> type, DBStoreQuery query, ClientSession session) {
+		return deleteObjects(db, type, query, session);
 	}
 	
 	protected <T extends DBStoreEntity> List<T> findObjectsInTransaction(String db, Class<T> clazz, DBStoreQuery query, ClientSession session) {
-		FindIterable<T> f = getCollection(db, clazz)
-				.find(fqtl.translate(query))
-				.sort(fqtl.translateOrderBy(query));
-
-		if (query != null) {
-			int skip = query.getStart();
-			if (skip > 0) {
-				f = f.skip(skip);
-			}
-
-			int max = query.getMax();
-			if (max > 0 && max < Integer.MAX_VALUE) {
-				f = f.limit(max);
-			}
-		}
-
-		List<T> out = new LinkedList<>();
-		f.forEach(out::add);
-		return out;
+		return findObjects(db, clazz, query, session);
+	}
+	
+	protected <T extends DBStoreEntity> Stream<T> streamObjectsInTransaction(String db, Class<T> clazz, DBStoreQuery query, int batchSize, ClientSession session) {
+		return streamObjects(db, clazz, query, batchSize > 0 ? batchSize : streamBatchSize, session);
 	}
 	
 	protected <T extends DBStoreEntity> T findObjectInTransaction(String db, Class<T> clazz, DBStoreQuery query, ClientSession session) {
 		FindIterable<T> f = getCollection(db, clazz)
 				.find(fqtl.translate(query))
+				.projection(fqtl.translateProjection(query))
 				.sort(fqtl.translateOrderBy(query))
+				.collation(fqtl.translateCollation(query))
 				.limit(1);
 
 		return f.first();
 	}
 	
+	protected <T extends DBStoreEntity> Stream<Object> distinctValuesInTransaction(String db, Class<T> clazz, String field, DBStoreQuery query, ClientSession session) {
+		return distinctValues(db, clazz, field, query, session);
+	}
+	
+	protected <T extends DBStoreEntity> boolean existsInTransaction(String db, Class<T> clazz, DBStoreQuery query, ClientSession session) {
+		return exists(db, clazz, query, session);
+	}
+	
 	protected <T extends DBStoreEntity> long countObjectsInTransaction(String db, Class<T> clazz, DBStoreQuery query, ClientSession session) {
 		Bson filter = fqtl.translate(query);
-		return getCollection(db, clazz).countDocuments(filter);
+		return getCollection(db, clazz).countDocuments(filter, new CountOptions().collation(fqtl.translateCollation(query)));
 	}
 	
 	protected <T extends DBStoreEntity> List<T> saveObjectsInTransaction(String db, List<T> objects, ClientSession session) {
@@ -750,7 +1805,7 @@ public abstract class AMongoDataStore implements DataStore {
 			return objects;
 		}
 
-		List<T> out = new LinkedList<>();
+		List<T> out = new ArrayList<>(objects.size());
 		for (T object : objects) {
 			T saved = saveObjectInTransaction(db, object, session);
 			out.add(saved);
@@ -762,97 +1817,11 @@ public abstract class AMongoDataStore implements DataStore {
 		if (id == null || fields == null || fields.isEmpty()) {
 			return null;
 		}
-
-		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
-		JacksonMongoCollection<T> coll = (JacksonMongoCollection<T>) getCollection(db, clazz);
-
-		T old = coll.findOne(Filters.eq("_id", id));
-		if (old == null) {
-			log.debug("No object found with id: " + id + " in class: " + clazz.getSimpleName());
-			return null;
-		}
-
-		for (DBStoreListener listener : entityListeners) {
-			log.debug("firing 'beforeSave' for: " + clazz + " / " + id);
-			listener.beforeSave(db, old);
-		}
-
-		try {
-			Bson updateDoc = Updates.combine(
-					fields.entrySet().stream()
-							.map(entry -> Updates.set(entry.getKey(), entry.getValue()))
-							.collect(java.util.stream.Collectors.toList())
-			);
-			UpdateOptions options = new UpdateOptions();
-			
-			coll.updateOne(Filters.eq("_id", id), updateDoc, options);
-
-			T updated = getObjectInTransaction(db, clazz, id, session);
-
-			for (DBStoreListener listener : entityListeners) {
-				log.debug("firing 'updated' for: " + clazz + " / " + id + " / " + listener.getClass());
-				listener.updated(db, old, updated);
-			}
-
-			return updated;
-
-		} catch (Exception e) {
-			log.error("Error updating fields for object with id: " + id, e);
-			throw new DBStoreException("Error updating fields for object with id: " + id, e);
-		}
+		return updateObjectFields(db, clazz, id, FieldUpdates.fromMap(fields), session);
 	}
 	
 	protected <T extends DBStoreEntity> T updateObjectFieldsInTransaction(String db, Class<T> clazz, String id, List<FieldUpdate> fieldUpdates, ClientSession session) {
-		if (id == null || fieldUpdates == null || fieldUpdates.isEmpty()) {
-			return null;
-		}
-
-		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
-		JacksonMongoCollection<T> coll = (JacksonMongoCollection<T>) getCollection(db, clazz);
-
-		T old = coll.findOne(Filters.eq("_id", id));
-		if (old == null) {
-			log.debug("No object found with id: " + id + " in class: " + clazz.getSimpleName());
-			return null;
-		}
-
-		for (DBStoreListener listener : entityListeners) {
-			log.debug("firing 'beforeSave' for: " + clazz + " / " + id);
-			listener.beforeSave(db, old);
-		}
-
-		try {
-			List<Bson> updateOperations = new ArrayList<>();
-			for (FieldUpdate fieldUpdate : fieldUpdates) {
-				Bson operation = createUpdateOperation(fieldUpdate);
-				if (operation != null) {
-					updateOperations.add(operation);
-				}
-			}
-
-			if (updateOperations.isEmpty()) {
-				log.debug("No valid update operations found");
-				return old;
-			}
-
-			Bson updateDoc = Updates.combine(updateOperations);
-			UpdateOptions options = new UpdateOptions();
-			
-			coll.updateOne(Filters.eq("_id", id), updateDoc, options);
-
-			T updated = getObjectInTransaction(db, clazz, id, session);
-
-			for (DBStoreListener listener : entityListeners) {
-				log.debug("firing 'updated' for: " + clazz + " / " + id + " / " + listener.getClass());
-				listener.updated(db, old, updated);
-			}
-
-			return updated;
-
-		} catch (Exception e) {
-			log.error("Error updating fields for object with id: " + id, e);
-			throw new DBStoreException("Error updating fields for object with id: " + id, e);
-		}
+		return updateObjectFields(db, clazz, id, fieldUpdates, session);
 	}
 	
 	protected <T extends DBStoreEntity> T incrementFieldInTransaction(String db, Class<T> clazz, String id, String fieldName, Number increment, ClientSession session) {
@@ -916,5 +1885,41 @@ public abstract class AMongoDataStore implements DataStore {
 			throw new DBStoreException("Error getting binary: " + id, e);
 		}
 	}
-	
+
+	private Translated translated(DBStoreQuery query) {
+		return new Translated(fqtl.translate(query), fqtl.translateProjection(query), fqtl.translateOrderBy(query), fqtl.translateCollation(query),
+				query != null ? query.getStart() : 0, query != null ? query.getMax() : 0);
+	}
+
+	// what is sent to mongo for a query, translated once for both the read key and the read
+	private static class Translated {
+
+		private final Bson filter;
+		private final Bson projection;
+		private final Bson orderBy;
+		private final Collation collation;
+		private final int start;
+		private final int max;
+
+		Translated(Bson filter, Bson projection, Bson orderBy, Collation collation, int start, int max) {
+			this.filter = filter;
+			this.projection = projection;
+			this.orderBy = orderBy;
+			this.collation = collation;
+			this.start = start;
+			this.max = max;
+		}
+	}
+
+	private static class CachedCount {
+
+		private final long count;
+		private final long expires;
+
+		CachedCount(long count, long expires) {
+			this.count = count;
+			this.expires = expires;
+		}
+	}
+
 }
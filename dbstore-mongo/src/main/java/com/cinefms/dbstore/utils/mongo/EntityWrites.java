@@ -0,0 +1,224 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiPredicate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.BsonDocument;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+
+import com.cinefms.dbstore.api.DBStoreEntity;
+import com.cinefms.dbstore.api.DBStoreListener;
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.utils.mongo.util.BsonDiff;
+import com.cinefms.dbstore.utils.mongo.util.EntityCodecs;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+
+/**
+ * what {@link AMongoDataStore} and {@link ReactiveMongoDataStore} do the same around their writes:
+ * the models of a batch save and the listener calls of saves, deletes and field updates. the
+ * round trips in between are the stores' own.
+ */
+final class EntityWrites {
+
+	private static final Log log = LogFactory.getLog(EntityWrites.class);
+
+	private EntityWrites() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * fires 'beforeSave' and gives the objects without an id one
+	 *
+	 * @return the ids generated here, nobody else can have them, so their objects are new for sure
+	 */
+	@SuppressWarnings("unchecked")
+	static <T extends DBStoreEntity> Set<String> beforeSave(String db, Class<T> clazz, List<T> batch, List<DBStoreListener<?>> listeners) {
+		Set<String> generated = new HashSet<>();
+		for (T object : batch) {
+			log.debug(clazz + " / saving object: " + object.getId() + ", notifying " + listeners.size() + " listeners");
+
+			for (DBStoreListener listener : listeners) {
+				log.debug("firing 'beforeSave' for: " + clazz + " / " + object.getId());
+				listener.beforeSave(db, object);
+			}
+
+			if (object.getId() == null) {
+				String id = object.createId();
+				if (id == null) {
+					id = ObjectId.get().toString();
+					generated.add(id);
+				}
+				object.setId(id);
+			}
+		}
+		return generated;
+	}
+
+	static <T extends DBStoreEntity> List<String> ids(Collection<T> objects) {
+		List<String> out = new ArrayList<>(objects.size());
+		for (T object : objects) {
+			out.add(object.getId());
+		}
+		return out;
+	}
+
+	/**
+	 * the writes of a batch against the versions that exist, unchanged objects are left out
+	 *
+	 * @param existing the stored versions by id
+	 * @param generated from {@link #beforeSave}
+	 * @param needsUpdate whether an existing object is replaced in {@link SaveMode#REPLACE}
+	 */
+	static <T extends DBStoreEntity> SaveBatch<T> saveBatch(List<T> batch, Map<String, T> existing, Set<String> generated, SaveMode saveMode, BiPredicate<T, T> needsUpdate, CodecRegistry registry) {
+		SaveBatch<T> out = new SaveBatch<>(batch.size());
+
+		for (T object : batch) {
+			T old = existing.get(object.getId());
+
+			if (old != null && saveMode == SaveMode.DIFF) {
+				BsonDocument changes = BsonDiff.diff(EntityCodecs.toBsonDocument(registry, old), EntityCodecs.toBsonDocument(registry, object));
+				if (changes.isEmpty()) {
+					log.debug("no change, skipping: " + object.getId());
+					continue;
+				}
+				out.writes.add(new UpdateOneModel<>(Filters.eq("_id", object.getId()), changes));
+
+			} else if (old != null) {
+				if (!needsUpdate.test(old, object)) {
+					log.debug("no change, skipping: " + object.getId());
+					continue;
+				}
+				out.writes.add(new ReplaceOneModel<>(Filters.eq("_id", object.getId()), object));
+
+			} else if (generated.contains(object.getId())) {
+				out.writes.add(new InsertOneModel<>(object));
+
+			} else {
+				// another save of the same id may get in first
+				out.writes.add(new ReplaceOneModel<>(Filters.eq("_id", object.getId()), object, new ReplaceOptions().upsert(true)));
+			}
+
+			out.written.add(object);
+			out.previous.add(old);
+
+			// a later copy of the same id within this batch replaces this one
+			existing.put(object.getId(), object);
+		}
+
+		return out;
+	}
+
+	/**
+	 * fires 'created' or 'updated' for what the batch wrote
+	 */
+	@SuppressWarnings("unchecked")
+	static <T extends DBStoreEntity> void saved(String db, Class<T> clazz, SaveBatch<T> batch, List<DBStoreListener<?>> listeners) {
+		for (int i = 0; i < batch.written.size(); i++) {
+			T object = batch.written.get(i);
+			T old = batch.previous.get(i);
+
+			for (DBStoreListener listener : listeners) {
+				if (old != null) {
+					log.debug("firing 'updated' for: " + clazz + " / " + object.getId() + " / " + listener.getClass());
+					listener.updated(db, old, object);
+
+				} else {
+					log.debug("firing 'created' for: " + clazz + " / " + object.getId() + " / " + listener.getClass());
+					listener.created(db, object);
+				}
+			}
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T extends DBStoreEntity> void beforeDelete(String db, Class<T> clazz, Collection<T> objects, List<DBStoreListener<?>> listeners) {
+		for (T object : objects) {
+			for (DBStoreListener listener : listeners) {
+				log.debug("firing 'beforeDelete' for: " + clazz + " / " + object.getId());
+				listener.beforeDelete(db, object);
+			}
+		}
+	}
+
+	/**
+	 * fires 'deleted' for the objects of the batch that are gone
+	 */
+	@SuppressWarnings("unchecked")
+	static <T extends DBStoreEntity> void deleted(String db, Class<T> clazz, Collection<T> objects, Set<String> gone, List<DBStoreListener<?>> listeners) {
+		for (T object : objects) {
+			if (!gone.contains(object.getId())) {
+				continue;
+			}
+			for (DBStoreListener listener : listeners) {
+				log.debug("firing 'delete' for: " + clazz + " / " + object.getId());
+				listener.deleted(db, object);
+			}
+		}
+	}
+
+	/**
+	 * the version read for a compare-and-set field update, after 'beforeSave' was fired with it
+	 */
+	@SuppressWarnings("unchecked")
+	static <T extends DBStoreEntity> T beforeUpdate(String db, Class<T> clazz, BsonDocument current, CodecRegistry registry, List<DBStoreListener<?>> listeners) {
+		T old = EntityCodecs.fromBsonDocument(registry, clazz, current);
+		for (DBStoreListener listener : listeners) {
+			log.debug("firing 'beforeSave' for: " + clazz + " / " + old.getId());
+			listener.beforeSave(db, old);
+		}
+		return old;
+	}
+
+	@SuppressWarnings("unchecked")
+	static <T extends DBStoreEntity> void updated(String db, Class<T> clazz, T old, T updated, List<DBStoreListener<?>> listeners) {
+		for (DBStoreListener listener : listeners) {
+			log.debug("firing 'updated' for: " + clazz + " / " + updated.getId() + " / " + listener.getClass());
+			listener.updated(db, old, updated);
+		}
+	}
+
+	/**
+	 * what ends a compare-and-set update that lost every attempt
+	 */
+	static DBStoreException changedConcurrently(Class<?> clazz, String id, int attempts) {
+		return new DBStoreException("object changed concurrently " + attempts + " times: " + clazz + " / " + id);
+	}
+
+	/**
+	 * the writes of a batch save, with the previous version (null if new) of each written object
+	 */
+	static final class SaveBatch<T> {
+
+		private final List<WriteModel<T>> writes;
+		private final List<T> written;
+		private final List<T> previous;
+
+		SaveBatch(int size) {
+			this.writes = new ArrayList<>(size);
+			this.written = new ArrayList<>(size);
+			this.previous = new ArrayList<>(size);
+		}
+
+		List<WriteModel<T>> getWrites() {
+			return writes;
+		}
+
+		boolean isEmpty() {
+			return writes.isEmpty();
+		}
+	}
+
+}
@@ -12,6 +12,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -28,12 +29,23 @@ public class MongoService {
 	private boolean auth = false;
 
 	@Autowired
-	private MongoClient client;
+	private volatile MongoClient client;
 
-	private Map<String, MongoDatabase> dbs = new HashMap<>();
+	private final Map<String, MongoDatabase> dbs = new ConcurrentHashMap<>();
 
 	public MongoClient getClient() {
-		if (client != null) return client;
+		MongoClient out = client;
+		if (out != null) return out;
+
+		synchronized (this) {
+			if (client == null) {
+				client = createClient();
+			}
+			return client;
+		}
+	}
+
+	private MongoClient createClient() {
 
 		List<ServerAddress> servers = getServers();
 		String strServers = servers.stream().map(Objects::toString).collect(Collectors.joining(","));
@@ -51,9 +63,7 @@ public class MongoService {
 			log.info("Connecting to mongo servers " + strServers + " without credentials.");
 		}
 
-		client = MongoClients.create(builder.build());
-
-		return client;
+		return MongoClients.create(builder.build());
 	}
 
 	private MongoCredential getCredentials() {
@@ -107,14 +117,12 @@ public class MongoService {
 	}
 
 	public MongoDatabase getDb(String db) {
-		MongoDatabase out = dbs.get(db);
-		if (out == null) {
-			out = getClient().getDatabase(db);
+		return dbs.computeIfAbsent(db, k -> {
+			MongoDatabase out = getClient().getDatabase(k);
 			out.withReadPreference(ReadPreference.secondaryPreferred());
 			out.withWriteConcern(WriteConcern.JOURNALED);
-			dbs.put(db, out);
-		}
-		return out;
+			return out;
+		});
 	}
 
 	public String getDbName() {
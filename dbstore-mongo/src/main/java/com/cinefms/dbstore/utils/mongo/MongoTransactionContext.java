@@ -12,8 +12,10 @@ import com.mongodb.client.MongoDatabase;
 import com.mongodb.client.gridfs.GridFSBucket;
 import org.mongojack.JacksonMongoCollection;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * MongoDB implementation of transaction context
@@ -41,6 +43,16 @@ public class MongoTransactionContext implements DBStoreTransactionContext {
     public <T extends DBStoreEntity> T getObject(Class<T> clazz, String id) {
         return dataStore.getObjectInTransaction(db, clazz, id, session);
     }
+
+    @Override
+    public <T extends DBStoreEntity> List<T> getObjects(Class<T> clazz, Collection<String> ids) {
+        return dataStore.getObjectsInTransaction(db, clazz, ids, session);
+    }
+
+    @Override
+    public <T extends DBStoreEntity> Map<String, T> getObjectMap(Class<T> clazz, Collection<String> ids) {
+        return dataStore.getObjectMapInTransaction(db, clazz, ids, session);
+    }
     
     @Override
     public <T extends DBStoreEntity> boolean deleteObject(Class<T> clazz, String id) {
@@ -53,7 +65,7 @@ public class MongoTransactionContext implements DBStoreTransactionContext {
     }
     
     @Override
-    public <T extends DBStoreEntity> boolean deleteObjects(Class<T> type, DBStoreQuery query) {
+    public <T extends DBStoreEntity> long deleteObjects(Class<T> type, DBStoreQuery query) {
         return dataStore.deleteObjectsInTransaction(db, type, query, session);
     }
     
@@ -62,6 +74,16 @@ public class MongoTransactionContext implements DBStoreTransactionContext {
         return dataStore.findObjectsInTransaction(db, clazz, query, session);
     }
     
+    @Override
+    public <T extends DBStoreEntity> Stream<T> streamObjects(Class<T> clazz, DBStoreQuery query) {
+        return dataStore.streamObjectsInTransaction(db, clazz, query, 0, session);
+    }
+    
+    @Override
+    public <T extends DBStoreEntity> Stream<T> streamObjects(Class<T> clazz, DBStoreQuery query, int batchSize) {
+        return dataStore.streamObjectsInTransaction(db, clazz, query, batchSize, session);
+    }
+    
     @Override
     public <T extends DBStoreEntity> T findObject(Class<T> clazz, DBStoreQuery query) {
         return dataStore.findObjectInTransaction(db, clazz, query, session);
@@ -72,6 +94,16 @@ public class MongoTransactionContext implements DBStoreTransactionContext {
         return dataStore.countObjectsInTransaction(db, clazz, query, session);
     }
     
+    @Override
+    public <T extends DBStoreEntity> Stream<Object> distinctValues(Class<T> clazz, String field, DBStoreQuery query) {
+        return dataStore.distinctValuesInTransaction(db, clazz, field, query, session);
+    }
+    
+    @Override
+    public <T extends DBStoreEntity> boolean exists(Class<T> clazz, DBStoreQuery query) {
+        return dataStore.existsInTransaction(db, clazz, query, session);
+    }
+    
     @Override
     public <T extends DBStoreEntity> List<T> saveObjects(List<T> objects) {
         return dataStore.saveObjectsInTransaction(db, objects, session);
@@ -0,0 +1,137 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+
+/**
+ * how mongo runs a query, read from the output of explain: the stages of the winning plan from
+ * the top down, the index it uses and, if the query was executed for the explain, what that cost.
+ */
+public class QueryPlan {
+
+	public static final String COLLSCAN = "COLLSCAN";
+	public static final String IXSCAN = "IXSCAN";
+
+	private final BsonDocument winningPlan;
+	private final List<String> stages;
+	private final String indexName;
+	private final long keysExamined;
+	private final long docsExamined;
+	private final long returned;
+	private final long executionTimeMillis;
+
+	private QueryPlan(BsonDocument winningPlan, List<String> stages, String indexName, long keysExamined, long docsExamined, long returned, long executionTimeMillis) {
+		this.winningPlan = winningPlan;
+		this.stages = stages;
+		this.indexName = indexName;
+		this.keysExamined = keysExamined;
+		this.docsExamined = docsExamined;
+		this.returned = returned;
+		this.executionTimeMillis = executionTimeMillis;
+	}
+
+	/**
+	 * @param explain the result of explain for a find, with or without execution stats
+	 */
+	public static QueryPlan of(BsonDocument explain) {
+		BsonDocument planner = explain.getDocument("queryPlanner", new BsonDocument());
+		BsonDocument winning = planner.getDocument("winningPlan", new BsonDocument());
+		// the slot based engine has the classic plan under queryPlan
+		BsonDocument plan = winning.isDocument("queryPlan") ? winning.getDocument("queryPlan") : winning;
+
+		List<String> stages = new ArrayList<>();
+		String[] index = new String[1];
+		collect(plan, stages, index);
+
+		BsonDocument stats = explain.getDocument("executionStats", null);
+		return new QueryPlan(plan, Collections.unmodifiableList(stages), index[0],
+				number(stats, "totalKeysExamined"),
+				number(stats, "totalDocsExamined"),
+				number(stats, "nReturned"),
+				number(stats, "executionTimeMillis"));
+	}
+
+	private static void collect(BsonDocument stage, List<String> stages, String[] index) {
+		if (stage.isString("stage")) {
+			stages.add(stage.getString("stage").getValue());
+			if (index[0] == null && stage.isString("indexName")) {
+				index[0] = stage.getString("indexName").getValue();
+			}
+		}
+		if (stage.isDocument("inputStage")) {
+			collect(stage.getDocument("inputStage"), stages, index);
+		}
+		if (stage.isArray("inputStages")) {
+			for (BsonValue v : stage.getArray("inputStages")) {
+				if (v.isDocument()) {
+					collect(v.asDocument(), stages, index);
+				}
+			}
+		}
+	}
+
+	private static long number(BsonDocument stats, String key) {
+		if (stats == null || !stats.containsKey(key) || !stats.get(key).isNumber()) {
+			return -1;
+		}
+		return stats.getNumber(key).longValue();
+	}
+
+	/**
+	 * the plan as mongo reports it
+	 */
+	public BsonDocument getWinningPlan() {
+		return winningPlan;
+	}
+
+	/**
+	 * the names of the stages (e.g. FETCH, IXSCAN), outer ones first
+	 */
+	public List<String> getStages() {
+		return stages;
+	}
+
+	/**
+	 * the index the plan scans, null if it does not use one
+	 */
+	public String getIndexName() {
+		return indexName;
+	}
+
+	/**
+	 * true if the plan reads the whole collection (or part of it, for an OR) instead of an index
+	 */
+	public boolean isCollectionScan() {
+		return stages.contains(COLLSCAN);
+	}
+
+	/**
+	 * -1 if the query was not executed, like the other numbers
+	 */
+	public long getKeysExamined() {
+		return keysExamined;
+	}
+
+	public long getDocsExamined() {
+		return docsExamined;
+	}
+
+	public long getReturned() {
+		return returned;
+	}
+
+	public long getExecutionTimeMillis() {
+		return executionTimeMillis;
+	}
+
+	@Override
+	public String toString() {
+		return String.join(" < ", stages) + (indexName != null ? " (" + indexName + ")" : "")
+				+ (executionTimeMillis >= 0 ? ": " + keysExamined + " keys, " + docsExamined + " docs, " + returned + " returned in " + executionTimeMillis + "ms" : "");
+	}
+
+}
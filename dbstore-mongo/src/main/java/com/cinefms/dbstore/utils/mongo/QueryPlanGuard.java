@@ -0,0 +1,177 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.impl.OrderBy;
+
+/**
+ * finds queries that mongo can only answer by scanning the collection, e.g. because an
+ * {@link com.cinefms.dbstore.api.annotations.Index} is missing. set it on the store with
+ * {@link AMongoDataStore#setQueryPlanGuard(QueryPlanGuard)}.
+ *
+ * a share of the reads (sampleRate) is sampled, and the first sampled query of a shape (its
+ * fields, comparators and order without values) is explained without running it, once the
+ * collection holds at least minCollectionSize objects. a COLLSCAN is logged, and with reject set
+ * every later query of that shape fails; queries without conditions are left alone.
+ */
+public class QueryPlanGuard {
+
+	private static final Log log = LogFactory.getLog(QueryPlanGuard.class);
+
+	private double sampleRate = 0.01;
+	private long minCollectionSize = 10000;
+	private boolean reject = false;
+	private int maxShapes = 10000;
+
+	// shape -> true if it scans the collection
+	private final Map<String, Boolean> shapes = new ConcurrentHashMap<>();
+
+	/**
+	 * called before the store runs a (normalized) query
+	 */
+	void check(AMongoDataStore store, String db, Class<?> clazz, DBStoreQuery query) {
+		check(store, db, clazz, query, () -> store.explainPlan(db, clazz, query));
+	}
+
+	/**
+	 * the same for a query that is explained differently, e.g. a prepared one with its values
+	 */
+	void check(AMongoDataStore store, String db, Class<?> clazz, DBStoreQuery query, Supplier<QueryPlan> explain) {
+		if (store.isUnfiltered(query)) {
+			return;
+		}
+		String key = db + "|" + clazz.getName() + "|" + shape(query);
+		Boolean scans = shapes.get(key);
+		if (scans == null) {
+			if (ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+				return;
+			}
+			scans = inspect(store, db, clazz, query, explain);
+			if (scans == null) {
+				return;
+			}
+			if (shapes.size() >= maxShapes) {
+				shapes.clear();
+			}
+			if (shapes.putIfAbsent(key, scans) == null && scans) {
+				log.warn("query of " + clazz.getName() + " scans the whole collection: " + query);
+			}
+		}
+		if (scans && reject) {
+			throw new DBStoreException("query of " + clazz.getName() + " rejected, it scans the whole collection: " + query);
+		}
+	}
+
+	/**
+	 * @return null while the collection is too small to tell, the shape is looked at again later
+	 */
+	private Boolean inspect(AMongoDataStore store, String db, Class<?> clazz, DBStoreQuery query, Supplier<QueryPlan> explain) {
+		try {
+			if (store.estimatedSize(db, clazz) < minCollectionSize) {
+				return null;
+			}
+			QueryPlan plan = explain.get();
+			log.debug("-- plan of " + clazz.getName() + ":" + query + ": " + plan);
+			return plan.isCollectionScan();
+		} catch (RuntimeException e) {
+			// the guard must not break the query it looks at
+			log.warn("unable to explain query of " + clazz.getName() + ": " + query, e);
+			return false;
+		}
+	}
+
+	/**
+	 * the query without its values, queries of the same shape get the same plan
+	 */
+	static String shape(DBStoreQuery query) {
+		StringBuilder out = new StringBuilder();
+		appendCondition(out, query);
+		for (OrderBy o : query.getOrderBy()) {
+			out.append(o.isAsc() ? " +" : " -").append(o.getField());
+		}
+		if (!query.getIncludes().isEmpty()) {
+			out.append(" include ").append(query.getIncludes());
+		}
+		return out.toString();
+	}
+
+	private static void appendCondition(StringBuilder out, DBStoreQuery query) {
+		if (query.getField() != null) {
+			out.append(query.getField()).append(' ').append(query.getComparator());
+			if (query.getValue() instanceof DBStoreQuery) {
+				out.append('(');
+				appendCondition(out, (DBStoreQuery) query.getValue());
+				out.append(')');
+			}
+			return;
+		}
+		out.append(query.getOperator()).append('(');
+		for (int i = 0; i < query.getNested().size(); i++) {
+			if (i > 0) {
+				out.append(", ");
+			}
+			appendCondition(out, query.getNested().get(i));
+		}
+		out.append(')');
+	}
+
+	/**
+	 * forgets the shapes seen so far, e.g. after adding an index
+	 */
+	public void reset() {
+		shapes.clear();
+	}
+
+	public double getSampleRate() {
+		return sampleRate;
+	}
+
+	/**
+	 * share of the queries looked at, from 0 (none) to 1 (all). 0.01 by default.
+	 */
+	public void setSampleRate(double sampleRate) {
+		this.sampleRate = sampleRate;
+	}
+
+	public long getMinCollectionSize() {
+		return minCollectionSize;
+	}
+
+	/**
+	 * collections with fewer objects may be scanned, 10000 by default
+	 */
+	public void setMinCollectionSize(long minCollectionSize) {
+		this.minCollectionSize = minCollectionSize;
+	}
+
+	public boolean isReject() {
+		return reject;
+	}
+
+	/**
+	 * fail queries of a shape that scans the collection instead of only logging it
+	 */
+	public void setReject(boolean reject) {
+		this.reject = reject;
+	}
+
+	public int getMaxShapes() {
+		return maxShapes;
+	}
+
+	/**
+	 * number of shapes remembered, all are forgotten once there are more
+	 */
+	public void setMaxShapes(int maxShapes) {
+		this.maxShapes = maxShapes;
+	}
+
+}
@@ -0,0 +1,580 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.BsonDocument;
+import org.bson.UuidRepresentation;
+import org.bson.conversions.Bson;
+import org.mongojack.JacksonCodecRegistry;
+import org.mongojack.ObjectMapperConfigurer;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import com.cinefms.dbstore.api.AsyncDataStore;
+import com.cinefms.dbstore.api.DBStoreEntity;
+import com.cinefms.dbstore.api.DBStoreListener;
+import com.cinefms.dbstore.api.FieldUpdate;
+import com.cinefms.dbstore.api.annotations.Index;
+import com.cinefms.dbstore.api.annotations.Indexes;
+import com.cinefms.dbstore.api.annotations.Write;
+import com.cinefms.dbstore.api.annotations.WriteMode;
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.impl.BasicQuery;
+import com.cinefms.dbstore.query.mongo.QueryMongojackTranslator;
+import com.cinefms.dbstore.utils.mongo.util.CollectionNamingStrategy;
+import com.cinefms.dbstore.utils.mongo.util.FieldUpdates;
+import com.cinefms.dbstore.utils.mongo.util.IndexModels;
+import com.cinefms.dbstore.utils.mongo.util.ListenerRegistry;
+import com.cinefms.dbstore.utils.mongo.util.Publishers;
+import com.cinefms.dbstore.utils.mongo.util.SimpleCollectionNamingStrategy;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.WriteConcern;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.result.DeleteResult;
+import com.mongodb.reactivestreams.client.FindPublisher;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoCollection;
+import com.mongodb.reactivestreams.client.MongoDatabase;
+
+/**
+ * {@link AsyncDataStore} on top of the reactive-streams mongo driver. queries are translated by
+ * the same {@link QueryMongojackTranslator}, entities are mapped by the same jackson codecs and
+ * listeners are resolved and fired like in {@link AMongoDataStore}, so both can be used on the
+ * same collections side by side.
+ *
+ * binaries and transactions are not supported here, use the blocking store for those.
+ */
+public class ReactiveMongoDataStore implements AsyncDataStore {
+
+	protected static final Log log = LogFactory.getLog(ReactiveMongoDataStore.class);
+
+	private final Map<String, CompletableFuture<MongoCollection<?>>> collections = new ConcurrentHashMap<>();
+	private final ListenerRegistry listeners = new ListenerRegistry();
+	private final QueryMongojackTranslator fqtl = new QueryMongojackTranslator();
+
+	private MongoClient mongoClient;
+	private String defaultDb;
+	private String dbPrefix;
+	private ObjectMapper objectMapper;
+	private CollectionNamingStrategy collectionNamingStrategy = new SimpleCollectionNamingStrategy();
+
+	private SaveMode saveMode = SaveMode.REPLACE;
+	private int saveBatchSize = 1000;
+	private int deleteBatchSize = 1000;
+	private boolean orderedWrites = true;
+
+	public MongoDatabase getDB(String db) {
+		if (db == null) {
+			return mongoClient.getDatabase(defaultDb);
+		}
+		return mongoClient.getDatabase((dbPrefix == null ? "" : (dbPrefix + "_")) + db);
+	}
+
+	/**
+	 * the collection for the class, with its indexes created on first use
+	 */
+	@SuppressWarnings("unchecked")
+	private <T> CompletableFuture<MongoCollection<T>> getCollection(String db, Class<T> clazz) {
+		String collectionName = getCollectionName(clazz);
+		String key = db + ":" + collectionName;
+
+		CompletableFuture<MongoCollection<?>> out = collections.computeIfAbsent(key, k -> initializeCollection(db, clazz, collectionName));
+
+		// a failed index creation is retried with the next call
+		out.whenComplete((c, e) -> {
+			if (e != null) {
+				collections.remove(key, out);
+			}
+		});
+
+		return out.thenApply(c -> (MongoCollection<T>) c);
+	}
+
+	private <T> CompletableFuture<MongoCollection<?>> initializeCollection(String db, Class<T> clazz, String collectionName) {
+		log.debug("== creating collection: " + db + ":" + collectionName + " for " + clazz.getCanonicalName());
+
+		MongoCollection<T> raw = getDB(db).getCollection(collectionName, clazz);
+		JacksonCodecRegistry codecs = new JacksonCodecRegistry(getObjectMapper(), raw.getCodecRegistry(), UuidRepresentation.JAVA_LEGACY);
+		codecs.addCodecForClass(clazz);
+
+		MongoCollection<T> coll = raw.withCodecRegistry(codecs);
+		if (clazz.getAnnotation(Write.class) != null && clazz.getAnnotation(Write.class).value() == WriteMode.FAST) {
+			coll = coll.withWriteConcern(WriteConcern.UNACKNOWLEDGED);
+		}
+
+		List<CompletableFuture<String>> indexes = new ArrayList<>();
+		if (clazz.getAnnotation(Indexes.class) != null) {
+			for (Index i : clazz.getAnnotation(Indexes.class).value()) {
+				IndexModel idx = IndexModels.of(i, fqtl.caseInsensitiveCollation());
+				log.debug(" === CREATING INDEX: " + idx.getKeys() + " ==== ");
+				indexes.add(Publishers.first(raw.createIndex(idx.getKeys(), idx.getOptions())));
+			}
+		}
+
+		MongoCollection<T> result = coll;
+		return CompletableFuture
+				.allOf(indexes.toArray(new CompletableFuture[0]))
+				.thenApply(v -> result);
+	}
+
+	private List<DBStoreListener<?>> getListeners(Class<? extends DBStoreEntity> clazz) {
+		return listeners.getListeners(clazz);
+	}
+
+	private <T> FindPublisher<T> find(MongoCollection<T> coll, DBStoreQuery query) {
+		FindPublisher<T> f = coll
+				.find(fqtl.translate(query))
+				.projection(fqtl.translateProjection(query))
+				.sort(fqtl.translateOrderBy(query))
+				.collation(fqtl.translateCollation(query));
+
+		if (query != null) {
+			if (query.getStart() > 0) {
+				f = f.skip(query.getStart());
+			}
+			if (query.getMax() > 0 && query.getMax() < Integer.MAX_VALUE) {
+				f = f.limit(query.getMax());
+			}
+		}
+
+		return f;
+	}
+
+	@Override
+	public <T extends DBStoreEntity> CompletableFuture<T> getObject(String db, Class<T> clazz, String id) {
+		if (id == null) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return wrap(getCollection(db, clazz)
+				.thenCompose(coll -> Publishers.first(coll.find(Filters.eq("_id", id)).first())),
+				"Error loading " + clazz.getSimpleName() + " " + id);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> CompletableFuture<T> findObject(String db, Class<T> clazz, DBStoreQuery q) {
+		DBStoreQuery query = fqtl.normalize(q);
+		if (fqtl.isUnsatisfiable(query)) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return wrap(getCollection(db, clazz)
+				.thenCompose(coll -> Publishers.first(coll
+						.find(fqtl.translate(query))
+						.projection(fqtl.translateProjection(query))
+						.sort(fqtl.translateOrderBy(query))
+						.collation(fqtl.translateCollation(query))
+						.limit(1)
+						.first())),
+				"Error querying " + clazz.getSimpleName());
+	}
+
+	@Override
+	public <T extends DBStoreEntity> CompletableFuture<List<T>> findObjects(String db, Class<T> clazz, DBStoreQuery q) {
+		DBStoreQuery query = fqtl.normalize(q);
+		if (fqtl.isUnsatisfiable(query)) {
+			return CompletableFuture.completedFuture(new ArrayList<>());
+		}
+		return wrap(getCollection(db, clazz)
+				.thenCompose(coll -> Publishers.toList(find(coll, query))),
+				"Error querying " + clazz.getSimpleName());
+	}
+
+	@Override
+	public <T extends DBStoreEntity> Publisher<T> publishObjects(String db, Class<T> clazz, DBStoreQuery query) {
+		return Publishers.defer(getCollection(db, clazz).thenApply(coll -> find(coll, query)));
+	}
+
+	@Override
+	public <T extends DBStoreEntity> CompletableFuture<Long> countObjects(String db, Class<T> clazz, DBStoreQuery q) {
+		DBStoreQuery query = fqtl.normalize(q);
+		if (fqtl.isUnsatisfiable(query)) {
+			return CompletableFuture.completedFuture(0L);
+		}
+		return wrap(getCollection(db, clazz)
+				.thenCompose(coll -> Publishers.first(coll.countDocuments(fqtl.translate(query), new CountOptions().collation(fqtl.translateCollation(query))))),
+				"Error counting " + clazz.getSimpleName());
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T extends DBStoreEntity> CompletableFuture<Boolean> deleteObject(String db, T object) {
+		if (object == null) {
+			return CompletableFuture.completedFuture(false);
+		}
+		return deleteObject(db, (Class<T>) object.getClass(), object.getId());
+	}
+
+	/**
+	 * the same by-id path as {@link AMongoDataStore#deleteObject(String, Class, String)}: one
+	 * deleteOne without listeners, otherwise a read for 'beforeDelete' and a findOneAndDelete
+	 */
+	@Override
+	public <T extends DBStoreEntity> CompletableFuture<Boolean> deleteObject(String db, Class<T> clazz, String id) {
+		if (id == null) {
+			return CompletableFuture.completedFuture(false);
+		}
+
+		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
+		Bson byId = Filters.eq("_id", id);
+
+		return wrap(getCollection(db, clazz).thenCompose(coll -> {
+			if (entityListeners.isEmpty()) {
+				return Publishers.first(coll.deleteOne(byId)).thenApply(result -> result.getDeletedCount() > 0);
+			}
+
+			return Publishers.first(coll.find(byId).first()).thenCompose(object -> {
+				if (object == null) {
+					return CompletableFuture.completedFuture(false);
+				}
+				EntityWrites.beforeDelete(db, clazz, Collections.singletonList(object), entityListeners);
+
+				return Publishers.first(coll.findOneAndDelete(byId)).thenApply(removed -> {
+					if (removed == null) {
+						// someone else got there in between
+						return false;
+					}
+					EntityWrites.deleted(db, clazz, Collections.singletonList(removed), Collections.singleton(id), entityListeners);
+					return true;
+				});
+			});
+		}), "Error deleting " + clazz.getSimpleName() + " / " + id);
+	}
+
+	/**
+	 * without listeners on the class this is a single deleteMany. otherwise the matches are streamed
+	 * and removed in batches of {@link #getDeleteBatchSize()} between 'beforeDelete' and 'deleted',
+	 * the next batch is only read once the previous one is deleted.
+	 */
+	@Override
+	public <T extends DBStoreEntity> CompletableFuture<Long> deleteObjects(String db, Class<T> clazz, DBStoreQuery query) {
+		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
+		Bson filter = fqtl.translate(query);
+
+		return wrap(getCollection(db, clazz).thenCompose(coll -> {
+			if (entityListeners.isEmpty()) {
+				return Publishers.first(coll.deleteMany(filter)).thenApply(DeleteResult::getDeletedCount);
+			}
+
+			int batchSize = deleteBatchSize > 0 ? deleteBatchSize : 1000;
+			AtomicLong deleted = new AtomicLong();
+			return Publishers.inBatches(coll.find(filter).batchSize(batchSize), batchSize,
+					batch -> deleteBatch(db, clazz, coll, batch, entityListeners).thenAccept(deleted::addAndGet))
+					.thenApply(v -> deleted.get());
+		}), "Error deleting " + clazz.getSimpleName());
+	}
+
+	/**
+	 * same as {@link AMongoDataStore}'s: only the objects still there after the 'beforeDelete's are
+	 * deleted, and 'deleted' only fires for those that are gone afterwards
+	 */
+	private <T extends DBStoreEntity> CompletableFuture<Long> deleteBatch(String db, Class<T> clazz, MongoCollection<T> coll, List<T> batch, List<DBStoreListener<?>> entityListeners) {
+		EntityWrites.beforeDelete(db, clazz, batch, entityListeners);
+
+		return findIds(coll, Filters.in("_id", EntityWrites.ids(batch))).thenCompose(present -> {
+			if (present.isEmpty()) {
+				return CompletableFuture.completedFuture(0L);
+			}
+
+			Bson byIds = Filters.in("_id", present);
+			return Publishers.first(coll.deleteMany(byIds)).thenCompose(result -> {
+				// fewer deleted than found: someone else got there in between, or saved one again
+				CompletableFuture<Set<String>> left = result.getDeletedCount() < present.size()
+						? findIds(coll, byIds)
+						: CompletableFuture.completedFuture(Collections.emptySet());
+
+				return left.thenApply(l -> {
+					present.removeAll(l);
+					EntityWrites.deleted(db, clazz, batch, present, entityListeners);
+					return result.getDeletedCount();
+				});
+			});
+		});
+	}
+
+	private <T extends DBStoreEntity> CompletableFuture<Set<String>> findIds(MongoCollection<T> coll, Bson filter) {
+		return Publishers.toList(coll.find(filter).projection(Projections.include("_id"))).thenApply(found -> {
+			Set<String> out = new HashSet<>();
+			found.forEach(o -> out.add(o.getId()));
+			return out;
+		});
+	}
+
+	@Override
+	public <T extends DBStoreEntity> CompletableFuture<T> saveObject(String db, T object) {
+		return saveObjects(db, Collections.singletonList(object)).thenApply(saved -> saved.isEmpty() ? null : saved.get(0));
+	}
+
+	/**
+	 * same batching as {@link AMongoDataStore#saveObjects(String, List)}: per batch, one $in query
+	 * for the existing versions and one bulk write. batches are written one after the other.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T extends DBStoreEntity> CompletableFuture<List<T>> saveObjects(String db, List<T> objects) {
+		if (objects.isEmpty()) {
+			return CompletableFuture.completedFuture(objects);
+		}
+
+		Class<T> clazz = (Class<T>) objects.get(0).getClass();
+		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
+
+		int batchSize = saveBatchSize > 0 ? saveBatchSize : objects.size();
+		CompletableFuture<Void> out = CompletableFuture.completedFuture(null);
+
+		for (int from = 0; from < objects.size(); from += batchSize) {
+			List<T> chunk = objects.subList(from, Math.min(from + batchSize, objects.size()));
+
+			// objects of different classes end up in different collections
+			Map<Class<?>, List<T>> byClass = new LinkedHashMap<>();
+			for (T object : chunk) {
+				byClass.computeIfAbsent(object.getClass(), c -> new ArrayList<>()).add(object);
+			}
+
+			for (List<T> batch : byClass.values()) {
+				out = out.thenCompose(v -> saveBatch(db, clazz, batch, entityListeners));
+			}
+		}
+
+		return wrap(out.thenApply(v -> objects), "Error saving objects of " + clazz);
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T extends DBStoreEntity> CompletableFuture<Void> saveBatch(String db, Class<T> clazz, List<T> batch, List<DBStoreListener<?>> entityListeners) {
+		Set<String> generated = EntityWrites.beforeSave(db, clazz, batch, entityListeners);
+		Class<T> batchClass = (Class<T>) batch.get(0).getClass();
+
+		return getCollection(db, batchClass).thenCompose(coll -> Publishers.toList(coll.find(Filters.in("_id", EntityWrites.ids(batch)))).thenCompose(found -> {
+			Map<String, T> existing = new HashMap<>();
+			for (T old : found) {
+				existing.put(old.getId(), old);
+			}
+
+			EntityWrites.SaveBatch<T> writes = EntityWrites.saveBatch(batch, existing, generated, saveMode, (old, object) -> true, coll.getCodecRegistry());
+			if (writes.isEmpty()) {
+				return CompletableFuture.completedFuture(null);
+			}
+
+			return Publishers.first(coll.bulkWrite(writes.getWrites(), new BulkWriteOptions().ordered(orderedWrites)))
+					.thenAccept(result -> EntityWrites.saved(db, clazz, writes, entityListeners));
+		}));
+	}
+
+	@Override
+	public <T extends DBStoreEntity> CompletableFuture<T> updateObjectFields(String db, Class<T> clazz, String id, Map<String, Object> fields) {
+		if (id == null || fields == null || fields.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+		return updateObjectFields(db, clazz, id, FieldUpdates.fromMap(fields));
+	}
+
+	/**
+	 * one findOneAndUpdate without listeners, with them the same read / 'beforeSave' /
+	 * conditional update as {@link AMongoDataStore#updateObjectFields(String, Class, String, List)}
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <T extends DBStoreEntity> CompletableFuture<T> updateObjectFields(String db, Class<T> clazz, String id, List<FieldUpdate> fieldUpdates) {
+		if (id == null || fieldUpdates == null || fieldUpdates.isEmpty()) {
+			return CompletableFuture.completedFuture(null);
+		}
+
+		Bson updateDoc = FieldUpdates.toUpdate(fieldUpdates);
+		if (updateDoc == null) {
+			log.debug("No valid update operations found");
+			return getObject(db, clazz, id);
+		}
+
+		List<DBStoreListener<?>> entityListeners = getListeners(clazz);
+
+		return wrap(getCollection(db, clazz).thenCompose(coll -> {
+			if (entityListeners.isEmpty()) {
+				return findOneAndUpdate(coll, Filters.eq("_id", id), updateDoc, ReturnDocument.AFTER);
+			}
+
+			return updateWithListeners(db, clazz, coll, id, updateDoc, entityListeners, 1);
+		}), "Error updating fields for object with id: " + id);
+	}
+
+	/**
+	 * reads the current version, fires 'beforeSave' and applies the update only if the document
+	 * is still that version, starting over if it changed in between
+	 */
+	private <T extends DBStoreEntity> CompletableFuture<T> updateWithListeners(String db, Class<T> clazz, MongoCollection<T> coll, String id, Bson updateDoc, List<DBStoreListener<?>> entityListeners, int attempt) {
+		return Publishers.first(coll.find(Filters.eq("_id", id), BsonDocument.class).first()).thenCompose(current -> {
+			if (current == null) {
+				log.debug("No object found with id: " + id + " in class: " + clazz.getSimpleName());
+				return CompletableFuture.completedFuture(null);
+			}
+
+			T old = EntityWrites.beforeUpdate(db, clazz, current, coll.getCodecRegistry(), entityListeners);
+
+			// the post-image from the server, applied to exactly the version read
+			return findOneAndUpdate(coll, FieldUpdates.unchanged(current), updateDoc, ReturnDocument.AFTER).thenCompose(updated -> {
+				if (updated == null) {
+					if (attempt >= AMongoDataStore.UPDATE_ATTEMPTS) {
+						throw EntityWrites.changedConcurrently(clazz, id, attempt);
+					}
+					log.debug("changed concurrently, reading again: " + clazz + " / " + id);
+					return updateWithListeners(db, clazz, coll, id, updateDoc, entityListeners, attempt + 1);
+				}
+
+				EntityWrites.updated(db, clazz, old, updated, entityListeners);
+				return CompletableFuture.completedFuture(updated);
+			});
+		});
+	}
+
+	private <T> CompletableFuture<T> findOneAndUpdate(MongoCollection<T> coll, Bson filter, Bson updateDoc, ReturnDocument returnDocument) {
+		FindOneAndUpdateOptions options = new FindOneAndUpdateOptions().returnDocument(returnDocument);
+		return Publishers.first(coll.findOneAndUpdate(filter, updateDoc, options));
+	}
+
+	@Override
+	public <T extends DBStoreEntity> CompletableFuture<T> incrementField(String db, Class<T> clazz, String id, String fieldName, Number increment) {
+		return updateObjectFields(db, clazz, id, Collections.singletonList(FieldUpdate.inc(fieldName, increment)));
+	}
+
+	@Override
+	public <T extends DBStoreEntity> CompletableFuture<T> setField(String db, Class<T> clazz, String id, String fieldName, Object value) {
+		return updateObjectFields(db, clazz, id, Collections.singletonList(FieldUpdate.set(fieldName, value)));
+	}
+
+	@Override
+	public <T extends DBStoreEntity> CompletableFuture<T> unsetField(String db, Class<T> clazz, String id, String fieldName) {
+		return updateObjectFields(db, clazz, id, Collections.singletonList(FieldUpdate.unset(fieldName)));
+	}
+
+	/**
+	 * completes with a {@link DBStoreException} instead of whatever the driver failed with
+	 */
+	private static <T> CompletableFuture<T> wrap(CompletableFuture<T> future, String message) {
+		CompletableFuture<T> out = new CompletableFuture<>();
+		future.whenComplete((result, e) -> {
+			if (e == null) {
+				out.complete(result);
+				return;
+			}
+
+			Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+			if (cause instanceof DBStoreException || !(cause instanceof Exception)) {
+				out.completeExceptionally(cause);
+			} else {
+				out.completeExceptionally(new DBStoreException(message, (Exception) cause));
+			}
+		});
+		return out;
+	}
+
+	@Override
+	public void addListener(DBStoreListener<?> listener) {
+		listeners.addListener(listener);
+	}
+
+	@Autowired(required = false)
+	public void setListeners(List<DBStoreListener<?>> listeners) {
+		this.listeners.setListeners(listeners);
+	}
+
+	public String getCollectionName(Class<?> clazz) {
+		return collectionNamingStrategy.getCollectionName(clazz);
+	}
+
+	public MongoClient getMongoClient() {
+		return mongoClient;
+	}
+
+	public void setMongoClient(MongoClient mongoClient) {
+		this.mongoClient = mongoClient;
+	}
+
+	public String getDefaultDb() {
+		return defaultDb;
+	}
+
+	public void setDefaultDb(String defaultDb) {
+		this.defaultDb = defaultDb;
+	}
+
+	public String getDbPrefix() {
+		return dbPrefix;
+	}
+
+	public void setDbPrefix(String dbPrefix) {
+		this.dbPrefix = dbPrefix;
+	}
+
+	public ObjectMapper getObjectMapper() {
+		if (objectMapper == null) {
+			objectMapper = ObjectMapperConfigurer.configureObjectMapper(new ObjectMapper());
+		}
+		return objectMapper;
+	}
+
+	/**
+	 * the mapper for entities. it is configured for mongojack by the caller, see
+	 * {@link ObjectMapperConfigurer}.
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	public CollectionNamingStrategy getCollectionNamingStrategy() {
+		return collectionNamingStrategy;
+	}
+
+	public void setCollectionNamingStrategy(CollectionNamingStrategy collectionNamingStrategy) {
+		this.collectionNamingStrategy = collectionNamingStrategy;
+	}
+
+	public SaveMode getSaveMode() {
+		return saveMode;
+	}
+
+	public void setSaveMode(SaveMode saveMode) {
+		this.saveMode = saveMode;
+	}
+
+	public int getSaveBatchSize() {
+		return saveBatchSize;
+	}
+
+	public void setSaveBatchSize(int saveBatchSize) {
+		this.saveBatchSize = saveBatchSize;
+	}
+
+	public int getDeleteBatchSize() {
+		return deleteBatchSize;
+	}
+
+	public void setDeleteBatchSize(int deleteBatchSize) {
+		this.deleteBatchSize = deleteBatchSize;
+	}
+
+	public boolean isOrderedWrites() {
+		return orderedWrites;
+	}
+
+	public void setOrderedWrites(boolean orderedWrites) {
+		this.orderedWrites = orderedWrites;
+	}
+
+}
@@ -0,0 +1,19 @@
+package com.cinefms.dbstore.utils.mongo;
+
+/**
+ * how {@link AMongoDataStore#saveObjects(String, java.util.List)} writes objects that already exist
+ */
+public enum SaveMode {
+
+	/**
+	 * replace the whole document (if {@link AMongoDataStore#needsUpdate(Object, Object)} says so)
+	 */
+	REPLACE,
+
+	/**
+	 * compare old and new version field by field and only $set / $unset the changed paths.
+	 * unchanged objects are not written at all.
+	 */
+	DIFF
+
+}
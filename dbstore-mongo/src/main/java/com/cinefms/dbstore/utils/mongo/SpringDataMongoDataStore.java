@@ -6,6 +6,10 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.PropertySource;
 import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.List;
 
 @Component
 //@ConditionalOnBean(MongoAutoConfiguration.class)
@@ -59,4 +63,18 @@ public class SpringDataMongoDataStore extends AMongoDataStore {
 		this.dbPrefix = dbPrefix.trim();
 	}
 
+	/**
+	 * comma separated list of packages to warm up at startup
+	 */
+	@Value("${dbstore.warmUpPackages:}")
+	public void setWarmUpPackageNames(String packages) {
+		List<String> out = new ArrayList<>();
+		for (String p : StringUtils.commaDelimitedListToStringArray(packages)) {
+			if (StringUtils.hasText(p)) {
+				out.add(p.trim());
+			}
+		}
+		setWarmUpPackages(out);
+	}
+
 }
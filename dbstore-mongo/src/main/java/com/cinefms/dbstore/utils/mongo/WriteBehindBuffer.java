@@ -0,0 +1,391 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.cinefms.dbstore.api.DBStoreEntity;
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+
+/**
+ * write-behind buffer for {@link com.cinefms.dbstore.api.annotations.WriteMode#BUFFERED} entities.
+ *
+ * saves of the same object (db, class, id) are coalesced, only the latest version is kept.
+ * a background thread hands the pending objects to the {@link Writer} in batches, whenever
+ * batchSize objects are waiting and at least every flushInterval. pending objects stay
+ * visible to {@link #get(String, Class, String)} until they are written. the buffer keeps a
+ * copy of what was saved and hands out copies, changes to the saved object are not seen.
+ *
+ * memory is bounded by capacity: saving a new object into a full buffer blocks until a flush
+ * made room (or fails after putTimeout), which pushes back on the producers.
+ *
+ * a group (db and class) that fails stays pending and is retried with the next flush, the
+ * other groups are written anyway. after maxAttempts failed flushes its objects are written
+ * one by one, and those that still fail are dropped with an error, so that one bad object
+ * (e.g. a duplicate key) can not block the buffer for good.
+ */
+public class WriteBehindBuffer {
+
+	private static final Log log = LogFactory.getLog(WriteBehindBuffer.class);
+
+	public interface Writer {
+
+		/**
+		 * upserts the objects, all of the same class
+		 */
+		void write(String db, Class<? extends DBStoreEntity> clazz, List<DBStoreEntity> objects);
+
+	}
+
+	public interface Copier {
+
+		/**
+		 * a copy that shares no mutable state with the object
+		 */
+		DBStoreEntity copy(String db, DBStoreEntity object);
+
+	}
+
+	private final Writer writer;
+	private final Copier copier;
+	private final int capacity;
+	private final int batchSize;
+	private final long putTimeout;
+
+	private final Map<Key, Pending> pending = new LinkedHashMap<>();
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition notFull = lock.newCondition();
+
+	// only one flush at a time, so a batch is never written twice concurrently
+	private final ReentrantLock flushLock = new ReentrantLock();
+	private final AtomicBoolean flushScheduled = new AtomicBoolean();
+	private final ScheduledExecutorService scheduler;
+
+	private volatile boolean closed = false;
+
+	private volatile int maxAttempts = 10;
+	private final AtomicLong dropped = new AtomicLong();
+
+	/**
+	 * @param capacity maximum number of pending objects
+	 * @param batchSize number of pending objects that triggers a flush, and maximum per write
+	 * @param flushInterval milliseconds between scheduled flushes
+	 * @param putTimeout milliseconds a save waits for room in a full buffer
+	 */
+	public WriteBehindBuffer(Writer writer, Copier copier, int capacity, int batchSize, long flushInterval, long putTimeout) {
+		this.writer = writer;
+		this.copier = copier;
+		this.capacity = Math.max(1, capacity);
+		this.batchSize = Math.max(1, Math.min(batchSize, this.capacity));
+		this.putTimeout = putTimeout;
+
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+			Thread t = new Thread(r, "dbstore-write-behind");
+			t.setDaemon(true);
+			return t;
+		});
+		this.scheduler.scheduleWithFixedDelay(this::flushQuietly, flushInterval, flushInterval, TimeUnit.MILLISECONDS);
+	}
+
+	public void put(String db, DBStoreEntity object) {
+		if (closed) {
+			throw new DBStoreException("write-behind buffer is closed");
+		}
+
+		Key key = new Key(db, object.getClass(), object.getId());
+		DBStoreEntity copy = copier.copy(db, object);
+		int size;
+
+		lock.lock();
+		try {
+			long nanos = TimeUnit.MILLISECONDS.toNanos(putTimeout);
+			while (pending.size() >= capacity && !pending.containsKey(key)) {
+				scheduleFlush();
+				if (nanos <= 0) {
+					throw new DBStoreException("write-behind buffer full (" + capacity + " objects)");
+				}
+				nanos = notFull.awaitNanos(nanos);
+			}
+
+			// the latest version wins, but keeps the position of the first one
+			pending.put(key, new Pending(key, copy));
+			size = pending.size();
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DBStoreException("interrupted while waiting for the write-behind buffer", e);
+		} finally {
+			lock.unlock();
+		}
+
+		if (size >= batchSize) {
+			scheduleFlush();
+		}
+	}
+
+	/**
+	 * @return the pending version of the object, null if there is none
+	 */
+	public <T extends DBStoreEntity> T get(String db, Class<T> clazz, String id) {
+		Pending p;
+		lock.lock();
+		try {
+			p = pending.get(new Key(db, clazz, id));
+		} finally {
+			lock.unlock();
+		}
+		// the pending copy is never changed, so it can be copied without the lock
+		return p != null ? clazz.cast(copier.copy(db, p.object)) : null;
+	}
+
+	public int size() {
+		lock.lock();
+		try {
+			return pending.size();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * writes everything that is pending right now, on the calling thread
+	 */
+	public void flush() {
+		flushLock.lock();
+		try {
+			List<Pending> snapshot;
+			lock.lock();
+			try {
+				snapshot = new ArrayList<>(pending.values());
+			} finally {
+				lock.unlock();
+			}
+
+			for (int from = 0; from < snapshot.size(); from += batchSize) {
+				write(snapshot.subList(from, Math.min(from + batchSize, snapshot.size())));
+			}
+
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	/**
+	 * writes the pending objects of the class now, on the calling thread. unlike {@link #flush()}
+	 * a failed write is thrown, and its objects stay pending
+	 */
+	public void flush(String db, Class<? extends DBStoreEntity> clazz) {
+		flush(k -> k.clazz == clazz && (db == null ? k.db == null : db.equals(k.db)));
+	}
+
+	/**
+	 * the same for one object
+	 */
+	public void flush(String db, Class<? extends DBStoreEntity> clazz, String id) {
+		Key key = new Key(db, clazz, id);
+		flush(key::equals);
+	}
+
+	private void flush(Predicate<Key> which) {
+		flushLock.lock();
+		try {
+			List<Pending> snapshot = new ArrayList<>();
+			lock.lock();
+			try {
+				for (Pending p : pending.values()) {
+					if (which.test(p.key)) {
+						snapshot.add(p);
+					}
+				}
+			} finally {
+				lock.unlock();
+			}
+
+			// all of one db and class
+			for (int from = 0; from < snapshot.size(); from += batchSize) {
+				List<Pending> batch = snapshot.subList(from, Math.min(from + batchSize, snapshot.size()));
+				try {
+					write(batch.get(0).key, batch);
+				} catch (RuntimeException e) {
+					throw new DBStoreException("unable to write " + batch.size() + " pending objects of " + batch.get(0).key.clazz.getName(), e);
+				}
+			}
+
+		} finally {
+			flushLock.unlock();
+		}
+	}
+
+	private void write(List<Pending> batch) {
+		Map<String, List<Pending>> groups = new LinkedHashMap<>();
+		for (Pending p : batch) {
+			groups.computeIfAbsent(p.key.db + ":" + p.key.clazz.getName(), k -> new ArrayList<>()).add(p);
+		}
+
+		for (List<Pending> group : groups.values()) {
+			try {
+				write(group.get(0).key, group);
+			} catch (RuntimeException e) {
+				failed(group, e);
+			}
+		}
+	}
+
+	private void write(Key first, List<Pending> group) {
+		List<DBStoreEntity> objects = new ArrayList<>(group.size());
+		for (Pending p : group) {
+			objects.add(p.object);
+		}
+		writer.write(first.db, first.clazz, objects);
+		remove(group);
+	}
+
+	/**
+	 * counts the attempt, the group stays pending until it has failed maxAttempts times
+	 */
+	private void failed(List<Pending> group, RuntimeException e) {
+		int attempts = 0;
+		for (Pending p : group) {
+			attempts = Math.max(attempts, ++p.attempts);
+		}
+		Key first = group.get(0).key;
+		if (attempts < maxAttempts) {
+			log.warn("write-behind: writing " + group.size() + " objects of " + first.clazz.getName() + " failed (attempt " + attempts + "), retrying with the next flush", e);
+			return;
+		}
+		if (group.size() == 1) {
+			drop(group.get(0), e);
+			return;
+		}
+		// one by one, to write the objects that can be written and find the ones that can not
+		for (Pending p : group) {
+			try {
+				write(p.key, Collections.singletonList(p));
+			} catch (RuntimeException e1) {
+				drop(p, e1);
+			}
+		}
+	}
+
+	private void drop(Pending p, RuntimeException e) {
+		log.error("write-behind: dropping " + p.key.clazz.getName() + " " + p.key.id + " (db " + p.key.db + ") after " + p.attempts + " failed attempts", e);
+		dropped.incrementAndGet();
+		remove(Collections.singletonList(p));
+	}
+
+	private void remove(List<Pending> written) {
+		lock.lock();
+		try {
+			for (Pending p : written) {
+				// only if it was not replaced by a newer version in the meantime
+				pending.remove(p.key, p);
+			}
+			notFull.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public int getMaxAttempts() {
+		return maxAttempts;
+	}
+
+	/**
+	 * failed flushes of an object before it is dropped, 10 by default
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = Math.max(1, maxAttempts);
+	}
+
+	/**
+	 * number of objects dropped because they could not be written
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	private void scheduleFlush() {
+		if (!closed && flushScheduled.compareAndSet(false, true)) {
+			scheduler.execute(() -> {
+				flushScheduled.set(false);
+				flushQuietly();
+			});
+		}
+	}
+
+	private void flushQuietly() {
+		try {
+			flush();
+		} catch (Exception e) {
+			log.error("write-behind flush failed, " + size() + " objects still pending", e);
+		}
+	}
+
+	/**
+	 * stops the background thread and writes what is left
+	 */
+	public void close() {
+		closed = true;
+		scheduler.shutdown();
+		try {
+			scheduler.awaitTermination(1, TimeUnit.MINUTES);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	private static class Key {
+
+		private final String db;
+		private final Class<? extends DBStoreEntity> clazz;
+		private final String id;
+
+		Key(String db, Class<?> clazz, String id) {
+			this.db = db;
+			this.clazz = clazz.asSubclass(DBStoreEntity.class);
+			this.id = id;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return clazz == k.clazz && id.equals(k.id) && (db == null ? k.db == null : db.equals(k.db));
+		}
+
+		@Override
+		public int hashCode() {
+			return 31 * (31 * (db == null ? 0 : db.hashCode()) + clazz.hashCode()) + id.hashCode();
+		}
+	}
+
+	private static class Pending {
+
+		private final Key key;
+		private final DBStoreEntity object;
+		// failed writes, only changed by the flushing thread
+		private int attempts;
+
+		Pending(Key key, DBStoreEntity object) {
+			this.key = key;
+			this.object = object;
+		}
+	}
+
+}
@@ -0,0 +1,89 @@
+package com.cinefms.dbstore.utils.mongo.util;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+
+import java.util.Map;
+
+/**
+ * computes a field level diff between two versions of a document as an update document with
+ * $set / $unset on the changed paths only.
+ *
+ * embedded documents are compared recursively, arrays of equal length element-wise (so changing
+ * one element of a large list only sets that element); anything else that changed is set as a
+ * whole.
+ */
+public class BsonDiff {
+
+	private BsonDiff() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * @return the update document, empty if both versions are equal
+	 */
+	public static BsonDocument diff(BsonDocument before, BsonDocument after) {
+		BsonDocument set = new BsonDocument();
+		BsonDocument unset = new BsonDocument();
+
+		diff("", before, after, set, unset);
+
+		BsonDocument out = new BsonDocument();
+		if (!set.isEmpty()) {
+			out.put("$set", set);
+		}
+		if (!unset.isEmpty()) {
+			out.put("$unset", unset);
+		}
+		return out;
+	}
+
+	private static void diff(String prefix, BsonDocument before, BsonDocument after, BsonDocument set, BsonDocument unset) {
+		for (Map.Entry<String, BsonValue> e : after.entrySet()) {
+			diff(prefix + e.getKey(), before.get(e.getKey()), e.getValue(), set, unset);
+		}
+
+		for (String key : before.keySet()) {
+			if (!after.containsKey(key)) {
+				unset.put(prefix + key, new BsonString(""));
+			}
+		}
+	}
+
+	private static void diff(String path, BsonValue before, BsonValue after, BsonDocument set, BsonDocument unset) {
+		if (before == null) {
+			set.put(path, after);
+
+		} else if (before.equals(after)) {
+			return;
+
+		} else if (before.isDocument() && after.isDocument() && addressable(before.asDocument()) && addressable(after.asDocument())) {
+			diff(path + ".", before.asDocument(), after.asDocument(), set, unset);
+
+		} else if (before.isArray() && after.isArray() && before.asArray().size() == after.asArray().size()) {
+			BsonArray b = before.asArray();
+			BsonArray a = after.asArray();
+			for (int i = 0; i < a.size(); i++) {
+				diff(path + "." + i, b.get(i), a.get(i), set, unset);
+			}
+
+		} else {
+			set.put(path, after);
+		}
+	}
+
+	/**
+	 * keys with dots or a leading '$' can not be addressed in update paths
+	 */
+	private static boolean addressable(BsonDocument doc) {
+		for (String key : doc.keySet()) {
+			if (key.isEmpty() || key.indexOf('.') >= 0 || key.startsWith("$")) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
@@ -0,0 +1,34 @@
+package com.cinefms.dbstore.utils.mongo.util;
+
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.codecs.configuration.CodecRegistry;
+
+/**
+ * converts entities from and to documents with a collection's own codec, so the result is
+ * exactly what the driver would write / what a read would have produced.
+ */
+public class EntityCodecs {
+
+	private EntityCodecs() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> BsonDocument toBsonDocument(CodecRegistry registry, T object) {
+		Codec<T> codec = (Codec<T>) registry.get(object.getClass());
+		BsonDocument out = new BsonDocument();
+		codec.encode(new BsonDocumentWriter(out), object, EncoderContext.builder().isEncodingCollectibleDocument(true).build());
+		return out;
+	}
+
+	public static <T> T fromBsonDocument(CodecRegistry registry, Class<T> clazz, BsonDocument document) {
+		Codec<T> codec = registry.get(clazz);
+		return codec.decode(new BsonDocumentReader(document), DecoderContext.builder().build());
+	}
+
+}
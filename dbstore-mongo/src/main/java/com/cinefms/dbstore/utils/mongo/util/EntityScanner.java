@@ -0,0 +1,46 @@
+package com.cinefms.dbstore.utils.mongo.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.springframework.beans.factory.config.BeanDefinition;
+import org.springframework.context.annotation.ClassPathScanningCandidateComponentProvider;
+import org.springframework.core.type.filter.AssignableTypeFilter;
+import org.springframework.util.ClassUtils;
+
+import com.cinefms.dbstore.api.DBStoreEntity;
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+
+/**
+ * finds the concrete {@link DBStoreEntity} classes in packages (and their sub packages)
+ */
+public class EntityScanner {
+
+	private EntityScanner() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	public static List<Class<? extends DBStoreEntity>> scan(Collection<String> packages) {
+		ClassPathScanningCandidateComponentProvider provider = new ClassPathScanningCandidateComponentProvider(false);
+		provider.addIncludeFilter(new AssignableTypeFilter(DBStoreEntity.class));
+
+		Set<Class<? extends DBStoreEntity>> out = new LinkedHashSet<>();
+		ClassLoader classLoader = ClassUtils.getDefaultClassLoader();
+
+		for (String pkg : packages) {
+			for (BeanDefinition candidate : provider.findCandidateComponents(pkg)) {
+				try {
+					out.add(ClassUtils.forName(candidate.getBeanClassName(), classLoader).asSubclass(DBStoreEntity.class));
+				} catch (ClassNotFoundException | LinkageError e) {
+					throw new DBStoreException("unable to load entity class " + candidate.getBeanClassName(), new IllegalStateException(e));
+				}
+			}
+		}
+
+		return new ArrayList<>(out);
+	}
+
+}
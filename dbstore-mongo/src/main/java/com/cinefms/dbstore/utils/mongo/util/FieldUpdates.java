@@ -0,0 +1,99 @@
+package com.cinefms.dbstore.utils.mongo.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.conversions.Bson;
+
+import com.cinefms.dbstore.api.FieldUpdate;
+import com.cinefms.dbstore.api.UpdateOperation;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Updates;
+
+/**
+ * turns {@link FieldUpdate}s into mongo update documents
+ */
+public class FieldUpdates {
+
+	private static final Log log = LogFactory.getLog(FieldUpdates.class);
+
+	private FieldUpdates() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	public static List<FieldUpdate> fromMap(Map<String, Object> fields) {
+		List<FieldUpdate> out = new ArrayList<>(fields.size());
+		for (Map.Entry<String, Object> entry : fields.entrySet()) {
+			out.add(FieldUpdate.set(entry.getKey(), entry.getValue()));
+		}
+		return out;
+	}
+
+	/**
+	 * @return a filter that only matches the document as long as it is still exactly the given
+	 * version, to apply an update to the version listeners were shown
+	 */
+	public static Bson unchanged(BsonDocument document) {
+		BsonArray same = new BsonArray(Arrays.asList(new BsonString("$$ROOT"), new BsonDocument("$literal", document)));
+		return Filters.and(Filters.eq("_id", document.get("_id")), Filters.expr(new BsonDocument("$eq", same)));
+	}
+
+	/**
+	 * @return all updates combined into one update document, or null if none of them is valid
+	 */
+	public static Bson toUpdate(List<FieldUpdate> fieldUpdates) {
+		List<Bson> updateOperations = new ArrayList<>();
+		for (FieldUpdate fieldUpdate : fieldUpdates) {
+			Bson operation = toUpdate(fieldUpdate);
+			if (operation != null) {
+				updateOperations.add(operation);
+			}
+		}
+		return updateOperations.isEmpty() ? null : Updates.combine(updateOperations);
+	}
+
+	/**
+	 * Creates a MongoDB update operation based on the FieldUpdate type
+	 */
+	public static Bson toUpdate(FieldUpdate fieldUpdate) {
+		String fieldName = fieldUpdate.getFieldName();
+		UpdateOperation operation = fieldUpdate.getOperation();
+		Object value = fieldUpdate.getValue();
+
+		switch (operation) {
+			case SET:
+				return Updates.set(fieldName, value);
+			case INC:
+				return Updates.inc(fieldName, (Number) value);
+			case UNSET:
+				return Updates.unset(fieldName);
+			case PUSH:
+				return Updates.push(fieldName, value);
+			case PULL:
+				return Updates.pull(fieldName, value);
+			case ADD_TO_SET:
+				return Updates.addToSet(fieldName, value);
+			case MUL:
+				return Updates.mul(fieldName, (Number) value);
+			case MIN:
+				return Updates.min(fieldName, value);
+			case MAX:
+				return Updates.max(fieldName, value);
+			case RENAME:
+				return Updates.rename(fieldName, (String) value);
+			case SET_ON_INSERT:
+				return Updates.setOnInsert(fieldName, value);
+			default:
+				log.warn("Unknown update operation: " + operation);
+				return null;
+		}
+	}
+
+}
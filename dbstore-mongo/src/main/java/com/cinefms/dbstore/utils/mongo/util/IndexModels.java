@@ -0,0 +1,44 @@
+package com.cinefms.dbstore.utils.mongo.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.conversions.Bson;
+
+import com.cinefms.dbstore.api.annotations.Index;
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.IndexModel;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+
+/**
+ * the index to create for an {@link Index} annotation
+ */
+public class IndexModels {
+
+	private IndexModels() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * @param caseInsensitive the collation of case-insensitive indexes, must be the one queries
+	 * use for the index to serve them
+	 */
+	public static IndexModel of(Index index, Collation caseInsensitive) {
+		Bson keys = Indexes.ascending(index.fields());
+		if (index.text()) {
+			List<Bson> text = new ArrayList<>();
+			for (String field : index.fields()) {
+				text.add(Indexes.text(field));
+			}
+			keys = Indexes.compoundIndex(text);
+		}
+
+		IndexOptions options = new IndexOptions().unique(index.unique());
+		if (index.caseInsensitive()) {
+			options.collation(caseInsensitive);
+		}
+		return new IndexModel(keys, options);
+	}
+
+}
@@ -0,0 +1,62 @@
+package com.cinefms.dbstore.utils.mongo.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import com.cinefms.dbstore.api.DBStoreEntity;
+import com.cinefms.dbstore.api.DBStoreListener;
+
+/**
+ * the registered listeners and, per entity class, the ones that support it. shared by the
+ * blocking and the reactive data stores, which may call it from many threads at once.
+ */
+public class ListenerRegistry {
+
+	private static final Log log = LogFactory.getLog(ListenerRegistry.class);
+
+	private final List<DBStoreListener<?>> listeners = new CopyOnWriteArrayList<>();
+	private final Map<String, List<DBStoreListener<?>>> byClass = new ConcurrentHashMap<>();
+
+	public void setListeners(List<DBStoreListener<?>> listeners) {
+		this.listeners.clear();
+		if (listeners != null) {
+			this.listeners.addAll(listeners);
+		}
+		byClass.clear();
+	}
+
+	public void addListener(DBStoreListener<?> listener) {
+		listeners.add(listener);
+		byClass.clear();
+	}
+
+	public List<DBStoreListener<?>> getListeners(Class<? extends DBStoreEntity> clazz) {
+		List<DBStoreListener<?>> out = byClass.computeIfAbsent(clazz.getCanonicalName(), k -> resolve(clazz));
+		log.debug("listeners on " + clazz + ": " + out.size());
+		return out;
+	}
+
+	private List<DBStoreListener<?>> resolve(Class<? extends DBStoreEntity> clazz) {
+		List<DBStoreListener<?>> out = new ArrayList<>();
+
+		for (DBStoreListener<?> l : listeners) {
+			if (l.supports(clazz)) {
+				log.debug("listeners on " + clazz + ": " + l.getClass() + " supports");
+				out.add(l);
+
+			} else {
+				log.debug("listeners on " + clazz + ": " + l.getClass() + " does not support");
+			}
+		}
+
+		return Collections.unmodifiableList(out);
+	}
+
+}
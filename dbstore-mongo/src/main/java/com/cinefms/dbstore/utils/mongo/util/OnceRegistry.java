@@ -0,0 +1,61 @@
+package com.cinefms.dbstore.utils.mongo.util;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.Function;
+
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+
+/**
+ * a concurrent map of values that are expensive to create (collections with their indexes,
+ * gridfs buckets, ...). each value is created exactly once, by the first caller asking for its
+ * key; callers asking for the same key meanwhile wait for that result, callers asking for other
+ * keys are not blocked at all. reads of existing values do not lock.
+ *
+ * if the creation fails, the key is forgotten again and the next caller retries.
+ */
+public class OnceRegistry<K, V> {
+
+	private final ConcurrentMap<K, FutureTask<V>> values = new ConcurrentHashMap<>();
+
+	public V get(K key, Function<? super K, ? extends V> factory) {
+		FutureTask<V> task = values.get(key);
+
+		if (task == null) {
+			FutureTask<V> created = new FutureTask<>(() -> factory.apply(key));
+			task = values.putIfAbsent(key, created);
+			if (task == null) {
+				task = created;
+				created.run();
+			}
+		}
+
+		try {
+			return task.get();
+
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new DBStoreException("interrupted while waiting for " + key, e);
+
+		} catch (ExecutionException e) {
+			values.remove(key, task);
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new DBStoreException("unable to create " + key, e);
+		}
+	}
+
+	public Collection<K> keys() {
+		return values.keySet();
+	}
+
+	public void clear() {
+		values.clear();
+	}
+
+}
@@ -0,0 +1,185 @@
+package com.cinefms.dbstore.utils.mongo.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+/**
+ * bridges reactive-streams publishers and {@link CompletableFuture}s without pulling in a full
+ * reactive library.
+ */
+public class Publishers {
+
+	private Publishers() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * @return a future with the first element of the publisher, or null if it completes empty
+	 */
+	public static <T> CompletableFuture<T> first(Publisher<T> publisher) {
+		CompletableFuture<T> out = new CompletableFuture<>();
+
+		publisher.subscribe(new Subscriber<T>() {
+
+			private Subscription subscription;
+
+			@Override
+			public void onSubscribe(Subscription s) {
+				subscription = s;
+				s.request(1);
+			}
+
+			@Override
+			public void onNext(T t) {
+				if (out.complete(t)) {
+					subscription.cancel();
+				}
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				out.completeExceptionally(t);
+			}
+
+			@Override
+			public void onComplete() {
+				out.complete(null);
+			}
+		});
+
+		return out;
+	}
+
+	/**
+	 * @return a future with all elements of the publisher
+	 */
+	public static <T> CompletableFuture<List<T>> toList(Publisher<T> publisher) {
+		CompletableFuture<List<T>> out = new CompletableFuture<>();
+		List<T> items = new ArrayList<>();
+
+		publisher.subscribe(new Subscriber<T>() {
+
+			@Override
+			public void onSubscribe(Subscription s) {
+				s.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(T t) {
+				items.add(t);
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				out.completeExceptionally(t);
+			}
+
+			@Override
+			public void onComplete() {
+				out.complete(items);
+			}
+		});
+
+		return out;
+	}
+
+	/**
+	 * hands the elements of the publisher to the handler in lists of up to batchSize. the next
+	 * batch is only requested once the handler's future for the previous one completed, so there
+	 * is never more than one batch in memory.
+	 *
+	 * @return a future that completes after the last batch was handled, or with the first failure
+	 */
+	public static <T> CompletableFuture<Void> inBatches(Publisher<T> publisher, int batchSize, Function<List<T>, CompletableFuture<?>> handler) {
+		CompletableFuture<Void> out = new CompletableFuture<>();
+
+		publisher.subscribe(new Subscriber<T>() {
+
+			private Subscription subscription;
+			private List<T> batch = new ArrayList<>();
+			private CompletableFuture<?> previous = CompletableFuture.completedFuture(null);
+
+			@Override
+			public void onSubscribe(Subscription s) {
+				subscription = s;
+				s.request(batchSize);
+			}
+
+			@Override
+			public void onNext(T t) {
+				batch.add(t);
+				if (batch.size() < batchSize) {
+					return;
+				}
+
+				List<T> full = batch;
+				batch = new ArrayList<>();
+				previous = previous.thenCompose(v -> handler.apply(full));
+				previous.whenComplete((r, e) -> {
+					if (e != null) {
+						subscription.cancel();
+						fail(e);
+					} else {
+						subscription.request(batchSize);
+					}
+				});
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				previous.whenComplete((r, e) -> fail(t));
+			}
+
+			@Override
+			public void onComplete() {
+				List<T> rest = batch;
+				previous.thenCompose(v -> rest.isEmpty() ? CompletableFuture.completedFuture(null) : handler.apply(rest)).whenComplete((r, e) -> {
+					if (e != null) {
+						fail(e);
+					} else {
+						out.complete(null);
+					}
+				});
+			}
+
+			private void fail(Throwable e) {
+				out.completeExceptionally(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+			}
+		});
+
+		return out;
+	}
+
+	/**
+	 * a publisher that subscribes to the one produced by the stage once it completes, or signals
+	 * its failure.
+	 */
+	public static <T> Publisher<T> defer(CompletionStage<? extends Publisher<T>> stage) {
+		return subscriber -> stage.whenComplete((publisher, e) -> {
+			if (e == null) {
+				publisher.subscribe(subscriber);
+				return;
+			}
+
+			subscriber.onSubscribe(new Subscription() {
+				@Override
+				public void request(long n) {
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+			subscriber.onError(e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+		});
+	}
+
+}
@@ -2,36 +2,36 @@ package com.cinefms.dbstore.utils.mongo.util;
 
 import com.cinefms.dbstore.api.annotations.CollectionName;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class SimpleCollectionNamingStrategy implements CollectionNamingStrategy {
 
-	private final Map<Class<?>, String> names = new HashMap<>();
+	private final Map<Class<?>, String> names = new ConcurrentHashMap<>();
 
 	@Override
 	public String getCollectionName(Class<?> clazz) {
-		String out = names.get(clazz);
+		return names.computeIfAbsent(clazz, SimpleCollectionNamingStrategy::resolve);
+	}
 
-		if (out == null) {
-			if (clazz.getAnnotation(CollectionName.class) != null) {
-				CollectionName cn = clazz.getAnnotation(CollectionName.class);
+	private static String resolve(Class<?> clazz) {
+		String out;
 
-				if (cn.value().equals(CollectionName.USE_CLASS_NAME)) {
-					out = clazz.getSimpleName();
+		if (clazz.getAnnotation(CollectionName.class) != null) {
+			CollectionName cn = clazz.getAnnotation(CollectionName.class);
 
-				} else if (cn.value().equals(CollectionName.USE_PACKAGE_AND_CLASS_NAME)) {
-					out = clazz.getCanonicalName();
+			if (cn.value().equals(CollectionName.USE_CLASS_NAME)) {
+				out = clazz.getSimpleName();
 
-				} else {
-					out = cn.value();
-				}
+			} else if (cn.value().equals(CollectionName.USE_PACKAGE_AND_CLASS_NAME)) {
+				out = clazz.getCanonicalName();
 
 			} else {
-				out = clazz.getCanonicalName();
+				out = cn.value();
 			}
 
-			names.put(clazz, out);
+		} else {
+			out = clazz.getCanonicalName();
 		}
 
 		return out;
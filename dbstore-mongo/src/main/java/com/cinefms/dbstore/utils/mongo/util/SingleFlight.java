@@ -0,0 +1,65 @@
+package com.cinefms.dbstore.utils.mongo.util;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * coalesces identical concurrent calls: while a call for a key is running, further calls for the
+ * same key do not run their own, they wait for that one and share its result. once it is done
+ * the key is free again, nothing is cached.
+ *
+ * the caller that ran the call gets the result as it is, the ones that waited get it passed
+ * through share (e.g. a copy, so nobody sees the others' changes). a failure is thrown to all
+ * of them.
+ */
+public class SingleFlight<K, V> {
+
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+	private final LongAdder coalesced = new LongAdder();
+
+	public V execute(K key, Supplier<V> call, UnaryOperator<V> share) {
+		CompletableFuture<V> created = new CompletableFuture<>();
+		CompletableFuture<V> running = inFlight.putIfAbsent(key, created);
+
+		if (running != null) {
+			coalesced.increment();
+			try {
+				V out = running.join();
+				return out != null ? share.apply(out) : null;
+			} catch (CompletionException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw e;
+			}
+		}
+
+		try {
+			V out = call.get();
+			created.complete(out);
+			return out;
+		} catch (RuntimeException | Error e) {
+			created.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, created);
+		}
+	}
+
+	/**
+	 * number of calls that were served by another one so far
+	 */
+	public long getCoalesced() {
+		return coalesced.sum();
+	}
+
+	public int getInFlight() {
+		return inFlight.size();
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import com.cinefms.dbstore.utils.mongo.util.BsonDiff;
+import org.bson.BsonDocument;
+import org.junit.Assert;
+import org.junit.Test;
+
+public class BsonDiffTest {
+
+	@Test
+	public void itShouldBeEmptyForEqualDocuments() {
+		BsonDocument doc = BsonDocument.parse("{_id: 'a', name: 'x', tags: ['a', 'b'], address: {city: 'NY'}}");
+
+		Assert.assertTrue(BsonDiff.diff(doc, doc.clone()).isEmpty());
+	}
+
+	@Test
+	public void itShouldOnlySetChangedPaths() {
+		BsonDocument before = BsonDocument.parse("{_id: 'a', first: 'John', last: 'Doe', address: {street: 'Main', city: 'NY'}}");
+		BsonDocument after = BsonDocument.parse("{_id: 'a', first: 'John', last: 'Smith', address: {street: 'Main', city: 'Boston'}}");
+
+		Assert.assertEquals(
+				BsonDocument.parse("{$set: {last: 'Smith', 'address.city': 'Boston'}}"),
+				BsonDiff.diff(before, after));
+	}
+
+	@Test
+	public void itShouldUnsetRemovedFields() {
+		BsonDocument before = BsonDocument.parse("{_id: 'a', first: 'John', address: {street: 'Main', city: 'NY'}}");
+		BsonDocument after = BsonDocument.parse("{_id: 'a', address: {street: 'Main'}}");
+
+		Assert.assertEquals(
+				BsonDocument.parse("{$unset: {first: '', 'address.city': ''}}"),
+				BsonDiff.diff(before, after));
+	}
+
+	@Test
+	public void itShouldSetChangedElementsOfArraysOfTheSameLength() {
+		BsonDocument before = BsonDocument.parse("{items: [{n: 1}, {n: 2}, {n: 3}]}");
+		BsonDocument after = BsonDocument.parse("{items: [{n: 1}, {n: 5}, {n: 3}]}");
+
+		Assert.assertEquals(
+				BsonDocument.parse("{$set: {'items.1.n': 5}}"),
+				BsonDiff.diff(before, after));
+	}
+
+	@Test
+	public void itShouldSetArraysOfAnotherLengthAsAWhole() {
+		BsonDocument before = BsonDocument.parse("{items: [1, 2]}");
+		BsonDocument after = BsonDocument.parse("{items: [1, 2, 3]}");
+
+		Assert.assertEquals(
+				BsonDocument.parse("{$set: {items: [1, 2, 3]}}"),
+				BsonDiff.diff(before, after));
+	}
+
+	@Test
+	public void itShouldSetDocumentsWithUnaddressableKeysAsAWhole() {
+		BsonDocument before = BsonDocument.parse("{map: {'a.b': 1}}");
+		BsonDocument after = BsonDocument.parse("{map: {'a.b': 2}}");
+
+		Assert.assertEquals(
+				BsonDocument.parse("{$set: {map: {'a.b': 2}}}"),
+				BsonDiff.diff(before, after));
+	}
+
+}
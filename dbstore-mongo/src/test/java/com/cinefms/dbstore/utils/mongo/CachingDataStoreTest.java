@@ -0,0 +1,170 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import com.cinefms.dbstore.api.cache.CachingDataStore;
+import com.cinefms.dbstore.api.cache.EntityCache;
+import com.cinefms.dbstore.api.cache.LocalEntityCache;
+import com.cinefms.dbstore.api.impl.DBStoreListenerAdapter;
+import com.cinefms.dbstore.api.cache.QueryResultCache;
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.impl.BasicQuery;
+import com.cinefms.dbstore.utils.mongo.entities.SimpleEntity;
+import com.cinefms.dbstore.utils.mongo.entities.UncachedEntity;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+public class CachingDataStoreTest extends MongoDataStoreTest {
+
+	private CachingDataStore cds;
+
+	@Before
+	public void setupCache() {
+		cds = new CachingDataStore(mds);
+	}
+
+	@Test
+	public void itShouldServeRepeatedReadsFromTheCache() {
+		SimpleEntity entity = cds.saveObject("testdb", new SimpleEntity("cached"));
+
+		SimpleEntity first = cds.getObject("testdb", SimpleEntity.class, entity.getId());
+		SimpleEntity second = cds.getObject("testdb", SimpleEntity.class, entity.getId());
+
+		Assert.assertEquals("cached", first.getValue());
+		Assert.assertSame(first, second);
+		Assert.assertEquals(1, cds.getStats().getHitCount());
+		Assert.assertEquals(1, cds.getStats().getMissCount());
+	}
+
+	@Test
+	public void itShouldLoadOnlyTheMissingObjectsOfAMultiGet() {
+		SimpleEntity a = cds.saveObject("testdb", new SimpleEntity("a"));
+		SimpleEntity b = cds.saveObject("testdb", new SimpleEntity("b"));
+		SimpleEntity cached = cds.getObject("testdb", SimpleEntity.class, a.getId());
+
+		List<SimpleEntity> results = cds.getObjects("testdb", SimpleEntity.class, Arrays.asList(b.getId(), "missing", a.getId()));
+
+		Assert.assertEquals("b", results.get(0).getValue());
+		Assert.assertNull(results.get(1));
+		Assert.assertSame(cached, results.get(2));
+		Assert.assertSame(results.get(0), cds.getObject("testdb", SimpleEntity.class, b.getId()));
+	}
+
+	@Test
+	public void itShouldInvalidateOnWrites() {
+		SimpleEntity entity = cds.saveObject("testdb", new SimpleEntity("v1"));
+		cds.getObject("testdb", SimpleEntity.class, entity.getId());
+
+		SimpleEntity changed = new SimpleEntity("v2");
+		changed.setId(entity.getId());
+		cds.saveObject("testdb", changed);
+		Assert.assertEquals("v2", cds.getObject("testdb", SimpleEntity.class, entity.getId()).getValue());
+
+		cds.setField("testdb", SimpleEntity.class, entity.getId(), "value", "v3");
+		Assert.assertEquals("v3", cds.getObject("testdb", SimpleEntity.class, entity.getId()).getValue());
+
+		cds.deleteObjects("testdb", SimpleEntity.class, BasicQuery.createQuery());
+		Assert.assertNull(cds.getObject("testdb", SimpleEntity.class, entity.getId()));
+		Assert.assertEquals(0, cds.getStats().getHitCount());
+	}
+
+	@Test
+	public void itShouldInvalidateWhenAWriteFails() {
+		SimpleEntity entity = cds.saveObject("testdb", new SimpleEntity("v1"));
+		cds.getObject("testdb", SimpleEntity.class, entity.getId());
+
+		// the update is written, but the call fails after that
+		mds.addListener(new DBStoreListenerAdapter<SimpleEntity>() {
+			@Override
+			public void updated(String db, SimpleEntity oldEntity, SimpleEntity newEntity) {
+				throw new IllegalStateException("listener failed");
+			}
+		});
+
+		SimpleEntity changed = new SimpleEntity("v2");
+		changed.setId(entity.getId());
+		try {
+			cds.saveObject("testdb", changed);
+			Assert.fail();
+		} catch (RuntimeException e) {
+			// expected
+		}
+
+		Assert.assertEquals("v2", cds.getObject("testdb", SimpleEntity.class, entity.getId()).getValue());
+	}
+
+	@Test
+	public void itShouldNotCacheNoCacheClasses() {
+		UncachedEntity entity = cds.saveObject("testdb", new UncachedEntity("fresh"));
+
+		cds.getObject("testdb", UncachedEntity.class, entity.getId());
+		mds.setField("testdb", UncachedEntity.class, entity.getId(), "value", "changed");
+
+		Assert.assertEquals("changed", cds.getObject("testdb", UncachedEntity.class, entity.getId()).getValue());
+		Assert.assertEquals(0, cds.getStats().getRequestCount());
+	}
+
+	@Test
+	public void itShouldCacheQueryResultsUntilTheNextWrite() {
+		QueryResultCache qc = new QueryResultCache();
+		cds.setQueryCache(qc);
+
+		cds.saveObject("testdb", new SimpleEntity("a"));
+		DBStoreQuery query = BasicQuery.createQuery().eq("value", "a");
+
+		Assert.assertEquals(1, cds.findObjects("testdb", SimpleEntity.class, query).size());
+		Assert.assertEquals(1, cds.countObjects("testdb", SimpleEntity.class, query));
+
+		// not through the caching store, so not noticed
+		mds.saveObject("testdb", new SimpleEntity("a"));
+		Assert.assertEquals(1, cds.findObjects("testdb", SimpleEntity.class, query).size());
+		Assert.assertEquals(1, cds.countObjects("testdb", SimpleEntity.class, query));
+		Assert.assertEquals(2, qc.getStats().getHitCount());
+
+		cds.saveObject("testdb", new SimpleEntity("b"));
+		Assert.assertEquals(2, cds.findObjects("testdb", SimpleEntity.class, query).size());
+		Assert.assertEquals(2, cds.countObjects("testdb", SimpleEntity.class, query));
+	}
+
+	@Test
+	public void itShouldNotCacheLargeQueryResults() {
+		QueryResultCache qc = new QueryResultCache();
+		qc.setMaxResultSize(SimpleEntity.class, 1);
+		cds.setQueryCache(qc);
+
+		cds.saveObject("testdb", new SimpleEntity("a"));
+		cds.saveObject("testdb", new SimpleEntity("a"));
+
+		cds.findObjects("testdb", SimpleEntity.class, BasicQuery.createQuery());
+		cds.findObjects("testdb", SimpleEntity.class, BasicQuery.createQuery());
+		Assert.assertEquals(0, qc.getStats().getHitCount());
+	}
+
+	@Test
+	public void itShouldStaleQueryResultsOnInvalidationsOfOtherNodes() {
+		// stands in for a shared cache hearing about a write of another node
+		EntityCache.InvalidationListener[] listener = new EntityCache.InvalidationListener[1];
+		cds = new CachingDataStore(mds, new LocalEntityCache(100) {
+			@Override
+			public void addInvalidationListener(InvalidationListener l) {
+				listener[0] = l;
+			}
+		});
+		cds.setQueryCache(new QueryResultCache());
+
+		cds.saveObject("testdb", new SimpleEntity("a"));
+		DBStoreQuery query = BasicQuery.createQuery().eq("value", "a");
+		Assert.assertEquals(1, cds.findObjects("testdb", SimpleEntity.class, query).size());
+
+		mds.saveObject("testdb", new SimpleEntity("a"));
+		listener[0].invalidated("testdb", SimpleEntity.class.getName(), null);
+		Assert.assertEquals(2, cds.findObjects("testdb", SimpleEntity.class, query).size());
+
+		mds.saveObject("testdb", new SimpleEntity("a"));
+		listener[0].invalidatedAll();
+		Assert.assertEquals(3, cds.findObjects("testdb", SimpleEntity.class, query).size());
+	}
+
+}
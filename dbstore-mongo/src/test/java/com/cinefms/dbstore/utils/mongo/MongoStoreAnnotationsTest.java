@@ -8,6 +8,7 @@ import org.bson.Document;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.Collections;
 import java.util.List;
 
 public class MongoStoreAnnotationsTest extends MongoDataStoreTest {
@@ -91,4 +92,22 @@ public class MongoStoreAnnotationsTest extends MongoDataStoreTest {
 		});
 	}
 
+	@Test
+	public void itShouldCreateIndexesOnWarmUp() {
+		mds.setWarmUpPackages(Collections.singletonList(EntityWithIndexes.class.getPackage().getName()));
+		mds.setWarmUpDbs(Collections.singletonList("warmupdb"));
+		mds.warmUp();
+
+		// nothing was saved, the indexes come from the warm up
+		List<Document> indexes = loadAll(mds.getDB("warmupdb")
+				.getCollection(EntityWithIndexes.class.getSimpleName())
+				.listIndexes());
+
+		Assert.assertEquals(4, indexes.size());
+		AssertCollection.assertContains(indexes, index -> {
+			Assert.assertEquals("firstName_1_lastName_1", index.get("name"));
+			Assert.assertEquals(true, index.get("unique"));
+		});
+	}
+
 }
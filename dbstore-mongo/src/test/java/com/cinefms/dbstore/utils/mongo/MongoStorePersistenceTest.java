@@ -1,18 +1,27 @@
 package com.cinefms.dbstore.utils.mongo;
 
 import com.cinefms.dbstore.api.FieldUpdate;
+import com.cinefms.dbstore.api.impl.DBStoreListenerAdapter;
 import com.cinefms.dbstore.query.api.impl.BasicQuery;
+import com.cinefms.dbstore.utils.mongo.entities.Address;
+import com.cinefms.dbstore.utils.mongo.entities.BufferedEntity;
 import com.cinefms.dbstore.utils.mongo.entities.SimpleEntity;
+import com.cinefms.dbstore.utils.mongo.entities.UserEntity;
 import com.cinefms.dbstore.utils.mongo.entities.VersionedEntity;
 import com.cinefms.dbstore.utils.mongo.utils.AssertCollection;
 import org.bson.Document;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 public class MongoStorePersistenceTest extends MongoDataStoreTest {
 
@@ -38,6 +47,32 @@ public class MongoStorePersistenceTest extends MongoDataStoreTest {
 		Assert.assertEquals(entity.getValue(), record.get("value"));
 	}
 
+	@Test
+	public void itShouldNotFailConcurrentSavesOfANewId() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			for (int i = 0; i < 20; i++) {
+				String id = "concurrent-" + i;
+				CyclicBarrier barrier = new CyclicBarrier(2);
+				List<Future<SimpleEntity>> saves = new ArrayList<>();
+				for (String value : Arrays.asList("a", "b")) {
+					saves.add(executor.submit(() -> {
+						SimpleEntity entity = new SimpleEntity(value);
+						entity.setId(id);
+						barrier.await();
+						return mds.saveObject(null, entity);
+					}));
+				}
+				for (Future<SimpleEntity> save : saves) {
+					save.get();
+				}
+				Assert.assertNotNull(mds.getObject(null, SimpleEntity.class, id));
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
 	@Test
 	public void itShouldUpdateExistingRecord() {
 		SimpleEntity unchangedEntity = new SimpleEntity("test-value");
@@ -136,6 +171,95 @@ public class MongoStorePersistenceTest extends MongoDataStoreTest {
 		});
 	}
 
+	@Test
+	public void itShouldNotifyListenersWhenSavingInBatches() {
+		List<String> events = new ArrayList<>();
+		mds.addListener(new DBStoreListenerAdapter<SimpleEntity>() {
+			@Override
+			public void created(String db, SimpleEntity o) {
+				events.add("created:" + o.getValue());
+			}
+
+			@Override
+			public void updated(String db, SimpleEntity oldEntity, SimpleEntity newEntity) {
+				events.add("updated:" + oldEntity.getValue() + "->" + newEntity.getValue());
+			}
+		});
+		mds.setSaveBatchSize(2);
+
+		SimpleEntity firstEntity = new SimpleEntity("first-entity");
+		SimpleEntity secondEntity = new SimpleEntity("second-entity");
+		mds.saveObjects(null, Arrays.asList(firstEntity, secondEntity));
+
+		secondEntity.setValue("second-entity-updated");
+		SimpleEntity thirdEntity = new SimpleEntity("third-entity");
+		List<SimpleEntity> saved = mds.saveObjects(null, Arrays.asList(firstEntity, secondEntity, thirdEntity));
+
+		Assert.assertEquals(3, saved.size());
+		Assert.assertNotNull(thirdEntity.getId());
+		Assert.assertEquals(
+				Arrays.asList(
+						"created:first-entity",
+						"created:second-entity",
+						"updated:first-entity->first-entity",
+						"updated:second-entity->second-entity-updated",
+						"created:third-entity"
+				),
+				events
+		);
+		Assert.assertEquals(3, mds.getDB(null).getCollection(SimpleEntity.class.getName()).countDocuments());
+	}
+
+	@Test
+	public void itShouldOnlyWriteChangedPathsInDiffMode() {
+		List<String> events = new ArrayList<>();
+		mds.addListener(new DBStoreListenerAdapter<UserEntity>() {
+			@Override
+			public void updated(String db, UserEntity oldEntity, UserEntity newEntity) {
+				events.add(oldEntity.getLastName() + "->" + newEntity.getLastName());
+			}
+		});
+		mds.setSaveMode(SaveMode.DIFF);
+
+		Address address = new Address();
+		address.setStreet("Armstrong st.");
+		address.setCity("New York");
+
+		UserEntity user = new UserEntity();
+		user.setFirstName("John");
+		user.setLastName("Doe");
+		user.setAddresses(Arrays.asList(address));
+		mds.saveObject(null, user);
+
+		// unchanged, nothing is written
+		mds.saveObject(null, user);
+		Assert.assertTrue(events.isEmpty());
+
+		// written by someone else, and not part of the entity
+		mds.getDB(null)
+				.getCollection(UserEntity.class.getName())
+				.updateOne(new Document("_id", user.getId()), new Document("$set", new Document("addresses.0.zip", "10001")));
+
+		user.setLastName("Smith");
+		address.setCity("Boston");
+		mds.saveObject(null, user);
+		Assert.assertEquals(Arrays.asList("Doe->Smith"), events);
+
+		Document record = mds.getDB(null)
+				.getCollection(UserEntity.class.getName())
+				.find()
+				.cursor()
+				.next();
+
+		Assert.assertEquals("John", record.get("firstName"));
+		Assert.assertEquals("Smith", record.get("lastName"));
+		Assert.assertEquals(user.getUuid(), record.get("uuid"));
+		Assert.assertEquals("Boston", record.getList("addresses", Document.class).get(0).get("city"));
+		Assert.assertEquals("Armstrong st.", record.getList("addresses", Document.class).get(0).get("street"));
+		// only the changed paths were set, so the other field is still there
+		Assert.assertEquals("10001", record.getList("addresses", Document.class).get(0).get("zip"));
+	}
+
 	@Test
 	public void itShouldDeleteExistingEntity() {
 		SimpleEntity entity = new SimpleEntity("test-value");
@@ -173,6 +297,29 @@ public class MongoStorePersistenceTest extends MongoDataStoreTest {
 		Assert.assertEquals(0, mds.getDB(null).getCollection(SimpleEntity.class.getName()).countDocuments());
 	}
 
+	@Test
+	public void itShouldNotifyListenersOnDeleteById() {
+		List<String> events = new ArrayList<>();
+		SimpleEntity entity = mds.saveObject(null, new SimpleEntity("a"));
+		mds.addListener(new DBStoreListenerAdapter<SimpleEntity>() {
+			@Override
+			public void beforeDelete(String db, SimpleEntity o) {
+				events.add("beforeDelete:" + o.getValue());
+			}
+
+			@Override
+			public void deleted(String db, SimpleEntity o) {
+				events.add("deleted:" + o.getValue());
+			}
+		});
+
+		Assert.assertTrue(mds.deleteObject(null, SimpleEntity.class, entity.getId()));
+		Assert.assertFalse(mds.deleteObject(null, SimpleEntity.class, entity.getId()));
+
+		Assert.assertEquals(Arrays.asList("beforeDelete:a", "deleted:a"), events);
+		Assert.assertNull(mds.getObject(null, SimpleEntity.class, entity.getId()));
+	}
+
 	@Test
 	public void itShouldReturnFalseIfDeletedEntityByIdDoesNotExists() {
 		SimpleEntity entity = new SimpleEntity("test-value");
@@ -194,12 +341,12 @@ public class MongoStorePersistenceTest extends MongoDataStoreTest {
 		SimpleEntity fourthEntity = new SimpleEntity("fourth-entity");
 		mds.saveObjects(null, Arrays.asList(firstEntity, secondEntity, thirdEntity, fourthEntity));
 
-		boolean result = mds.deleteObjects(
+		long result = mds.deleteObjects(
 				null,
 				SimpleEntity.class,
 				BasicQuery.createQuery().in("_id", firstEntity.getId(), thirdEntity.getId())
 		);
-		Assert.assertTrue(result);
+		Assert.assertEquals(2, result);
 
 		// Check stored data
 		List<Document> records = loadAll(mds.getDB(null)
@@ -217,6 +364,68 @@ public class MongoStorePersistenceTest extends MongoDataStoreTest {
 		});
 	}
 
+	@Test
+	public void itShouldNotifyListenersWhenDeletingInBatches() {
+		List<String> events = new ArrayList<>();
+		mds.addListener(new DBStoreListenerAdapter<SimpleEntity>() {
+			@Override
+			public void beforeDelete(String db, SimpleEntity o) {
+				events.add("beforeDelete:" + o.getValue());
+			}
+
+			@Override
+			public void deleted(String db, SimpleEntity o) {
+				events.add("deleted:" + o.getValue());
+			}
+		});
+		mds.setDeleteBatchSize(2);
+
+		mds.saveObjects(null, Arrays.asList(
+				new SimpleEntity("a"),
+				new SimpleEntity("b"),
+				new SimpleEntity("c"),
+				new SimpleEntity("keep")
+		));
+
+		long result = mds.deleteObjects(null, SimpleEntity.class, BasicQuery.createQuery().in("value", "a", "b", "c"));
+
+		Assert.assertEquals(3, result);
+		Assert.assertEquals(6, events.size());
+		Assert.assertTrue(events.indexOf("deleted:a") > events.indexOf("beforeDelete:b"));
+		Assert.assertTrue(events.contains("beforeDelete:c"));
+		Assert.assertTrue(events.contains("deleted:c"));
+		Assert.assertEquals(1, mds.getDB(null).getCollection(SimpleEntity.class.getName()).countDocuments());
+	}
+
+	@Test
+	public void itShouldOnlyNotifyListenersOfObjectsItDeleted() {
+		List<SimpleEntity> saved = mds.saveObjects(null, Arrays.asList(
+				new SimpleEntity("a"),
+				new SimpleEntity("b"),
+				new SimpleEntity("c")
+		));
+		String b = saved.get(1).getId();
+
+		List<String> deleted = new ArrayList<>();
+		mds.addListener(new DBStoreListenerAdapter<SimpleEntity>() {
+			@Override
+			public void beforeDelete(String db, SimpleEntity o) {
+				// someone else deletes "b" while the batch is being deleted
+				mds.getDB(null).getCollection(SimpleEntity.class.getName()).deleteOne(new Document("_id", b));
+			}
+
+			@Override
+			public void deleted(String db, SimpleEntity o) {
+				deleted.add(o.getValue());
+			}
+		});
+
+		long result = mds.deleteObjects(null, SimpleEntity.class, BasicQuery.createQuery().in("value", "a", "b", "c"));
+
+		Assert.assertEquals(2, result);
+		Assert.assertEquals(Arrays.asList("a", "c"), deleted);
+	}
+
 	@Test
 	public void itShouldUpdateFieldsAtomically() {
 		// Create an entity
@@ -371,6 +580,87 @@ public class MongoStorePersistenceTest extends MongoDataStoreTest {
 		Assert.assertEquals(5, updatedEntity.getCounter()); // unchanged
 	}
 
+	@Test
+	public void itShouldPassPreAndPostImageToListenersOnFieldUpdates() {
+		List<VersionedEntity[]> events = new ArrayList<>();
+		mds.addListener(new DBStoreListenerAdapter<VersionedEntity>() {
+			@Override
+			public void updated(String db, VersionedEntity oldEntity, VersionedEntity newEntity) {
+				events.add(new VersionedEntity[]{oldEntity, newEntity});
+			}
+		});
+
+		VersionedEntity savedEntity = mds.saveObject(null, new VersionedEntity("test", 1, 5));
+		String entityId = savedEntity.getId();
+
+		VersionedEntity updatedEntity = mds.updateObjectFields(null, VersionedEntity.class, entityId, Arrays.asList(
+				FieldUpdate.inc("counter", 10),
+				FieldUpdate.set("name", "updated"),
+				FieldUpdate.max("version", 3)
+		));
+
+		Assert.assertEquals(15, updatedEntity.getCounter());
+		Assert.assertEquals("updated", updatedEntity.getName());
+		Assert.assertEquals(3, updatedEntity.getVersion());
+
+		Assert.assertEquals(1, events.size());
+		Assert.assertEquals(5, events.get(0)[0].getCounter());
+		Assert.assertEquals("test", events.get(0)[0].getName());
+		Assert.assertEquals(15, events.get(0)[1].getCounter());
+		Assert.assertEquals("updated", events.get(0)[1].getName());
+
+		VersionedEntity retrievedEntity = mds.getObject(null, VersionedEntity.class, entityId);
+		Assert.assertEquals(15, retrievedEntity.getCounter());
+		Assert.assertEquals(3, retrievedEntity.getVersion());
+	}
+
+	@Test
+	public void itShouldFireBeforeSaveBeforeTheFieldUpdate() {
+		List<Integer> seen = new ArrayList<>();
+		VersionedEntity savedEntity = mds.saveObject(null, new VersionedEntity("test", 1, 5));
+		mds.addListener(new DBStoreListenerAdapter<VersionedEntity>() {
+			@Override
+			public void beforeSave(String db, VersionedEntity o) {
+				seen.add(o.getCounter());
+				seen.add(mds.getObject(db, VersionedEntity.class, o.getId()).getCounter());
+			}
+		});
+
+		mds.incrementField(null, VersionedEntity.class, savedEntity.getId(), "counter", 10);
+
+		// the listener gets the stored version, and it is not written yet
+		Assert.assertEquals(Arrays.asList(5, 5), seen);
+		Assert.assertEquals(15, mds.getObject(null, VersionedEntity.class, savedEntity.getId()).getCounter());
+	}
+
+	@Test
+	public void itShouldApplyFieldUpdatesToTheVersionListenersWereShown() {
+		List<Integer> before = new ArrayList<>();
+		List<Integer> old = new ArrayList<>();
+		VersionedEntity savedEntity = mds.saveObject(null, new VersionedEntity("test", 1, 5));
+		mds.addListener(new DBStoreListenerAdapter<VersionedEntity>() {
+			@Override
+			public void beforeSave(String db, VersionedEntity o) {
+				before.add(o.getCounter());
+				if (before.size() == 1) {
+					// another writer gets in between
+					mds.incrementField(db, VersionedEntity.class, o.getId(), "counter", 100);
+				}
+			}
+
+			@Override
+			public void updated(String db, VersionedEntity oldEntity, VersionedEntity newEntity) {
+				old.add(oldEntity.getCounter());
+			}
+		});
+
+		VersionedEntity updatedEntity = mds.incrementField(null, VersionedEntity.class, savedEntity.getId(), "counter", 10);
+
+		Assert.assertEquals(115, updatedEntity.getCounter());
+		Assert.assertEquals(Arrays.asList(5, 5, 105), before);
+		Assert.assertEquals(Arrays.asList(5, 105), old);
+	}
+
 	@Test
 	public void itShouldUnsetFieldAtomically() {
 		// Create a versioned entity
@@ -403,4 +693,44 @@ public class MongoStorePersistenceTest extends MongoDataStoreTest {
 		Assert.assertTrue("Should find at least one object", results.size() >= 1);
 	}
 
+	@Test
+	public void itShouldCoalesceBufferedSavesUntilFlushed() {
+		mds.setWriteBehindFlushInterval(60000);
+
+		for (int i = 0; i < 50; i++) {
+			BufferedEntity entity = new BufferedEntity("status-" + i);
+			entity.setId("status");
+			mds.saveObject(null, entity);
+		}
+
+		// pending: visible by id, but not written yet
+		Assert.assertEquals("status-49", mds.getObject(null, BufferedEntity.class, "status").getStatus());
+		Assert.assertEquals(0, mds.countObjects(null, BufferedEntity.class, null));
+
+		mds.destroy();
+
+		List<Document> records = loadAll(mds.getDB(null).getCollection(BufferedEntity.class.getName()).find());
+		Assert.assertEquals(1, records.size());
+		Assert.assertEquals("status-49", records.get(0).get("status"));
+	}
+
+	@Test
+	public void itShouldNotLoseFieldUpdatesOfPendingObjects() {
+		mds.setWriteBehindFlushInterval(60000);
+
+		BufferedEntity entity = new BufferedEntity("saved");
+		entity.setId("counter");
+		mds.saveObject(null, entity);
+
+		BufferedEntity updated = mds.incrementField(null, BufferedEntity.class, "counter", "count", 2);
+		Assert.assertEquals("saved", updated.getStatus());
+		Assert.assertEquals(2, updated.getCount());
+
+		mds.flush();
+
+		BufferedEntity stored = mds.getObject(null, BufferedEntity.class, "counter");
+		Assert.assertEquals("saved", stored.getStatus());
+		Assert.assertEquals(2, stored.getCount());
+	}
+
 }
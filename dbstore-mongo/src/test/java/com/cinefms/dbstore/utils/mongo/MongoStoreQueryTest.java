@@ -1,13 +1,28 @@
 package com.cinefms.dbstore.utils.mongo;
 
+import com.cinefms.dbstore.api.DBStorePage;
+import com.cinefms.dbstore.query.api.DBStoreAggregation;
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
+import com.cinefms.dbstore.query.api.impl.BasicAggregation;
 import com.cinefms.dbstore.query.api.impl.BasicQuery;
+import com.cinefms.dbstore.query.api.impl.QueryParameter;
+import com.cinefms.dbstore.query.mongo.PreparedQuery;
+import com.cinefms.dbstore.utils.mongo.entities.EntityWithIndexes;
 import com.cinefms.dbstore.utils.mongo.entities.SimpleEntity;
 import com.cinefms.dbstore.utils.mongo.utils.AssertCollection;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class MongoStoreQueryTest extends MongoDataStoreTest {
 
@@ -35,6 +50,44 @@ public class MongoStoreQueryTest extends MongoDataStoreTest {
 		Assert.assertEquals(secondEntity.getValue(), result.getValue());
 	}
 
+	@Test
+	public void itShouldReturnTheSameResultsWhenCoalescingReads() {
+		mds.setCoalesceReads(true);
+
+		SimpleEntity result = mds.getObject(null, SimpleEntity.class, secondEntity.getId());
+		Assert.assertEquals(secondEntity.getValue(), result.getValue());
+		Assert.assertNull(mds.getObject(null, SimpleEntity.class, "non-existing"));
+
+		DBStoreQuery query = BasicQuery.createQuery().in("value", "first-entity", "third-entity").order("value");
+		Assert.assertEquals(2, mds.findObjects(null, SimpleEntity.class, query).size());
+		Assert.assertEquals(2, mds.countObjects(null, SimpleEntity.class, query));
+		Assert.assertEquals("first-entity", mds.findObject(null, SimpleEntity.class, query).getValue());
+	}
+
+	@Test
+	public void itShouldReturnEntitiesByIdsInTheRequestedOrder() {
+		List<SimpleEntity> results = mds.getObjects(null, SimpleEntity.class,
+				Arrays.asList(thirdEntity.getId(), "non-existing", firstEntity.getId(), null, thirdEntity.getId()));
+
+		Assert.assertEquals(5, results.size());
+		Assert.assertEquals("third-entity", results.get(0).getValue());
+		Assert.assertNull(results.get(1));
+		Assert.assertEquals("first-entity", results.get(2).getValue());
+		Assert.assertNull(results.get(3));
+		Assert.assertEquals("third-entity", results.get(4).getValue());
+	}
+
+	@Test
+	public void itShouldReturnEntityMapByIdsInChunks() {
+		mds.setMultiGetBatchSize(1);
+
+		Map<String, SimpleEntity> results = mds.getObjectMap(null, SimpleEntity.class,
+				Arrays.asList(fourthEntity.getId(), "non-existing", secondEntity.getId(), firstEntity.getId()));
+
+		Assert.assertEquals(Arrays.asList(fourthEntity.getId(), secondEntity.getId(), firstEntity.getId()), new ArrayList<>(results.keySet()));
+		Assert.assertEquals("second-entity", results.get(secondEntity.getId()).getValue());
+	}
+
 	@Test
 	public void itShouldReturnNullIfRequestedEntityByIdDoesNotExists() {
 		SimpleEntity result = mds.getObject(null, SimpleEntity.class, "non-existing");
@@ -92,6 +145,159 @@ public class MongoStoreQueryTest extends MongoDataStoreTest {
 		Assert.assertEquals(0, results);
 	}
 
+	@Test
+	public void itShouldCountUpToTheLimit() {
+		DBStoreQuery query = BasicQuery.createQuery().contains("value", "-entity");
+
+		Assert.assertEquals(4, mds.countObjects(null, SimpleEntity.class, query, 0));
+		Assert.assertEquals(3, mds.countObjects(null, SimpleEntity.class, query, 3));
+		Assert.assertEquals(2, mds.countObjects(null, SimpleEntity.class, BasicQuery.createQuery(), 2));
+	}
+
+	@Test
+	public void itShouldCountUnfilteredQueriesFromMetadata() {
+		Assert.assertEquals(4, mds.countObjects(null, SimpleEntity.class, BasicQuery.createQuery()));
+		Assert.assertEquals(4, mds.countObjects(null, SimpleEntity.class, null));
+
+		mds.setEstimateUnfilteredCounts(false);
+		Assert.assertEquals(4, mds.countObjects(null, SimpleEntity.class, BasicQuery.createQuery()));
+	}
+
+	@Test
+	public void itShouldReuseCachedCountsWithinTheTtl() {
+		mds.setCountCacheTtl(60000);
+		DBStoreQuery query = BasicQuery.createQuery().contains("value", "-entity");
+		Assert.assertEquals(4, mds.countObjects(null, SimpleEntity.class, query));
+
+		mds.saveObject(null, new SimpleEntity("fifth-entity"));
+		Assert.assertEquals(4, mds.countObjects(null, SimpleEntity.class, query));
+
+		mds.setCountCacheTtl(0);
+		Assert.assertEquals(5, mds.countObjects(null, SimpleEntity.class, query));
+	}
+
+	@Test
+	public void itShouldRunPreparedQueriesWithDifferentValues() {
+		PreparedQuery byValue = mds.prepare(BasicQuery.createQuery().eq("value", QueryParameter.named("value")));
+
+		Assert.assertEquals(Collections.singleton("value"), byValue.getParameters());
+		for (SimpleEntity e : Arrays.asList(firstEntity, secondEntity, thirdEntity)) {
+			SimpleEntity result = mds.findObject(null, SimpleEntity.class, byValue, Collections.singletonMap("value", e.getValue()));
+			Assert.assertEquals(e.getId(), result.getId());
+		}
+		Assert.assertNull(mds.findObject(null, SimpleEntity.class, byValue, Collections.singletonMap("value", "non-existing")));
+	}
+
+	@Test
+	public void itShouldBindListParametersNextToFixedConditions() {
+		PreparedQuery query = mds.prepare(BasicQuery.createQuery()
+				.and(
+						BasicQuery.createQuery().in("value", QueryParameter.named("values")),
+						BasicQuery.createQuery().ne("value", "second-entity")
+				)
+				.order("value", false));
+
+		List<SimpleEntity> results = mds.findObjects(null, SimpleEntity.class, query,
+				Collections.singletonMap("values", Arrays.asList("first-entity", "second-entity", "third-entity")));
+		Assert.assertEquals(Arrays.asList("third-entity", "first-entity"), results.stream().map(SimpleEntity::getValue).collect(Collectors.toList()));
+
+		Assert.assertEquals(1, mds.countObjects(null, SimpleEntity.class, query, Collections.singletonMap("values", Collections.singletonList("fourth-entity"))));
+	}
+
+	@Test
+	public void itShouldNotRunUnsatisfiablePreparedQueries() {
+		PreparedQuery query = mds.prepare(BasicQuery.createQuery()
+				.eq("value", QueryParameter.named("value"))
+				.eq("_id", firstEntity.getId()).ne("_id", firstEntity.getId()));
+		Map<String, Object> values = Collections.singletonMap("value", firstEntity.getValue());
+
+		Assert.assertTrue(query.isUnsatisfiable());
+		Assert.assertTrue(mds.findObjects(null, SimpleEntity.class, query, values).isEmpty());
+		Assert.assertNull(mds.findObject(null, SimpleEntity.class, query, values));
+		Assert.assertEquals(0, mds.countObjects(null, SimpleEntity.class, query, values));
+	}
+
+	@Test
+	public void itShouldCoalescePreparedQueries() {
+		mds.setCoalesceReads(true);
+		PreparedQuery byValue = mds.prepare(BasicQuery.createQuery().eq("value", QueryParameter.named("value")));
+
+		SimpleEntity a = mds.findObject(null, SimpleEntity.class, byValue, Collections.singletonMap("value", firstEntity.getValue()));
+		SimpleEntity b = mds.findObject(null, SimpleEntity.class, byValue, Collections.singletonMap("value", secondEntity.getValue()));
+		Assert.assertEquals(firstEntity.getId(), a.getId());
+		Assert.assertEquals(secondEntity.getId(), b.getId());
+		Assert.assertEquals(1, mds.countObjects(null, SimpleEntity.class, byValue, Collections.singletonMap("value", thirdEntity.getValue())));
+	}
+
+	@Test(expected = MalformedQueryException.class)
+	public void itShouldRejectUnboundParameters() {
+		PreparedQuery query = mds.prepare(BasicQuery.createQuery().eq("value", QueryParameter.named("value")));
+		mds.findObjects(null, SimpleEntity.class, query, Collections.emptyMap());
+	}
+
+	@Test(expected = MalformedQueryException.class)
+	public void itShouldRejectParametersInUnpreparedQueries() {
+		mds.findObjects(null, SimpleEntity.class, BasicQuery.createQuery().eq("value", QueryParameter.named("value")));
+	}
+
+	@Test
+	public void itShouldReturnTheSameResultsForNormalizedQueries() {
+		DBStoreQuery query = BasicQuery.createQuery()
+				.gte("value", "first-entity").gt("value", "a").lt("value", "third-entity")
+				.or(BasicQuery.createQuery().eq("value", "second-entity"), BasicQuery.createQuery().or(BasicQuery.createQuery().eq("value", "fourth-entity")))
+				.order("value");
+
+		List<String> normalized = mds.findObjects(null, SimpleEntity.class, query).stream().map(SimpleEntity::getValue).collect(Collectors.toList());
+		mds.setNormalizeQueries(false);
+		List<String> verbatim = mds.findObjects(null, SimpleEntity.class, query).stream().map(SimpleEntity::getValue).collect(Collectors.toList());
+
+		Assert.assertEquals(Arrays.asList("fourth-entity", "second-entity"), normalized);
+		Assert.assertEquals(verbatim, normalized);
+	}
+
+	@Test
+	public void itShouldStreamNormalizedQueriesInATransactionContext() {
+		DBStoreQuery query = BasicQuery.createQuery()
+				.gte("value", "first-entity").gt("value", "a").lt("value", "third-entity")
+				.or(BasicQuery.createQuery().eq("value", "second-entity"), BasicQuery.createQuery().or(BasicQuery.createQuery().eq("value", "fourth-entity")))
+				.order("value");
+		MongoTransactionContext ctx = new MongoTransactionContext(mds, null, null);
+
+		List<String> values;
+		try (Stream<SimpleEntity> stream = ctx.streamObjects(SimpleEntity.class, query, 1)) {
+			values = stream.map(SimpleEntity::getValue).collect(Collectors.toList());
+		}
+		Assert.assertEquals(Arrays.asList("fourth-entity", "second-entity"), values);
+
+		DBStoreQuery unsatisfiable = BasicQuery.createQuery().eq("value", "first-entity").ne("value", "first-entity");
+		try (Stream<SimpleEntity> stream = ctx.streamObjects(SimpleEntity.class, unsatisfiable)) {
+			Assert.assertEquals(0, stream.count());
+		}
+	}
+
+	@Test
+	public void itShouldNotRunUnsatisfiableQueries() {
+		DBStoreQuery query = BasicQuery.createQuery().eq("value", "first-entity").ne("value", "first-entity");
+
+		Assert.assertTrue(mds.findObjects(null, SimpleEntity.class, query).isEmpty());
+		Assert.assertNull(mds.findObject(null, SimpleEntity.class, query));
+		Assert.assertEquals(0, mds.countObjects(null, SimpleEntity.class, query));
+		Assert.assertTrue(mds.findPage(null, SimpleEntity.class, query, 10).getItems().isEmpty());
+	}
+
+	@Test
+	public void itShouldMatchPrefixesLiterally() {
+		mds.saveObject(null, new SimpleEntity("first.entity (copy)"));
+
+		Assert.assertEquals(2, mds.countObjects(null, SimpleEntity.class, BasicQuery.createQuery().startsWith("value", "first")));
+		Assert.assertEquals(0, mds.countObjects(null, SimpleEntity.class, BasicQuery.createQuery().startsWith("value", "First")));
+		Assert.assertEquals(0, mds.countObjects(null, SimpleEntity.class, BasicQuery.createQuery().startsWith("value", "entity")));
+
+		List<SimpleEntity> results = mds.findObjects(null, SimpleEntity.class, BasicQuery.createQuery().search("value", "first.entity (", DBStoreQuery.SEARCH_MODE.PREFIX));
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals("first.entity (copy)", results.get(0).getValue());
+	}
+
 	@Test
 	public void itShouldReturnMatchingEntity() {
 		SimpleEntity result = mds.findObject(
@@ -129,4 +335,149 @@ public class MongoStoreQueryTest extends MongoDataStoreTest {
 		);
 	}
 
+	@Test
+	public void itShouldStreamMatchingEntitiesInOrder() {
+		List<String> values;
+
+		// batch size smaller than the result, so the cursor has to fetch more than once
+		try (Stream<SimpleEntity> stream = mds.streamObjects(null, SimpleEntity.class, BasicQuery.createQuery().order("value"), 1)) {
+			values = stream.map(SimpleEntity::getValue).collect(Collectors.toList());
+		}
+
+		Assert.assertEquals(Arrays.asList("first-entity", "fourth-entity", "second-entity", "third-entity"), values);
+	}
+
+	@Test
+	public void itShouldOnlyLoadProjectedFields() {
+		SimpleEntity included = mds.findObject(null, SimpleEntity.class, BasicQuery.createQuery().eq("_id", secondEntity.getId()).include("value"));
+		Assert.assertEquals(secondEntity.getId(), included.getId());
+		Assert.assertEquals(secondEntity.getValue(), included.getValue());
+
+		List<SimpleEntity> excluded = mds.findObjects(null, SimpleEntity.class, BasicQuery.createQuery().exclude("value"));
+		Assert.assertEquals(4, excluded.size());
+		for (SimpleEntity entity : excluded) {
+			Assert.assertNotNull(entity.getId());
+			Assert.assertNull(entity.getValue());
+		}
+	}
+
+	@Test
+	public void itShouldPageWithContinuations() {
+		DBStoreQuery query = BasicQuery.createQuery().order("value", false);
+
+		DBStorePage<SimpleEntity> first = mds.findPage(null, SimpleEntity.class, query, 3);
+		Assert.assertEquals(Arrays.asList(thirdEntity.getId(), secondEntity.getId(), fourthEntity.getId()), ids(first.getItems()));
+		Assert.assertTrue(first.hasMore());
+
+		DBStorePage<SimpleEntity> second = mds.findPage(null, SimpleEntity.class, query.after(first.getContinuation()), 3);
+		Assert.assertEquals(Collections.singletonList(firstEntity.getId()), ids(second.getItems()));
+		Assert.assertFalse(second.hasMore());
+	}
+
+	@Test
+	public void itShouldPageThroughEqualSortKeysById() {
+		List<SimpleEntity> same = new ArrayList<>();
+		for (int i = 0; i < 5; i++) {
+			same.add(new SimpleEntity("same"));
+		}
+		mds.saveObjects(null, same);
+
+		DBStoreQuery query = BasicQuery.createQuery().eq("value", "same").order("value");
+		Set<String> seen = new HashSet<>();
+		String continuation = null;
+		int pages = 0;
+
+		do {
+			DBStorePage<SimpleEntity> page = mds.findPage(null, SimpleEntity.class, continuation != null ? query.after(continuation) : query, 2);
+			for (SimpleEntity entity : page.getItems()) {
+				Assert.assertTrue(seen.add(entity.getId()));
+			}
+			continuation = page.getContinuation();
+			pages++;
+		} while (continuation != null);
+
+		Assert.assertEquals(5, seen.size());
+		Assert.assertEquals(3, pages);
+	}
+
+	@Test(expected = MalformedQueryException.class)
+	public void itShouldRejectContinuationsOfAnotherOrder() {
+		DBStorePage<SimpleEntity> page = mds.findPage(null, SimpleEntity.class, BasicQuery.createQuery().order("value"), 1);
+		mds.findPage(null, SimpleEntity.class, BasicQuery.createQuery().order("value", false).after(page.getContinuation()), 1);
+	}
+
+	@Test
+	public void itShouldFindDistinctValuesAndExistence() {
+		mds.saveObjects(null, Arrays.asList(new SimpleEntity("first-entity"), new SimpleEntity("second-entity")));
+		DBStoreQuery query = BasicQuery.createQuery().in("value", "first-entity", "second-entity", "third-entity");
+
+		try (Stream<Object> values = mds.distinctValues(null, SimpleEntity.class, "value", query)) {
+			Assert.assertEquals(new HashSet<>(Arrays.asList("first-entity", "second-entity", "third-entity")), values.collect(Collectors.toSet()));
+		}
+		mds.setDistinctByAggregation(true);
+		try (Stream<Object> values = mds.distinctValues(null, SimpleEntity.class, "value", query)) {
+			Assert.assertEquals(3, values.count());
+		}
+
+		Assert.assertTrue(mds.exists(null, SimpleEntity.class, BasicQuery.createQuery().eq("value", "fourth-entity")));
+		Assert.assertFalse(mds.exists(null, SimpleEntity.class, BasicQuery.createQuery().eq("value", "fifth-entity")));
+		Assert.assertFalse(mds.exists(null, SimpleEntity.class, BasicQuery.createQuery().in("value", Collections.emptyList())));
+	}
+
+	@Test
+	public void itShouldExplainQueries() {
+		QueryPlan scan = mds.explain(null, SimpleEntity.class, BasicQuery.createQuery().eq("value", "second-entity"));
+		Assert.assertTrue(scan.isCollectionScan());
+		Assert.assertNull(scan.getIndexName());
+		Assert.assertEquals(1, scan.getReturned());
+		Assert.assertEquals(4, scan.getDocsExamined());
+		Assert.assertTrue(scan.getExecutionTimeMillis() >= 0);
+
+		mds.saveObjects(null, Arrays.asList(new EntityWithIndexes("anna", "adams"), new EntityWithIndexes("bob", "baker")));
+		QueryPlan indexed = mds.explain(null, EntityWithIndexes.class, BasicQuery.createQuery().eq("lastName", "baker"));
+		Assert.assertFalse(indexed.isCollectionScan());
+		Assert.assertEquals("lastNameIdx", indexed.getIndexName());
+		Assert.assertEquals(1, indexed.getKeysExamined());
+	}
+
+	public static class ValueCount {
+
+		public String value;
+		public long count;
+	}
+
+	@Test
+	public void itShouldAggregateOnTheServer() {
+		mds.saveObjects(null, Arrays.asList(new SimpleEntity("first-entity"), new SimpleEntity("first-entity"), new SimpleEntity("second-entity")));
+
+		DBStoreAggregation byValue = BasicAggregation.createAggregation(BasicQuery.createQuery().nin("value", "fourth-entity"))
+				.groupBy("value")
+				.count("count")
+				.order("count", false)
+				.order("value");
+
+		try (Stream<Map<String, Object>> rows = mds.aggregate(null, SimpleEntity.class, byValue)) {
+			List<Map<String, Object>> all = rows.collect(Collectors.toList());
+			Assert.assertEquals(3, all.size());
+			Assert.assertEquals("first-entity", all.get(0).get("value"));
+			Assert.assertEquals(3L, ((Number) all.get(0).get("count")).longValue());
+			Assert.assertFalse(all.get(0).containsKey("_id"));
+		}
+
+		try (Stream<ValueCount> rows = mds.aggregate(null, SimpleEntity.class, byValue.having(BasicQuery.createQuery().gte("count", 2)).limit(1), ValueCount.class)) {
+			List<ValueCount> all = rows.collect(Collectors.toList());
+			Assert.assertEquals(1, all.size());
+			Assert.assertEquals("first-entity", all.get(0).value);
+			Assert.assertEquals(3, all.get(0).count);
+		}
+
+		try (Stream<Map<String, Object>> rows = mds.aggregate(null, SimpleEntity.class, BasicAggregation.createAggregation().count("count"))) {
+			Assert.assertEquals(7L, ((Number) rows.findFirst().get().get("count")).longValue());
+		}
+	}
+
+	private List<String> ids(List<SimpleEntity> entities) {
+		return entities.stream().map(SimpleEntity::getId).collect(Collectors.toList());
+	}
+
 }
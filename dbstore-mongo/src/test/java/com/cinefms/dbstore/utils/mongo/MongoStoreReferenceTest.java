@@ -0,0 +1,94 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import com.cinefms.dbstore.api.references.ReferenceLoader;
+import com.cinefms.dbstore.api.references.References;
+import com.cinefms.dbstore.query.api.impl.BasicQuery;
+import com.cinefms.dbstore.utils.mongo.entities.ArticleEntity;
+import com.cinefms.dbstore.utils.mongo.entities.SimpleEntity;
+import com.cinefms.dbstore.utils.mongo.entities.UserEntity;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class MongoStoreReferenceTest extends MongoDataStoreTest {
+
+	private UserEntity alice;
+	private UserEntity bob;
+	private SimpleEntity red;
+	private SimpleEntity blue;
+
+	@Override
+	public void setup() {
+		super.setup();
+
+		alice = user("alice");
+		bob = user("bob");
+		red = mds.saveObject(null, new SimpleEntity("red"));
+		blue = mds.saveObject(null, new SimpleEntity("blue"));
+
+		article("first", alice.getId(), Arrays.asList(red.getId(), blue.getId()));
+		article("second", bob.getId(), Collections.singletonList("non-existing"));
+		article("third", alice.getId(), null);
+	}
+
+	@Test
+	public void itShouldResolveReferencesOfAllObjectsAtOnce() {
+		List<ArticleEntity> articles = mds.findObjects(null, ArticleEntity.class, BasicQuery.createQuery().order("title"));
+
+		References references = new ReferenceLoader(mds).resolve(null, articles);
+
+		Assert.assertEquals(4, references.size());
+		assertResolved(articles);
+		Assert.assertSame(articles.get(0).getAuthor(), articles.get(2).getAuthor());
+	}
+
+	@Test
+	public void itShouldResolveReferencesWithLookups() {
+		List<ArticleEntity> articles = mds.findObjectsWithReferences(null, ArticleEntity.class, BasicQuery.createQuery().order("title"));
+
+		assertResolved(articles);
+	}
+
+	@Test
+	public void itShouldApplyTheQueryWhenResolvingWithLookups() {
+		List<ArticleEntity> articles = mds.findObjectsWithReferences(null, ArticleEntity.class,
+				BasicQuery.createQuery().eq("authorId", alice.getId()).order("title").start(1).max(1));
+
+		Assert.assertEquals(1, articles.size());
+		Assert.assertEquals("third", articles.get(0).getTitle());
+		Assert.assertEquals("alice", articles.get(0).getAuthor().getUsername());
+	}
+
+	private void assertResolved(List<ArticleEntity> articles) {
+		Assert.assertEquals(3, articles.size());
+
+		Assert.assertEquals("alice", articles.get(0).getAuthor().getUsername());
+		Assert.assertEquals(2, articles.get(0).getTags().size());
+		Assert.assertEquals("red", articles.get(0).getTags().get(0).getValue());
+		Assert.assertEquals("blue", articles.get(0).getTags().get(1).getValue());
+
+		Assert.assertEquals("bob", articles.get(1).getAuthor().getUsername());
+		Assert.assertTrue(articles.get(1).getTags().isEmpty());
+
+		Assert.assertEquals("alice", articles.get(2).getAuthor().getUsername());
+		Assert.assertTrue(articles.get(2).getTags().isEmpty());
+	}
+
+	private UserEntity user(String username) {
+		UserEntity out = new UserEntity();
+		out.setUsername(username);
+		return mds.saveObject(null, out);
+	}
+
+	private void article(String title, String authorId, List<String> tagIds) {
+		ArticleEntity out = new ArticleEntity();
+		out.setTitle(title);
+		out.setAuthorId(authorId);
+		out.setTagIds(tagIds);
+		mds.saveObject(null, out);
+	}
+
+}
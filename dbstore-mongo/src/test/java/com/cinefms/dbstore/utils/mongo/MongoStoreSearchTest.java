@@ -0,0 +1,70 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.impl.BasicQuery;
+import com.cinefms.dbstore.query.mongo.QueryMongojackTranslator;
+import com.cinefms.dbstore.utils.mongo.entities.CustomerEntity;
+import org.bson.Document;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class MongoStoreSearchTest extends MongoDataStoreTest {
+
+	@Override
+	public void setup() {
+		super.setup();
+
+		mds.saveObject(null, new CustomerEntity("Jane Doe", "Jane.Doe@example.com", "prefers evening screenings"));
+		mds.saveObject(null, new CustomerEntity("John Roe", "john.roe@example.com", "member since 2019"));
+	}
+
+	@Test
+	public void itShouldCreateCaseInsensitiveAndTextIndexes() {
+		List<Document> indexes = loadAll(mds.getDB(null).getCollection(mds.getCollectionName(CustomerEntity.class)).listIndexes());
+
+		Document email = indexes.stream().filter(i -> i.get("key", Document.class).containsKey("email")).findFirst().orElse(null);
+		Assert.assertNotNull(email);
+		Assert.assertEquals(2, email.get("collation", Document.class).getInteger("strength").intValue());
+
+		Assert.assertTrue(indexes.stream().anyMatch(i -> "text".equals(i.get("key", Document.class).get("_fts"))));
+	}
+
+	@Test
+	public void itShouldMatchIgnoringCase() {
+		DBStoreQuery query = BasicQuery.createQuery().eqIgnoreCase("email", "jane.doe@EXAMPLE.com");
+
+		List<CustomerEntity> results = mds.findObjects(null, CustomerEntity.class, query);
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals("Jane Doe", results.get(0).getName());
+		Assert.assertEquals(0, mds.countObjects(null, CustomerEntity.class, BasicQuery.createQuery().eq("email", "jane.doe@EXAMPLE.com")));
+	}
+
+	@Test
+	public void itShouldOnlyIgnoreCaseForTheCaseInsensitiveCondition() {
+		DBStoreQuery sensitive = BasicQuery.createQuery().eq("name", "jane doe").eqIgnoreCase("email", "jane.doe@EXAMPLE.com");
+		DBStoreQuery matching = BasicQuery.createQuery().eq("name", "Jane Doe").eqIgnoreCase("email", "jane.doe@EXAMPLE.com");
+
+		Assert.assertEquals(0, mds.countObjects(null, CustomerEntity.class, sensitive));
+		Assert.assertEquals(1, mds.countObjects(null, CustomerEntity.class, matching));
+		Assert.assertEquals(1, mds.findObjects(null, CustomerEntity.class, BasicQuery.createQuery().eqIgnoreCase("email", "JOHN.ROE@example.com").order("name")).size());
+
+		// only the case-insensitive condition alone runs under the collation of the index
+		QueryMongojackTranslator translator = new QueryMongojackTranslator();
+		Assert.assertNotNull(translator.translateCollation(BasicQuery.createQuery().eqIgnoreCase("email", "x").gt("since", 2019)));
+		Assert.assertNull(translator.translateCollation(sensitive));
+		Assert.assertNull(translator.translateCollation(BasicQuery.createQuery().eqIgnoreCase("email", "x").order("name")));
+	}
+
+	@Test
+	public void itShouldFindByText() {
+		List<String> results = mds.findObjects(null, CustomerEntity.class, BasicQuery.createQuery().text("screenings"))
+				.stream().map(CustomerEntity::getName).collect(Collectors.toList());
+
+		Assert.assertEquals(1, results.size());
+		Assert.assertEquals("Jane Doe", results.get(0));
+	}
+
+}
@@ -0,0 +1,130 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.impl.BasicQuery;
+import com.cinefms.dbstore.query.api.impl.QueryParameter;
+import com.cinefms.dbstore.utils.mongo.entities.SimpleEntity;
+import org.bson.BsonDocument;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class QueryPlanTest {
+
+	private static final BsonDocument INDEXED = BsonDocument.parse("{queryPlanner: {winningPlan: {stage: 'FETCH', inputStage: {stage: 'IXSCAN', indexName: 'value_1', keyPattern: {value: 1}}}},"
+			+ " executionStats: {nReturned: 2, executionTimeMillis: 3, totalKeysExamined: 2, totalDocsExamined: 2}}");
+
+	private static final BsonDocument SCANNED = BsonDocument.parse("{queryPlanner: {winningPlan: {queryPlan: {stage: 'SORT', inputStage: {stage: 'COLLSCAN', direction: 'forward'}}, slotBasedPlan: {}}}}");
+
+	@Test
+	public void itShouldReadTheWinningPlan() {
+		QueryPlan plan = QueryPlan.of(INDEXED);
+		Assert.assertEquals(Arrays.asList("FETCH", "IXSCAN"), plan.getStages());
+		Assert.assertEquals("value_1", plan.getIndexName());
+		Assert.assertFalse(plan.isCollectionScan());
+		Assert.assertEquals(2, plan.getKeysExamined());
+		Assert.assertEquals(2, plan.getDocsExamined());
+		Assert.assertEquals(2, plan.getReturned());
+		Assert.assertEquals(3, plan.getExecutionTimeMillis());
+
+		plan = QueryPlan.of(SCANNED);
+		Assert.assertEquals(Arrays.asList("SORT", "COLLSCAN"), plan.getStages());
+		Assert.assertNull(plan.getIndexName());
+		Assert.assertTrue(plan.isCollectionScan());
+		Assert.assertEquals(-1, plan.getDocsExamined());
+	}
+
+	private static class ExplainedStore extends MongoDataStore {
+
+		private final AtomicInteger explained = new AtomicInteger();
+		private long size = 100000;
+
+		@Override
+		QueryPlan explainPlan(String db, Class<?> clazz, DBStoreQuery query) {
+			explained.incrementAndGet();
+			return QueryPlan.of(QueryPlanGuard.shape(query).contains("value EQ") ? INDEXED : SCANNED);
+		}
+
+		@Override
+		long estimatedSize(String db, Class<?> clazz) {
+			return size;
+		}
+	}
+
+	@Test
+	public void itShouldExplainEachShapeOnce() {
+		ExplainedStore store = new ExplainedStore();
+		QueryPlanGuard guard = new QueryPlanGuard();
+		guard.setSampleRate(1);
+
+		guard.check(store, null, SimpleEntity.class, BasicQuery.createQuery().eq("value", "a"));
+		guard.check(store, null, SimpleEntity.class, BasicQuery.createQuery().eq("value", "b"));
+		guard.check(store, null, SimpleEntity.class, BasicQuery.createQuery().eq("other", "a"));
+		guard.check(store, null, SimpleEntity.class, BasicQuery.createQuery().eq("other", "b"));
+		// nothing to look at without conditions
+		guard.check(store, null, SimpleEntity.class, BasicQuery.createQuery());
+		Assert.assertEquals(2, store.explained.get());
+	}
+
+	@Test
+	public void itShouldRejectCollectionScansOfLargeCollections() {
+		ExplainedStore store = new ExplainedStore();
+		store.size = 10;
+		QueryPlanGuard guard = new QueryPlanGuard();
+		guard.setSampleRate(1);
+		guard.setReject(true);
+		guard.setMinCollectionSize(1000);
+
+		DBStoreQuery scan = BasicQuery.createQuery().eq("other", "a");
+		guard.check(store, null, SimpleEntity.class, scan);
+		guard.check(store, null, SimpleEntity.class, BasicQuery.createQuery().eq("value", "a"));
+
+		store.size = 5000;
+		guard.check(store, null, SimpleEntity.class, BasicQuery.createQuery().eq("value", "a"));
+		try {
+			guard.check(store, null, SimpleEntity.class, scan);
+			Assert.fail();
+		} catch (DBStoreException e) {
+			// expected
+		}
+		// known shapes are rejected without sampling or explaining them again
+		guard.setSampleRate(0);
+		int explained = store.explained.get();
+		try {
+			guard.check(store, null, SimpleEntity.class, BasicQuery.createQuery().eq("other", "b"));
+			Assert.fail();
+		} catch (DBStoreException e) {
+			// expected
+		}
+		Assert.assertEquals(explained, store.explained.get());
+	}
+
+	@Test
+	public void itShouldGuardPreparedQueriesByTheirShape() {
+		ExplainedStore store = new ExplainedStore();
+		QueryPlanGuard guard = new QueryPlanGuard();
+		guard.setSampleRate(1);
+		guard.setReject(true);
+
+		DBStoreQuery shape = BasicQuery.createQuery().eq("other", QueryParameter.named("other"));
+		try {
+			guard.check(store, null, SimpleEntity.class, shape, () -> QueryPlan.of(SCANNED));
+			Assert.fail();
+		} catch (DBStoreException e) {
+			// expected
+		}
+		// the plan of the bound query is what counts, the store did not explain anything
+		Assert.assertEquals(0, store.explained.get());
+	}
+
+	@Test
+	public void itShouldTellShapesApartByFieldsComparatorsAndOrder() {
+		Assert.assertEquals(QueryPlanGuard.shape(BasicQuery.createQuery().eq("a", 1).order("b")), QueryPlanGuard.shape(BasicQuery.createQuery().eq("a", "x").order("b")));
+		Assert.assertNotEquals(QueryPlanGuard.shape(BasicQuery.createQuery().eq("a", 1)), QueryPlanGuard.shape(BasicQuery.createQuery().gt("a", 1)));
+		Assert.assertNotEquals(QueryPlanGuard.shape(BasicQuery.createQuery().eq("a", 1)), QueryPlanGuard.shape(BasicQuery.createQuery().eq("a", 1).order("b", false)));
+	}
+
+}
@@ -0,0 +1,185 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import com.cinefms.dbstore.api.FieldUpdate;
+import com.cinefms.dbstore.api.impl.DBStoreListenerAdapter;
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.impl.BasicQuery;
+import com.cinefms.dbstore.utils.mongo.entities.SimpleEntity;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+public class ReactiveMongoDataStoreTest extends MongoDataStoreTest {
+
+	private MongoClient client;
+	private ReactiveMongoDataStore rds;
+
+	@Before
+	public void setupReactive() {
+		client = MongoClients.create("mongodb://" + mds.getMongoService().getHosts());
+		rds = new ReactiveMongoDataStore();
+		rds.setMongoClient(client);
+		rds.setDbPrefix(mds.getDbPrefix());
+		rds.setDefaultDb(mds.getDefaultDb());
+	}
+
+	@After
+	public void closeReactive() {
+		client.close();
+	}
+
+	@Test
+	public void itShouldSaveAndLoadObjects() {
+		SimpleEntity entity = rds.saveObject(null, new SimpleEntity("value")).join();
+
+		Assert.assertNotNull(entity.getId());
+		Assert.assertEquals("value", rds.getObject(null, SimpleEntity.class, entity.getId()).join().getValue());
+
+		// same documents as the blocking store
+		Assert.assertEquals("value", mds.getObject(null, SimpleEntity.class, entity.getId()).getValue());
+	}
+
+	@Test
+	public void itShouldQueryObjects() {
+		rds.saveObjects(null, Arrays.asList(new SimpleEntity("a"), new SimpleEntity("b"), new SimpleEntity("c"))).join();
+
+		List<SimpleEntity> found = rds.findObjects(null, SimpleEntity.class, BasicQuery.createQuery().in("value", "a", "c").order("value")).join();
+
+		Assert.assertEquals(2, found.size());
+		Assert.assertEquals("a", found.get(0).getValue());
+		Assert.assertEquals("c", found.get(1).getValue());
+		Assert.assertEquals(3L, (long) rds.countObjects(null, SimpleEntity.class, null).join());
+		Assert.assertEquals("b", rds.findObject(null, SimpleEntity.class, BasicQuery.createQuery().eq("value", "b")).join().getValue());
+	}
+
+	@Test
+	public void itShouldNotRunUnsatisfiableQueries() {
+		DBStoreQuery query = BasicQuery.createQuery().eq("value", "a").ne("value", "a");
+
+		// no client: any round trip would fail
+		ReactiveMongoDataStore offline = new ReactiveMongoDataStore();
+
+		Assert.assertTrue(offline.findObjects(null, SimpleEntity.class, query).join().isEmpty());
+		Assert.assertNull(offline.findObject(null, SimpleEntity.class, query).join());
+		Assert.assertEquals(0L, (long) offline.countObjects(null, SimpleEntity.class, query).join());
+	}
+
+	@Test
+	public void itShouldPublishMatches() {
+		rds.saveObjects(null, Arrays.asList(new SimpleEntity("a"), new SimpleEntity("b"))).join();
+
+		List<String> values = new ArrayList<>();
+		CompletableFuture<Void> done = new CompletableFuture<>();
+
+		rds.publishObjects(null, SimpleEntity.class, BasicQuery.createQuery().order("value")).subscribe(new Subscriber<SimpleEntity>() {
+			@Override
+			public void onSubscribe(Subscription s) {
+				s.request(Long.MAX_VALUE);
+			}
+
+			@Override
+			public void onNext(SimpleEntity entity) {
+				values.add(entity.getValue());
+			}
+
+			@Override
+			public void onError(Throwable t) {
+				done.completeExceptionally(t);
+			}
+
+			@Override
+			public void onComplete() {
+				done.complete(null);
+			}
+		});
+
+		done.join();
+		Assert.assertEquals(Arrays.asList("a", "b"), values);
+	}
+
+	@Test
+	public void itShouldUpdateFieldsAndNotifyListeners() {
+		List<String> events = new ArrayList<>();
+		rds.addListener(new DBStoreListenerAdapter<SimpleEntity>() {
+			@Override
+			public void updated(String db, SimpleEntity oldEntity, SimpleEntity newEntity) {
+				events.add(oldEntity.getValue() + "->" + newEntity.getValue());
+			}
+		});
+
+		SimpleEntity entity = rds.saveObject(null, new SimpleEntity("old")).join();
+		SimpleEntity updated = rds.updateObjectFields(null, SimpleEntity.class, entity.getId(), Collections.singletonList(FieldUpdate.set("value", "new"))).join();
+
+		Assert.assertEquals("new", updated.getValue());
+		Assert.assertEquals(Collections.singletonList("old->new"), events);
+	}
+
+	@Test
+	public void itShouldDeleteObjects() {
+		rds.saveObjects(null, Arrays.asList(new SimpleEntity("a"), new SimpleEntity("a"), new SimpleEntity("b"))).join();
+
+		Assert.assertEquals(2L, (long) rds.deleteObjects(null, SimpleEntity.class, BasicQuery.createQuery().eq("value", "a")).join());
+		Assert.assertEquals(1L, (long) rds.countObjects(null, SimpleEntity.class, null).join());
+	}
+
+	@Test
+	public void itShouldDeleteObjectsWithListenersInBatches() {
+		rds.setDeleteBatchSize(2);
+		rds.saveObjects(null, Arrays.asList(new SimpleEntity("a"), new SimpleEntity("a"), new SimpleEntity("a"), new SimpleEntity("a"), new SimpleEntity("a"), new SimpleEntity("b"))).join();
+
+		List<Long> left = new ArrayList<>();
+		List<String> deleted = new ArrayList<>();
+		rds.addListener(new DBStoreListenerAdapter<SimpleEntity>() {
+			@Override
+			public void beforeDelete(String db, SimpleEntity o) {
+				left.add(mds.countObjects(db, SimpleEntity.class, BasicQuery.createQuery().eq("value", "a")));
+			}
+
+			@Override
+			public void deleted(String db, SimpleEntity o) {
+				deleted.add(o.getId());
+			}
+		});
+
+		Assert.assertEquals(5L, (long) rds.deleteObjects(null, SimpleEntity.class, BasicQuery.createQuery().eq("value", "a")).join());
+		Assert.assertEquals(5, deleted.size());
+		// each batch is deleted before the next one is read
+		Assert.assertEquals(Arrays.asList(5L, 5L, 3L, 3L, 1L), left);
+		Assert.assertEquals(1L, (long) rds.countObjects(null, SimpleEntity.class, null).join());
+	}
+
+	@Test
+	public void itShouldOnlyNotifyListenersOfObjectsItDeleted() {
+		List<SimpleEntity> saved = rds.saveObjects(null, Arrays.asList(new SimpleEntity("a"), new SimpleEntity("b"), new SimpleEntity("c"))).join();
+		String b = saved.get(1).getId();
+
+		List<String> deleted = new ArrayList<>();
+		rds.addListener(new DBStoreListenerAdapter<SimpleEntity>() {
+			@Override
+			public void beforeDelete(String db, SimpleEntity o) {
+				// someone else deletes "b" while the batch is being deleted
+				mds.deleteObject(db, SimpleEntity.class, b);
+			}
+
+			@Override
+			public void deleted(String db, SimpleEntity o) {
+				deleted.add(o.getValue());
+			}
+		});
+
+		Assert.assertEquals(2L, (long) rds.deleteObjects(null, SimpleEntity.class, null).join());
+		Assert.assertEquals(Arrays.asList("a", "c"), deleted);
+	}
+
+}
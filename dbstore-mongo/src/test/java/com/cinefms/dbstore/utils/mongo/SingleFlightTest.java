@@ -0,0 +1,89 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import com.cinefms.dbstore.utils.mongo.util.SingleFlight;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SingleFlightTest {
+
+	@Test
+	public void itShouldShareOneCallBetweenConcurrentCallers() throws Exception {
+		SingleFlight<String, String> flight = new SingleFlight<>();
+		AtomicInteger calls = new AtomicInteger();
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			Future<String> leader = executor.submit(() -> flight.execute("key", () -> {
+				calls.incrementAndGet();
+				started.countDown();
+				await(release);
+				return "result";
+			}, v -> v + "-shared"));
+			Assert.assertTrue(started.await(5, TimeUnit.SECONDS));
+
+			List<Future<String>> followers = new ArrayList<>();
+			for (int i = 0; i < 7; i++) {
+				followers.add(executor.submit(() -> flight.execute("key", () -> {
+					calls.incrementAndGet();
+					return "own";
+				}, v -> v + "-shared")));
+			}
+
+			// wait until all of them joined the running call
+			long deadline = System.currentTimeMillis() + 5000;
+			while (flight.getCoalesced() < 7 && System.currentTimeMillis() < deadline) {
+				Thread.sleep(5);
+			}
+			release.countDown();
+
+			Assert.assertEquals("result", leader.get());
+			for (Future<String> f : followers) {
+				Assert.assertEquals("result-shared", f.get());
+			}
+			Assert.assertEquals(1, calls.get());
+			Assert.assertEquals(0, flight.getInFlight());
+
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void itShouldNotRememberResults() {
+		SingleFlight<String, Integer> flight = new SingleFlight<>();
+		AtomicInteger calls = new AtomicInteger();
+
+		flight.execute("key", calls::incrementAndGet, v -> v);
+		flight.execute("key", calls::incrementAndGet, v -> v);
+
+		Assert.assertEquals(2, calls.get());
+		Assert.assertEquals(0, flight.getCoalesced());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void itShouldPassFailuresOn() {
+		new SingleFlight<String, String>().execute("key", () -> {
+			throw new IllegalStateException("down");
+		}, v -> v);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
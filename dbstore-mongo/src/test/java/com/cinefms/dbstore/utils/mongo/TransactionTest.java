@@ -101,8 +101,8 @@ public class TransactionTest extends MongoDataStoreTest {
             }
 
             @Override
-            public <T extends com.cinefms.dbstore.api.DBStoreEntity> boolean deleteObjects(Class<T> type, com.cinefms.dbstore.query.api.DBStoreQuery query) {
-                return false;
+            public <T extends com.cinefms.dbstore.api.DBStoreEntity> long deleteObjects(Class<T> type, com.cinefms.dbstore.query.api.DBStoreQuery query) {
+                return 0;
             }
 
             @Override
@@ -110,6 +110,26 @@ public class TransactionTest extends MongoDataStoreTest {
                 return null;
             }
 
+            @Override
+            public <T extends com.cinefms.dbstore.api.DBStoreEntity> java.util.stream.Stream<T> streamObjects(Class<T> clazz, com.cinefms.dbstore.query.api.DBStoreQuery query) {
+                return null;
+            }
+
+            @Override
+            public <T extends com.cinefms.dbstore.api.DBStoreEntity> java.util.stream.Stream<T> streamObjects(Class<T> clazz, com.cinefms.dbstore.query.api.DBStoreQuery query, int batchSize) {
+                return null;
+            }
+
+            @Override
+            public <T extends com.cinefms.dbstore.api.DBStoreEntity> List<T> getObjects(Class<T> clazz, java.util.Collection<String> ids) {
+                return null;
+            }
+
+            @Override
+            public <T extends com.cinefms.dbstore.api.DBStoreEntity> java.util.Map<String, T> getObjectMap(Class<T> clazz, java.util.Collection<String> ids) {
+                return null;
+            }
+
             @Override
             public <T extends com.cinefms.dbstore.api.DBStoreEntity> T findObject(Class<T> clazz, com.cinefms.dbstore.query.api.DBStoreQuery query) {
                 return null;
@@ -120,6 +140,16 @@ public class TransactionTest extends MongoDataStoreTest {
                 return 0;
             }
 
+            @Override
+            public <T extends com.cinefms.dbstore.api.DBStoreEntity> java.util.stream.Stream<Object> distinctValues(Class<T> clazz, String field, com.cinefms.dbstore.query.api.DBStoreQuery query) {
+                return null;
+            }
+
+            @Override
+            public <T extends com.cinefms.dbstore.api.DBStoreEntity> boolean exists(Class<T> clazz, com.cinefms.dbstore.query.api.DBStoreQuery query) {
+                return false;
+            }
+
             @Override
             public <T extends com.cinefms.dbstore.api.DBStoreEntity> List<T> saveObjects(List<T> objects) {
                 return null;
@@ -0,0 +1,193 @@
+package com.cinefms.dbstore.utils.mongo;
+
+import com.cinefms.dbstore.api.DBStoreEntity;
+import com.cinefms.dbstore.api.exceptions.DBStoreException;
+import com.cinefms.dbstore.api.impl.BaseDBStoreEntity;
+import com.cinefms.dbstore.utils.mongo.entities.BufferedEntity;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public class WriteBehindBufferTest {
+
+	// what the store does through the codec of the collection
+	private static final WriteBehindBuffer.Copier COPIES = (db, o) -> {
+		DBStoreEntity out = o instanceof BufferedEntity ? new BufferedEntity(((BufferedEntity) o).getStatus()) : new OtherEntity();
+		out.setId(o.getId());
+		return out;
+	};
+
+	private BufferedEntity entity(String id, String status) {
+		BufferedEntity out = new BufferedEntity(status);
+		out.setId(id);
+		return out;
+	}
+
+	@Test
+	public void itShouldCoalesceSavesOfTheSameObject() {
+		List<DBStoreEntity> written = Collections.synchronizedList(new ArrayList<>());
+		WriteBehindBuffer buffer = new WriteBehindBuffer((db, clazz, objects) -> written.addAll(objects), COPIES, 10, 10, 60000, 1000);
+
+		for (int i = 0; i < 100; i++) {
+			buffer.put(null, entity("a", "status-" + i));
+		}
+		buffer.put(null, entity("b", "other"));
+
+		Assert.assertEquals(2, buffer.size());
+		Assert.assertEquals("status-99", buffer.get(null, BufferedEntity.class, "a").getStatus());
+
+		buffer.close();
+
+		Assert.assertEquals(2, written.size());
+		Assert.assertEquals("status-99", ((BufferedEntity) written.get(0)).getStatus());
+		Assert.assertEquals(0, buffer.size());
+	}
+
+	@Test
+	public void itShouldKeepAndHandOutCopies() {
+		List<DBStoreEntity> written = new ArrayList<>();
+		WriteBehindBuffer buffer = new WriteBehindBuffer((db, clazz, objects) -> written.addAll(objects), COPIES, 10, 10, 60000, 1000);
+
+		BufferedEntity saved = entity("a", "saved");
+		buffer.put(null, saved);
+		saved.setStatus("changed after save");
+
+		BufferedEntity read = buffer.get(null, BufferedEntity.class, "a");
+		Assert.assertEquals("saved", read.getStatus());
+		read.setStatus("changed by a reader");
+		Assert.assertEquals("saved", buffer.get(null, BufferedEntity.class, "a").getStatus());
+
+		buffer.close();
+		Assert.assertNotSame(saved, written.get(0));
+		Assert.assertEquals("saved", ((BufferedEntity) written.get(0)).getStatus());
+	}
+
+	@Test
+	public void itShouldFlushWhenTheBatchSizeIsReached() throws Exception {
+		CountDownLatch flushed = new CountDownLatch(1);
+		WriteBehindBuffer buffer = new WriteBehindBuffer((db, clazz, objects) -> flushed.countDown(), COPIES, 100, 3, 60000, 1000);
+
+		buffer.put(null, entity("a", "x"));
+		buffer.put(null, entity("b", "x"));
+		buffer.put(null, entity("c", "x"));
+
+		Assert.assertTrue(flushed.await(5, TimeUnit.SECONDS));
+		buffer.close();
+	}
+
+	@Test(expected = DBStoreException.class)
+	public void itShouldPushBackWhenFull() {
+		WriteBehindBuffer buffer = new WriteBehindBuffer((db, clazz, objects) -> {
+			throw new IllegalStateException("database down");
+		}, COPIES, 2, 2, 60000, 100);
+
+		buffer.put(null, entity("a", "x"));
+		buffer.put(null, entity("b", "x"));
+
+		// updating a pending object does not need room
+		buffer.put(null, entity("a", "y"));
+
+		buffer.put(null, entity("c", "x"));
+	}
+
+	@Test
+	public void itShouldKeepFailedWritesPending() {
+		AtomicBoolean fail = new AtomicBoolean(true);
+		List<DBStoreEntity> written = new ArrayList<>();
+		WriteBehindBuffer buffer = new WriteBehindBuffer((db, clazz, objects) -> {
+			if (fail.get()) {
+				throw new IllegalStateException("database down");
+			}
+			written.addAll(objects);
+		}, COPIES, 10, 10, 60000, 1000);
+
+		buffer.put(null, entity("a", "x"));
+		buffer.flush();
+		Assert.assertEquals(1, buffer.size());
+
+		fail.set(false);
+		buffer.close();
+
+		Assert.assertEquals(1, written.size());
+	}
+
+	@Test
+	public void itShouldThrowWhenATargetedFlushFails() {
+		AtomicBoolean fail = new AtomicBoolean(true);
+		List<DBStoreEntity> written = new ArrayList<>();
+		WriteBehindBuffer buffer = new WriteBehindBuffer((db, clazz, objects) -> {
+			if (fail.get() && clazz == BufferedEntity.class) {
+				throw new IllegalStateException("database down");
+			}
+			written.addAll(objects);
+		}, COPIES, 10, 10, 60000, 1000);
+
+		buffer.put(null, entity("a", "x"));
+		OtherEntity other = new OtherEntity();
+		other.setId("b");
+		buffer.put(null, other);
+
+		// only the class asked for is written
+		buffer.flush(null, OtherEntity.class);
+		Assert.assertEquals(1, written.size());
+		Assert.assertEquals(1, buffer.size());
+
+		try {
+			buffer.flush(null, BufferedEntity.class, "a");
+			Assert.fail();
+		} catch (DBStoreException e) {
+			// still pending
+		}
+		Assert.assertEquals("x", buffer.get(null, BufferedEntity.class, "a").getStatus());
+
+		fail.set(false);
+		buffer.flush(null, BufferedEntity.class);
+		Assert.assertEquals(2, written.size());
+		Assert.assertEquals(0, buffer.size());
+		buffer.close();
+	}
+
+	public static class OtherEntity extends BaseDBStoreEntity {
+	}
+
+	@Test
+	public void itShouldWriteOtherGroupsAndDropObjectsThatNeverGetWritten() {
+		List<DBStoreEntity> written = Collections.synchronizedList(new ArrayList<>());
+		WriteBehindBuffer buffer = new WriteBehindBuffer((db, clazz, objects) -> {
+			for (DBStoreEntity o : objects) {
+				if ("bad".equals(o.getId())) {
+					throw new IllegalStateException("duplicate key");
+				}
+			}
+			written.addAll(objects);
+		}, COPIES, 10, 10, 60000, 1000);
+		buffer.setMaxAttempts(2);
+
+		buffer.put(null, entity("bad", "x"));
+		buffer.put(null, entity("good", "x"));
+		OtherEntity other = new OtherEntity();
+		other.setId("other");
+		buffer.put(null, other);
+
+		// the group with the bad object fails, the one after it is written anyway
+		buffer.flush();
+		Assert.assertEquals(1, written.size());
+		Assert.assertEquals("other", written.get(0).getId());
+		Assert.assertEquals(2, buffer.size());
+
+		// the second attempt writes the objects of the group one by one and drops the bad one
+		buffer.flush();
+		Assert.assertEquals(2, written.size());
+		Assert.assertEquals("good", written.get(1).getId());
+		Assert.assertEquals(0, buffer.size());
+		Assert.assertEquals(1, buffer.getDropped());
+		buffer.close();
+	}
+
+}
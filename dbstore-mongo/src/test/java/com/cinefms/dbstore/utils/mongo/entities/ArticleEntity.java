@@ -0,0 +1,64 @@
+package com.cinefms.dbstore.utils.mongo.entities;
+
+import com.cinefms.dbstore.api.annotations.Reference;
+import com.cinefms.dbstore.api.impl.BaseDBStoreEntity;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import java.util.List;
+
+public class ArticleEntity extends BaseDBStoreEntity {
+
+	private String title;
+	private String authorId;
+	private List<String> tagIds;
+
+	private UserEntity author;
+	private List<SimpleEntity> tags;
+
+	public String getTitle() {
+		return title;
+	}
+
+	public void setTitle(String title) {
+		this.title = title;
+	}
+
+	@Reference(value = UserEntity.class, target = "author")
+	public String getAuthorId() {
+		return authorId;
+	}
+
+	public void setAuthorId(String authorId) {
+		this.authorId = authorId;
+	}
+
+	@Reference(value = SimpleEntity.class, target = "tags")
+	public List<String> getTagIds() {
+		return tagIds;
+	}
+
+	public void setTagIds(List<String> tagIds) {
+		this.tagIds = tagIds;
+	}
+
+	@JsonIgnore
+	public UserEntity getAuthor() {
+		return author;
+	}
+
+	@JsonIgnore
+	public void setAuthor(UserEntity author) {
+		this.author = author;
+	}
+
+	@JsonIgnore
+	public List<SimpleEntity> getTags() {
+		return tags;
+	}
+
+	@JsonIgnore
+	public void setTags(List<SimpleEntity> tags) {
+		this.tags = tags;
+	}
+
+}
@@ -0,0 +1,36 @@
+package com.cinefms.dbstore.utils.mongo.entities;
+
+import com.cinefms.dbstore.api.annotations.Write;
+import com.cinefms.dbstore.api.annotations.WriteMode;
+import com.cinefms.dbstore.api.impl.BaseDBStoreEntity;
+
+import java.beans.ConstructorProperties;
+
+@Write(WriteMode.BUFFERED)
+public class BufferedEntity extends BaseDBStoreEntity {
+
+	public String status;
+	private int count;
+
+	@ConstructorProperties("status")
+	public BufferedEntity(String status) {
+		this.status = status;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public void setCount(int count) {
+		this.count = count;
+	}
+
+}
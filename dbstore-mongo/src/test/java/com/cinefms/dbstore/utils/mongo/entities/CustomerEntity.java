@@ -0,0 +1,50 @@
+package com.cinefms.dbstore.utils.mongo.entities;
+
+import com.cinefms.dbstore.api.annotations.Index;
+import com.cinefms.dbstore.api.annotations.Indexes;
+import com.cinefms.dbstore.api.impl.BaseDBStoreEntity;
+
+@Indexes({
+		@Index(name = "emailIdx", fields = "email", caseInsensitive = true),
+		@Index(name = "notesIdx", fields = { "name", "notes" }, text = true)
+})
+public class CustomerEntity extends BaseDBStoreEntity {
+
+	private String name;
+	private String email;
+	private String notes;
+
+	public CustomerEntity() {
+	}
+
+	public CustomerEntity(String name, String email, String notes) {
+		this.name = name;
+		this.email = email;
+		this.notes = notes;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public String getEmail() {
+		return email;
+	}
+
+	public void setEmail(String email) {
+		this.email = email;
+	}
+
+	public String getNotes() {
+		return notes;
+	}
+
+	public void setNotes(String notes) {
+		this.notes = notes;
+	}
+
+}
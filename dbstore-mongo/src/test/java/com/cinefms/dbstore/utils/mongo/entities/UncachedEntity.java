@@ -0,0 +1,26 @@
+package com.cinefms.dbstore.utils.mongo.entities;
+
+import com.cinefms.dbstore.api.annotations.NoCache;
+import com.cinefms.dbstore.api.impl.BaseDBStoreEntity;
+
+import java.beans.ConstructorProperties;
+
+@NoCache
+public class UncachedEntity extends BaseDBStoreEntity {
+
+	public String value;
+
+	@ConstructorProperties("value")
+	public UncachedEntity(String value) {
+		this.value = value;
+	}
+
+	public String getValue() {
+		return value;
+	}
+
+	public void setValue(String value) {
+		this.value = value;
+	}
+
+}
@@ -0,0 +1,74 @@
+package com.cinefms.dbstore.query.api;
+
+import java.util.List;
+
+import com.cinefms.dbstore.query.api.impl.Accumulator;
+import com.cinefms.dbstore.query.api.impl.OrderBy;
+
+/**
+ * a grouping of the objects a query matches into rows: one row per distinct value of the group
+ * fields (one row for all of them without any) with the group fields and the accumulated values
+ * under their names. like a query every builder call returns a new aggregation.
+ *
+ * having, order and limit apply to the rows, the order, start and max of the match query are
+ * not used.
+ */
+public interface DBStoreAggregation {
+
+	/**
+	 * the objects to group, null for all of them
+	 */
+	DBStoreQuery getMatch();
+
+	List<String> getGroupBy();
+
+	List<Accumulator> getAccumulators();
+
+	/**
+	 * the condition on the rows, on their group fields and accumulator names
+	 */
+	DBStoreQuery getHaving();
+
+	List<OrderBy> getOrderBy();
+
+	/**
+	 * the maximum number of rows, -1 for all of them
+	 */
+	int getLimit();
+
+	DBStoreAggregation match(DBStoreQuery query);
+
+	DBStoreAggregation groupBy(String... fields);
+
+	/**
+	 * the number of objects in the group
+	 */
+	DBStoreAggregation count(String as);
+
+	/**
+	 * the sum of the numbers in the field, 0 if there are none
+	 */
+	DBStoreAggregation sum(String field, String as);
+
+	/**
+	 * the average of the numbers in the field, null if there are none
+	 */
+	DBStoreAggregation avg(String field, String as);
+
+	DBStoreAggregation min(String field, String as);
+
+	DBStoreAggregation max(String field, String as);
+
+	DBStoreAggregation having(DBStoreQuery condition);
+
+	DBStoreAggregation order(String field);
+
+	DBStoreAggregation order(String field, boolean asc);
+
+	DBStoreAggregation limit(int limit);
+
+	enum FUNCTION {
+		COUNT, SUM, AVG, MIN, MAX
+	}
+
+}
@@ -22,6 +22,21 @@ public interface DBStoreQuery {
 
 	int getMax();
 
+	/**
+	 * fields to load, empty for whole documents
+	 */
+	List<String> getIncludes();
+
+	/**
+	 * fields to leave out
+	 */
+	List<String> getExcludes();
+
+	/**
+	 * the continuation token of the previous page, null for the first page
+	 */
+	String getContinuation();
+
 	DBStoreQuery in(String key, Object... values);
 
 	DBStoreQuery in(String key, List<?> values);
@@ -38,6 +53,24 @@ public interface DBStoreQuery {
 
 	DBStoreQuery contains(String key, String value);
 
+	DBStoreQuery search(String key, String value, SEARCH_MODE mode);
+
+	/**
+	 * case-sensitive match at the start of the value, can use a plain index on the field
+	 */
+	DBStoreQuery startsWith(String key, String prefix);
+
+	/**
+	 * the whole value ignoring case, can use an index declared case-insensitive. the comparison
+	 * is done with a case-insensitive collation, which then applies to the whole query.
+	 */
+	DBStoreQuery eqIgnoreCase(String key, String value);
+
+	/**
+	 * full-text search over the fields of the collection's text index
+	 */
+	DBStoreQuery text(String search);
+
 	DBStoreQuery eq(String key, Object value);
 
 	DBStoreQuery lte(String key, Object value);
@@ -70,12 +103,52 @@ public interface DBStoreQuery {
 
 	DBStoreQuery max(int max);
 
+	/**
+	 * only load these fields (and the id). objects come back partially populated, so they
+	 * should not be saved again.
+	 */
+	DBStoreQuery include(String... fields);
+
+	/**
+	 * load everything except these fields. with {@link #include(String...)} only excluding the
+	 * id makes a difference.
+	 */
+	DBStoreQuery exclude(String... fields);
+
+	/**
+	 * continue after the last object of a previous page. the token is opaque and only valid for
+	 * a query with the same order.
+	 */
+	DBStoreQuery after(String continuation);
+
 	enum OPERATOR {
 		AND, OR, NONE
 	}
 
 	enum COMPARATOR {
-		CONTAINS, EQ, LTE, LT, GTE, GT, NE, NONE, IN, NIN, EXISTS, ALL, ELEM_MATCH
+		CONTAINS, EQ, LTE, LT, GTE, GT, NE, NONE, IN, NIN, EXISTS, ALL, ELEM_MATCH, STARTS_WITH, EQ_IGNORE_CASE, TEXT
+	}
+
+	/**
+	 * how {@link #search(String, String, SEARCH_MODE)} matches a string
+	 */
+	enum SEARCH_MODE {
+		/**
+		 * anywhere in the value ignoring case, a regex no index can serve
+		 */
+		CONTAINS,
+		/**
+		 * see {@link DBStoreQuery#startsWith(String, String)}
+		 */
+		PREFIX,
+		/**
+		 * see {@link DBStoreQuery#eqIgnoreCase(String, String)}
+		 */
+		IGNORE_CASE,
+		/**
+		 * see {@link DBStoreQuery#text(String)}, the key is ignored
+		 */
+		TEXT
 	}
 
 }
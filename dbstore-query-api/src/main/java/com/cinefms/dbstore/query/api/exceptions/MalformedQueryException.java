@@ -21,7 +21,11 @@ public class MalformedQueryException extends RuntimeException {
 		QUERY_CAN_NOT_BE_NULL,
 		WRONG_REGEX_TERM,
 		KEY_MUST_NOT_BE_NULL,
-		SUB_QUERIES_CANNOT_USE_OTHER_DB
+		SUB_QUERIES_CANNOT_USE_OTHER_DB,
+		INVALID_CONTINUATION,
+		UNBOUND_PARAMETER,
+		INVALID_FIELD_NAME,
+		TEXT_FIELDS_MISSING
 	}
 
 }
@@ -0,0 +1,40 @@
+package com.cinefms.dbstore.query.api.impl;
+
+import com.cinefms.dbstore.query.api.DBStoreAggregation.FUNCTION;
+
+/**
+ * a value computed over the objects of a group, stored in the row under its name
+ */
+public final class Accumulator {
+
+	private final String name;
+	private final FUNCTION function;
+	private final String field;
+
+	public Accumulator(String name, FUNCTION function, String field) {
+		this.name = name;
+		this.function = function;
+		this.field = field;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public FUNCTION getFunction() {
+		return function;
+	}
+
+	/**
+	 * the field the value is computed from, null for count
+	 */
+	public String getField() {
+		return field;
+	}
+
+	@Override
+	public String toString() {
+		return name + "=" + function + (field != null ? "(" + field + ")" : "()");
+	}
+
+}
@@ -0,0 +1,176 @@
+package com.cinefms.dbstore.query.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+
+import com.cinefms.dbstore.query.api.DBStoreAggregation;
+
+/**
+ * groups objects in memory the way mongo's $group does it, for a store without a database.
+ * group values are equal if the {@link QueryCompiler} considers them equal, an object without
+ * the field is in a group of its own and the row does not have the field. a dotted group field
+ * is a nested map in the row.
+ *
+ * count and integral sums are longs, a sum with a fraction and averages are doubles. sum and
+ * avg only look at numbers, min and max at everything but null.
+ */
+public final class Aggregator {
+
+	private Aggregator() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	/**
+	 * @param matches the objects the match of the aggregation matches, it is not applied again
+	 * @return the rows after having, order and limit. without an order in the order of the
+	 * first object of each group.
+	 */
+	public static List<Map<String, Object>> aggregate(DBStoreAggregation aggregation, Iterable<?> matches) {
+		List<FieldPath> groupBy = new ArrayList<>();
+		for (String f : aggregation.getGroupBy()) {
+			groupBy.add(new FieldPath(f));
+		}
+		List<Accumulator> accumulators = aggregation.getAccumulators();
+		List<FieldPath> fields = new ArrayList<>();
+		for (Accumulator a : accumulators) {
+			fields.add(a.getField() != null ? new FieldPath(a.getField()) : null);
+		}
+
+		Map<List<Object>, Group> groups = new LinkedHashMap<>();
+		for (Object o : matches) {
+			List<Object> values = new ArrayList<>(groupBy.size());
+			List<Object> key = new ArrayList<>(groupBy.size());
+			for (FieldPath p : groupBy) {
+				Object v = p.value(o);
+				values.add(v);
+				key.add(key(v));
+			}
+			Group g = groups.computeIfAbsent(key, k -> new Group(values, accumulators.size()));
+			for (int i = 0; i < accumulators.size(); i++) {
+				g.states[i].add(fields.get(i) != null ? fields.get(i).value(o) : null);
+			}
+		}
+
+		List<Map<String, Object>> out = new ArrayList<>(groups.size());
+		Predicate<Map<String, Object>> having = aggregation.getHaving() != null ? QueryCompiler.compile(aggregation.getHaving()) : null;
+		for (Group g : groups.values()) {
+			Map<String, Object> row = new LinkedHashMap<>();
+			for (int i = 0; i < groupBy.size(); i++) {
+				if (g.values.get(i) != FieldPath.MISSING) {
+					put(row, aggregation.getGroupBy().get(i), g.values.get(i));
+				}
+			}
+			for (int i = 0; i < accumulators.size(); i++) {
+				row.put(accumulators.get(i).getName(), g.states[i].result(accumulators.get(i).getFunction()));
+			}
+			if (having == null || having.test(row)) {
+				out.add(row);
+			}
+		}
+
+		if (!aggregation.getOrderBy().isEmpty()) {
+			out.sort(QueryCompiler.comparator(aggregation.getOrderBy()));
+		}
+		int limit = aggregation.getLimit();
+		return limit >= 0 && limit < out.size() ? new ArrayList<>(out.subList(0, limit)) : out;
+	}
+
+	private static Object key(Object v) {
+		if (v instanceof Collection) {
+			List<Object> out = new ArrayList<>();
+			for (Object o : (Collection<?>) v) {
+				out.add(key(o));
+			}
+			return out;
+		}
+		return FieldValues.key(v);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void put(Map<String, Object> row, String field, Object value) {
+		int dot = field.indexOf('.');
+		if (dot < 0) {
+			row.put(field, value);
+			return;
+		}
+		Object nested = row.computeIfAbsent(field.substring(0, dot), k -> new LinkedHashMap<String, Object>());
+		if (nested instanceof Map) {
+			put((Map<String, Object>) nested, field.substring(dot + 1), value);
+		}
+	}
+
+	private static final class Group {
+
+		private final List<Object> values;
+		private final State[] states;
+
+		Group(List<Object> values, int accumulators) {
+			this.values = values;
+			this.states = new State[accumulators];
+			for (int i = 0; i < accumulators; i++) {
+				states[i] = new State();
+			}
+		}
+	}
+
+	private static final class State {
+
+		private long count;
+		private long numbers;
+		private long integral;
+		private double fraction;
+		private boolean exact = true;
+		private Object min;
+		private Object max;
+
+		void add(Object v) {
+			count++;
+			if (v instanceof Number) {
+				Number n = (Number) v;
+				numbers++;
+				if (exact && (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte)) {
+					integral += n.longValue();
+				} else {
+					if (exact) {
+						fraction = integral;
+						exact = false;
+					}
+					fraction += n.doubleValue();
+				}
+			}
+			if (v != null && v != FieldPath.MISSING) {
+				if (min == null || Values.compare(v, min) < 0) {
+					min = v;
+				}
+				if (max == null || Values.compare(v, max) > 0) {
+					max = v;
+				}
+			}
+		}
+
+		Object result(DBStoreAggregation.FUNCTION function) {
+			switch (function) {
+				case COUNT:
+					return count;
+				case SUM:
+					return exact ? (Object) integral : (Object) fraction;
+				case AVG:
+					if (numbers == 0) {
+						return null;
+					}
+					return (exact ? (double) integral : fraction) / numbers;
+				case MIN:
+					return min;
+				case MAX:
+					return max;
+				default:
+					throw new IllegalArgumentException("unknown function " + function);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,162 @@
+package com.cinefms.dbstore.query.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.cinefms.dbstore.query.api.DBStoreAggregation;
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
+
+public class BasicAggregation implements DBStoreAggregation {
+
+	private final DBStoreQuery match;
+	private final List<String> groupBy;
+	private final List<Accumulator> accumulators;
+	private final DBStoreQuery having;
+	private final List<OrderBy> orderBy;
+	private final int limit;
+
+	private BasicAggregation(DBStoreQuery match, List<String> groupBy, List<Accumulator> accumulators, DBStoreQuery having, List<OrderBy> orderBy, int limit) {
+		this.match = match;
+		this.groupBy = groupBy;
+		this.accumulators = accumulators;
+		this.having = having;
+		this.orderBy = orderBy;
+		this.limit = limit;
+	}
+
+	public static DBStoreAggregation createAggregation() {
+		return new BasicAggregation(null, Collections.emptyList(), Collections.emptyList(), null, Collections.emptyList(), -1);
+	}
+
+	public static DBStoreAggregation createAggregation(DBStoreQuery match) {
+		return createAggregation().match(match);
+	}
+
+	@Override
+	public DBStoreQuery getMatch() {
+		return match;
+	}
+
+	@Override
+	public List<String> getGroupBy() {
+		return Collections.unmodifiableList(groupBy);
+	}
+
+	@Override
+	public List<Accumulator> getAccumulators() {
+		return Collections.unmodifiableList(accumulators);
+	}
+
+	@Override
+	public DBStoreQuery getHaving() {
+		return having;
+	}
+
+	@Override
+	public List<OrderBy> getOrderBy() {
+		return Collections.unmodifiableList(orderBy);
+	}
+
+	@Override
+	public int getLimit() {
+		return limit;
+	}
+
+	@Override
+	public DBStoreAggregation match(DBStoreQuery query) {
+		return new BasicAggregation(query, groupBy, accumulators, having, orderBy, limit);
+	}
+
+	@Override
+	public DBStoreAggregation groupBy(String... fields) {
+		List<String> nGroupBy = new ArrayList<>(groupBy);
+		for (String f : fields) {
+			if (f == null) throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.KEY_MUST_NOT_BE_NULL);
+			checkName(f, nGroupBy, accumulators);
+			nGroupBy.add(f);
+		}
+		return new BasicAggregation(match, nGroupBy, accumulators, having, orderBy, limit);
+	}
+
+	@Override
+	public DBStoreAggregation count(String as) {
+		return add(as, FUNCTION.COUNT, null);
+	}
+
+	@Override
+	public DBStoreAggregation sum(String field, String as) {
+		return add(as, FUNCTION.SUM, field);
+	}
+
+	@Override
+	public DBStoreAggregation avg(String field, String as) {
+		return add(as, FUNCTION.AVG, field);
+	}
+
+	@Override
+	public DBStoreAggregation min(String field, String as) {
+		return add(as, FUNCTION.MIN, field);
+	}
+
+	@Override
+	public DBStoreAggregation max(String field, String as) {
+		return add(as, FUNCTION.MAX, field);
+	}
+
+	private DBStoreAggregation add(String as, FUNCTION function, String field) {
+		if (as == null || (field == null && function != FUNCTION.COUNT)) throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.KEY_MUST_NOT_BE_NULL);
+		// mongo does not take dotted names for accumulators
+		if (as.indexOf('.') >= 0) throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.INVALID_FIELD_NAME);
+		checkName(as, groupBy, accumulators);
+
+		List<Accumulator> nAccumulators = new ArrayList<>(accumulators);
+		nAccumulators.add(new Accumulator(as, function, field));
+		return new BasicAggregation(match, groupBy, nAccumulators, having, orderBy, limit);
+	}
+
+	/**
+	 * every name of a row has to be unique and usable as a field
+	 */
+	private static void checkName(String name, List<String> groupBy, List<Accumulator> accumulators) {
+		if (name.isEmpty() || name.startsWith("$") || "_id".equals(name) || groupBy.contains(name)) {
+			throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.INVALID_FIELD_NAME);
+		}
+		for (Accumulator a : accumulators) {
+			if (a.getName().equals(name)) {
+				throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.INVALID_FIELD_NAME);
+			}
+		}
+	}
+
+	@Override
+	public DBStoreAggregation having(DBStoreQuery condition) {
+		return new BasicAggregation(match, groupBy, accumulators, condition, orderBy, limit);
+	}
+
+	@Override
+	public DBStoreAggregation order(String field) {
+		return order(field, true);
+	}
+
+	@Override
+	public DBStoreAggregation order(String field, boolean asc) {
+		if (field == null) throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.KEY_MUST_NOT_BE_NULL);
+
+		List<OrderBy> nOrderBy = new ArrayList<>(orderBy);
+		nOrderBy.add(new OrderBy(field, asc));
+		return new BasicAggregation(match, groupBy, accumulators, having, nOrderBy, limit);
+	}
+
+	@Override
+	public DBStoreAggregation limit(int limit) {
+		return new BasicAggregation(match, groupBy, accumulators, having, orderBy, limit);
+	}
+
+	@Override
+	public String toString() {
+		return "match: " + match + ", group: " + groupBy + " " + accumulators + ", having: " + having + ", limit: " + limit;
+	}
+
+}
@@ -12,6 +12,9 @@ import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
 
 public class BasicQuery implements DBStoreQuery {
 
+	// text search is not on a field, its condition gets this one
+	public static final String TEXT_KEY = "$text";
+
 	private List<DBStoreQuery> conditions;
 	private String key;
 	private Object value;
@@ -22,11 +25,21 @@ public class BasicQuery implements DBStoreQuery {
 	private int start = 0;
 	private int max = -1;
 
+	private List<String> includes;
+	private List<String> excludes;
+
+	private String continuation;
+
+	// set on the output of the QueryNormalizer only, every builder call returns a new query
+	private boolean normalized;
+
 
 	private BasicQuery() {
 		conditions = new ArrayList<>();
 		orderBy = new ArrayList<>();
 		operator = OPERATOR.AND;
+		includes = Collections.emptyList();
+		excludes = Collections.emptyList();
 	}
 
 	@Deprecated
@@ -42,18 +55,39 @@ public class BasicQuery implements DBStoreQuery {
 		this.value = value;
 	}
 
-	private BasicQuery(List<DBStoreQuery> conditions, OPERATOR operator, List<OrderBy> orderBy, int start, int max) {
+	private BasicQuery(List<DBStoreQuery> conditions, OPERATOR operator, List<OrderBy> orderBy, int start, int max, List<String> includes, List<String> excludes, String continuation) {
 		this.conditions = new ArrayList<>(conditions);
 		this.operator = operator;
 		this.orderBy = new ArrayList<>(orderBy);
 		this.start = start;
 		this.max = max;
+		this.includes = includes;
+		this.excludes = excludes;
+		this.continuation = continuation;
 	}
 
 	public static DBStoreQuery createQuery() {
 		return new BasicQuery();
 	}
 
+	static BasicQuery condition(String key, COMPARATOR comparator, Object value) {
+		return new BasicQuery(key, comparator, value);
+	}
+
+	static BasicQuery group(List<DBStoreQuery> conditions, OPERATOR operator) {
+		return new BasicQuery(conditions, operator, Collections.emptyList(), 0, -1, Collections.emptyList(), Collections.emptyList(), null);
+	}
+
+	static BasicQuery normalized(List<DBStoreQuery> conditions, DBStoreQuery of) {
+		BasicQuery out = new BasicQuery(conditions, OPERATOR.AND, of.getOrderBy(), of.getStart(), of.getMax(), of.getIncludes(), of.getExcludes(), of.getContinuation());
+		out.normalized = true;
+		return out;
+	}
+
+	boolean isNormalized() {
+		return normalized;
+	}
+
 	public OPERATOR getOperator() {
 		return operator;
 	}
@@ -80,7 +114,7 @@ public class BasicQuery implements DBStoreQuery {
 		List<DBStoreQuery> nConditions = new ArrayList<>(conditions);
 		nConditions.add(new BasicQuery(key, c, value));
 
-		return new BasicQuery(nConditions, OPERATOR.AND, orderBy, start, max);
+		return new BasicQuery(nConditions, OPERATOR.AND, orderBy, start, max, includes, excludes, continuation);
 	}
 
 	public DBStoreQuery in(String key, Object... values) {
@@ -118,6 +152,31 @@ public class BasicQuery implements DBStoreQuery {
 		return add(key, COMPARATOR.CONTAINS, value);
 	}
 
+	public DBStoreQuery search(String key, String value, SEARCH_MODE mode) {
+		switch (mode) {
+			case PREFIX:
+				return startsWith(key, value);
+			case IGNORE_CASE:
+				return eqIgnoreCase(key, value);
+			case TEXT:
+				return text(value);
+			default:
+				return contains(key, value);
+		}
+	}
+
+	public DBStoreQuery startsWith(String key, String prefix) {
+		return add(key, COMPARATOR.STARTS_WITH, prefix);
+	}
+
+	public DBStoreQuery eqIgnoreCase(String key, String value) {
+		return add(key, COMPARATOR.EQ_IGNORE_CASE, value);
+	}
+
+	public DBStoreQuery text(String search) {
+		return add(TEXT_KEY, COMPARATOR.TEXT, search);
+	}
+
 	public DBStoreQuery eq(String key, Object value) {
 		return add(key, COMPARATOR.EQ, value);
 	}
@@ -149,7 +208,7 @@ public class BasicQuery implements DBStoreQuery {
 	public DBStoreQuery and(List<DBStoreQuery> queries) {
 		List<DBStoreQuery> qp = new ArrayList<>(conditions);
 		qp.add(new BasicQuery(queries, OPERATOR.AND));
-		return new BasicQuery(qp, OPERATOR.AND, orderBy, start, max);
+		return new BasicQuery(qp, OPERATOR.AND, orderBy, start, max, includes, excludes, continuation);
 	}
 
 	public DBStoreQuery or(DBStoreQuery... queries) {
@@ -159,7 +218,7 @@ public class BasicQuery implements DBStoreQuery {
 	public DBStoreQuery or(List<DBStoreQuery> queries) {
 		List<DBStoreQuery> qp = new ArrayList<>(conditions);
 		qp.add(new BasicQuery(queries, OPERATOR.OR));
-		return new BasicQuery(qp, OPERATOR.AND, orderBy, start, max);
+		return new BasicQuery(qp, OPERATOR.AND, orderBy, start, max, includes, excludes, continuation);
 	}
 
 	public DBStoreQuery order(String order) {
@@ -169,21 +228,56 @@ public class BasicQuery implements DBStoreQuery {
 	public DBStoreQuery order(String order, boolean asc) {
 		List<OrderBy> nOrderBy = new ArrayList<>(orderBy);
 		nOrderBy.add(new OrderBy(order, asc));
-		return new BasicQuery(conditions, operator, nOrderBy, start, max);
+		return new BasicQuery(conditions, operator, nOrderBy, start, max, includes, excludes, continuation);
 	}
 
 	public DBStoreQuery order(OrderBy... orders) {
 		List<OrderBy> nOrderBy = new ArrayList<>(orderBy);
 		nOrderBy.addAll(Arrays.asList(orders));
-		return new BasicQuery(conditions, operator, nOrderBy, start, max);
+		return new BasicQuery(conditions, operator, nOrderBy, start, max, includes, excludes, continuation);
 	}
 
 	public DBStoreQuery start(int start) {
-		return new BasicQuery(conditions, operator, orderBy, start, max);
+		return new BasicQuery(conditions, operator, orderBy, start, max, includes, excludes, continuation);
 	}
 
 	public DBStoreQuery max(int max) {
-		return new BasicQuery(conditions, operator, orderBy, start, max);
+		return new BasicQuery(conditions, operator, orderBy, start, max, includes, excludes, continuation);
+	}
+
+	public DBStoreQuery include(String... fields) {
+		return new BasicQuery(conditions, operator, orderBy, start, max, merge(getIncludes(), fields), excludes, continuation);
+	}
+
+	public DBStoreQuery exclude(String... fields) {
+		return new BasicQuery(conditions, operator, orderBy, start, max, includes, merge(getExcludes(), fields), continuation);
+	}
+
+	public DBStoreQuery after(String continuation) {
+		return new BasicQuery(conditions, operator, orderBy, start, max, includes, excludes, continuation);
+	}
+
+	public String getContinuation() {
+		return continuation;
+	}
+
+	private static List<String> merge(List<String> current, String... fields) {
+		List<String> out = new ArrayList<>(current);
+		for (String field : fields) {
+			if (field == null) throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.KEY_MUST_NOT_BE_NULL);
+			if (!out.contains(field)) {
+				out.add(field);
+			}
+		}
+		return Collections.unmodifiableList(out);
+	}
+
+	public List<String> getIncludes() {
+		return includes != null ? includes : Collections.emptyList();
+	}
+
+	public List<String> getExcludes() {
+		return excludes != null ? excludes : Collections.emptyList();
 	}
 
 	public List<OrderBy> getOrderBy() {
@@ -245,6 +339,15 @@ public class BasicQuery implements DBStoreQuery {
 					case CONTAINS:
 						out.append("~");
 						break;
+					case STARTS_WITH:
+						out.append("^=");
+						break;
+					case EQ_IGNORE_CASE:
+						out.append("~=");
+						break;
+					case TEXT:
+						out.append("MATCHES");
+						break;
 					case LT:
 						out.append("<");
 						break;
@@ -302,6 +405,15 @@ public class BasicQuery implements DBStoreQuery {
 		if (start != 0 || max != -1) {
 			out.append(" LIMIT (" + start + "," + max + ")");
 		}
+		if (!getIncludes().isEmpty()) {
+			out.append(getIncludes().stream().collect(Collectors.joining(",", " INCLUDE (", ")")));
+		}
+		if (!getExcludes().isEmpty()) {
+			out.append(getExcludes().stream().collect(Collectors.joining(",", " EXCLUDE (", ")")));
+		}
+		if (continuation != null) {
+			out.append(" AFTER " + continuation);
+		}
 		return out.toString();
 	}
 
@@ -0,0 +1,117 @@
+package com.cinefms.dbstore.query.api.impl;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+
+/**
+ * a {@link DBStoreQuery} as a value: two queries that select and return the same (operator tree,
+ * values with their types, order, start / max, projection, continuation) are equal. usable as a
+ * map key, e.g. for caching results.
+ *
+ * the query is {@link QueryNormalizer normalized} first, so e.g. "(a AND (b AND c))" and
+ * "(a AND b AND c)" are the same key. the order of conditions is kept, "a AND b" and "b AND a"
+ * are different keys.
+ */
+public final class CanonicalQuery {
+
+	private final String key;
+	private final int hash;
+
+	private CanonicalQuery(String key) {
+		this.key = key;
+		this.hash = key.hashCode();
+	}
+
+	public static CanonicalQuery of(DBStoreQuery query) {
+		StringBuilder out = new StringBuilder();
+		query = QueryNormalizer.normalize(query);
+		if (query != null) {
+			appendCondition(out, query);
+			out.append("|order");
+			for (OrderBy o : query.getOrderBy()) {
+				out.append(o.isAsc() ? " +" : " -").append(o.getField());
+			}
+			out.append("|start ").append(query.getStart());
+			out.append("|max ").append(query.getMax());
+			out.append("|include ").append(query.getIncludes());
+			out.append("|exclude ").append(query.getExcludes());
+			if (query.getContinuation() != null) {
+				out.append("|after ").append(query.getContinuation());
+			}
+		}
+		return new CanonicalQuery(out.toString());
+	}
+
+	private static void appendCondition(StringBuilder out, DBStoreQuery query) {
+		if (query.getField() != null) {
+			out.append(query.getField()).append(' ').append(query.getComparator()).append(' ');
+			appendValue(out, query.getValue());
+			return;
+		}
+
+		List<DBStoreQuery> nested = query.getNested();
+		out.append(query.getOperator()).append('(');
+		for (int i = 0; i < nested.size(); i++) {
+			if (i > 0) {
+				out.append(", ");
+			}
+			appendCondition(out, nested.get(i));
+		}
+		out.append(')');
+	}
+
+	private static void appendValue(StringBuilder out, Object value) {
+		if (value == null) {
+			out.append("null");
+
+		} else if (value instanceof String) {
+			out.append('"').append(((String) value).replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+
+		} else if (value instanceof DBStoreQuery) {
+			out.append('{');
+			appendCondition(out, (DBStoreQuery) value);
+			out.append('}');
+
+		} else if (value instanceof Collection) {
+			out.append('[');
+			boolean first = true;
+			for (Object o : (Collection<?>) value) {
+				if (!first) {
+					out.append(", ");
+				}
+				appendValue(out, o);
+				first = false;
+			}
+			out.append(']');
+
+		} else if (value instanceof Date) {
+			out.append("date:").append(((Date) value).getTime());
+
+		} else if (value instanceof Enum) {
+			out.append(value.getClass().getName()).append('.').append(((Enum<?>) value).name());
+
+		} else {
+			// with the type, "1" and 1 select different objects
+			out.append(value.getClass().getName()).append(':').append(value);
+		}
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof CanonicalQuery && key.equals(((CanonicalQuery) o).key);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return key;
+	}
+
+}
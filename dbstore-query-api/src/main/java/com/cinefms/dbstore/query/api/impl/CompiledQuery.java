@@ -0,0 +1,104 @@
+package com.cinefms.dbstore.query.api.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+
+/**
+ * a query compiled by the {@link QueryCompiler}: its conditions as a predicate, its order as a
+ * comparator, and select to apply all of it (with start / max) to a collection.
+ */
+public final class CompiledQuery<T> implements Predicate<T> {
+
+	private final QueryCompiler.Node filter;
+	private final Comparator<T> comparator;
+	private final boolean ordered;
+	private final int start;
+	private final int max;
+
+	CompiledQuery(QueryCompiler.Node filter, Comparator<T> comparator, DBStoreQuery query) {
+		this.filter = filter;
+		this.comparator = comparator;
+		this.ordered = query != null && !query.getOrderBy().isEmpty();
+		this.start = query != null ? Math.max(0, query.getStart()) : 0;
+		this.max = query != null ? query.getMax() : -1;
+	}
+
+	@Override
+	public boolean test(T object) {
+		return filter == null || filter.test(object);
+	}
+
+	/**
+	 * @return true if every object matches
+	 */
+	public boolean isUnfiltered() {
+		return filter == null;
+	}
+
+	public boolean isOrdered() {
+		return ordered;
+	}
+
+	public Comparator<T> getComparator() {
+		return comparator;
+	}
+
+	/**
+	 * the matching objects in the order of the query, from start and at most max of them.
+	 * without an order they are in the order of the input.
+	 */
+	public List<T> select(Iterable<? extends T> objects) {
+		// without an order there is no need to look further than the last one returned
+		long needed = !ordered && max > 0 ? (long) start + max : Long.MAX_VALUE;
+
+		List<T> out = new ArrayList<>();
+		for (T o : objects) {
+			if (test(o)) {
+				out.add(o);
+				if (out.size() >= needed) {
+					break;
+				}
+			}
+		}
+		if (ordered) {
+			out.sort(comparator);
+		}
+
+		if (start >= out.size()) {
+			return new ArrayList<>();
+		}
+		int end = max > 0 ? (int) Math.min(out.size(), (long) start + max) : out.size();
+		return start == 0 && end == out.size() ? out : new ArrayList<>(out.subList(start, end));
+	}
+
+	/**
+	 * the number of matching objects, counting stops at limit if it is above 0
+	 */
+	public long count(Iterable<? extends T> objects, long limit) {
+		long out = 0;
+		for (T o : objects) {
+			if (test(o) && ++out == limit) {
+				break;
+			}
+		}
+		return out;
+	}
+
+	/**
+	 * the matching objects, in the order of the input and without start / max
+	 */
+	public List<T> filter(Iterable<? extends T> objects) {
+		List<T> out = new ArrayList<>();
+		for (T o : objects) {
+			if (test(o)) {
+				out.add(o);
+			}
+		}
+		return out;
+	}
+
+}
@@ -0,0 +1,333 @@
+package com.cinefms.dbstore.query.api.impl;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationConfig;
+import com.fasterxml.jackson.databind.introspect.AnnotatedField;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMember;
+import com.fasterxml.jackson.databind.introspect.AnnotatedMethod;
+import com.fasterxml.jackson.databind.introspect.BeanPropertyDefinition;
+
+/**
+ * a dotted field name resolved on objects the way mongo resolves it on their documents: maps by
+ * key, everything else by the name jackson writes the property with (so @JsonProperty names
+ * count, and @JsonIgnore properties are not there), "_id" is the property "id" unless there is
+ * one named "_id". a name applied to a list is applied to each of its elements, a number picks
+ * the element at that position.
+ *
+ * the accessors are built once per (class, name) and each step keeps the one it used last, so
+ * walking objects of the same class only calls the getters.
+ */
+final class FieldPath {
+
+	// a field the object does not have, unlike a property that is null
+	static final Object MISSING = new Object();
+
+	private static final Accessor NONE = o -> MISSING;
+	private static final Object[] NO_ARGUMENTS = new Object[0];
+	private static final Map<Class<?>, Map<String, Accessor>> ACCESSORS = new ConcurrentHashMap<>();
+
+	// only to introspect classes, with the annotations but none of the settings of a store's mapper
+	private static final SerializationConfig CONFIG = new ObjectMapper().getSerializationConfig();
+
+	interface Accessor {
+		Object get(Object target);
+	}
+
+	/**
+	 * what is done with the values at the end of the path
+	 */
+	interface Leaf {
+		boolean matches(Object value);
+	}
+
+	private final String name;
+	private final String[] steps;
+	private final int[] positions;
+	private final Bound[] bound;
+
+	FieldPath(String name) {
+		this.name = name;
+		this.steps = name.split("\\.");
+		this.positions = new int[steps.length];
+		this.bound = new Bound[steps.length];
+		for (int i = 0; i < steps.length; i++) {
+			positions[i] = isPosition(steps[i]) ? Integer.parseInt(steps[i]) : -1;
+		}
+	}
+
+	String getName() {
+		return name;
+	}
+
+	/**
+	 * @return true if the leaf matches any of the values the path leads to in the object
+	 */
+	boolean any(Object target, Leaf leaf) {
+		return any(target, 0, leaf);
+	}
+
+	private boolean any(Object target, int step, Leaf leaf) {
+		if (step == steps.length) {
+			return leaf.matches(target);
+		}
+
+		switch (Values.bracket(target)) {
+			case Values.OBJECT:
+				return any(get(target, step), step + 1, leaf);
+			case Values.ARRAY:
+				if (positions[step] >= 0) {
+					Object element = element(target, positions[step]);
+					if (element != MISSING && any(element, step + 1, leaf)) {
+						return true;
+					}
+				}
+				return anyElement(target, step, leaf);
+			default:
+				// nothing or a scalar, neither has fields
+				return leaf.matches(MISSING);
+		}
+	}
+
+	private boolean anyElement(Object target, int step, Leaf leaf) {
+		if (target instanceof Object[]) {
+			for (Object o : (Object[]) target) {
+				if (isDocument(o) && any(o, step, leaf)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (target instanceof RandomAccess) {
+			List<?> l = (List<?>) target;
+			for (int i = 0; i < l.size(); i++) {
+				Object o = l.get(i);
+				if (isDocument(o) && any(o, step, leaf)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		for (Object o : (Collection<?>) target) {
+			if (isDocument(o) && any(o, step, leaf)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * the value of the field as mongo's "$field" expression has it: through a list the values of
+	 * its elements that have the field, as a list. MISSING if the object does not have it.
+	 */
+	Object value(Object target) {
+		return value(target, 0);
+	}
+
+	private Object value(Object target, int step) {
+		if (step == steps.length) {
+			return target;
+		}
+		switch (Values.bracket(target)) {
+			case Values.OBJECT:
+				return value(get(target, step), step + 1);
+			case Values.ARRAY:
+				List<Object> out = new ArrayList<>();
+				for (Object o : target instanceof Object[] ? Arrays.asList((Object[]) target) : (Collection<?>) target) {
+					Object v = Values.bracket(o) == Values.OBJECT || Values.bracket(o) == Values.ARRAY ? value(o, step) : MISSING;
+					if (v != MISSING) {
+						out.add(v);
+					}
+				}
+				return out;
+			default:
+				return MISSING;
+		}
+	}
+
+	/**
+	 * the value to sort by: of a list the smallest element ascending and the largest descending,
+	 * null if the object has none
+	 */
+	Object sortKey(Object target, boolean asc) {
+		Object out = sortKey(target, 0, asc, MISSING);
+		return out == MISSING ? null : out;
+	}
+
+	private Object sortKey(Object target, int step, boolean asc, Object best) {
+		if (target == MISSING || target == null) {
+			return better(null, best, asc);
+		}
+		if (step == steps.length) {
+			if (target instanceof Collection) {
+				for (Object o : (Collection<?>) target) {
+					best = better(o, best, asc);
+				}
+				return best;
+			}
+			if (target instanceof Object[]) {
+				for (Object o : (Object[]) target) {
+					best = better(o, best, asc);
+				}
+				return best;
+			}
+			return better(target, best, asc);
+		}
+		if (target instanceof Collection) {
+			for (Object o : (Collection<?>) target) {
+				best = sortKey(o, step, asc, best);
+			}
+			return best;
+		}
+		if (target instanceof Object[]) {
+			for (Object o : (Object[]) target) {
+				best = sortKey(o, step, asc, best);
+			}
+			return best;
+		}
+		return isDocument(target) ? sortKey(get(target, step), step + 1, asc, best) : better(null, best, asc);
+	}
+
+	private static Object better(Object candidate, Object best, boolean asc) {
+		if (best == MISSING) {
+			return candidate;
+		}
+		int c = Values.compare(candidate, best);
+		return (asc ? c < 0 : c > 0) ? candidate : best;
+	}
+
+	private Object get(Object target, int step) {
+		Bound b = bound[step];
+		if (b == null || b.clazz != target.getClass()) {
+			b = new Bound(target.getClass(), accessor(target.getClass(), steps[step]));
+			bound[step] = b;
+		}
+		return b.accessor.get(target);
+	}
+
+	private static Object element(Object target, int position) {
+		if (target instanceof Object[]) {
+			Object[] a = (Object[]) target;
+			return position < a.length ? a[position] : MISSING;
+		}
+		if (target instanceof List) {
+			List<?> l = (List<?>) target;
+			return position < l.size() ? l.get(position) : MISSING;
+		}
+		return MISSING;
+	}
+
+	/**
+	 * true for values that have fields (maps and beans), false for scalars
+	 */
+	private static boolean isDocument(Object o) {
+		return o != null && o != MISSING && Values.bracket(o) == Values.OBJECT;
+	}
+
+	private static boolean isPosition(String step) {
+		if (step.isEmpty() || step.length() > 9) {
+			return false;
+		}
+		for (int i = 0; i < step.length(); i++) {
+			if (!Character.isDigit(step.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static Accessor accessor(Class<?> clazz, String name) {
+		return ACCESSORS.computeIfAbsent(clazz, c -> new ConcurrentHashMap<>()).computeIfAbsent(name, n -> createAccessor(clazz, n));
+	}
+
+	private static Accessor createAccessor(Class<?> clazz, String name) {
+		if (Map.class.isAssignableFrom(clazz)) {
+			return target -> {
+				Map<?, ?> m = (Map<?, ?>) target;
+				Object out = m.get(name);
+				return out != null || m.containsKey(name) ? out : MISSING;
+			};
+		}
+
+		try {
+			BeanDescription description = CONFIG.introspect(CONFIG.constructType(clazz));
+			AnnotatedMember member = member(description, name);
+			if (member == null && "_id".equals(name)) {
+				member = member(description, "id");
+			}
+			if (member instanceof AnnotatedMethod) {
+				return accessor(((AnnotatedMethod) member).getAnnotated());
+			}
+			if (member instanceof AnnotatedField) {
+				return accessor(((AnnotatedField) member).getAnnotated());
+			}
+		} catch (Exception e) {
+			throw new IllegalStateException("unable to read " + name + " of " + clazz.getName(), e);
+		}
+		return NONE;
+	}
+
+	// the getter or field jackson writes the property with
+	private static AnnotatedMember member(BeanDescription description, String name) {
+		for (BeanPropertyDefinition p : description.findProperties()) {
+			if (p.getName().equals(name) && p.couldSerialize()) {
+				return p.getAccessor();
+			}
+		}
+		return null;
+	}
+
+	// plain reflection, the jvm generates accessors for it that are as fast as a method handle
+	// that is not a constant and do not depend on the class loader of the class
+	private static Accessor accessor(Method m) {
+		// the declaring class may not be public even if the getter is
+		m.setAccessible(true);
+		return target -> {
+			try {
+				return m.invoke(target, NO_ARGUMENTS);
+			} catch (InvocationTargetException e) {
+				if (e.getCause() instanceof RuntimeException) {
+					throw (RuntimeException) e.getCause();
+				}
+				throw new IllegalStateException(e.getCause());
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		};
+	}
+
+	private static Accessor accessor(Field f) {
+		f.setAccessible(true);
+		return target -> {
+			try {
+				return f.get(target);
+			} catch (IllegalAccessException e) {
+				throw new IllegalStateException(e);
+			}
+		};
+	}
+
+	// the accessor of the class a step saw last, one object so that threads never see a mix
+	private static final class Bound {
+
+		private final Class<?> clazz;
+		private final Accessor accessor;
+
+		Bound(Class<?> clazz, Accessor accessor) {
+			this.clazz = clazz;
+			this.accessor = accessor;
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package com.cinefms.dbstore.query.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * the values of a field in objects as the {@link QueryCompiler} sees them, for indexes over
+ * objects in memory. a list stands for its elements (like the keys of a multikey index) and an
+ * object that does not have the field has null.
+ */
+public final class FieldValues {
+
+	/**
+	 * the order of values in queries (numbers by value, enums by name, kinds by kind)
+	 */
+	public static final Comparator<Object> ORDER = Values::compare;
+
+	// beyond this a double does not hold every long
+	private static final double EXACT = 9007199254740992d;
+
+	private final FieldPath path;
+
+	public FieldValues(String field) {
+		this.path = new FieldPath(field);
+	}
+
+	public String getField() {
+		return path.getName();
+	}
+
+	/**
+	 * @return the values of the field, at least one
+	 */
+	public List<Object> of(Object target) {
+		List<Object> out = new ArrayList<>(1);
+		path.any(target, v -> {
+			add(out, v);
+			return false;
+		});
+		if (out.isEmpty()) {
+			out.add(null);
+		}
+		return out;
+	}
+
+	/**
+	 * the value the object is sorted by, see {@link QueryCompiler#comparator(List)}
+	 */
+	public Object sortKey(Object target, boolean asc) {
+		return path.sortKey(target, asc);
+	}
+
+	private static void add(List<Object> out, Object v) {
+		if (v == FieldPath.MISSING) {
+			out.add(null);
+		} else if (v instanceof Collection) {
+			out.addAll((Collection<?>) v);
+		} else if (v instanceof Object[]) {
+			for (Object o : (Object[]) v) {
+				out.add(o);
+			}
+		} else {
+			out.add(v);
+		}
+	}
+
+	/**
+	 * a value to use as hash key: equal if the query compiler considers the values equal (1,
+	 * 1L and 1.0, an enum and its name)
+	 */
+	public static Object key(Object v) {
+		if (v instanceof Number) {
+			Number n = (Number) v;
+			if (n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
+				return n.longValue();
+			}
+			double d = n.doubleValue();
+			if (d == Math.rint(d) && Math.abs(d) < EXACT) {
+				return (long) d;
+			}
+			return d;
+		}
+		if (v instanceof Enum || v instanceof Character) {
+			return Values.string(v);
+		}
+		return v;
+	}
+
+}
@@ -0,0 +1,552 @@
+package com.cinefms.dbstore.query.api.impl;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.DBStoreQuery.COMPARATOR;
+import com.cinefms.dbstore.query.api.DBStoreQuery.OPERATOR;
+import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
+
+/**
+ * evaluates queries on objects in memory, e.g. to filter objects that are already loaded or for
+ * a store without a database. a query is compiled once (after {@link QueryNormalizer
+ * normalizing} it) into a tree of conditions that can then be run on any number of objects from
+ * any number of threads. running it does not allocate, except for regexes and getters of
+ * primitive types (the value is boxed).
+ *
+ * the rules are mongo's, so the objects match as their documents would: fields are resolved by
+ * name through maps and the properties jackson writes ("_id" is "id"), a condition on a list
+ * matches if it matches the list or one of its elements, a field that is not there counts as
+ * null, numbers compare by value, enums by name, and ranges only match values of the same kind
+ * ("a &gt; 5" does not match "x").
+ *
+ * contains is a case-insensitive regex, the same as in mongo. a text search looks for its words
+ * (case-insensitive, without stemming) in the fields it is given, without them it can not be
+ * compiled. projection and continuation are not looked at.
+ */
+public final class QueryCompiler {
+
+	private static final Pattern REGEX_CHARACTERS = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+
+	private QueryCompiler() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	public static <T> CompiledQuery<T> compile(DBStoreQuery query) {
+		return compile(query, Collections.emptyList());
+	}
+
+	/**
+	 * @param textFields the fields a text search looks in
+	 */
+	public static <T> CompiledQuery<T> compile(DBStoreQuery query, List<String> textFields) {
+		DBStoreQuery n = QueryNormalizer.normalize(query);
+		Node filter = n != null ? compileFilter(n, textFields) : null;
+		return new CompiledQuery<>(filter, comparator(n != null ? n.getOrderBy() : Collections.emptyList()), n);
+	}
+
+	public static <T> Predicate<T> predicate(DBStoreQuery query) {
+		return compile(query);
+	}
+
+	/**
+	 * the order of the query, objects it does not order are equal
+	 */
+	public static <T> Comparator<T> comparator(List<OrderBy> orderBy) {
+		return new OrderComparator<>(orderBy);
+	}
+
+	/**
+	 * @return the condition, null if there is none (matches everything)
+	 */
+	private static Node compileFilter(DBStoreQuery q, List<String> textFields) {
+		if (q.getField() != null) {
+			return compileCondition(q.getField(), q.getComparator(), q.getValue(), textFields);
+		}
+
+		List<Node> nodes = new ArrayList<>();
+		for (DBStoreQuery n : q.getNested()) {
+			Node node = compileFilter(n, textFields);
+			if (node != null) {
+				nodes.add(node);
+			}
+		}
+		if (nodes.isEmpty() || (q.getOperator() != OPERATOR.AND && q.getOperator() != OPERATOR.OR)) {
+			return null;
+		}
+		if (nodes.size() == 1) {
+			return nodes.get(0);
+		}
+		return q.getOperator() == OPERATOR.AND ? new And(nodes) : new Or(nodes);
+	}
+
+	private static Node compileCondition(String field, COMPARATOR comparator, Object value, List<String> textFields) {
+		if (value instanceof QueryParameter
+				|| (value instanceof Collection && ((Collection<?>) value).size() == 1 && ((Collection<?>) value).iterator().next() instanceof QueryParameter)) {
+			throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.UNBOUND_PARAMETER);
+		}
+
+		FieldPath path = new FieldPath(field);
+		switch (comparator) {
+			case EQ:
+				return new Eq(path, value);
+			case NE:
+				return new Not(new Eq(path, value));
+			case LT:
+			case LTE:
+			case GT:
+			case GTE:
+				return new Range(path, comparator, value);
+			case IN:
+				return new In(path, (Collection<?>) value);
+			case NIN:
+				// like the mongo translator, nin [] is "not there"
+				Collection<?> values = (Collection<?>) value;
+				return values == null || values.isEmpty() ? new Not(new Exists(path)) : new Not(new In(path, values));
+			case EXISTS:
+				return new Exists(path);
+			case ALL:
+				List<Node> all = new ArrayList<>();
+				for (Object o : (Collection<?>) value) {
+					all.add(new Eq(path, o));
+				}
+				return all.isEmpty() ? new Or(all) : new And(all);
+			case ELEM_MATCH:
+				Node sub = compileFilter((DBStoreQuery) value, textFields);
+				return new ElemMatch(path, sub);
+			case CONTAINS:
+				return new Contains(path, (String) value);
+			case STARTS_WITH:
+				return new StartsWith(path, (String) value);
+			case EQ_IGNORE_CASE:
+				return value == null ? new Eq(path, null) : new EqIgnoreCase(path, (String) value);
+			case TEXT:
+				return text((String) value, textFields);
+			default:
+				return null;
+		}
+	}
+
+	/**
+	 * any of the words, all of the "phrases" and none of the -words in any of the fields
+	 */
+	private static Node text(String search, List<String> fields) {
+		if (fields == null || fields.isEmpty()) {
+			// a text search needs the fields of the text index
+			throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.TEXT_FIELDS_MISSING);
+		}
+
+		List<String> words = new ArrayList<>();
+		List<String> phrases = new ArrayList<>();
+		List<String> negated = new ArrayList<>();
+		String[] quoted = search.split("\"", -1);
+		for (int i = 0; i < quoted.length; i++) {
+			if (i % 2 == 1) {
+				if (!quoted[i].trim().isEmpty()) {
+					phrases.add(quoted[i].trim());
+				}
+				continue;
+			}
+			for (String w : quoted[i].trim().split("\\s+")) {
+				if (w.startsWith("-") && w.length() > 1) {
+					negated.add(w.substring(1));
+				} else if (!w.isEmpty() && !w.equals("-")) {
+					words.add(w);
+				}
+			}
+		}
+
+		List<Node> and = new ArrayList<>();
+		if (!words.isEmpty()) {
+			and.add(anyField(fields, words));
+		}
+		for (String p : phrases) {
+			and.add(anyField(fields, Collections.singletonList(p)));
+		}
+		if (!negated.isEmpty()) {
+			and.add(new Not(anyField(fields, negated)));
+		}
+		// only negations match nothing in mongo
+		return words.isEmpty() && phrases.isEmpty() ? new Or(Collections.emptyList()) : new And(and);
+	}
+
+	private static Node anyField(List<String> fields, List<String> words) {
+		List<Node> or = new ArrayList<>();
+		for (String f : fields) {
+			for (String w : words) {
+				or.add(new Contains(new FieldPath(f), w, true));
+			}
+		}
+		return new Or(or);
+	}
+
+	interface Node {
+		boolean test(Object target);
+	}
+
+	private static final class And implements Node {
+
+		private final Node[] nodes;
+
+		And(List<Node> nodes) {
+			this.nodes = nodes.toArray(new Node[0]);
+		}
+
+		@Override
+		public boolean test(Object target) {
+			for (Node n : nodes) {
+				if (!n.test(target)) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	private static final class Or implements Node {
+
+		private final Node[] nodes;
+
+		Or(List<Node> nodes) {
+			this.nodes = nodes.toArray(new Node[0]);
+		}
+
+		@Override
+		public boolean test(Object target) {
+			for (Node n : nodes) {
+				if (n.test(target)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static final class Not implements Node {
+
+		private final Node node;
+
+		Not(Node node) {
+			this.node = node;
+		}
+
+		@Override
+		public boolean test(Object target) {
+			return !node.test(target);
+		}
+	}
+
+	/**
+	 * a condition on the values a field leads to, on a list it is tried on the whole list and
+	 * each element
+	 */
+	private abstract static class Condition implements Node, FieldPath.Leaf {
+
+		private final FieldPath path;
+
+		Condition(FieldPath path) {
+			this.path = path;
+		}
+
+		@Override
+		public boolean test(Object target) {
+			return path.any(target, this);
+		}
+
+		@Override
+		public boolean matches(Object value) {
+			if (Values.bracket(value) != Values.ARRAY) {
+				return matchesValue(value);
+			}
+			if (matchesArray(value)) {
+				return true;
+			}
+			if (value instanceof Object[] || value instanceof RandomAccess) {
+				for (int i = 0, n = Values.size(value); i < n; i++) {
+					if (matchesValue(Values.element(value, i))) {
+						return true;
+					}
+				}
+				return false;
+			}
+			for (Object o : (Collection<?>) value) {
+				if (matchesValue(o)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		boolean matchesArray(Object array) {
+			return false;
+		}
+
+		abstract boolean matchesValue(Object value);
+	}
+
+	private static final class Eq extends Condition {
+
+		private final Object value;
+
+		Eq(FieldPath path, Object value) {
+			super(path);
+			this.value = value;
+		}
+
+		@Override
+		boolean matchesArray(Object array) {
+			return Values.bracket(value) == Values.ARRAY && Values.equal(array, value);
+		}
+
+		@Override
+		boolean matchesValue(Object v) {
+			return Values.equal(v, value);
+		}
+	}
+
+	private static final class In extends Condition {
+
+		// most in lists are ids or other strings, those are looked up instead of compared
+		private final Set<String> strings = new HashSet<>();
+		private final List<Object> others = new ArrayList<>();
+
+		In(FieldPath path, Collection<?> values) {
+			super(path);
+			for (Object o : values) {
+				if (o instanceof String) {
+					strings.add((String) o);
+				} else {
+					others.add(o);
+				}
+			}
+		}
+
+		@Override
+		boolean matchesArray(Object array) {
+			for (int i = 0; i < others.size(); i++) {
+				Object o = others.get(i);
+				if (Values.bracket(o) == Values.ARRAY && Values.equal(array, o)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		@Override
+		boolean matchesValue(Object v) {
+			String s = Values.string(v);
+			if (s != null && strings.contains(s)) {
+				return true;
+			}
+			for (int i = 0; i < others.size(); i++) {
+				if (Values.equal(v, others.get(i))) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static final class Range extends Condition {
+
+		private final COMPARATOR comparator;
+		private final Object value;
+		private final int bracket;
+
+		Range(FieldPath path, COMPARATOR comparator, Object value) {
+			super(path);
+			this.comparator = comparator;
+			this.value = value;
+			this.bracket = Values.bracket(value);
+		}
+
+		@Override
+		boolean matchesArray(Object array) {
+			return bracket == Values.ARRAY && accepts(Values.compare(array, value));
+		}
+
+		@Override
+		boolean matchesValue(Object v) {
+			return Values.bracket(v) == bracket && accepts(Values.compare(v, value));
+		}
+
+		private boolean accepts(int c) {
+			switch (comparator) {
+				case LT:
+					return c < 0;
+				case LTE:
+					return c <= 0;
+				case GT:
+					return c > 0;
+				default:
+					return c >= 0;
+			}
+		}
+	}
+
+	private static final class Exists implements Node, FieldPath.Leaf {
+
+		private final FieldPath path;
+
+		Exists(FieldPath path) {
+			this.path = path;
+		}
+
+		@Override
+		public boolean test(Object target) {
+			return path.any(target, this);
+		}
+
+		@Override
+		public boolean matches(Object value) {
+			return value != FieldPath.MISSING;
+		}
+	}
+
+	private static final class ElemMatch implements Node, FieldPath.Leaf {
+
+		private final FieldPath path;
+		private final Node sub;
+
+		ElemMatch(FieldPath path, Node sub) {
+			this.path = path;
+			this.sub = sub;
+		}
+
+		@Override
+		public boolean test(Object target) {
+			return path.any(target, this);
+		}
+
+		@Override
+		public boolean matches(Object value) {
+			if (Values.bracket(value) != Values.ARRAY) {
+				return false;
+			}
+			if (value instanceof Object[] || value instanceof RandomAccess) {
+				for (int i = 0, n = Values.size(value); i < n; i++) {
+					if (sub == null || sub.test(Values.element(value, i))) {
+						return true;
+					}
+				}
+				return false;
+			}
+			for (Object o : (Collection<?>) value) {
+				if (sub == null || sub.test(o)) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static final class Contains extends Condition {
+
+		private final String literal;
+		private final Pattern pattern;
+
+		Contains(FieldPath path, String value) {
+			this(path, value, !REGEX_CHARACTERS.matcher(value).find());
+		}
+
+		Contains(FieldPath path, String value, boolean literal) {
+			super(path);
+			this.literal = literal ? value : null;
+			this.pattern = literal ? null : pattern(value);
+		}
+
+		private static Pattern pattern(String value) {
+			try {
+				return Pattern.compile(value, Pattern.CASE_INSENSITIVE);
+			} catch (Exception e) {
+				// the same fallback as the mongo translator
+				return Pattern.compile(value.replaceAll("[^\\w\\s]", ""), Pattern.CASE_INSENSITIVE);
+			}
+		}
+
+		@Override
+		boolean matchesValue(Object v) {
+			String s = Values.string(v);
+			if (s == null) {
+				return false;
+			}
+			if (pattern != null) {
+				return pattern.matcher(s).find();
+			}
+			for (int i = 0, n = s.length() - literal.length(); i <= n; i++) {
+				if (s.regionMatches(true, i, literal, 0, literal.length())) {
+					return true;
+				}
+			}
+			return false;
+		}
+	}
+
+	private static final class StartsWith extends Condition {
+
+		private final String prefix;
+
+		StartsWith(FieldPath path, String prefix) {
+			super(path);
+			this.prefix = prefix;
+		}
+
+		@Override
+		boolean matchesValue(Object v) {
+			String s = Values.string(v);
+			return s != null && s.startsWith(prefix);
+		}
+	}
+
+	private static final class EqIgnoreCase extends Condition {
+
+		private final String value;
+
+		EqIgnoreCase(FieldPath path, String value) {
+			super(path);
+			this.value = value;
+		}
+
+		@Override
+		boolean matchesValue(Object v) {
+			String s = Values.string(v);
+			return s != null && s.equalsIgnoreCase(value);
+		}
+	}
+
+	private static final class OrderComparator<T> implements Comparator<T> {
+
+		private final FieldPath[] paths;
+		private final boolean[] asc;
+
+		OrderComparator(List<OrderBy> orderBy) {
+			this.paths = new FieldPath[orderBy.size()];
+			this.asc = new boolean[orderBy.size()];
+			for (int i = 0; i < orderBy.size(); i++) {
+				paths[i] = new FieldPath(orderBy.get(i).getField());
+				asc[i] = orderBy.get(i).isAsc();
+			}
+		}
+
+		@Override
+		public int compare(T a, T b) {
+			for (int i = 0; i < paths.length; i++) {
+				int c = Values.compare(paths[i].sortKey(a, asc[i]), paths[i].sortKey(b, asc[i]));
+				if (c != 0) {
+					return asc[i] ? c : -c;
+				}
+			}
+			return 0;
+		}
+	}
+
+}
@@ -0,0 +1,307 @@
+package com.cinefms.dbstore.query.api.impl;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.DBStoreQuery.COMPARATOR;
+import com.cinefms.dbstore.query.api.DBStoreQuery.OPERATOR;
+
+/**
+ * rewrites the conditions of a query into a simpler tree that selects the same objects:
+ *
+ * - nested ANDs / ORs are flattened, empty groups dropped and groups of one replaced by their
+ *   condition
+ * - in an OR, eq / in conditions on the same field become one in
+ * - in an AND, several lower (gt / gte) or upper (lt / lte) bounds of a field are reduced to the
+ *   tightest one
+ * - an AND that can not match anything (in [], eq x next to ne x or nin [.., x, ..], exists next
+ *   to nin []) becomes {@link #isUnsatisfiable(DBStoreQuery) unsatisfiable}
+ *
+ * only rewrites that also hold for array fields are done, e.g. "a > 5 AND a < 3" is kept as it
+ * is, [7, 1] matches it. order, range, projection and continuation are taken over. the result
+ * is marked as normalized, normalizing it again returns it as it is.
+ */
+public final class QueryNormalizer {
+
+	// a condition nothing matches, translated to "_id in []"
+	private static final DBStoreQuery NOTHING = BasicQuery.condition("_id", COMPARATOR.IN, Collections.emptyList());
+
+	private QueryNormalizer() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	public static DBStoreQuery normalize(DBStoreQuery query) {
+		if (query == null || (query instanceof BasicQuery && ((BasicQuery) query).isNormalized())) {
+			return query;
+		}
+
+		DBStoreQuery condition = simplify(query);
+		List<DBStoreQuery> conditions;
+		if (condition == null) {
+			conditions = Collections.emptyList();
+		} else if (isGroup(condition) && condition.getOperator() == OPERATOR.AND) {
+			conditions = condition.getNested();
+		} else {
+			conditions = Collections.singletonList(condition);
+		}
+		return BasicQuery.normalized(conditions, query);
+	}
+
+	/**
+	 * @return true if the query can not match any object, so there is no need to run it
+	 */
+	public static boolean isUnsatisfiable(DBStoreQuery query) {
+		DBStoreQuery n = normalize(query);
+		return n != null && n.getNested().size() == 1 && n.getNested().get(0) == NOTHING;
+	}
+
+	/**
+	 * @return the simplified condition, null if there is none (matches everything)
+	 */
+	private static DBStoreQuery simplify(DBStoreQuery q) {
+		if (q == null) {
+			return null;
+		}
+		if (!isGroup(q)) {
+			return simplifyCondition(q);
+		}
+
+		List<DBStoreQuery> nested = q.getNested();
+		if (nested == null || nested.isEmpty()) {
+			return null;
+		}
+		if (q.getOperator() == OPERATOR.AND) {
+			return simplifyAnd(nested);
+		}
+		if (q.getOperator() == OPERATOR.OR) {
+			return simplifyOr(nested);
+		}
+		// the translator ignores groups without an operator
+		return null;
+	}
+
+	private static DBStoreQuery simplifyCondition(DBStoreQuery q) {
+		Object value = q.getValue();
+		switch (q.getComparator()) {
+			case IN:
+				return value instanceof Collection && ((Collection<?>) value).isEmpty() ? NOTHING : q;
+			case ELEM_MATCH:
+				if (!(value instanceof DBStoreQuery)) {
+					return q;
+				}
+				DBStoreQuery sub = simplify((DBStoreQuery) value);
+				if (sub == NOTHING) {
+					return NOTHING;
+				}
+				return BasicQuery.condition(q.getField(), COMPARATOR.ELEM_MATCH, sub != null ? sub : BasicQuery.group(Collections.emptyList(), OPERATOR.AND));
+			default:
+				return q;
+		}
+	}
+
+	private static DBStoreQuery simplifyAnd(List<DBStoreQuery> nested) {
+		List<DBStoreQuery> out = new ArrayList<>();
+		for (DBStoreQuery q : nested) {
+			DBStoreQuery s = simplify(q);
+			if (s == null) {
+				continue;
+			}
+			if (s == NOTHING) {
+				return NOTHING;
+			}
+			if (isGroup(s) && s.getOperator() == OPERATOR.AND) {
+				out.addAll(s.getNested());
+			} else {
+				out.add(s);
+			}
+		}
+
+		out = tightenBounds(out);
+		if (contradicts(out)) {
+			return NOTHING;
+		}
+		return group(out, OPERATOR.AND);
+	}
+
+	private static DBStoreQuery simplifyOr(List<DBStoreQuery> nested) {
+		List<DBStoreQuery> out = new ArrayList<>();
+		boolean nothing = false;
+		for (DBStoreQuery q : nested) {
+			DBStoreQuery s = simplify(q);
+			if (s == null) {
+				continue;
+			}
+			if (s == NOTHING) {
+				nothing = true;
+			} else if (isGroup(s) && s.getOperator() == OPERATOR.OR) {
+				out.addAll(s.getNested());
+			} else {
+				out.add(s);
+			}
+		}
+
+		if (out.isEmpty()) {
+			return nothing ? NOTHING : null;
+		}
+		return group(foldEquals(out), OPERATOR.OR);
+	}
+
+	private static DBStoreQuery group(List<DBStoreQuery> conditions, OPERATOR operator) {
+		if (conditions.isEmpty()) {
+			return null;
+		}
+		if (conditions.size() == 1) {
+			return conditions.get(0);
+		}
+		return BasicQuery.group(conditions, operator);
+	}
+
+	/**
+	 * "a = 1 OR a IN [2, 3] OR b = 4" to "a IN [1, 2, 3] OR b = 4", at the position of the first
+	 */
+	private static List<DBStoreQuery> foldEquals(List<DBStoreQuery> conditions) {
+		Map<String, Set<Object>> values = new LinkedHashMap<>();
+		Map<String, Integer> counts = new HashMap<>();
+		for (DBStoreQuery q : conditions) {
+			Collection<?> v = foldableValues(q);
+			if (v != null) {
+				values.computeIfAbsent(q.getField(), f -> new LinkedHashSet<>()).addAll(v);
+				counts.merge(q.getField(), 1, Integer::sum);
+			}
+		}
+
+		List<DBStoreQuery> out = new ArrayList<>(conditions.size());
+		Set<String> folded = new LinkedHashSet<>();
+		for (DBStoreQuery q : conditions) {
+			if (foldableValues(q) == null || counts.get(q.getField()) < 2) {
+				out.add(q);
+			} else if (folded.add(q.getField())) {
+				out.add(BasicQuery.condition(q.getField(), COMPARATOR.IN, new ArrayList<>(values.get(q.getField()))));
+			}
+		}
+		return out;
+	}
+
+	private static Collection<?> foldableValues(DBStoreQuery q) {
+		if (isGroup(q)) {
+			return null;
+		}
+		Object value = q.getValue();
+		if (q.getComparator() == COMPARATOR.EQ && isPlain(value)) {
+			return Collections.singletonList(value);
+		}
+		if (q.getComparator() == COMPARATOR.IN && value instanceof Collection) {
+			for (Object v : (Collection<?>) value) {
+				if (v instanceof QueryParameter) {
+					return null;
+				}
+			}
+			return (Collection<?>) value;
+		}
+		return null;
+	}
+
+	/**
+	 * "a > 1 AND a >= 3" to "a >= 3", at the position of the first. values that can not be
+	 * compared are kept as they are.
+	 */
+	private static List<DBStoreQuery> tightenBounds(List<DBStoreQuery> conditions) {
+		Map<String, DBStoreQuery> lower = new HashMap<>();
+		Map<String, DBStoreQuery> upper = new HashMap<>();
+		List<DBStoreQuery> out = new ArrayList<>(conditions.size());
+
+		for (DBStoreQuery q : conditions) {
+			boolean isLower = !isGroup(q) && (q.getComparator() == COMPARATOR.GT || q.getComparator() == COMPARATOR.GTE);
+			boolean isUpper = !isGroup(q) && (q.getComparator() == COMPARATOR.LT || q.getComparator() == COMPARATOR.LTE);
+			if ((!isLower && !isUpper) || q.getValue() instanceof QueryParameter) {
+				out.add(q);
+				continue;
+			}
+
+			Map<String, DBStoreQuery> bounds = isLower ? lower : upper;
+			DBStoreQuery current = bounds.get(q.getField());
+			if (current == null) {
+				bounds.put(q.getField(), q);
+				out.add(q);
+				continue;
+			}
+
+			Integer c = compare(q.getValue(), current.getValue());
+			if (c == null) {
+				out.add(q);
+				continue;
+			}
+			boolean exclusive = q.getComparator() == COMPARATOR.GT || q.getComparator() == COMPARATOR.LT;
+			boolean tighter = isLower ? c > 0 : c < 0;
+			if (tighter || (c == 0 && exclusive)) {
+				out.set(out.indexOf(current), q);
+				bounds.put(q.getField(), q);
+			}
+		}
+		return out;
+	}
+
+	private static boolean contradicts(List<DBStoreQuery> conditions) {
+		for (DBStoreQuery q : conditions) {
+			if (isGroup(q)) {
+				continue;
+			}
+			for (DBStoreQuery o : conditions) {
+				if (isGroup(o) || !q.getField().equals(o.getField())) {
+					continue;
+				}
+				if (q.getComparator() == COMPARATOR.EQ && isPlain(q.getValue())) {
+					if (o.getComparator() == COMPARATOR.NE && Objects.equals(q.getValue(), o.getValue())) {
+						return true;
+					}
+					if (o.getComparator() == COMPARATOR.NIN && o.getValue() instanceof Collection && ((Collection<?>) o.getValue()).contains(q.getValue())) {
+						return true;
+					}
+				}
+				// nin [] is translated to "does not exist"
+				if (q.getComparator() == COMPARATOR.EXISTS && o.getComparator() == COMPARATOR.NIN
+						&& (o.getValue() == null || (o.getValue() instanceof Collection && ((Collection<?>) o.getValue()).isEmpty()))) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * a single value, not a list (eq against a whole array) or a parameter
+	 */
+	private static boolean isPlain(Object value) {
+		return !(value instanceof Collection) && !(value instanceof Object[]) && !(value instanceof QueryParameter) && !(value instanceof DBStoreQuery);
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static Integer compare(Object a, Object b) {
+		if (a instanceof Number && b instanceof Number) {
+			try {
+				return new BigDecimal(a.toString()).compareTo(new BigDecimal(b.toString()));
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+		if (a instanceof Comparable && b != null && a.getClass() == b.getClass()) {
+			return ((Comparable) a).compareTo(b);
+		}
+		return null;
+	}
+
+	private static boolean isGroup(DBStoreQuery q) {
+		return q.getField() == null;
+	}
+
+}
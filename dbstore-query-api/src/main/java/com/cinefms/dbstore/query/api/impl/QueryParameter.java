@@ -0,0 +1,43 @@
+package com.cinefms.dbstore.query.api.impl;
+
+/**
+ * a named placeholder for the value of a condition, for queries that are prepared once and run
+ * with different values, e.g. <code>createQuery().eq("owner", QueryParameter.named("owner"))</code>.
+ *
+ * for in / nin / all the placeholder is the only value and stands for the whole list.
+ */
+public final class QueryParameter {
+
+	private final String name;
+
+	private QueryParameter(String name) {
+		this.name = name;
+	}
+
+	public static QueryParameter named(String name) {
+		if (name == null) {
+			throw new IllegalArgumentException("name must not be null");
+		}
+		return new QueryParameter(name);
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		return o instanceof QueryParameter && name.equals(((QueryParameter) o).name);
+	}
+
+	@Override
+	public int hashCode() {
+		return name.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return ":" + name;
+	}
+
+}
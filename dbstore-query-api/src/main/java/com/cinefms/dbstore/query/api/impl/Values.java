@@ -0,0 +1,242 @@
+package com.cinefms.dbstore.query.api.impl;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.regex.Pattern;
+
+/**
+ * compares values like mongo compares them in documents: numbers by value whatever their type,
+ * enums by name (the way jackson stores them), dates by time. values of different kinds are
+ * ordered by kind (null, numbers, strings, objects, arrays, binary, booleans, dates, regexes).
+ */
+final class Values {
+
+	static final int NULL = 1;
+	static final int NUMBER = 2;
+	static final int STRING = 3;
+	static final int OBJECT = 4;
+	static final int ARRAY = 5;
+	static final int BINARY = 6;
+	static final int BOOLEAN = 8;
+	static final int DATE = 9;
+	static final int REGEX = 11;
+
+	private Values() {
+		throw new IllegalStateException("Utility class");
+	}
+
+	// by class, instanceof on interfaces is slow for classes that implement many of them
+	private static final ClassValue<Integer> BRACKETS = new ClassValue<Integer>() {
+		@Override
+		protected Integer computeValue(Class<?> c) {
+			if (Number.class.isAssignableFrom(c)) {
+				return NUMBER;
+			}
+			if (c == String.class || Enum.class.isAssignableFrom(c) || c == Character.class) {
+				return STRING;
+			}
+			if (Collection.class.isAssignableFrom(c) || Object[].class.isAssignableFrom(c)) {
+				return ARRAY;
+			}
+			if (c == byte[].class) {
+				return BINARY;
+			}
+			if (c == Boolean.class) {
+				return BOOLEAN;
+			}
+			if (Date.class.isAssignableFrom(c)) {
+				return DATE;
+			}
+			if (c == Pattern.class) {
+				return REGEX;
+			}
+			return OBJECT;
+		}
+	};
+
+	static int bracket(Object v) {
+		if (v == null || v == FieldPath.MISSING) {
+			return NULL;
+		}
+		if (v instanceof String) {
+			return STRING;
+		}
+		return BRACKETS.get(v.getClass());
+	}
+
+	/**
+	 * the string of a string-like value, null for others
+	 */
+	static String string(Object v) {
+		if (v instanceof String) {
+			return (String) v;
+		}
+		if (v instanceof Enum) {
+			return ((Enum<?>) v).name();
+		}
+		if (v instanceof Character) {
+			return v.toString();
+		}
+		return null;
+	}
+
+	static boolean equal(Object a, Object b) {
+		if (a == FieldPath.MISSING) {
+			a = null;
+		}
+		if (a == null || b == null) {
+			return a == b;
+		}
+		int bracket = bracket(a);
+		if (bracket != bracket(b)) {
+			return false;
+		}
+		switch (bracket) {
+			case NUMBER:
+				return compareNumbers((Number) a, (Number) b) == 0;
+			case STRING:
+				return string(a).equals(string(b));
+			case DATE:
+				return ((Date) a).getTime() == ((Date) b).getTime();
+			case ARRAY:
+				return compareArrays(a, b, true) == 0;
+			case BINARY:
+				return Arrays.equals((byte[]) a, (byte[]) b);
+			case OBJECT:
+				if (a instanceof Map && b instanceof Map) {
+					return equalMaps((Map<?, ?>) a, (Map<?, ?>) b);
+				}
+				return a.equals(b);
+			default:
+				return a.equals(b);
+		}
+	}
+
+	/**
+	 * the sort order, values of different kinds by their kind
+	 */
+	static int compare(Object a, Object b) {
+		int ba = bracket(a);
+		int bb = bracket(b);
+		if (ba != bb) {
+			return Integer.compare(ba, bb);
+		}
+		switch (ba) {
+			case NULL:
+				return 0;
+			case NUMBER:
+				return compareNumbers((Number) a, (Number) b);
+			case STRING:
+				return string(a).compareTo(string(b));
+			case DATE:
+				return Long.compare(((Date) a).getTime(), ((Date) b).getTime());
+			case BOOLEAN:
+				return Boolean.compare((Boolean) a, (Boolean) b);
+			case ARRAY:
+				return compareArrays(a, b, false);
+			default:
+				return compareOther(a, b);
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static int compareOther(Object a, Object b) {
+		if (a instanceof Comparable && a.getClass() == b.getClass()) {
+			return ((Comparable) a).compareTo(b);
+		}
+		return 0;
+	}
+
+	static int compareNumbers(Number a, Number b) {
+		if (isIntegral(a) && isIntegral(b)) {
+			return Long.compare(a.longValue(), b.longValue());
+		}
+		if (a instanceof BigDecimal || b instanceof BigDecimal || a instanceof BigInteger || b instanceof BigInteger) {
+			return decimal(a).compareTo(decimal(b));
+		}
+		double da = a.doubleValue();
+		double db = b.doubleValue();
+		// mongo puts NaN below all other numbers
+		if (Double.isNaN(da) || Double.isNaN(db)) {
+			return Double.isNaN(da) ? (Double.isNaN(db) ? 0 : -1) : 1;
+		}
+		if (da == db && isIntegral(a) != isIntegral(b)) {
+			// large longs are not exact as doubles
+			return decimal(a).compareTo(decimal(b));
+		}
+		return Double.compare(da, db);
+	}
+
+	private static boolean isIntegral(Number n) {
+		return n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte;
+	}
+
+	private static BigDecimal decimal(Number n) {
+		if (n instanceof BigDecimal) {
+			return (BigDecimal) n;
+		}
+		if (n instanceof BigInteger) {
+			return new BigDecimal((BigInteger) n);
+		}
+		if (isIntegral(n)) {
+			return BigDecimal.valueOf(n.longValue());
+		}
+		return new BigDecimal(n.doubleValue());
+	}
+
+	private static int compareArrays(Object a, Object b, boolean equality) {
+		int sa = size(a);
+		int sb = size(b);
+		if (equality && sa != sb) {
+			return 1;
+		}
+		for (int i = 0; i < Math.min(sa, sb); i++) {
+			Object ea = element(a, i);
+			Object eb = element(b, i);
+			int c = equality ? (equal(ea, eb) ? 0 : 1) : compare(ea, eb);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return Integer.compare(sa, sb);
+	}
+
+	private static boolean equalMaps(Map<?, ?> a, Map<?, ?> b) {
+		if (a.size() != b.size()) {
+			return false;
+		}
+		for (Map.Entry<?, ?> e : a.entrySet()) {
+			Object other = b.get(e.getKey());
+			if ((other == null && !b.containsKey(e.getKey())) || !equal(e.getValue(), other)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	static int size(Object array) {
+		return array instanceof Object[] ? ((Object[]) array).length : ((Collection<?>) array).size();
+	}
+
+	static Object element(Object array, int i) {
+		if (array instanceof Object[]) {
+			return ((Object[]) array)[i];
+		}
+		if (array instanceof RandomAccess) {
+			return ((List<?>) array).get(i);
+		}
+		Iterator<?> it = ((Collection<?>) array).iterator();
+		for (int j = 0; j < i; j++) {
+			it.next();
+		}
+		return it.next();
+	}
+
+}
@@ -0,0 +1,81 @@
+package com.cinefms.dbstore.query.mongo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.bson.BsonValue;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+
+import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
+
+/**
+ * the sort key of the last object of a page: the keyset fields (with direction, "+name" /
+ * "-name") and their values. serialized as url-safe base64 of a small bson document, so the
+ * values keep their exact bson types.
+ */
+public class ContinuationToken {
+
+	private final List<String> fields;
+	private final List<BsonValue> values;
+
+	public ContinuationToken(List<String> fields, List<BsonValue> values) {
+		this.fields = Collections.unmodifiableList(new ArrayList<>(fields));
+		this.values = Collections.unmodifiableList(new ArrayList<>(values));
+	}
+
+	public List<String> getFields() {
+		return fields;
+	}
+
+	public List<BsonValue> getValues() {
+		return values;
+	}
+
+	public String encode() {
+		BsonArray f = new BsonArray();
+		for (String field : fields) {
+			f.add(new BsonString(field));
+		}
+
+		BsonDocument doc = new BsonDocument()
+				.append("f", f)
+				.append("v", new BsonArray(values));
+
+		ByteBuffer buffer = new RawBsonDocument(doc, new BsonDocumentCodec()).getByteBuffer().asNIO();
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+	}
+
+	public static ContinuationToken decode(String token) {
+		try {
+			BsonDocument doc = new RawBsonDocument(Base64.getUrlDecoder().decode(token));
+
+			List<String> fields = new ArrayList<>();
+			for (BsonValue v : doc.getArray("f")) {
+				fields.add(v.asString().getValue());
+			}
+
+			List<BsonValue> values = new ArrayList<>(doc.getArray("v").getValues());
+			if (fields.size() != values.size()) {
+				throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.INVALID_CONTINUATION);
+			}
+
+			return new ContinuationToken(fields, values);
+
+		} catch (MalformedQueryException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.INVALID_CONTINUATION);
+		}
+	}
+
+}
@@ -0,0 +1,241 @@
+package com.cinefms.dbstore.query.mongo;
+
+import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.DBStoreQuery.COMPARATOR;
+import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
+import com.mongodb.client.model.Collation;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * a query translated once (see {@link QueryMongojackTranslator#prepare(DBStoreQuery)}), to be run
+ * with different values for its {@link com.cinefms.dbstore.query.api.impl.QueryParameter}s.
+ *
+ * the conditions with a parameter are left as markers in the translated filter. per codec
+ * registry the filter is rendered once into a template, in which everything without a marker
+ * is kept as it is. binding values only translates the marked conditions and rebuilds the
+ * documents above them, the rest of the tree (and e.g. the regex of a contains) is shared.
+ */
+public class PreparedQuery {
+
+	static final String MARKER = "$dbstoreParameter";
+
+	private final QueryMongojackTranslator translator;
+	private final DBStoreQuery shape;
+	private final Bson filter;
+	private final List<Slot> slots;
+	private final Set<String> parameters = new LinkedHashSet<>();
+	private final Bson projection;
+	private final Bson orderBy;
+	private final Collation collation;
+	private final boolean unsatisfiable;
+
+	private final Map<CodecRegistry, Node> templates = new ConcurrentHashMap<>();
+
+	PreparedQuery(QueryMongojackTranslator translator, DBStoreQuery shape, Bson filter, List<Slot> slots, Bson projection, Bson orderBy, Collation collation, boolean unsatisfiable) {
+		this.translator = translator;
+		this.shape = shape;
+		this.filter = filter;
+		this.slots = new ArrayList<>(slots);
+		this.projection = projection;
+		this.orderBy = orderBy;
+		this.collation = collation;
+		this.unsatisfiable = unsatisfiable;
+		for (Slot s : slots) {
+			parameters.add(s.parameter);
+		}
+	}
+
+	/**
+	 * the filter with the values for all parameters of the query
+	 */
+	public Bson bind(Map<String, ?> values) {
+		for (String p : parameters) {
+			if (!values.containsKey(p)) {
+				throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.UNBOUND_PARAMETER);
+			}
+		}
+		if (slots.isEmpty()) {
+			return filter;
+		}
+		return new Bson() {
+			@Override
+			public <D> BsonDocument toBsonDocument(Class<D> documentClass, CodecRegistry registry) {
+				return template(registry).render(values, registry).asDocument();
+			}
+		};
+	}
+
+	private Node template(CodecRegistry registry) {
+		return templates.computeIfAbsent(registry, r -> compile(filter.toBsonDocument(BsonDocument.class, r)));
+	}
+
+	private Node compile(BsonValue value) {
+		if (value.isDocument()) {
+			BsonDocument d = value.asDocument();
+			if (d.size() == 1 && d.containsKey(MARKER)) {
+				return new Param(slots.get(d.getInt32(MARKER).getValue()));
+			}
+
+			List<String> keys = new ArrayList<>(d.size());
+			List<Node> nodes = new ArrayList<>(d.size());
+			boolean constant = true;
+			for (Map.Entry<String, BsonValue> e : d.entrySet()) {
+				Node n = compile(e.getValue());
+				keys.add(e.getKey());
+				nodes.add(n);
+				constant &= n instanceof Constant;
+			}
+			return constant ? new Constant(value) : new Document(keys, nodes);
+		}
+
+		if (value.isArray()) {
+			List<Node> nodes = new ArrayList<>();
+			boolean constant = true;
+			for (BsonValue v : value.asArray()) {
+				Node n = compile(v);
+				nodes.add(n);
+				constant &= n instanceof Constant;
+			}
+			return constant ? new Constant(value) : new Array(nodes);
+		}
+
+		return new Constant(value);
+	}
+
+	/**
+	 * the names of the parameters that have to be bound
+	 */
+	public Set<String> getParameters() {
+		return Collections.unmodifiableSet(parameters);
+	}
+
+	public DBStoreQuery getShape() {
+		return shape;
+	}
+
+	public Bson getProjection() {
+		return projection;
+	}
+
+	public Bson getOrderBy() {
+		return orderBy;
+	}
+
+	public Collation getCollation() {
+		return collation;
+	}
+
+	/**
+	 * true if the query can not match anything, whatever the values of its parameters
+	 */
+	public boolean isUnsatisfiable() {
+		return unsatisfiable;
+	}
+
+	public int getStart() {
+		return shape != null ? shape.getStart() : 0;
+	}
+
+	public int getMax() {
+		return shape != null ? shape.getMax() : 0;
+	}
+
+	static class Slot {
+
+		private final String field;
+		private final COMPARATOR comparator;
+		private final String parameter;
+
+		Slot(String field, COMPARATOR comparator, String parameter) {
+			this.field = field;
+			this.comparator = comparator;
+			this.parameter = parameter;
+		}
+	}
+
+	private interface Node {
+
+		BsonValue render(Map<String, ?> values, CodecRegistry registry);
+
+	}
+
+	private static class Constant implements Node {
+
+		private final BsonValue value;
+
+		Constant(BsonValue value) {
+			this.value = value;
+		}
+
+		@Override
+		public BsonValue render(Map<String, ?> values, CodecRegistry registry) {
+			return value;
+		}
+	}
+
+	private static class Document implements Node {
+
+		private final List<String> keys;
+		private final List<Node> nodes;
+
+		Document(List<String> keys, List<Node> nodes) {
+			this.keys = keys;
+			this.nodes = nodes;
+		}
+
+		@Override
+		public BsonValue render(Map<String, ?> values, CodecRegistry registry) {
+			BsonDocument out = new BsonDocument();
+			for (int i = 0; i < keys.size(); i++) {
+				out.append(keys.get(i), nodes.get(i).render(values, registry));
+			}
+			return out;
+		}
+	}
+
+	private static class Array implements Node {
+
+		private final List<Node> nodes;
+
+		Array(List<Node> nodes) {
+			this.nodes = nodes;
+		}
+
+		@Override
+		public BsonValue render(Map<String, ?> values, CodecRegistry registry) {
+			BsonArray out = new BsonArray(new ArrayList<>(nodes.size()));
+			for (Node n : nodes) {
+				out.add(n.render(values, registry));
+			}
+			return out;
+		}
+	}
+
+	private class Param implements Node {
+
+		private final Slot slot;
+
+		Param(Slot slot) {
+			this.slot = slot;
+		}
+
+		@Override
+		public BsonValue render(Map<String, ?> values, CodecRegistry registry) {
+			Bson condition = translator.translateCondition(slot.field, slot.comparator, values.get(slot.parameter), null, collation != null);
+			return condition != null ? condition.toBsonDocument(BsonDocument.class, registry) : new BsonDocument();
+		}
+	}
+
+}
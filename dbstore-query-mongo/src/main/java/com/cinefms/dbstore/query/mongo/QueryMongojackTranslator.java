@@ -1,17 +1,42 @@
 package com.cinefms.dbstore.query.mongo;
 
+import com.cinefms.dbstore.query.api.DBStoreAggregation;
 import com.cinefms.dbstore.query.api.DBStoreQuery;
+import com.cinefms.dbstore.query.api.DBStoreQuery.COMPARATOR;
 import com.cinefms.dbstore.query.api.DBStoreQuery.OPERATOR;
+import com.cinefms.dbstore.query.api.exceptions.MalformedQueryException;
+import com.cinefms.dbstore.query.api.impl.Accumulator;
 import com.cinefms.dbstore.query.api.impl.OrderBy;
+import com.cinefms.dbstore.query.api.impl.QueryNormalizer;
+import com.cinefms.dbstore.query.api.impl.QueryParameter;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BsonField;
+import com.mongodb.client.model.Collation;
+import com.mongodb.client.model.CollationStrength;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.Sorts;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonNull;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.conversions.Bson;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
@@ -19,77 +44,224 @@ public class QueryMongojackTranslator {
 
 	private static final Log LOGGER = LogFactory.getLog(QueryMongojackTranslator.class);
 
+	private static final String ID = "_id";
+
+	private static final int MAX_PATTERNS = 1000;
+
+	private boolean normalize = true;
+	private String collationLocale = "en";
+
+	// compiled contains patterns, a search box sends the same few terms over and over
+	private final Map<String, Pattern> patterns = new ConcurrentHashMap<>();
+
+	public boolean isNormalize() {
+		return normalize;
+	}
+
+	/**
+	 * whether queries are simplified with the {@link QueryNormalizer} before they are translated
+	 */
+	public void setNormalize(boolean normalize) {
+		this.normalize = normalize;
+	}
+
+	public String getCollationLocale() {
+		return collationLocale;
+	}
+
+	/**
+	 * the locale of the collation for eqIgnoreCase, must be the one of the case-insensitive
+	 * indexes for them to be used
+	 */
+	public void setCollationLocale(String collationLocale) {
+		this.collationLocale = collationLocale;
+	}
+
+	/**
+	 * the collation of case-insensitive indexes and queries: compares letters ignoring case
+	 * (strength secondary)
+	 */
+	public Collation caseInsensitiveCollation() {
+		return Collation.builder().locale(collationLocale).collationStrength(CollationStrength.SECONDARY).build();
+	}
+
+	/**
+	 * @return the collation the query has to run with, null for the default (binary) one
+	 */
+	public Collation translateCollation(DBStoreQuery query) {
+		return collated(normalize(query)) ? caseInsensitiveCollation() : null;
+	}
+
+	/**
+	 * a collation applies to every comparison of the query, so eqIgnoreCase only runs under one
+	 * (and can use a case-insensitive index) if nothing else in the query compares strings or
+	 * sorts. otherwise it is translated to an anchored case-insensitive regex.
+	 */
+	private static boolean collated(DBStoreQuery q) {
+		return ignoresCase(q) && caseInsensitiveOnly(q) && q.getOrderBy().isEmpty() && q.getContinuation() == null;
+	}
+
+	private static boolean caseInsensitiveOnly(DBStoreQuery q) {
+		if (q.getField() == null) {
+			for (DBStoreQuery n : q.getNested()) {
+				if (!caseInsensitiveOnly(n)) {
+					return false;
+				}
+			}
+			return true;
+		}
+		switch (q.getComparator()) {
+			case EQ_IGNORE_CASE:
+			case EXISTS:
+			case CONTAINS:
+			case STARTS_WITH:
+				// regexes do not use the collation
+				return true;
+			case ELEM_MATCH:
+				return q.getValue() instanceof DBStoreQuery && caseInsensitiveOnly((DBStoreQuery) q.getValue());
+			case TEXT:
+				return false;
+			default:
+				return !hasStrings(q.getValue());
+		}
+	}
+
+	/**
+	 * true if the value may hold a string, a parameter is only known when it is bound
+	 */
+	private static boolean hasStrings(Object value) {
+		if (value instanceof Collection) {
+			for (Object v : (Collection<?>) value) {
+				if (hasStrings(v)) {
+					return true;
+				}
+			}
+			return false;
+		}
+		if (value instanceof Object[]) {
+			return hasStrings(Arrays.asList((Object[]) value));
+		}
+		return value instanceof CharSequence || value instanceof Character || value instanceof Enum
+				|| value instanceof Map || value instanceof QueryParameter;
+	}
+
+	private static boolean ignoresCase(DBStoreQuery q) {
+		if (q == null) {
+			return false;
+		}
+		if (q.getField() != null) {
+			return q.getComparator() == COMPARATOR.EQ_IGNORE_CASE
+					|| (q.getComparator() == COMPARATOR.ELEM_MATCH && q.getValue() instanceof DBStoreQuery && ignoresCase((DBStoreQuery) q.getValue()));
+		}
+		for (DBStoreQuery n : q.getNested()) {
+			if (ignoresCase(n)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public DBStoreQuery normalize(DBStoreQuery in) {
+		return normalize ? QueryNormalizer.normalize(in) : in;
+	}
+
+	/**
+	 * @return true if the query can not match anything, so it does not need to be run
+	 */
+	public boolean isUnsatisfiable(DBStoreQuery in) {
+		return normalize && QueryNormalizer.isUnsatisfiable(in);
+	}
+
+	/**
+	 * the filter for the query, including the range predicate of its continuation if it has one
+	 */
 	public Bson translate(DBStoreQuery in) {
+		return translate(in, null, true);
+	}
+
+	/**
+	 * the filter for running the query without its collation, for distinct values, aggregations
+	 * and joins, which would otherwise group or join ignoring case too
+	 */
+	public Bson translateWithoutCollation(DBStoreQuery in) {
+		return translate(in, null, false);
+	}
+
+	/**
+	 * translates the query once for running it many times with different values for its
+	 * {@link QueryParameter}s
+	 */
+	public PreparedQuery prepare(DBStoreQuery shape) {
+		List<PreparedQuery.Slot> slots = new ArrayList<>();
+		Bson filter = translate(shape, slots, true);
+		return new PreparedQuery(this, shape, filter, slots, translateProjection(shape), translateOrderBy(shape), translateCollation(shape), isUnsatisfiable(shape));
+	}
+
+	/**
+	 * @param slots null to reject parameters, otherwise they are collected there and replaced
+	 * by markers
+	 */
+	private Bson translate(DBStoreQuery query, List<PreparedQuery.Slot> slots, boolean collation) {
+		DBStoreQuery in = normalize(query);
+		Bson filter = translateFilter(in, slots, collation && in != null && collated(in));
+
+		if (in != null && in.getContinuation() != null) {
+			Bson keyset = translateContinuation(in);
+			return filter != null ? Filters.and(filter, keyset) : keyset;
+		}
+
+		// Return empty filter if no valid filter was created
+		return filter != null ? filter : Filters.empty();
+	}
+
+	/**
+	 * @return true if the query matches everything (no conditions and no continuation)
+	 */
+	public boolean isUnfiltered(DBStoreQuery in) {
+		return translateFilter(normalize(in), new ArrayList<>(), false) == null && (in == null || in.getContinuation() == null);
+	}
+
+	/**
+	 * @param collated whether the query runs under the case-insensitive collation
+	 * @return the filter for the conditions, null if there are none
+	 */
+	private Bson translateFilter(DBStoreQuery in, List<PreparedQuery.Slot> slots, boolean collated) {
 		if (in == null) {
-			return Filters.empty();
+			return null;
 		}
 		
 		Bson q = null;
 		if (in.getField() != null) {
-			switch (in.getComparator()) {
-				case EQ:
-					q = Filters.eq(in.getField(), in.getValue());
-					break;
-				case LTE:
-					q = Filters.lte(in.getField(), in.getValue());
-					break;
-				case LT:
-					q = Filters.lt(in.getField(), in.getValue());
-					break;
-				case GTE:
-					q = Filters.gte(in.getField(), in.getValue());
-					break;
-				case GT:
-					q = Filters.gt(in.getField(), in.getValue());
-					break;
-				case NE:
-					q = Filters.ne(in.getField(), in.getValue());
-					break;
-				case ELEM_MATCH:
-					q = Filters.elemMatch(in.getField(), translate((DBStoreQuery) in.getValue()));
-					break;
-				case CONTAINS:
-					try {
-						q = Filters.regex(in.getField(), Pattern.compile((String) in.getValue(), Pattern.CASE_INSENSITIVE));
-					} catch (Exception ex) {
-						LOGGER.warn("broken regex '" + in.getValue() + "' ....", ex);
-						String x = ((String) in.getValue()).replaceAll("[^\\w\\s]", "");
-						q = Filters.regex(in.getField(), Pattern.compile(x, Pattern.CASE_INSENSITIVE));
-					}
-					break;
-				case IN:
-					LOGGER.debug(" ##### " + in.getField() + " --- " + in.getValue().getClass());
-					q = Filters.in(in.getField(), (Collection<?>) in.getValue());
-					break;
-				case NIN:
-					LOGGER.debug(" ##### " + in.getField() + " --- " + in.getValue().getClass());
-					Collection values = in.getValue() != null && in.getValue() instanceof Collection ? (List) in.getValue() : null;
-					if (values != null && !values.isEmpty()) {
-						q = Filters.nin(in.getField(), values);
-					} else {
-						q = Filters.exists(in.getField(), false);
-					}
-					break;
-				case EXISTS:
-					q = Filters.exists(in.getField(), true);
-					break;
-				case ALL:
-					q = Filters.all(in.getField(), (Collection<?>) in.getValue());
-					break;
-				default:
-					break;
+			QueryParameter p = parameterOf(in.getValue());
+			if (p != null) {
+				if (slots == null) {
+					throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.UNBOUND_PARAMETER);
+				}
+				slots.add(new PreparedQuery.Slot(in.getField(), in.getComparator(), p.getName()));
+				return new BsonDocument(PreparedQuery.MARKER, new BsonInt32(slots.size() - 1));
 			}
+			q = translateCondition(in.getField(), in.getComparator(), in.getValue(), slots, collated);
 		} else {
 			List<DBStoreQuery> n = in.getNested();
 			if (n != null && !n.isEmpty()) {
 				List<Bson> mq = new ArrayList<>();
+				Map<String, Bson> ranges = in.getOperator() == OPERATOR.AND ? translateRanges(n) : Collections.emptyMap();
+				Set<String> rangesAdded = new HashSet<>();
 				for (DBStoreQuery fq : n) {
-					Bson translated = translate(fq);
+					if (ranges.containsKey(fq.getField()) && isBound(fq)) {
+						if (rangesAdded.add(fq.getField())) {
+							mq.add(ranges.get(fq.getField()));
+						}
+						continue;
+					}
+					Bson translated = translateFilter(fq, slots, collated);
 					if (translated != null) {
 						mq.add(translated);
 					}
 				}
-				if (!mq.isEmpty()) {
+				if (mq.size() == 1 && (in.getOperator() == OPERATOR.AND || in.getOperator() == OPERATOR.OR)) {
+					q = mq.get(0);
+				} else if (!mq.isEmpty()) {
 					if (in.getOperator() == OPERATOR.AND) {
 						q = Filters.and(mq);
 					}
@@ -99,9 +271,179 @@ public class QueryMongojackTranslator {
 				}
 			}
 		}
-		
-		// Return empty filter if no valid filter was created
-		return q != null ? q : Filters.empty();
+
+		return q;
+	}
+
+	/**
+	 * the filter for a single condition, null if it has none
+	 */
+	Bson translateCondition(String field, COMPARATOR comparator, Object value, List<PreparedQuery.Slot> slots, boolean collated) {
+		Bson q = null;
+		switch (comparator) {
+			case EQ:
+				q = Filters.eq(field, value);
+				break;
+			case LTE:
+				q = Filters.lte(field, value);
+				break;
+			case LT:
+				q = Filters.lt(field, value);
+				break;
+			case GTE:
+				q = Filters.gte(field, value);
+				break;
+			case GT:
+				q = Filters.gt(field, value);
+				break;
+			case NE:
+				q = Filters.ne(field, value);
+				break;
+			case ELEM_MATCH:
+				Bson sub = translateFilter((DBStoreQuery) value, slots, collated);
+				q = Filters.elemMatch(field, sub != null ? sub : Filters.empty());
+				break;
+			case CONTAINS:
+				q = Filters.regex(field, containsPattern((String) value));
+				break;
+			case STARTS_WITH:
+				// only literal characters after the anchor, so mongo can turn it into index bounds
+				q = Filters.regex(field, "^" + quote((String) value));
+				break;
+			case EQ_IGNORE_CASE:
+				if (collated || value == null) {
+					// the case-insensitive part is the collation, see translateCollation
+					q = Filters.eq(field, value);
+				} else {
+					q = Filters.regex(field, "^" + quote((String) value) + "$", "i");
+				}
+				break;
+			case TEXT:
+				q = Filters.text((String) value);
+				break;
+			case IN:
+				LOGGER.debug(" ##### " + field + " --- " + value.getClass());
+				q = Filters.in(field, (Collection<?>) value);
+				break;
+			case NIN:
+				LOGGER.debug(" ##### " + field + " --- " + value.getClass());
+				Collection values = value != null && value instanceof Collection ? (Collection) value : null;
+				if (values != null && !values.isEmpty()) {
+					q = Filters.nin(field, values);
+				} else {
+					q = Filters.exists(field, false);
+				}
+				break;
+			case EXISTS:
+				q = Filters.exists(field, true);
+				break;
+			case ALL:
+				q = Filters.all(field, (Collection<?>) value);
+				break;
+			default:
+				break;
+		}
+		return q;
+	}
+
+	private static String quote(String value) {
+		return value.replaceAll("[\\\\^$.|?*+()\\[\\]{}]", "\\\\$0");
+	}
+
+	private Pattern containsPattern(String value) {
+		Pattern out = patterns.get(value);
+		if (out != null) {
+			return out;
+		}
+
+		try {
+			out = Pattern.compile(value, Pattern.CASE_INSENSITIVE);
+		} catch (Exception ex) {
+			LOGGER.warn("broken regex '" + value + "' ....", ex);
+			String x = value.replaceAll("[^\\w\\s]", "");
+			out = Pattern.compile(x, Pattern.CASE_INSENSITIVE);
+		}
+
+		if (patterns.size() >= MAX_PATTERNS) {
+			patterns.clear();
+		}
+		patterns.put(value, out);
+		return out;
+	}
+
+	/**
+	 * one lower and one upper bound of a field in an AND as a single range, { a: { $gte: 1, $lt: 5 } }
+	 * instead of { $and: [ { a: { $gte: 1 } }, { a: { $lt: 5 } } ] }
+	 */
+	private Map<String, Bson> translateRanges(List<DBStoreQuery> conditions) {
+		Map<String, DBStoreQuery> lower = new HashMap<>();
+		Map<String, DBStoreQuery> upper = new HashMap<>();
+		Set<String> ambiguous = new HashSet<>();
+		for (DBStoreQuery q : conditions) {
+			if (!isBound(q)) {
+				continue;
+			}
+			boolean isLower = q.getComparator() == COMPARATOR.GT || q.getComparator() == COMPARATOR.GTE;
+			if ((isLower ? lower : upper).put(q.getField(), q) != null) {
+				ambiguous.add(q.getField());
+			}
+		}
+
+		Map<String, Bson> out = new HashMap<>();
+		for (Map.Entry<String, DBStoreQuery> e : lower.entrySet()) {
+			DBStoreQuery u = upper.get(e.getKey());
+			if (u != null && !ambiguous.contains(e.getKey())) {
+				DBStoreQuery l = e.getValue();
+				out.put(e.getKey(), range(e.getKey(), translateCondition(l.getField(), l.getComparator(), l.getValue(), null, false), translateCondition(u.getField(), u.getComparator(), u.getValue(), null, false)));
+			}
+		}
+		return out;
+	}
+
+	private static boolean isBound(DBStoreQuery q) {
+		if (q.getField() == null || parameterOf(q.getValue()) != null) {
+			return false;
+		}
+		switch (q.getComparator()) {
+			case GT:
+			case GTE:
+			case LT:
+			case LTE:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static Bson range(String field, Bson lower, Bson upper) {
+		return new Bson() {
+			@Override
+			public <D> BsonDocument toBsonDocument(Class<D> documentClass, CodecRegistry registry) {
+				BsonDocument bounds = lower.toBsonDocument(documentClass, registry).getDocument(field);
+				bounds.putAll(upper.toBsonDocument(documentClass, registry).getDocument(field));
+				return new BsonDocument(field, bounds);
+			}
+
+			@Override
+			public String toString() {
+				return "Range{" + lower + ", " + upper + "}";
+			}
+		};
+	}
+
+	/**
+	 * the parameter a condition's value is, also for a list holding only a parameter (as in
+	 * <code>in("field", param)</code>)
+	 */
+	private static QueryParameter parameterOf(Object value) {
+		if (value instanceof QueryParameter) {
+			return (QueryParameter) value;
+		}
+		if (value instanceof Collection && ((Collection<?>) value).size() == 1) {
+			Object first = ((Collection<?>) value).iterator().next();
+			return first instanceof QueryParameter ? (QueryParameter) first : null;
+		}
+		return null;
 	}
 
 	public Bson translateOrderBy(DBStoreQuery query) {
@@ -122,4 +464,200 @@ public class QueryMongojackTranslator {
 		);
 	}
 
+	/**
+	 * @return the projection for the query's includes / excludes, or null for whole documents.
+	 * mongo can not mix both (except for the id), and with includes everything else is left out
+	 * anyway, so then only an excluded id is kept.
+	 */
+	public Bson translateProjection(DBStoreQuery query) {
+		if (query == null) {
+			return null;
+		}
+
+		List<String> includes = query.getIncludes();
+		List<String> excludes = query.getExcludes();
+
+		if (includes != null && !includes.isEmpty()) {
+			if (excludes != null && excludes.contains("_id")) {
+				return Projections.fields(Projections.include(includes), Projections.excludeId());
+			}
+			return Projections.include(includes);
+		}
+
+		if (excludes != null && !excludes.isEmpty()) {
+			return Projections.exclude(excludes);
+		}
+
+		return null;
+	}
+
+	/**
+	 * the pipeline for the aggregation: $match, $group (on the group fields as g0, g1, ... of
+	 * the _id), $project to put the group fields back under their names, then $match for
+	 * having, $sort and $limit
+	 */
+	public List<Bson> translateAggregation(DBStoreAggregation aggregation) {
+		List<Bson> out = new ArrayList<>();
+		if (aggregation.getMatch() != null && !isUnfiltered(aggregation.getMatch())) {
+			out.add(Aggregates.match(translateWithoutCollation(aggregation.getMatch())));
+		}
+
+		List<String> groupBy = aggregation.getGroupBy();
+		Document id = null;
+		Document project = new Document("_id", 0);
+		if (!groupBy.isEmpty()) {
+			id = new Document();
+			for (int i = 0; i < groupBy.size(); i++) {
+				id.append("g" + i, "$" + groupBy.get(i));
+				project.append(groupBy.get(i), "$_id.g" + i);
+			}
+		}
+
+		List<BsonField> fields = new ArrayList<>();
+		for (Accumulator a : aggregation.getAccumulators()) {
+			fields.add(translateAccumulator(a));
+			project.append(a.getName(), 1);
+		}
+		out.add(Aggregates.group(id, fields));
+		out.add(Aggregates.project(project));
+
+		if (aggregation.getHaving() != null && !isUnfiltered(aggregation.getHaving())) {
+			out.add(Aggregates.match(translateWithoutCollation(aggregation.getHaving())));
+		}
+		if (!aggregation.getOrderBy().isEmpty()) {
+			out.add(Aggregates.sort(Sorts.orderBy(
+					aggregation.getOrderBy().stream()
+							.map(it -> it.isAsc() ? Sorts.ascending(it.getField()) : Sorts.descending(it.getField()))
+							.collect(Collectors.toList())
+			)));
+		}
+		if (aggregation.getLimit() >= 0) {
+			// $limit takes no 0, a $match that matches nothing does the same
+			out.add(aggregation.getLimit() > 0 ? Aggregates.limit(aggregation.getLimit()) : Aggregates.match(Filters.exists("_id")));
+		}
+		return out;
+	}
+
+	private static BsonField translateAccumulator(Accumulator a) {
+		String field = "$" + a.getField();
+		switch (a.getFunction()) {
+			case COUNT:
+				// a long like the counts of the store
+				return Accumulators.sum(a.getName(), 1L);
+			case SUM:
+				return Accumulators.sum(a.getName(), field);
+			case AVG:
+				return Accumulators.avg(a.getName(), field);
+			case MIN:
+				return Accumulators.min(a.getName(), field);
+			case MAX:
+				return Accumulators.max(a.getName(), field);
+			default:
+				throw new IllegalArgumentException("unknown function " + a.getFunction());
+		}
+	}
+
+	/**
+	 * the query's order with the id appended as tie-breaker, so every object has a unique
+	 * position to continue from
+	 */
+	public List<OrderBy> keysetOrder(DBStoreQuery query) {
+		List<OrderBy> out = new ArrayList<>();
+		if (query != null && query.getOrderBy() != null) {
+			out.addAll(query.getOrderBy());
+		}
+		if (out.stream().noneMatch(it -> ID.equals(it.getField()))) {
+			out.add(OrderBy.asc(ID));
+		}
+		return out;
+	}
+
+	public Bson translateKeysetOrderBy(DBStoreQuery query) {
+		return Sorts.orderBy(
+				keysetOrder(query).stream()
+						.map(it -> it.isAsc() ? Sorts.ascending(it.getField()) : Sorts.descending(it.getField()))
+						.collect(Collectors.toList())
+		);
+	}
+
+	/**
+	 * @return the token to pass to {@link DBStoreQuery#after(String)} to continue after this
+	 * (encoded) object
+	 */
+	public String continuationFor(DBStoreQuery query, BsonDocument last) {
+		List<OrderBy> order = keysetOrder(query);
+
+		List<String> fields = new ArrayList<>(order.size());
+		List<BsonValue> values = new ArrayList<>(order.size());
+		for (OrderBy ob : order) {
+			fields.add(keysetField(ob));
+			values.add(valueAt(last, ob.getField()));
+		}
+
+		return new ContinuationToken(fields, values).encode();
+	}
+
+	/**
+	 * everything sorting after the token's key: (k1 > v1) or (k1 = v1 and k2 > v2) or ...
+	 * missing values sort like null, i.e. first ascending and last descending.
+	 */
+	private Bson translateContinuation(DBStoreQuery query) {
+		List<OrderBy> order = keysetOrder(query);
+		ContinuationToken token = ContinuationToken.decode(query.getContinuation());
+
+		List<String> expected = order.stream().map(this::keysetField).collect(Collectors.toList());
+		if (!expected.equals(token.getFields())) {
+			throw new MalformedQueryException(MalformedQueryException.ERROR_CODE.INVALID_CONTINUATION);
+		}
+
+		List<Bson> alternatives = new ArrayList<>();
+		for (int i = 0; i < order.size(); i++) {
+			Bson after = after(order.get(i), token.getValues().get(i));
+			if (after == null) {
+				continue;
+			}
+
+			List<Bson> clause = new ArrayList<>();
+			for (int j = 0; j < i; j++) {
+				clause.add(Filters.eq(order.get(j).getField(), token.getValues().get(j)));
+			}
+			clause.add(after);
+
+			alternatives.add(clause.size() == 1 ? clause.get(0) : Filters.and(clause));
+		}
+
+		if (alternatives.isEmpty()) {
+			// nothing sorts after the last object
+			return Filters.in(ID, Collections.emptyList());
+		}
+		return alternatives.size() == 1 ? alternatives.get(0) : Filters.or(alternatives);
+	}
+
+	private Bson after(OrderBy ob, BsonValue value) {
+		String field = ob.getField();
+
+		if (value.isNull()) {
+			return ob.isAsc() ? Filters.ne(field, null) : null;
+		}
+		if (ob.isAsc()) {
+			return Filters.gt(field, value);
+		}
+		return Filters.or(Filters.lt(field, value), Filters.eq(field, null));
+	}
+
+	private String keysetField(OrderBy ob) {
+		return (ob.isAsc() ? "+" : "-") + ob.getField();
+	}
+
+	private BsonValue valueAt(BsonDocument doc, String path) {
+		BsonValue current = doc;
+		for (String segment : path.split("\\.")) {
+			if (current == null || !current.isDocument()) {
+				return BsonNull.VALUE;
+			}
+			current = current.asDocument().get(segment);
+		}
+		return current != null ? current : BsonNull.VALUE;
+	}
+
 }
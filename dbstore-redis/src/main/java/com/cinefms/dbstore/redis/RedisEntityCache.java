@@ -0,0 +1,372 @@
+package com.cinefms.dbstore.redis;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.redisson.api.RScript.Mode;
+import org.redisson.api.RScript.ReturnType;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.listener.BaseStatusListener;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.DisposableBean;
+
+import com.cinefms.dbstore.api.DBStoreEntity;
+import com.cinefms.dbstore.api.cache.CacheStats;
+import com.cinefms.dbstore.api.cache.EntityCache;
+import com.cinefms.dbstore.api.cache.LocalEntityCache;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * {@link EntityCache} shared by all nodes through redis, for use with
+ * {@link com.cinefms.dbstore.api.cache.CachingDataStore}.
+ *
+ * objects are stored as json under "prefix:{db:class}:id:id" and expire after ttl. each node
+ * keeps a small {@link LocalEntityCache} in front of redis (the near cache). an invalidation is
+ * published on the "prefix:invalidations" topic, so the other nodes drop the object from their
+ * near caches too.
+ *
+ * in redis, an invalidation replaces the object with a tombstone for tombstoneTtl, and objects
+ * are only written over a tombstone once it is gone. so a node that loaded the object before the
+ * invalidation cannot put the old version back. a whole class is invalidated by bumping its
+ * generation ("prefix:{db:class}:gen"), which every object carries and is only read back with,
+ * and by blocking writes of the class for tombstoneTtl. reads and writes are a single script
+ * each, the keys of a class share a hash slot.
+ *
+ * the invalidations of other nodes are passed on to the {@link InvalidationListener}s, so the
+ * query results cached on this node go stale with them.
+ *
+ * a node that lost its subscription may have missed invalidations, so it clears its near cache
+ * (and tells the listeners everything may be stale) when it subscribes again.
+ * nearExpireAfterWrite bounds the staleness in between.
+ *
+ * redis being unavailable is not an error here: reads count as misses and go to the database.
+ */
+public class RedisEntityCache implements EntityCache, DisposableBean {
+
+	private static final Log log = LogFactory.getLog(RedisEntityCache.class);
+
+	// what an invalidated key holds for a while instead of the object
+	private static final String TOMBSTONE = "-";
+
+	// KEYS: gen, object. the json if the object is there and of the current generation
+	private static final String GET = ""
+			+ "local v = redis.call('get', KEYS[2]) "
+			+ "if not v then return nil end "
+			+ "local g = redis.call('get', KEYS[1]) or '0' "
+			+ "local i = string.find(v, '|', 1, true) "
+			+ "if not i or string.sub(v, 1, i - 1) ~= g then return nil end "
+			+ "return string.sub(v, i + 1)";
+
+	// KEYS: gen, block, object. ARGV: json, ttl. leaves tombstones, blocked classes and objects of
+	// the current generation alone
+	private static final String PUT = ""
+			+ "if redis.call('exists', KEYS[2]) == 1 then return 0 end "
+			+ "local g = redis.call('get', KEYS[1]) or '0' "
+			+ "local v = redis.call('get', KEYS[3]) "
+			+ "if v then "
+			+ "  if v == '" + TOMBSTONE + "' then return 0 end "
+			+ "  local i = string.find(v, '|', 1, true) "
+			+ "  if i and string.sub(v, 1, i - 1) == g then return 0 end "
+			+ "end "
+			+ "redis.call('set', KEYS[3], g .. '|' .. ARGV[1], 'PX', ARGV[2]) "
+			+ "return 1";
+
+	// KEYS: gen, block. ARGV: tombstoneTtl
+	private static final String INVALIDATE_CLASS = ""
+			+ "redis.call('incr', KEYS[1]) "
+			+ "redis.call('set', KEYS[2], '" + TOMBSTONE + "', 'PX', ARGV[1]) "
+			+ "return 1";
+
+	private final RedissonClient redisson;
+	private final String prefix;
+	private final String node = UUID.randomUUID().toString();
+	private final LocalEntityCache near;
+	private final RTopic topic;
+	private final int messageListenerId;
+	private final int statusListenerId;
+
+	private ObjectMapper objectMapper = new ObjectMapper()
+			.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+	private Duration ttl = Duration.ofHours(1);
+	private Duration tombstoneTtl = Duration.ofSeconds(30);
+
+	// the classes that went into the near cache by name, to find them for invalidations of
+	// other nodes
+	private final Map<String, Set<Class<?>>> classes = new ConcurrentHashMap<>();
+
+	private final List<InvalidationListener> listeners = new CopyOnWriteArrayList<>();
+
+	// bumped on every invalidation, a redis read that overlaps one is not kept in the near cache
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+
+	public RedisEntityCache(RedissonClient redisson) {
+		this(redisson, "dbstore", new LocalEntityCache(1000, 60000));
+	}
+
+	public RedisEntityCache(RedissonClient redisson, String prefix, LocalEntityCache near) {
+		this.redisson = redisson;
+		this.prefix = prefix;
+		this.near = near;
+
+		this.topic = redisson.getTopic(prefix + ":invalidations", StringCodec.INSTANCE);
+		this.messageListenerId = topic.addListener(String.class, (channel, message) -> onInvalidation(message));
+		this.statusListenerId = topic.addListener(new BaseStatusListener() {
+			@Override
+			public void onSubscribe(String channel) {
+				clearNear();
+			}
+		});
+	}
+
+	@Override
+	public <T extends DBStoreEntity> T get(String db, Class<T> clazz, String id) {
+		T out = near.get(db, clazz, id);
+		if (out != null) {
+			hits.increment();
+			return out;
+		}
+
+		long before = invalidations.get();
+		try {
+			String json = eval(db, clazz, Mode.READ_ONLY, GET, ReturnType.VALUE,
+					Arrays.asList(genKey(db, clazz), key(db, clazz, id)));
+			if (json != null) {
+				out = objectMapper.readValue(json, clazz);
+			}
+		} catch (Exception e) {
+			log.warn("unable to read " + key(db, clazz, id) + " from redis", e);
+		}
+
+		if (out == null) {
+			misses.increment();
+			return null;
+		}
+
+		hits.increment();
+		nearPut(db, clazz, id, out, () -> invalidations.get() == before);
+		return out;
+	}
+
+	@Override
+	public <T extends DBStoreEntity> void put(String db, Class<T> clazz, String id, T object) {
+		nearPut(db, clazz, id, object, null);
+		write(db, clazz, id, object);
+	}
+
+	@Override
+	public <T extends DBStoreEntity> void put(String db, Class<T> clazz, String id, T object, BooleanSupplier unchanged) {
+		nearPut(db, clazz, id, object, unchanged);
+		if (unchanged.getAsBoolean()) {
+			write(db, clazz, id, object);
+		}
+	}
+
+	private <T extends DBStoreEntity> void nearPut(String db, Class<T> clazz, String id, T object, BooleanSupplier unchanged) {
+		classes.computeIfAbsent(clazz.getName(), n -> ConcurrentHashMap.newKeySet()).add(clazz);
+		if (unchanged == null) {
+			near.put(db, clazz, id, object);
+		} else {
+			near.put(db, clazz, id, object, unchanged);
+		}
+	}
+
+	/**
+	 * does not overwrite a tombstone, so it does not bring back an old version over an
+	 * invalidation that happened while the object was loaded
+	 */
+	private void write(String db, Class<?> clazz, String id, DBStoreEntity object) {
+		try {
+			eval(db, clazz, Mode.READ_WRITE, PUT, ReturnType.INTEGER,
+					Arrays.asList(genKey(db, clazz), blockKey(db, clazz), key(db, clazz, id)),
+					objectMapper.writeValueAsString(object), String.valueOf(ttl.toMillis()));
+		} catch (Exception e) {
+			log.warn("unable to write " + key(db, clazz, id) + " to redis", e);
+		}
+	}
+
+	@Override
+	public void invalidate(String db, Class<?> clazz, String id) {
+		invalidations.incrementAndGet();
+		near.invalidate(db, clazz, id);
+		try {
+			redisson.<String>getBucket(key(db, clazz, id), StringCodec.INSTANCE).set(TOMBSTONE, tombstoneTtl);
+			publish(new Invalidation(node, db, clazz.getName(), id));
+		} catch (Exception e) {
+			log.error("unable to invalidate " + key(db, clazz, id) + " in redis", e);
+		}
+	}
+
+	@Override
+	public void invalidate(String db, Class<?> clazz) {
+		invalidations.incrementAndGet();
+		near.invalidate(db, clazz);
+		try {
+			eval(db, clazz, Mode.READ_WRITE, INVALIDATE_CLASS, ReturnType.INTEGER,
+					Arrays.asList(genKey(db, clazz), blockKey(db, clazz)),
+					String.valueOf(tombstoneTtl.toMillis()));
+			publish(new Invalidation(node, db, clazz.getName(), null));
+		} catch (Exception e) {
+			log.error("unable to invalidate " + genKey(db, clazz) + " in redis", e);
+		}
+	}
+
+	/**
+	 * clears the near cache of this node only, redis and the other nodes are left alone
+	 */
+	@Override
+	public void clear() {
+		invalidations.incrementAndGet();
+		near.clear();
+	}
+
+	/**
+	 * hits are counted on either level, evictions and size are the near cache's
+	 */
+	@Override
+	public CacheStats getStats() {
+		CacheStats n = near.getStats();
+		return new CacheStats(hits.sum(), misses.sum(), n.getEvictionCount(), n.getSize());
+	}
+
+	@Override
+	public void addInvalidationListener(InvalidationListener listener) {
+		listeners.add(listener);
+	}
+
+	public CacheStats getNearCacheStats() {
+		return near.getStats();
+	}
+
+	private String key(String db, Class<?> clazz, String id) {
+		return classKey(db, clazz) + ":id:" + id;
+	}
+
+	private String genKey(String db, Class<?> clazz) {
+		return classKey(db, clazz) + ":gen";
+	}
+
+	// blocks writes of the class for a while after it was invalidated
+	private String blockKey(String db, Class<?> clazz) {
+		return classKey(db, clazz) + ":block";
+	}
+
+	// the hash tag keeps all keys of the class in one slot, for the scripts
+	private String classKey(String db, Class<?> clazz) {
+		return prefix + ":{" + (db == null ? "" : db) + ":" + clazz.getName() + "}";
+	}
+
+	private <R> R eval(String db, Class<?> clazz, Mode mode, String script, ReturnType returnType, List<Object> keys, Object... values) {
+		return redisson.getScript(StringCodec.INSTANCE).eval(genKey(db, clazz), mode, script, returnType, keys, values);
+	}
+
+	private void publish(Invalidation invalidation) throws Exception {
+		topic.publish(objectMapper.writeValueAsString(invalidation));
+	}
+
+	private void onInvalidation(String message) {
+		try {
+			Invalidation i = objectMapper.readValue(message, Invalidation.class);
+			if (node.equals(i.node)) {
+				return;
+			}
+
+			invalidations.incrementAndGet();
+			// a class this node never cached is not in its near cache either
+			for (Class<?> clazz : classes.getOrDefault(i.clazz, Collections.emptySet())) {
+				if (i.id == null) {
+					near.invalidate(i.db, clazz);
+				} else {
+					near.invalidate(i.db, clazz, i.id);
+				}
+			}
+			for (InvalidationListener l : listeners) {
+				l.invalidated(i.db, i.clazz, i.id);
+			}
+
+		} catch (Exception e) {
+			log.error("unable to handle invalidation " + message + ", clearing the near cache", e);
+			clearNear();
+		}
+	}
+
+	// after invalidations may have been missed
+	private void clearNear() {
+		invalidations.incrementAndGet();
+		near.clear();
+		for (InvalidationListener l : listeners) {
+			l.invalidatedAll();
+		}
+	}
+
+	public ObjectMapper getObjectMapper() {
+		return objectMapper;
+	}
+
+	/**
+	 * the mapper for the json in redis, must be able to read back what it wrote for all cached
+	 * classes
+	 */
+	public void setObjectMapper(ObjectMapper objectMapper) {
+		this.objectMapper = objectMapper;
+	}
+
+	public Duration getTtl() {
+		return ttl;
+	}
+
+	public void setTtl(Duration ttl) {
+		this.ttl = ttl;
+	}
+
+	public Duration getTombstoneTtl() {
+		return tombstoneTtl;
+	}
+
+	/**
+	 * how long an invalidated key blocks writes, should be longer than loading an object takes
+	 */
+	public void setTombstoneTtl(Duration tombstoneTtl) {
+		this.tombstoneTtl = tombstoneTtl;
+	}
+
+	@Override
+	public void destroy() {
+		topic.removeListener(messageListenerId, statusListenerId);
+	}
+
+	public static class Invalidation {
+
+		public String node;
+		public String db;
+		public String clazz;
+		public String id;
+
+		public Invalidation() {
+		}
+
+		public Invalidation(String node, String db, String clazz, String id) {
+			this.node = node;
+			this.db = db;
+			this.clazz = clazz;
+			this.id = id;
+		}
+	}
+
+}
@@ -0,0 +1,172 @@
+package com.cinefms.dbstore.redis;
+
+import com.cinefms.dbstore.api.cache.EntityCache;
+import com.cinefms.dbstore.api.cache.LocalEntityCache;
+import com.cinefms.dbstore.api.impl.BaseDBStoreEntity;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.ClassRule;
+import org.junit.Test;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.testcontainers.containers.GenericContainer;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BooleanSupplier;
+
+/**
+ * two caches on two clients, like two nodes sharing one redis
+ */
+public class RedisEntityCacheTest {
+
+	@ClassRule
+	public static final GenericContainer<?> redis = new GenericContainer<>("redis:7-alpine").withExposedPorts(6379);
+
+	private String prefix;
+	private RedissonClient clientA;
+	private RedissonClient clientB;
+	private RedisEntityCache a;
+	private RedisEntityCache b;
+
+	@Before
+	public void setup() {
+		prefix = "test-" + UUID.randomUUID();
+		clientA = client();
+		clientB = client();
+		a = new RedisEntityCache(clientA, prefix, new LocalEntityCache(100, 60000));
+		b = new RedisEntityCache(clientB, prefix, new LocalEntityCache(100, 60000));
+	}
+
+	@After
+	public void cleanup() {
+		a.destroy();
+		b.destroy();
+		clientA.shutdown();
+		clientB.shutdown();
+	}
+
+	private RedissonClient client() {
+		RedissonFactory factory = new RedissonFactory();
+		factory.setSingleServer("redis://" + redis.getHost() + ":" + redis.getMappedPort(6379));
+		return factory.getObject();
+	}
+
+	@Test
+	public void itShouldShareObjectsBetweenNodes() {
+		a.put("db", CachedEntity.class, "1", new CachedEntity("1", "v1"));
+
+		Assert.assertEquals("v1", b.get("db", CachedEntity.class, "1").getValue());
+		Assert.assertNull(b.get("db", CachedEntity.class, "2"));
+	}
+
+	@Test
+	public void itShouldInvalidateTheNearCacheOfOtherNodes() throws InterruptedException {
+		a.put("db", CachedEntity.class, "1", new CachedEntity("1", "v1"));
+		a.put("db", CachedEntity.class, "2", new CachedEntity("2", "v1"));
+		Assert.assertNotNull(b.get("db", CachedEntity.class, "1"));
+		Assert.assertNotNull(b.get("db", CachedEntity.class, "2"));
+
+		a.invalidate("db", CachedEntity.class, "1");
+		await(() -> b.get("db", CachedEntity.class, "1") == null);
+		Assert.assertNotNull(b.get("db", CachedEntity.class, "2"));
+
+		a.invalidate("db", CachedEntity.class);
+		await(() -> b.get("db", CachedEntity.class, "2") == null);
+	}
+
+	@Test
+	public void itShouldNotPutBackAnInvalidatedObject() {
+		CachedEntity old = new CachedEntity("1", "v1");
+		a.invalidate("db", CachedEntity.class, "1");
+
+		// loaded by the other node before the invalidation, put after it
+		b.put("db", CachedEntity.class, "1", old);
+
+		Assert.assertNull(a.get("db", CachedEntity.class, "1"));
+	}
+
+	@Test
+	public void itShouldHideOlderGenerationsOfAnInvalidatedClass() throws InterruptedException {
+		a.setTombstoneTtl(Duration.ofMillis(200));
+		a.put("db", CachedEntity.class, "1", new CachedEntity("1", "v1"));
+
+		a.invalidate("db", CachedEntity.class);
+		Assert.assertNull(b.get("db", CachedEntity.class, "1"));
+
+		// writes are blocked for a while, then the new generation replaces the old one
+		b.put("db", CachedEntity.class, "1", new CachedEntity("1", "v1"));
+		Assert.assertNull(a.get("db", CachedEntity.class, "1"));
+		Thread.sleep(300);
+		b.put("db", CachedEntity.class, "1", new CachedEntity("1", "v2"));
+		a.clear();
+		Assert.assertEquals("v2", a.get("db", CachedEntity.class, "1").getValue());
+	}
+
+	@Test
+	public void itShouldClearTheNearCacheWhenItSubscribesAgain() throws Exception {
+		a.put("db", CachedEntity.class, "1", new CachedEntity("1", "v1"));
+		Assert.assertEquals("v1", b.get("db", CachedEntity.class, "1").getValue());
+
+		// changed without an invalidation b hears about, b still has the old one
+		clientA.getBucket(prefix + ":{db:" + CachedEntity.class.getName() + "}:id:1", StringCodec.INSTANCE).set("0|{\"id\":\"1\",\"value\":\"v2\"}");
+		Assert.assertEquals("v1", b.get("db", CachedEntity.class, "1").getValue());
+
+		redis.execInContainer("redis-cli", "client", "kill", "type", "pubsub");
+		await(() -> "v2".equals(b.get("db", CachedEntity.class, "1").getValue()));
+	}
+
+	@Test
+	public void itShouldTellListenersAboutInvalidationsOfOtherNodes() throws InterruptedException {
+		List<String> heard = new CopyOnWriteArrayList<>();
+		b.addInvalidationListener(new EntityCache.InvalidationListener() {
+			@Override
+			public void invalidated(String db, String className, String id) {
+				heard.add(db + ":" + className + ":" + id);
+			}
+
+			@Override
+			public void invalidatedAll() {
+				heard.add("all");
+			}
+		});
+
+		b.invalidate("db", CachedEntity.class, "1");
+		a.invalidate("db", CachedEntity.class, "2");
+		await(() -> heard.contains("db:" + CachedEntity.class.getName() + ":2"));
+		Assert.assertEquals(1, heard.size());
+	}
+
+	private void await(BooleanSupplier condition) throws InterruptedException {
+		long until = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			Assert.assertTrue("timed out", System.currentTimeMillis() < until);
+			Thread.sleep(50);
+		}
+	}
+
+	public static class CachedEntity extends BaseDBStoreEntity {
+
+		private String value;
+
+		public CachedEntity() {
+		}
+
+		public CachedEntity(String id, String value) {
+			setId(id);
+			this.value = value;
+		}
+
+		public String getValue() {
+			return value;
+		}
+
+		public void setValue(String value) {
+			this.value = value;
+		}
+	}
+
+}